@@ -4,6 +4,7 @@ import java.io.IOException
 plugins {
     bluemap.base
     alias ( libs.plugins.node.gradle )
+    alias ( libs.plugins.jmh )
 }
 
 dependencies {
@@ -25,6 +26,12 @@ dependencies {
     testAnnotationProcessor ( libs.lombok )
 }
 
+// benchmarks, run with: ./gradlew :common:jmh
+jmh {
+    jmhVersion = "1.37"
+    profilers.add("gc") // report allocation-rates
+}
+
 node {
     version = "20.14.0"
     download = true
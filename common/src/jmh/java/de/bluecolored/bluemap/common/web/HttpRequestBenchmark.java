@@ -0,0 +1,149 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.common.web.http.HttpRequest;
+import de.bluecolored.bluemap.common.web.http.HttpResponse;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.storage.file.FileMapStorage;
+import de.bluecolored.bluemap.core.util.DeletingPathVisitor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many requests per second a single core can parse, route and answer (without the socket-IO).
+ * <p>
+ * <code>tileRequest</code> is a typical request for a hires-tile, <code>notModifiedTileRequest</code> is the same
+ * request revalidating an already cached tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpRequestBenchmark {
+
+    private static final String TILE_REQUEST =
+            "GET /maps/world/tiles/0/x1/2/z-3/4.prbm HTTP/1.1\r\n" +
+            "Host: localhost:8100\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n" +
+            "Accept: */*\r\n" +
+            "Accept-Language: en-US,en;q=0.5\r\n" +
+            "Accept-Encoding: gzip, deflate, br, zstd\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Referer: http://localhost:8100/\r\n" +
+            "Sec-Fetch-Dest: empty\r\n" +
+            "Sec-Fetch-Mode: cors\r\n" +
+            "Sec-Fetch-Site: same-origin\r\n";
+
+    private Path root;
+    private RoutingRequestHandler router;
+    private InetAddress source;
+    private ByteBuffer tileRequest, notModifiedTileRequest;
+    private final DiscardingChannel sink = new DiscardingChannel();
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("bluemap-benchmark");
+
+        FileMapStorage mapStorage = new FileMapStorage(root, Compression.GZIP, false);
+        try (OutputStream out = mapStorage.hiresTiles().write(12, -34)) {
+            out.write(new byte[4096]);
+        }
+
+        router = new RoutingRequestHandler();
+        router.registerPrefix("maps/world/", new MapStorageRequestHandler(mapStorage));
+        source = InetAddress.getLoopbackAddress();
+
+        tileRequest = encode(TILE_REQUEST + "\r\n");
+
+        // find the etag of the tile to revalidate it
+        String eTag;
+        try (HttpResponse response = handle(tileRequest)) {
+            eTag = response.getHeader("ETag").getValue();
+        }
+        notModifiedTileRequest = encode(TILE_REQUEST + "If-None-Match: " + eTag + "\r\n\r\n");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.walkFileTree(root, DeletingPathVisitor.INSTANCE);
+    }
+
+    @Benchmark
+    public void tileRequest() throws IOException {
+        try (HttpResponse response = handle(tileRequest)) {
+            while (!response.read(sink));
+        }
+    }
+
+    @Benchmark
+    public void notModifiedTileRequest() throws IOException {
+        try (HttpResponse response = handle(notModifiedTileRequest)) {
+            while (!response.read(sink));
+        }
+    }
+
+    private HttpResponse handle(ByteBuffer requestData) throws IOException {
+        HttpRequest request = new HttpRequest(source);
+        if (!request.write(requestData.duplicate()))
+            throw new IOException("Incomplete request");
+        return router.handle(request);
+    }
+
+    private static ByteBuffer encode(String request) {
+        return ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    private static class DiscardingChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
@@ -227,7 +227,12 @@ private synchronized void loadMap(String id, MapConfig mapConfig) throws Configu
         if (world == null) {
             try {
                 Logger.global.logDebug("Loading world " + worldId + " ...");
-                world = new MCAWorld(worldFolder.toFile(), dimension, loadDataPack(worldFolder));
+                world = new MCAWorld(
+                        worldFolder.toFile(),
+                        dimension,
+                        loadDataPack(worldFolder),
+                        config.getCoreConfig().getChunkCacheSize()
+                );
                 worlds.put(worldId, world);
             } catch (IOException ex) {
                 throw new ConfigurationException(
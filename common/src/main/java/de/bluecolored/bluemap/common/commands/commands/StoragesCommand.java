@@ -31,6 +31,7 @@
 import de.bluecolored.bluemap.common.config.BlueMapConfigManager;
 import de.bluecolored.bluemap.common.config.ConfigurationException;
 import de.bluecolored.bluemap.common.config.storage.FileConfig;
+import de.bluecolored.bluemap.common.config.storage.KVConfig;
 import de.bluecolored.bluemap.common.config.storage.SQLConfig;
 import de.bluecolored.bluemap.common.config.storage.StorageConfig;
 import de.bluecolored.bluemap.common.plugin.Plugin;
@@ -39,6 +40,7 @@
 import de.bluecolored.bluemap.core.map.BmMap;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.storage.file.FileStorage;
+import de.bluecolored.bluemap.core.storage.kv.KVStorage;
 import lombok.RequiredArgsConstructor;
 import net.kyori.adventure.text.Component;
 
@@ -165,6 +167,9 @@ private Component formatStorage(Storage storage, StorageConfig storageConfig) {
         if (storage instanceof FileStorage) {
             FileStorage fileStorage = (FileStorage) storage;
             storageInfo = format("File-Storage: %", fileStorage.getRoot());
+        } else if (storage instanceof KVStorage) {
+            KVStorage kvStorage = (KVStorage) storage;
+            storageInfo = format("KV-Storage: %", kvStorage.getRoot());
         } else {
             storageInfo = format("Storage: %", storage.getClass().getSimpleName());
         }
@@ -177,6 +182,10 @@ private Component formatStorage(Storage storage, StorageConfig storageConfig) {
             SQLConfig sqlConfig = (SQLConfig) storageConfig;
             storageInfo = storageInfo.append(Component.newline())
                     .append(format("URL: %", sqlConfig.getConnectionUrl()));
+        } else if (storageConfig instanceof KVConfig) {
+            KVConfig kvConfig = (KVConfig) storageConfig;
+            storageInfo = storageInfo.append(Component.newline())
+                    .append(format("Root: %", kvConfig.getRoot()));
         }
 
         return storageInfo;
@@ -62,6 +62,7 @@ public class BlueMapConfigManager implements BlueMapConfiguration {
 
     public static final String FILE_STORAGE_CONFIG_NAME = STORAGES_CONFIG_FOLDER_NAME + "/file";
     public static final String SQL_STORAGE_CONFIG_NAME = STORAGES_CONFIG_FOLDER_NAME + "/sql";
+    public static final String KV_STORAGE_CONFIG_NAME = STORAGES_CONFIG_FOLDER_NAME + "/kv";
 
     private final ConfigManager configManager;
 
@@ -316,6 +317,12 @@ private Map<String, StorageConfig> loadStorageConfigs(Path defaultWebroot) throw
                         .build();
                 Files.write(configManager.resolveConfigFile(SQL_STORAGE_CONFIG_NAME),
                         content.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+                content = configManager.loadConfigTemplate(KV_STORAGE_CONFIG_NAME)
+                        .setVariable("root", formatPath(defaultWebroot.resolveSibling("maps.kv")))
+                        .build();
+                Files.write(configManager.resolveConfigFile(KV_STORAGE_CONFIG_NAME),
+                        content.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
             } catch (IOException | NullPointerException ex) {
                 Logger.global.logWarning("Failed to create default storage-configuration-files: " + ex);
             }
@@ -43,6 +43,8 @@ public class CoreConfig {
 
     private boolean scanForModResources = true;
 
+    private int chunkCacheSize = 10240;
+
     private LogConfig log = new LogConfig();
 
     public boolean isAcceptDownload() {
@@ -70,6 +72,10 @@ public boolean isScanForModResources() {
         return scanForModResources;
     }
 
+    public int getChunkCacheSize() {
+        return chunkCacheSize;
+    }
+
     public LogConfig getLog() {
         return log;
     }
@@ -24,6 +24,8 @@
  */
 package de.bluecolored.bluemap.common.config;
 
+import de.bluecolored.bluemap.common.web.http.HttpServer;
+import de.bluecolored.bluemap.common.web.http.Server;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
 
 import java.net.InetAddress;
@@ -31,6 +33,7 @@
 import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"FieldMayBeFinal", "FieldCanBeLocal"})
 @ConfigSerializable
@@ -42,6 +45,12 @@ public class WebserverConfig {
     private String ip = "0.0.0.0";
     private int port = 8100;
 
+    private int handlerThreads = 0;
+    private int handlerQueueSize = 256;
+
+    private int ioThreads = 0;
+    private int idleTimeout = 30;
+
     private LogConfig log = new LogConfig();
 
     public boolean isEnabled() {
@@ -70,6 +79,25 @@ public int getPort() {
         return port;
     }
 
+    public int getHandlerThreads() {
+        return handlerThreads > 0 ? handlerThreads : HttpServer.defaultHandlerThreadCount();
+    }
+
+    public int getHandlerQueueSize() {
+        return handlerQueueSize;
+    }
+
+    public int getIoThreads() {
+        return ioThreads > 0 ? ioThreads : Server.defaultIoThreadCount();
+    }
+
+    /**
+     * The idle-timeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return TimeUnit.SECONDS.toMillis(idleTimeout);
+    }
+
     public LogConfig getLog() {
         return log;
     }
@@ -43,6 +43,7 @@ public class FileConfig extends StorageConfig {
     private Path root = Paths.get("bluemap", "web", "maps");
     private String compression = Compression.GZIP.getKey().getFormatted();
     private boolean atomic = true;
+    private boolean tileArchives = false;
 
     public Compression getCompression() throws ConfigurationException {
         return parseKey(Compression.REGISTRY, compression, "compression");
@@ -50,7 +51,7 @@ public Compression getCompression() throws ConfigurationException {
 
     @Override
     public FileStorage createStorage() throws ConfigurationException {
-        return new FileStorage(root, getCompression(), atomic);
+        return new FileStorage(root, getCompression(), atomic, tileArchives);
     }
 
 }
@@ -63,6 +63,9 @@ public class SQLConfig extends StorageConfig {
     private String driverClass = null;
     private int maxConnections = -1;
 
+    private int writeBatchSize = 100;
+    private long writeBatchDelay = 1000;
+
     private String compression = Compression.GZIP.getKey().getFormatted();
 
     @Getter(AccessLevel.NONE)
@@ -124,7 +127,7 @@ public SQLStorage createStorage() throws ConfigurationException {
             database = new Database(getConnectionUrl(), getConnectionProperties(), getMaxConnections());
         }
         CommandSet commandSet = getDialect().createCommandSet(database);
-        return new SQLStorage(commandSet, getCompression());
+        return new SQLStorage(commandSet, getCompression(), getWriteBatchSize(), getWriteBatchDelay());
     }
 
     private @Nullable Driver createDriver() throws ConfigurationException {
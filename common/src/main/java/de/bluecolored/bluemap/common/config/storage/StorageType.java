@@ -34,10 +34,12 @@ public interface StorageType extends Keyed {
 
     StorageType FILE = new Impl(Key.bluemap("file"), FileConfig.class);
     StorageType SQL = new Impl(Key.bluemap("sql"), SQLConfig.class);
+    StorageType KV = new Impl(Key.bluemap("kv"), KVConfig.class);
 
     Registry<StorageType> REGISTRY = new Registry<>(
             FILE,
-            SQL
+            SQL,
+            KV
     );
 
     Class<? extends StorageConfig> getConfigType();
@@ -0,0 +1,250 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.live;
+
+import com.google.gson.stream.JsonWriter;
+import de.bluecolored.bluemap.common.web.http.HttpEventStream;
+import de.bluecolored.bluemap.core.logger.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Computes the changes of the live player- and marker-data once per tick and broadcasts them
+ * to all subscribed {@link HttpEventStream}s.<br>
+ * Each event is encoded only once and then shared by all subscribers.
+ * The tick-timer only runs while there are subscribers.
+ * <p>
+ * Events:
+ * <ul>
+ *     <li><code>players</code>: <code>{"updated":[player...],"removed":[uuid...]}</code></li>
+ *     <li><code>markers</code>: <code>{"updated":{id:marker-set...},"removed":[id...]}</code></li>
+ * </ul>
+ * New subscribers first receive all current players and marker-sets as "updated".
+ */
+public class LiveDataBroadcaster {
+
+    private static final long TICK_INTERVAL = 1000;
+    private static final int MARKERS_TICK_INTERVAL = 10;
+    private static final int KEEP_ALIVE_TICK_INTERVAL = 15;
+
+    private final @Nullable LivePlayersDataSupplier playersDataSupplier;
+    private final @Nullable LiveMarkersDataSupplier markersDataSupplier;
+
+    private final Set<HttpEventStream> subscribers;
+    private final Queue<HttpEventStream> pendingSubscribers;
+
+    private Map<String, String> players;
+    private Map<String, String> markerSets;
+
+    private @Nullable Timer timer;
+    private long tick;
+
+    public LiveDataBroadcaster(
+            @Nullable LivePlayersDataSupplier playersDataSupplier,
+            @Nullable LiveMarkersDataSupplier markersDataSupplier
+    ) {
+        this.playersDataSupplier = playersDataSupplier;
+        this.markersDataSupplier = markersDataSupplier;
+
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.pendingSubscribers = new ConcurrentLinkedQueue<>();
+
+        this.players = Collections.emptyMap();
+        this.markerSets = Collections.emptyMap();
+    }
+
+    /**
+     * Subscribes the stream to this broadcaster.
+     * The stream receives the current state with the next tick and is unsubscribed once it gets closed.
+     */
+    public synchronized void subscribe(HttpEventStream stream) {
+        pendingSubscribers.add(stream);
+        stream.addCloseListener(() -> {
+            subscribers.remove(stream);
+            pendingSubscribers.remove(stream);
+        });
+
+        if (timer == null) {
+            tick = 0;
+            timer = new Timer("BlueMap-LiveDataBroadcaster-Timer", true);
+            timer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        tick();
+                    } catch (Exception ex) {
+                        Logger.global.logError("Failed to broadcast live-data!", ex);
+                    }
+                }
+            }, 0, TICK_INTERVAL);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size() + pendingSubscribers.size();
+    }
+
+    /**
+     * Closes all subscribed streams and stops the tick-timer
+     */
+    public synchronized void close() {
+        stop();
+
+        List<HttpEventStream> streams = new ArrayList<>(subscribers);
+        streams.addAll(pendingSubscribers);
+        for (HttpEventStream stream : streams) stream.close();
+    }
+
+    private synchronized void tick() {
+        if (subscribers.isEmpty() && pendingSubscribers.isEmpty()) {
+            stop();
+            return;
+        }
+
+        boolean updateMarkers = tick % MARKERS_TICK_INTERVAL == 0;
+        boolean keepAlive = tick % KEEP_ALIVE_TICK_INTERVAL == KEEP_ALIVE_TICK_INTERVAL - 1;
+        tick++;
+
+        // broadcast changes to existing subscribers
+        if (playersDataSupplier != null) {
+            Map<String, String> players = playersDataSupplier.getPlayers();
+            byte[] event = encodePlayersEvent(this.players, players, false);
+            this.players = players;
+            if (event != null) broadcast(event);
+        }
+
+        if (markersDataSupplier != null && updateMarkers) {
+            Map<String, String> markerSets = markersDataSupplier.getMarkerSets();
+            byte[] event = encodeMarkersEvent(this.markerSets, markerSets, false);
+            this.markerSets = markerSets;
+            if (event != null) broadcast(event);
+        }
+
+        if (keepAlive) {
+            for (HttpEventStream stream : subscribers) stream.sendKeepAlive();
+        }
+
+        // send the full current state to new subscribers
+        if (!pendingSubscribers.isEmpty()) {
+            byte[] playersEvent = playersDataSupplier != null ?
+                    encodePlayersEvent(Collections.emptyMap(), this.players, true) : null;
+            byte[] markersEvent = markersDataSupplier != null ?
+                    encodeMarkersEvent(Collections.emptyMap(), this.markerSets, true) : null;
+
+            HttpEventStream stream;
+            while ((stream = pendingSubscribers.poll()) != null) {
+                if (playersEvent != null) stream.send(playersEvent);
+                if (markersEvent != null) stream.send(markersEvent);
+                if (!stream.sendKeepAlive()) continue;
+                subscribers.add(stream);
+            }
+        }
+    }
+
+    private void broadcast(byte[] event) {
+        for (HttpEventStream stream : subscribers) stream.send(event);
+    }
+
+    private void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+
+        // reset the state, the next subscriber will start with a fresh state
+        players = Collections.emptyMap();
+        markerSets = Collections.emptyMap();
+    }
+
+    private static @Nullable byte[] encodePlayersEvent(Map<String, String> previous, Map<String, String> current, boolean always) {
+        try (StringWriter jsonString = new StringWriter();
+             JsonWriter json = new JsonWriter(jsonString)) {
+            boolean changed = false;
+
+            json.beginObject();
+            json.name("updated").beginArray();
+            for (Map.Entry<String, String> entry : current.entrySet()) {
+                if (entry.getValue().equals(previous.get(entry.getKey()))) continue;
+                json.jsonValue(entry.getValue());
+                changed = true;
+            }
+            json.endArray();
+            changed |= writeRemoved(json, previous, current);
+            json.endObject();
+
+            if (!changed && !always) return null;
+
+            json.flush();
+            return HttpEventStream.encode("players", jsonString.toString());
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to write live/stream players json!", ex);
+            return null;
+        }
+    }
+
+    private static @Nullable byte[] encodeMarkersEvent(Map<String, String> previous, Map<String, String> current, boolean always) {
+        try (StringWriter jsonString = new StringWriter();
+             JsonWriter json = new JsonWriter(jsonString)) {
+            boolean changed = false;
+
+            json.beginObject();
+            json.name("updated").beginObject();
+            for (Map.Entry<String, String> entry : current.entrySet()) {
+                if (entry.getValue().equals(previous.get(entry.getKey()))) continue;
+                json.name(entry.getKey()).jsonValue(entry.getValue());
+                changed = true;
+            }
+            json.endObject();
+            changed |= writeRemoved(json, previous, current);
+            json.endObject();
+
+            if (!changed && !always) return null;
+
+            json.flush();
+            return HttpEventStream.encode("markers", jsonString.toString());
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to write live/stream markers json!", ex);
+            return null;
+        }
+    }
+
+    private static boolean writeRemoved(JsonWriter json, Map<String, String> previous, Map<String, String> current) throws IOException {
+        boolean removed = false;
+        json.name("removed").beginArray();
+        for (String key : previous.keySet()) {
+            if (current.containsKey(key)) continue;
+            json.value(key);
+            removed = true;
+        }
+        json.endArray();
+        return removed;
+    }
+
+}
@@ -27,6 +27,7 @@
 import de.bluecolored.bluemap.api.gson.MarkerGson;
 import de.bluecolored.bluemap.api.markers.MarkerSet;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Supplier;
 
@@ -43,4 +44,15 @@ public String get() {
         return MarkerGson.INSTANCE.toJson(markerSets);
     }
 
+    /**
+     * Returns the json-data of each marker-set, mapped by the marker-set's id
+     */
+    public Map<String, String> getMarkerSets() {
+        Map<String, String> markerSetJsons = new LinkedHashMap<>();
+        for (Map.Entry<String, MarkerSet> entry : markerSets.entrySet()) {
+            markerSetJsons.put(entry.getKey(), MarkerGson.INSTANCE.toJson(entry.getValue()));
+        }
+        return markerSetJsons;
+    }
+
 }
@@ -35,6 +35,8 @@
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -68,37 +70,8 @@ public String get() {
 
             if (config.isLivePlayerMarkers()) {
                 for (Player player : this.server.getOnlinePlayers()) {
-                    boolean isCorrectWorld = player.getWorld().equals(serverWorld);
-
-                    if (config.isHideInvisible() && player.isInvisible()) continue;
-                    if (config.isHideVanished() && player.isVanished()) continue;
-                    if (config.isHideSneaking() && player.isSneaking()) continue;
-                    if (config.getHiddenGameModes().contains(player.getGamemode().getId())) continue;
-                    if (config.isHideDifferentWorld() && !isCorrectWorld) continue;
-                    if (
-                            player.getSkyLight() < config.getHideBelowSkyLight() &&
-                            player.getBlockLight() < config.getHideBelowBlockLight()
-                    ) continue;
-                    if (!this.playerFilter.test(player.getUuid())) continue;
-
-                    json.beginObject();
-                    json.name("uuid").value(player.getUuid().toString());
-                    json.name("name").value(player.getName().toPlainString());
-                    json.name("foreign").value(!isCorrectWorld);
-
-                    json.name("position").beginObject();
-                    json.name("x").value(player.getPosition().getX());
-                    json.name("y").value(player.getPosition().getY());
-                    json.name("z").value(player.getPosition().getZ());
-                    json.endObject();
-
-                    json.name("rotation").beginObject();
-                    json.name("pitch").value(player.getRotation().getX());
-                    json.name("yaw").value(player.getRotation().getY());
-                    json.name("roll").value(player.getRotation().getZ());
-                    json.endObject();
-
-                    json.endObject();
+                    if (!isVisible(player)) continue;
+                    writePlayer(json, player);
                 }
             }
 
@@ -113,4 +86,68 @@ public String get() {
         }
     }
 
+    /**
+     * Returns the json-data of each visible player, mapped by the player's uuid
+     */
+    public Map<String, String> getPlayers() {
+        if (serverWorld == null)
+            serverWorld = server.getServerWorld(world).orElse(null);
+
+        Map<String, String> players = new LinkedHashMap<>();
+        if (!config.isLivePlayerMarkers()) return players;
+
+        for (Player player : this.server.getOnlinePlayers()) {
+            if (!isVisible(player)) continue;
+
+            try (StringWriter jsonString = new StringWriter();
+                 JsonWriter json = new JsonWriter(jsonString)) {
+                writePlayer(json, player);
+                json.flush();
+                players.put(player.getUuid().toString(), jsonString.toString());
+            } catch (IOException ex) {
+                Logger.global.logError("Failed to write live player json!", ex);
+            }
+        }
+
+        return players;
+    }
+
+    private boolean isVisible(Player player) {
+        boolean isCorrectWorld = player.getWorld().equals(serverWorld);
+
+        if (config.isHideInvisible() && player.isInvisible()) return false;
+        if (config.isHideVanished() && player.isVanished()) return false;
+        if (config.isHideSneaking() && player.isSneaking()) return false;
+        if (config.getHiddenGameModes().contains(player.getGamemode().getId())) return false;
+        if (config.isHideDifferentWorld() && !isCorrectWorld) return false;
+        if (
+                player.getSkyLight() < config.getHideBelowSkyLight() &&
+                player.getBlockLight() < config.getHideBelowBlockLight()
+        ) return false;
+        return this.playerFilter.test(player.getUuid());
+    }
+
+    private void writePlayer(JsonWriter json, Player player) throws IOException {
+        boolean isCorrectWorld = player.getWorld().equals(serverWorld);
+
+        json.beginObject();
+        json.name("uuid").value(player.getUuid().toString());
+        json.name("name").value(player.getName().toPlainString());
+        json.name("foreign").value(!isCorrectWorld);
+
+        json.name("position").beginObject();
+        json.name("x").value(player.getPosition().getX());
+        json.name("y").value(player.getPosition().getY());
+        json.name("z").value(player.getPosition().getZ());
+        json.endObject();
+
+        json.name("rotation").beginObject();
+        json.name("pitch").value(player.getRotation().getX());
+        json.name("yaw").value(player.getRotation().getY());
+        json.name("roll").value(player.getRotation().getZ());
+        json.endObject();
+
+        json.endObject();
+    }
+
 }
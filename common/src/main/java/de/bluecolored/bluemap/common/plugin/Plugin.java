@@ -72,9 +72,9 @@
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import de.bluecolored.bluemap.common.util.FileUtil;
@@ -100,6 +100,7 @@ public class Plugin implements ServerEventListener {
 
     private HttpServer webServer;
     private RoutingRequestHandler webRequestHandler;
+    private ScheduledExecutorService liveDataRefreshExecutor;
     private Logger webLogger;
 
     private Timer daemonTimer;
@@ -198,9 +199,10 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
                     FileHelper.createDirectories(webroot);
 
                     this.webRequestHandler = new RoutingRequestHandler();
+                    this.liveDataRefreshExecutor = CachedRateLimitDataSupplier.createRefreshExecutor(2);
 
                     // default route
-                    webRequestHandler.register(".*", new FileRequestHandler(webroot));
+                    webRequestHandler.registerPrefix("", new FileRequestHandler(webroot));
 
                     // map route
                     for (Map.Entry<String, MapConfig> mapConfigEntry : configManager.getMapConfigs().entrySet()) {
@@ -215,15 +217,14 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
                                 public boolean test(UUID uuid) {
                                     return !pluginState.isPlayerHidden(uuid);
                                 }
-                            });
+                            }, liveDataRefreshExecutor);
                         } else {
                             Storage storage = blueMap.getOrLoadStorage(mapConfig.getStorage());
                             mapRequestHandler = new MapRequestHandler(storage.map(id));
                         }
 
-                        webRequestHandler.register(
-                                "maps/" + Pattern.quote(id) + "/(.*)",
-                                "$1",
+                        webRequestHandler.registerPrefix(
+                                "maps/" + id + "/",
                                 new BlueMapResponseModifier(mapRequestHandler)
                         );
                     }
@@ -240,11 +241,15 @@ public boolean test(UUID uuid) {
                     webLogger = Logger.combine(webLoggerList);
 
                     try {
-                        webServer = new HttpServer(new LoggingRequestHandler(
-                                webRequestHandler,
-                                webserverConfig.getLog().getFormat(),
-                                webLogger
-                        ));
+                        webServer = new HttpServer(
+                                new LoggingRequestHandler(
+                                        webRequestHandler,
+                                        webserverConfig.getLog().getFormat(),
+                                        webLogger
+                                ),
+                                webserverConfig.getHandlerThreads(), webserverConfig.getHandlerQueueSize(),
+                                webserverConfig.getIoThreads(), webserverConfig.getIdleTimeout()
+                        );
                         webServer.bind(new InetSocketAddress(
                                 webserverConfig.resolveIp(),
                                 webserverConfig.getPort()
@@ -457,6 +462,10 @@ public void unload(boolean keepWebserver) {
                     webServer = null;
                 }
 
+                // stop refreshing the live-data of the unloaded maps
+                if (liveDataRefreshExecutor != null) liveDataRefreshExecutor.shutdownNow();
+                liveDataRefreshExecutor = null;
+
                 if (webLogger != null && !keepWebserver) {
                     try {
                         webLogger.close();
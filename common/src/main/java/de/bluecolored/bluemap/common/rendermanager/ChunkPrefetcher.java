@@ -0,0 +1,306 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.world.World;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Loads chunks of regions on a small background thread-pool ahead of time,
+ * so they are already decoded and cached once the region is rendered.<br>
+ * The size of the chunk-data that is prefetched but not yet consumed is limited by a budget in bytes.
+ * Until a prefetch is done, it reserves the average size of the previous prefetches.
+ * If the budget is exhausted, a prefetch-request is simply dropped.<br>
+ * <br>
+ * A prefetch remembers which chunks it has (re-)loaded into the world's chunk-cache, so the consumer can tell which
+ * cached chunks are up-to-date, see {@link #consume(World, Vector2i)}.
+ */
+public class ChunkPrefetcher {
+
+    private static final long STALE_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long INITIAL_ESTIMATED_BYTES = 4L * 1024 * 1024; // roughly a fully generated region
+    private static final AtomicInteger ID = new AtomicInteger(0);
+
+    public static final ChunkPrefetcher DEFAULT = new ChunkPrefetcher(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4)),
+            Math.max(16L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 64)
+    );
+
+    private final ThreadPoolExecutor executor;
+    private final long byteBudget;
+    private final AtomicLong reservedBytes;
+    private final AtomicLong estimatedBytes;
+    private final Map<RegionKey, Prefetch> prefetches;
+
+    public ChunkPrefetcher(int threadCount, long byteBudget) {
+        int id = ID.getAndIncrement();
+        AtomicInteger nextThreadIndex = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(
+                threadCount, threadCount,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), // implicitly bounded by the budget
+                runnable -> {
+                    Thread thread = new Thread(runnable, "BlueMap-ChunkPrefetcher-" + id + "-" + nextThreadIndex.getAndIncrement());
+                    thread.setContextClassLoader(BlueMap.class.getClassLoader());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.byteBudget = byteBudget;
+        this.reservedBytes = new AtomicLong(0);
+        this.estimatedBytes = new AtomicLong(INITIAL_ESTIMATED_BYTES);
+        this.prefetches = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Requests chunks of the given region to be loaded in the background.<br>
+     * The chunk-filter is created on the background-thread right before the chunks are loaded,
+     * so it can do some (blocking) work to find the chunks that are actually needed.
+     * @return true if the region is going to be prefetched, false if it is already prefetched or if
+     * there is currently no budget left
+     */
+    public boolean prefetch(World world, Vector2i region, ChunkFilterSupplier chunkFilterSupplier) {
+        RegionKey key = new RegionKey(world, region);
+        if (prefetches.containsKey(key)) return false;
+
+        long estimate = estimatedBytes.get();
+        if (!reserve(estimate)) {
+            releaseStale();
+            if (!reserve(estimate)) return false;
+        }
+
+        Prefetch prefetch = new Prefetch(estimate);
+        if (prefetches.putIfAbsent(key, prefetch) != null) {
+            reservedBytes.addAndGet(-estimate);
+            return false;
+        }
+
+        try {
+            executor.execute(() -> load(key, prefetch, chunkFilterSupplier));
+        } catch (RejectedExecutionException ex) {
+            prefetches.remove(key, prefetch);
+            reservedBytes.addAndGet(-estimate);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the prefetched chunks of this region as consumed, so their budget can be used for other regions.<br>
+     * If the prefetch of this region is currently running, this waits until it is done.
+     * A prefetch that has not been started yet is cancelled.
+     * @return the result of the prefetch, or null if the region has not been prefetched completely and successfully
+     */
+    public @Nullable Result consume(World world, Vector2i region) {
+        Prefetch prefetch = prefetches.remove(new RegionKey(world, region));
+        if (prefetch == null) return null;
+
+        try {
+            return prefetch.consume(reservedBytes);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Cancels a prefetch of this region if it has not been started yet, and releases its budget.
+     */
+    public void cancel(World world, Vector2i region) {
+        Prefetch prefetch = prefetches.remove(new RegionKey(world, region));
+        if (prefetch != null) prefetch.markRemoved(reservedBytes);
+    }
+
+    private boolean reserve(long bytes) {
+        long reserved;
+        do {
+            reserved = reservedBytes.get();
+            // always allow one prefetch, even if it is bigger than the whole budget
+            if (reserved > 0 && reserved + bytes > byteBudget) return false;
+        } while (!reservedBytes.compareAndSet(reserved, reserved + bytes));
+        return true;
+    }
+
+    private void load(RegionKey key, Prefetch prefetch, ChunkFilterSupplier chunkFilterSupplier) {
+        long loadedBytes = 0;
+        Result result = null;
+        try {
+            long startTime = System.currentTimeMillis();
+            if (!prefetch.markStarted()) return;
+
+            Predicate<Vector2i> chunkFilter = chunkFilterSupplier.get();
+            if (chunkFilter == null) return;
+
+            // the world calls the filter right before (re-)loading a chunk into its cache
+            Set<Vector2i> reloadedChunks = new HashSet<>();
+            loadedBytes = key.world.preloadRegionChunks(key.region.getX(), key.region.getY(), chunk -> {
+                if (!chunkFilter.test(chunk)) return false;
+                reloadedChunks.add(chunk);
+                return true;
+            });
+            result = new Result(startTime, reloadedChunks);
+
+            // moving average of the loaded bytes, used as the reservation for the next prefetches
+            long loaded = loadedBytes;
+            estimatedBytes.updateAndGet(estimate -> (estimate * 3 + loaded) / 4);
+        } catch (Exception ex) {
+            Logger.global.logDebug("Failed to prefetch chunks of region " + key.region + ": " + ex);
+        } finally {
+            prefetch.markDone(loadedBytes, result, reservedBytes);
+        }
+    }
+
+    /**
+     * Releases the budget of completed prefetches that have not been consumed for some time,
+     * e.g. because their render-task got removed.
+     */
+    private void releaseStale() {
+        long staleTime = System.currentTimeMillis() - STALE_AFTER_MILLIS;
+        Iterator<Map.Entry<RegionKey, Prefetch>> iterator = prefetches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Prefetch prefetch = iterator.next().getValue();
+            if (prefetch.isDoneBefore(staleTime)) {
+                iterator.remove();
+                prefetch.markRemoved(reservedBytes);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkFilterSupplier {
+
+        /**
+         * Returns the filter for the chunks that should be prefetched, or null if nothing should be prefetched.
+         */
+        @Nullable Predicate<Vector2i> get() throws Exception;
+
+    }
+
+    /**
+     * The result of a completed and successful prefetch
+     */
+    @RequiredArgsConstructor
+    public static class Result {
+
+        /**
+         * The time in milliseconds when the prefetch has been started, chunks that have been modified after this time
+         * might be outdated in the cache even if they have been reloaded
+         */
+        @Getter private final long startTime;
+        private final Set<Vector2i> reloadedChunks;
+
+        /**
+         * Whether the given chunk has been reloaded into the cache by the prefetch.
+         * (A chunk that failed to load is not kept in the cache)
+         */
+        public boolean isReloaded(int chunkX, int chunkZ) {
+            return reloadedChunks.contains(new Vector2i(chunkX, chunkZ));
+        }
+
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static class RegionKey {
+        private final World world;
+        private final Vector2i region;
+    }
+
+    /**
+     * A prefetch reserves the estimated bytes until it is done, and then holds the actually loaded bytes.
+     * The budget of a prefetch is released once it has been removed AND is not loading anymore.
+     */
+    private static class Prefetch {
+        private long bytes;
+        private long doneTime = 0;
+        private boolean started = false, done = false, removed = false, released = false;
+        private @Nullable Result result;
+
+        Prefetch(long reservedBytes) {
+            this.bytes = reservedBytes;
+        }
+
+        synchronized boolean markStarted() {
+            if (removed) return false;
+            started = true;
+            return true;
+        }
+
+        synchronized void markDone(long loadedBytes, @Nullable Result result, AtomicLong reservedBytes) {
+            this.done = true;
+            this.doneTime = System.currentTimeMillis();
+            this.result = result;
+            reservedBytes.addAndGet(loadedBytes - bytes);
+            bytes = loadedBytes;
+            release(reservedBytes);
+            notifyAll();
+        }
+
+        synchronized void markRemoved(AtomicLong reservedBytes) {
+            removed = true;
+            release(reservedBytes);
+        }
+
+        /**
+         * Marks this prefetch as removed and waits for its result if it is running
+         */
+        synchronized @Nullable Result consume(AtomicLong reservedBytes) throws InterruptedException {
+            markRemoved(reservedBytes);
+            if (!started) return null;
+            while (!done) wait();
+            return result;
+        }
+
+        synchronized boolean isDoneBefore(long time) {
+            return done && doneTime < time;
+        }
+
+        private void release(AtomicLong reservedBytes) {
+            if (done && removed && !released) {
+                released = true;
+                reservedBytes.addAndGet(-bytes);
+            }
+        }
+    }
+
+}
@@ -30,35 +30,82 @@
 
     private final String description;
     private final List<T> tasks;
-    private int currentTaskIndex;
+    private final int[] activeWorkers;
+    private volatile int currentTaskIndex;
+    private int preparedTaskIndex;
 
     public CombinedRenderTask(String description, Collection<T> tasks) {
         this.description = description;
         this.tasks = Collections.unmodifiableList(new ArrayList<>(tasks));
+        this.activeWorkers = new int[this.tasks.size()];
 
         this.currentTaskIndex = 0;
+        this.preparedTaskIndex = 0;
     }
 
     @Override
     public void doWork() throws Exception {
         T task;
+        int taskIndex;
+        T nextTask = null;
 
         synchronized (this) {
-            if (!hasMoreWork()) return;
-            task = this.tasks.get(this.currentTaskIndex);
+            while (true) {
+                if (!hasMoreWork()) return;
 
-            if (!task.hasMoreWork()){
-                this.currentTaskIndex++;
-                return;
+                taskIndex = findWork();
+                if (taskIndex >= 0) break;
+
+                // the next task has to wait until the running ones are completed
+                this.wait(10000);
+            }
+
+            task = this.tasks.get(taskIndex);
+            this.activeWorkers[taskIndex]++;
+
+            // give the following task a chance to prepare while this one is worked on
+            if (taskIndex + 1 > this.preparedTaskIndex && taskIndex + 1 < this.tasks.size()) {
+                this.preparedTaskIndex = taskIndex + 1;
+                nextTask = this.tasks.get(taskIndex + 1);
             }
         }
 
-        task.doWork();
+        if (nextTask != null) nextTask.prepare();
+
+        try {
+            task.doWork();
+        } finally {
+            synchronized (this) {
+                this.activeWorkers[taskIndex]--;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first task that has more work and is allowed to start, or -1 if there is none.
+     * Tasks that are only finishing up on other threads are skipped if they {@link RenderTask#allowsOverlap() allow}
+     * the next task to start.
+     */
+    private int findWork() {
+        for (int i = this.currentTaskIndex; i < this.tasks.size(); i++) {
+            T task = this.tasks.get(i);
+            if (i > this.currentTaskIndex && !task.allowsOverlap()) return -1;
+            if (task.hasMoreWork()) return i;
+            if (!task.allowsOverlap()) return -1;
+        }
+        return -1;
     }
 
     @Override
     public synchronized boolean hasMoreWork() {
-        return this.currentTaskIndex < this.tasks.size();
+        // skip all tasks that are completed and not processed by any thread anymore
+        int index = this.currentTaskIndex;
+        while (index < this.tasks.size() && this.activeWorkers[index] <= 0 && !this.tasks.get(index).hasMoreWork())
+            index++;
+        this.currentTaskIndex = index;
+
+        return index < this.tasks.size();
     }
 
     @Override
@@ -26,56 +26,104 @@
 
 import de.bluecolored.bluemap.common.debug.DebugDump;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.MapStorage;
 import lombok.Getter;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MapPurgeTask implements MapRenderTask {
 
     @Getter private final BmMap map;
 
-    private volatile double progress;
-    private volatile boolean hasMoreWork;
-    private volatile boolean cancelled;
+    private List<MapStorage.DeletePart> parts;
+    private final AtomicInteger nextPart, finishedParts;
+
+    private volatile double finalProgress;
+    private volatile boolean initialized, completed, cancelled;
 
     public MapPurgeTask(BmMap map) {
         this.map = Objects.requireNonNull(map);
-        this.progress = 0d;
-        this.hasMoreWork = true;
+        this.nextPart = new AtomicInteger(0);
+        this.finishedParts = new AtomicInteger(0);
+        this.finalProgress = 0d;
+        this.initialized = false;
+        this.completed = false;
         this.cancelled = false;
     }
 
+    private synchronized void init() throws IOException {
+
+        // discard any pending lowres changes
+        this.map.getLowresTileManager().discard();
+
+        map.resetTextureGallery();
+        map.getMapTileState().reset();
+        map.getMapChunkState().reset();
+
+        this.parts = map.getStorage().deleteParts();
+
+    }
+
     @Override
     public void doWork() throws Exception {
-        synchronized (this) {
-            if (!this.hasMoreWork) return;
-            this.hasMoreWork = false;
+        if (cancelled || completed) return;
+
+        if (!initialized) {
+            synchronized (this) {
+                if (!initialized) {
+                    try {
+                        init();
+                    } catch (IOException ex) {
+                        completed = true;
+                        throw ex;
+                    }
+                    initialized = true;
+                }
+            }
         }
-        if (this.cancelled) return;
 
-        // discard any pending lowres changes
-        this.map.getLowresTileManager().discard();
+        if (cancelled || completed) return;
+
+        // hand out parts without locking, so multiple workers can delete parts of this map at the same time
+        int partCount = parts.size();
+        int partIndex = nextPart.getAndIncrement();
+        if (partIndex > partCount || (partIndex == partCount && partCount > 0)) return;
+
+        if (partIndex < partCount) {
+            try {
+                parts.get(partIndex).delete();
+            } catch (IOException ex) {
+                // whatever is left of this part is deleted again in the end
+                Logger.global.logError("Failed to delete a part of map '" + map.getId() + "'", ex);
+            }
+            if (finishedParts.incrementAndGet() < partCount || cancelled) return;
+        }
 
-        // purge the map
+        // the worker that finished the last part deletes whatever remains of the map
+        completed = true;
         map.getStorage().delete(progress -> {
-            this.progress = progress;
+            this.finalProgress = progress;
             return !this.cancelled;
         });
-
-        map.resetTextureGallery();
-        map.getMapTileState().reset();
-        map.getMapChunkState().reset();
     }
 
     @Override
+    @DebugDump
     public boolean hasMoreWork() {
-        return this.hasMoreWork && !this.cancelled;
+        if (completed || cancelled) return false;
+        if (!initialized) return true;
+        return nextPart.get() < Math.max(parts.size(), 1);
     }
 
     @Override
     @DebugDump
     public double estimateProgress() {
-        return this.progress;
+        if (!initialized) return 0;
+        return Math.min((finishedParts.get() + finalProgress) / (parts.size() + 1), 1);
     }
 
     @Override
@@ -24,22 +24,11 @@
  */
 package de.bluecolored.bluemap.common.rendermanager;
 
-import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.common.util.ListUtil;
+import de.bluecolored.bluemap.core.logger.Logger;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Predicate;
-import java.util.Comparator;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
@@ -53,12 +42,12 @@ public class RenderManager {
 
     private final AtomicInteger nextWorkerThreadIndex;
     private final Collection<WorkerThread> workerThreads;
-    private final AtomicInteger busyCount;
 
     private ProgressTracker progressTracker;
-    private volatile boolean newTask;
+    private RenderTask trackedTask;
 
     private final LinkedList<RenderTask> renderTasks;
+    private final Map<RenderTask, AtomicInteger> activeTasks;
     private final Map<RenderTask, Long> completedTasks;
 
     public RenderManager() {
@@ -68,12 +57,12 @@ public RenderManager() {
 
         this.nextWorkerThreadIndex = new AtomicInteger(0);
         this.workerThreads = Collections.synchronizedCollection(new ArrayList<>());
-        this.busyCount = new AtomicInteger(0);
 
         this.progressTracker = null;
-        this.newTask = true;
+        this.trackedTask = null;
 
         this.renderTasks = new LinkedList<>();
+        this.activeTasks = new IdentityHashMap<>();
         this.completedTasks = new LinkedHashMap<RenderTask, Long>(20, 0.75f, true) {
             @Override
             protected boolean removeEldestEntry(Map.Entry<RenderTask, Long> eldest) {
@@ -88,11 +77,13 @@ public void start(int threadCount) throws IllegalStateException {
         synchronized (this.workerThreads) {
             if (isRunning()) throw new IllegalStateException("RenderManager is already running!");
             this.workerThreads.clear();
-            this.busyCount.set(0);
+            synchronized (this.renderTasks) {
+                this.activeTasks.clear();
+                this.trackedTask = null;
+            }
 
             if (progressTracker != null) progressTracker.cancel();
             progressTracker = new ProgressTracker(5000, 12); // 5-sec steps over one minute
-            this.newTask = true;
 
             this.running = true;
 
@@ -325,41 +316,22 @@ private void doWork() throws Exception {
         RenderTask task;
 
         synchronized (this.renderTasks) {
-            while (this.renderTasks.isEmpty())
-                this.renderTasks.wait(10000);
+            completeFinishedTasks();
 
-            task = this.renderTasks.getFirst();
-            if (this.newTask) {
-                this.newTask = false;
-                this.progressTracker.resetAndStart(new java.util.function.Supplier<Double>() {
-                    @Override
-                    public Double get() {
-                        return task.estimateProgress();
-                    }
-                });
+            task = findWork();
+            if (task == null) {
+                // nothing to do until a task completes or a new one gets scheduled
+                this.renderTasks.wait(10000);
+                return;
             }
 
-            // the following is making sure every render-thread is done working on this task (no thread is "busy")
-            // before continuing working on the next RenderTask
-            if (!task.hasMoreWork()) {
-                if (busyCount.get() <= 0) {
-                    this.completedTasks.put(
-                            ListUtil.removeFirst(this.renderTasks),
-                            System.currentTimeMillis()
-                    );
-                    this.renderTasks.notifyAll();
-
-                    this.newTask = true;
-
-                    busyCount.set(0);
-                } else {
-                    this.renderTasks.wait(10000);
-                }
-
-                return;
+            RenderTask currentTask = this.renderTasks.getFirst();
+            if (this.trackedTask != currentTask) {
+                this.trackedTask = currentTask;
+                this.progressTracker.resetAndStart(currentTask::estimateProgress);
             }
 
-            this.busyCount.incrementAndGet();
+            this.activeTasks.computeIfAbsent(task, t -> new AtomicInteger()).incrementAndGet();
             this.lastTimeBusy = System.currentTimeMillis();
         }
 
@@ -367,13 +339,55 @@ public Double get() {
             task.doWork();
         } finally {
             synchronized (renderTasks) {
-                int busyCount = this.busyCount.decrementAndGet();
-                if (busyCount > 0) this.lastTimeBusy = System.currentTimeMillis();
+                AtomicInteger active = this.activeTasks.get(task);
+                if (active != null && active.decrementAndGet() <= 0)
+                    this.activeTasks.remove(task);
+
+                completeFinishedTasks();
+                if (!this.activeTasks.isEmpty()) this.lastTimeBusy = System.currentTimeMillis();
                 this.renderTasks.notifyAll();
             }
         }
     }
 
+    /**
+     * Finds the first task that has more work, if it is allowed to start.<br>
+     * Tasks that have no more work but are still processed by other threads are skipped,
+     * as long as they and the following task {@link RenderTask#allowsOverlap() allow overlapping}.
+     */
+    private @Nullable RenderTask findWork() {
+        boolean first = true;
+        for (RenderTask task : this.renderTasks) {
+            if (!first && !task.allowsOverlap()) return null;
+            if (task.hasMoreWork()) return task;
+            if (!task.allowsOverlap()) return null;
+            first = false;
+        }
+        return null;
+    }
+
+    /**
+     * Removes all tasks that have no more work and are not processed by any thread anymore.
+     */
+    private void completeFinishedTasks() {
+        boolean removed = false;
+        Iterator<RenderTask> iterator = this.renderTasks.iterator();
+        while (iterator.hasNext()) {
+            RenderTask task = iterator.next();
+            if (task.hasMoreWork() || this.activeTasks.containsKey(task)) {
+                // only the running tasks at the front of the queue can be finished
+                if (!task.allowsOverlap()) break;
+                continue;
+            }
+
+            iterator.remove();
+            this.completedTasks.put(task, System.currentTimeMillis());
+            removed = true;
+        }
+
+        if (removed) this.renderTasks.notifyAll();
+    }
+
     public class WorkerThread extends Thread {
 
         private final int id;
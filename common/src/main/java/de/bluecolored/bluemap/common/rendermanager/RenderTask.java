@@ -43,6 +43,21 @@ default double estimateProgress() {
         return 0d;
     }
 
+    /**
+     * Called some time before this task is going to be worked on, to give the task a chance to load data ahead of time.
+     * This should not block and might never be called.
+     */
+    default void prepare() {}
+
+    /**
+     * Whether the next scheduled task is allowed to start while this task is still finishing up {@link #doWork()}-calls
+     * on other threads.<br>
+     * Both tasks have to allow this, otherwise the next task waits until this task is fully completed.
+     */
+    default boolean allowsOverlap() {
+        return false;
+    }
+
     /**
      * Requests to cancel this task. The task then self-decides what to do with this request.
      */
@@ -42,6 +42,8 @@
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import static de.bluecolored.bluemap.core.map.renderstate.TileActionResolver.Action;
 import static de.bluecolored.bluemap.core.map.renderstate.TileActionResolver.Action.DELETE;
@@ -49,6 +51,13 @@
 
 public class WorldRegionRenderTask implements MapRenderTask {
 
+    // tiles on the border of a region are shared with the neighbouring regions, which might be processed at the same time
+    private static final Object[] BORDER_TILE_LOCKS = new Object[64];
+    static {
+        for (int i = 0; i < BORDER_TILE_LOCKS.length; i++)
+            BORDER_TILE_LOCKS[i] = new Object();
+    }
+
     @Getter private final BmMap map;
     @Getter private final Vector2i regionPos;
     @Getter private final TileUpdateStrategy force;
@@ -60,9 +69,8 @@ public class WorldRegionRenderTask implements MapRenderTask {
     private int[] chunkHashes;
     private ActionAndNextState[] tileActions;
 
-    private volatile int nextTileX, nextTileZ;
-    private volatile int atWork;
-    private volatile boolean completed, cancelled;
+    private final AtomicInteger nextTile, finishedTiles;
+    private volatile boolean initialized, completed, cancelled;
 
     public WorldRegionRenderTask(BmMap map, Vector2i regionPos) {
         this(map, regionPos, false);
@@ -77,17 +85,17 @@ public WorldRegionRenderTask(BmMap map, Vector2i regionPos, TileUpdateStrategy f
         this.regionPos = regionPos;
         this.force = force;
 
-        this.nextTileX = 0;
-        this.nextTileZ = 0;
+        this.nextTile = new AtomicInteger(0);
+        this.finishedTiles = new AtomicInteger(0);
 
-        this.atWork = 0;
+        this.initialized = false;
         this.completed = false;
         this.cancelled = false;
     }
 
-    private synchronized void init() {
+    private synchronized void initBounds() {
+        if (tileSize != null) return;
 
-        // calculate bounds
         this.regionGrid = map.getWorld().getRegionGrid();
         this.chunkGrid = map.getWorld().getChunkGrid();
         this.tileGrid = map.getHiresModelManager().getTileGrid();
@@ -97,22 +105,26 @@ private synchronized void init() {
         this.tileMin = regionGrid.getCellMin(regionPos, tileGrid);
         this.tileMax = regionGrid.getCellMax(regionPos, tileGrid);
         this.tileSize = tileMax.sub(tileMin).add(1, 1);
+    }
+
+    private synchronized void init() {
+        initBounds();
+
+        // chunks that the prefetch of this region reloaded are up-to-date in the cache,
+        // unless they have been saved again after the prefetch started
+        ChunkPrefetcher.Result prefetched = ChunkPrefetcher.DEFAULT.consume(map.getWorld(), regionPos);
+        long prefetchStartSeconds = prefetched != null ? prefetched.getStartTime() / 1000 : -1;
 
         // load chunk-hash array
-        int chunkMaxCount = chunksSize.getX() * chunksSize.getY();
         try {
-            chunkHashes = new int[chunkMaxCount];
-            map.getWorld().getRegion(regionPos.getX(), regionPos.getY())
-                    .iterateAllChunks( (ChunkConsumer.ListOnly<Chunk>) (x, z, timestamp) -> {
-                        chunkHashes[chunkIndex(
-                                x - chunkMin.getX(),
-                                z - chunkMin.getY()
-                        )] = timestamp;
-                        map.getWorld().invalidateChunkCache(x, z);
-                    });
+            chunkHashes = loadChunkHashes((x, z, timestamp) -> {
+                if (prefetched == null || timestamp >= prefetchStartSeconds || !prefetched.isReloaded(x, z))
+                    map.getWorld().invalidateChunkCache(x, z);
+            });
         } catch (IOException ex) {
             Logger.global.logError("Failed to load chunks for region " + regionPos, ex);
             cancel();
+            return;
         }
 
         // check tile actions
@@ -123,13 +135,9 @@ private synchronized void init() {
         for (int x = 0; x < tileSize.getX(); x++) {
             for (int z = 0; z < tileSize.getY(); z++) {
                 Vector2i tile = new Vector2i(tileMin.getX() + x, tileMin.getY() + z);
-                TileState tileState = map.getMapTileState().get(tile.getX(), tile.getY()).getState();
 
                 int tileIndex = tileIndex(x, z);
-                tileActions[tileIndex] = tileState.findActionAndNextState(
-                        force.test(tileState) || checkChunksHaveChanges(tile),
-                        checkTileBounds(tile)
-                );
+                tileActions[tileIndex] = findTileAction(tile, chunkHashes);
 
                 if (tileActions[tileIndex].getAction() == RENDER)
                     tileRenderCount++;
@@ -138,9 +146,6 @@ private synchronized void init() {
             }
         }
 
-        if (tileRenderCount >= tileMaxCount * 0.75)
-            map.getWorld().preloadRegionChunks(regionPos.getX(), regionPos.getY());
-
         if (tileRenderCount + tileDeleteCount == 0)
             completed = true;
 
@@ -150,45 +155,45 @@ private synchronized void init() {
     public void doWork() {
         if (cancelled || completed) return;
 
-        int tileX, tileZ;
-
-        synchronized (this) {
-            if (cancelled || completed) return;
+        if (!initialized) {
+            synchronized (this) {
+                if (!initialized) {
+                    init();
+                    initialized = true;
+                }
+            }
+        }
 
-            tileX = nextTileX;
-            tileZ = nextTileZ;
+        if (cancelled || completed) return;
 
-            if (tileX == 0 && tileZ == 0) {
-                init();
-                if (cancelled || completed) return;
-            }
+        // hand out tiles without locking, so multiple workers can render tiles of this region at the same time
+        int tileCount = tileSize.getX() * tileSize.getY();
+        int tileIndex = nextTile.getAndIncrement();
+        if (tileIndex >= tileCount) return;
+        if (tileIndex == tileCount - 1) completed = true;
 
-            nextTileX = tileX + 1;
-            if (nextTileX >= tileSize.getX()) {
-                nextTileZ = tileZ + 1;
-                nextTileX = 0;
-            }
-            if (nextTileZ >= tileSize.getY()) {
-                completed = true;
-            }
+        processTile(tileIndex % tileSize.getX(), tileIndex / tileSize.getX());
 
-            this.atWork++;
+        if (finishedTiles.incrementAndGet() == tileCount && !cancelled) {
+            complete();
         }
+    }
 
-        processTile(tileX, tileZ);
+    private void processTile(int x, int z) {
+        Vector2i tile = new Vector2i(tileMin.getX() + x, tileMin.getY() + z);
 
-        synchronized (this) {
-            this.atWork--;
+        if (!isBorderTile(tile)) {
+            processTile(tile, tileActions[tileIndex(x, z)]);
+            return;
+        }
 
-            if (atWork <= 0 && completed && !cancelled) {
-                complete();
-            }
+        synchronized (borderTileLock(tile)) {
+            // the neighbouring region might have processed this tile since this task has been initialized
+            processTile(tile, findTileAction(tile, chunkHashes));
         }
     }
 
-    private void processTile(int x, int z) {
-        Vector2i tile = new Vector2i(tileMin.getX() + x, tileMin.getY() + z);
-        ActionAndNextState action = tileActions[tileIndex(x, z)];
+    private void processTile(Vector2i tile, ActionAndNextState action) {
         TileState resultState = TileState.RENDER_ERROR;
 
         try {
@@ -240,20 +245,68 @@ private synchronized void complete() {
 
     @Override
     @DebugDump
-    public synchronized boolean hasMoreWork() {
+    public boolean hasMoreWork() {
         return !completed && !cancelled;
     }
 
     @Override
     @DebugDump
     public double estimateProgress() {
-        if (tileSize == null) return 0;
-        return Math.min((double) (nextTileZ * tileSize.getX() + nextTileX) / (tileSize.getX() * tileSize.getY()), 1);
+        if (!initialized) return 0;
+        return Math.min((double) finishedTiles.get() / (tileSize.getX() * tileSize.getY()), 1);
+    }
+
+    @Override
+    public boolean allowsOverlap() {
+        // tiles shared with other regions are processed exclusively, all other tiles can be rendered independently
+        return true;
+    }
+
+    @Override
+    public void prepare() {
+        if (initialized || cancelled) return;
+        ChunkPrefetcher.DEFAULT.prefetch(map.getWorld(), regionPos, this::findChunksToPrefetch);
+    }
+
+    /**
+     * Finds the chunks of this region that are needed to render the tiles which currently need to be rendered.
+     * This is called on a prefetch-thread and does not initialize this task.
+     */
+    private @Nullable Predicate<Vector2i> findChunksToPrefetch() throws IOException {
+        if (initialized || cancelled) return null;
+        initBounds();
+
+        int[] chunkHashes = loadChunkHashes((x, z, timestamp) -> {});
+        boolean[] neededChunks = new boolean[chunkHashes.length];
+        boolean anyNeeded = false;
+
+        for (int x = 0; x < tileSize.getX(); x++) {
+            for (int z = 0; z < tileSize.getY(); z++) {
+                Vector2i tile = new Vector2i(tileMin.getX() + x, tileMin.getY() + z);
+                if (findTileAction(tile, chunkHashes).getAction() != RENDER) continue;
+
+                int     minX = Math.max(tileGrid.getCellMinX(tile.getX(), chunkGrid), chunkMin.getX()),
+                        maxX = Math.min(tileGrid.getCellMaxX(tile.getX(), chunkGrid), chunkMax.getX()),
+                        minZ = Math.max(tileGrid.getCellMinY(tile.getY(), chunkGrid), chunkMin.getY()),
+                        maxZ = Math.min(tileGrid.getCellMaxY(tile.getY(), chunkGrid), chunkMax.getY());
+
+                for (int chunkX = minX; chunkX <= maxX; chunkX++) {
+                    for (int chunkZ = minZ; chunkZ <= maxZ; chunkZ++) {
+                        neededChunks[chunkIndex(chunkX - chunkMin.getX(), chunkZ - chunkMin.getY())] = true;
+                        anyNeeded = true;
+                    }
+                }
+            }
+        }
+
+        if (!anyNeeded) return null;
+        return chunk -> neededChunks[chunkIndex(chunk.getX() - chunkMin.getX(), chunk.getY() - chunkMin.getY())];
     }
 
     @Override
     public void cancel() {
         this.cancelled = true;
+        ChunkPrefetcher.DEFAULT.cancel(map.getWorld(), regionPos);
     }
 
     @Override
@@ -282,7 +335,45 @@ private int tileIndex(int x, int z) {
         return z * tileSize.getX() + x;
     }
 
-    private boolean checkChunksHaveChanges(Vector2i tile) {
+    private int[] loadChunkHashes(ChunkConsumer.ListOnly<Chunk> chunkConsumer) throws IOException {
+        int[] chunkHashes = new int[chunksSize.getX() * chunksSize.getY()];
+        map.getWorld().getRegion(regionPos.getX(), regionPos.getY())
+                .iterateAllChunks( (ChunkConsumer.ListOnly<Chunk>) (x, z, timestamp) -> {
+                    chunkHashes[chunkIndex(
+                            x - chunkMin.getX(),
+                            z - chunkMin.getY()
+                    )] = timestamp;
+                    chunkConsumer.accept(x, z, timestamp);
+                });
+        return chunkHashes;
+    }
+
+    private ActionAndNextState findTileAction(Vector2i tile, int[] chunkHashes) {
+        TileState tileState = map.getMapTileState().get(tile.getX(), tile.getY()).getState();
+        return tileState.findActionAndNextState(
+                force.test(tileState) || checkChunksHaveChanges(tile, chunkHashes),
+                checkTileBounds(tile)
+        );
+    }
+
+    /**
+     * Whether the given tile also covers chunks outside of this region.
+     */
+    private boolean isBorderTile(Vector2i tile) {
+        return
+                tileGrid.getCellMinX(tile.getX(), chunkGrid) < chunkMin.getX() ||
+                tileGrid.getCellMaxX(tile.getX(), chunkGrid) > chunkMax.getX() ||
+                tileGrid.getCellMinY(tile.getY(), chunkGrid) < chunkMin.getY() ||
+                tileGrid.getCellMaxY(tile.getY(), chunkGrid) > chunkMax.getY();
+    }
+
+    private Object borderTileLock(Vector2i tile) {
+        int hash = 31 * (31 * map.getId().hashCode() + tile.getX()) + tile.getY();
+        hash ^= hash >>> 16;
+        return BORDER_TILE_LOCKS[hash & (BORDER_TILE_LOCKS.length - 1)];
+    }
+
+    private boolean checkChunksHaveChanges(Vector2i tile, int[] chunkHashes) {
         int     minX = tileGrid.getCellMinX(tile.getX(), chunkGrid),
                 maxX = tileGrid.getCellMaxX(tile.getX(), chunkGrid),
                 minZ = tileGrid.getCellMinY(tile.getY(), chunkGrid),
@@ -24,40 +24,157 @@
  */
 package de.bluecolored.bluemap.common.web;
 
-import java.util.concurrent.locks.ReentrantLock;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import lombok.Value;
+import lombok.With;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Caches the data of a {@link Supplier} and refreshes it in the background in a fixed interval.<br>
+ * The data is kept pre-encoded (raw and gzip-compressed, with a fingerprint for ETags), so requests can be served
+ * without generating or serializing anything on the request-thread.
+ * <p>
+ * The background refresh only runs while the data is being requested,
+ * it stops if the data has not been requested for {@link #IDLE_REFRESH_COUNT} refreshes.
+ * Refreshes run on the given executor, which is owned (and shut down) by whoever creates the supplier.
+ * Once the executor is shut down, the last data is still served but not refreshed anymore.
+ */
 public class CachedRateLimitDataSupplier implements Supplier<String> {
 
-    private final ReentrantLock lock = new ReentrantLock();
+    private static final int IDLE_REFRESH_COUNT = 60;
+    private static final XXHash64 XXHASH = XXHashFactory.fastestInstance().hash64();
+
+    private static final AtomicInteger EXECUTOR_ID = new AtomicInteger(0);
 
     private final Supplier<String> delegate;
     private final long rateLimitMillis;
+    private final ScheduledExecutorService refreshExecutor;
 
-    private long updateTime = -1;
-    private String data = null;
+    private volatile @Nullable Data data = null;
+    private volatile boolean requested = false;
 
-    public CachedRateLimitDataSupplier(Supplier<String> delegate, long rateLimitMillis) {
+    private volatile @Nullable ScheduledFuture<?> refreshTask = null;
+    private volatile boolean refreshRejected = false;
+    private int idleRefreshes = 0;
+
+    public CachedRateLimitDataSupplier(Supplier<String> delegate, long rateLimitMillis, ScheduledExecutorService refreshExecutor) {
         this.delegate = delegate;
         this.rateLimitMillis = rateLimitMillis;
+        this.refreshExecutor = refreshExecutor;
     }
 
     @Override
     public String get() {
-        update();
+        return getData().getString();
+    }
+
+    /**
+     * Returns the currently cached data.<br>
+     * Only if there has never been any data yet, the data is generated on the calling thread.
+     */
+    public Data getData() {
+        requested = true;
+
+        Data data = this.data;
+        if (data == null) {
+            synchronized (this) {
+                data = this.data;
+                if (data == null) {
+                    data = Data.of(delegate.get());
+                    this.data = data;
+                }
+            }
+        }
+
+        // refresh immediately if the data might be outdated from a previous (stopped) refresh
+        if (refreshTask == null && !refreshRejected) startRefreshing(data.getTime() + rateLimitMillis - System.currentTimeMillis());
         return data;
     }
 
-    protected void update() {
-        if (lock.tryLock()) {
-            try {
-                long now = System.currentTimeMillis();
-                if (data != null && now < updateTime + this.rateLimitMillis) return;
-                this.data = delegate.get();
-                this.updateTime = now;
-            } finally {
-                lock.unlock();
+    private synchronized void startRefreshing(long delay) {
+        if (refreshTask != null || refreshRejected) return;
+
+        idleRefreshes = 0;
+        try {
+            refreshTask = refreshExecutor.scheduleAtFixedRate(() -> {
+                try {
+                    refresh();
+                } catch (Throwable t) { // an uncaught throwable would silently stop all future refreshes
+                    Logger.global.logError("Failed to refresh cached data!", t);
+                }
+            }, Math.max(delay, 0), rateLimitMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            refreshRejected = true; // executor has been shut down
+        }
+    }
+
+    private synchronized void refresh() {
+        if (requested) {
+            requested = false;
+            idleRefreshes = 0;
+        } else if (++idleRefreshes >= IDLE_REFRESH_COUNT) {
+            if (refreshTask != null) refreshTask.cancel(false);
+            refreshTask = null;
+            return;
+        }
+
+        String string = delegate.get();
+        Data data = this.data;
+        if (data != null && data.getString().equals(string)) {
+            this.data = data.withTime(System.currentTimeMillis());
+            return;
+        }
+        this.data = Data.of(string);
+    }
+
+    /**
+     * Creates an executor with daemon-threads that can be used to refresh the cached data.
+     * Each supplier only ever runs one refresh at a time, so a slow supplier only occupies one of the threads.
+     */
+    public static ScheduledExecutorService createRefreshExecutor(int threadCount) {
+        int id = EXECUTOR_ID.getAndIncrement();
+        AtomicInteger nextThreadIndex = new AtomicInteger(0);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "BlueMap-CachedDataRefresh-" + id + "-" + nextThreadIndex.getAndIncrement());
+            thread.setContextClassLoader(BlueMap.class.getClassLoader());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Value
+    public static class Data {
+        String string;
+        byte[] bytes;
+        byte[] gzipBytes;
+        String fingerprint;
+        @With long time;
+
+        private static Data of(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+            ByteArrayOutputStream gzipOut = new ByteArrayOutputStream(bytes.length / 4 + 32);
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipOut)) {
+                out.write(bytes);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex); // should never happen for in-memory streams
             }
+
+            String fingerprint = String.format("%016x", XXHASH.hash(bytes, 0, bytes.length, 0));
+            return new Data(string, bytes, gzipOut.toByteArray(), fingerprint, System.currentTimeMillis());
         }
     }
 
@@ -0,0 +1,85 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.common.web.http.HttpHeader;
+import de.bluecolored.bluemap.common.web.http.HttpRequest;
+import de.bluecolored.bluemap.common.web.http.HttpResponse;
+import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Utility methods for strong ETags in the form of <code>"{fingerprint}-{content-encoding}"</code>.<br>
+ * All content-encodings of the same fingerprint represent the same data,
+ * so a client that has any of them doesn't need the data again.
+ */
+@UtilityClass
+class ETags {
+
+    private static final String IDENTITY_ENCODING = "identity";
+
+    /**
+     * Adds the ETag to the response, using the content-encoding the response currently has.
+     */
+    public static void addETag(HttpResponse response, @Nullable String fingerprint) {
+        if (fingerprint == null) return;
+
+        HttpHeader contentEncoding = response.getHeader("Content-Encoding");
+        String encoding = contentEncoding != null ? contentEncoding.getValue() : IDENTITY_ENCODING;
+        response.addHeader("ETag", "\"" + fingerprint + "-" + encoding + "\"");
+        response.addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * Searches the If-None-Match header of the request for an ETag with the given fingerprint.
+     *
+     * @return the matching ETag, or null if there is none
+     */
+    public static @Nullable String findMatchingETag(HttpRequest request, String fingerprint) {
+        HttpHeader ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) return null;
+
+        String prefix = "\"" + fingerprint + "-";
+        for (String eTag : ifNoneMatch.getValues()) {
+            if (eTag.equals("*")) return prefix + IDENTITY_ENCODING + "\"";
+            if (eTag.startsWith("W/")) eTag = eTag.substring(2);
+            if (eTag.startsWith(prefix) && eTag.endsWith("\"")) return eTag;
+        }
+
+        return null;
+    }
+
+    /**
+     * Turns the response into a 304 (Not Modified) response for the matching ETag.
+     */
+    public static HttpResponse notModified(HttpResponse response, String eTag) {
+        response.setStatusCode(HttpStatusCode.NOT_MODIFIED);
+        response.addHeader("ETag", eTag);
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+}
@@ -32,9 +32,12 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
@@ -151,9 +154,9 @@ private HttpResponse generateResponse(HttpRequest request) throws IOException {
 
         //send response
         try {
-            response.setData(Files.newInputStream(filePath));
+            response.setData(FileChannel.open(filePath, StandardOpenOption.READ));
             return response;
-        } catch (FileNotFoundException e) {
+        } catch (FileNotFoundException | NoSuchFileException e) {
             return new HttpResponse(HttpStatusCode.NOT_FOUND);
         }
     }
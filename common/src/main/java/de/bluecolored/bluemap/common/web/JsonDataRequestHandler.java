@@ -24,10 +24,8 @@
  */
 package de.bluecolored.bluemap.common.web;
 
-import de.bluecolored.bluemap.common.web.http.HttpRequest;
-import de.bluecolored.bluemap.common.web.http.HttpRequestHandler;
-import de.bluecolored.bluemap.common.web.http.HttpResponse;
-import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
+import de.bluecolored.bluemap.common.web.http.*;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -48,8 +46,34 @@ public HttpResponse handle(HttpRequest request) {
         HttpResponse response = new HttpResponse(HttpStatusCode.OK);
         response.addHeader("Cache-Control", "no-cache");
         response.addHeader("Content-Type", "application/json");
+
+        if (dataSupplier instanceof CachedRateLimitDataSupplier) {
+            CachedRateLimitDataSupplier.Data data = ((CachedRateLimitDataSupplier) dataSupplier).getData();
+            writeToResponse(data, request, response);
+            return response;
+        }
+
         response.setData(dataSupplier.get());
         return response;
     }
 
+    /**
+     * Serves the pre-encoded data, gzip-compressed if the client accepts it, or a 304 if the client has it already.
+     */
+    private void writeToResponse(CachedRateLimitDataSupplier.Data data, HttpRequest request, HttpResponse response) {
+        String eTag = ETags.findMatchingETag(request, data.getFingerprint());
+        if (eTag != null) {
+            ETags.notModified(response, eTag);
+            return;
+        }
+
+        if (request.hasHeaderValue("Accept-Encoding", Compression.GZIP.getId())) {
+            response.addHeader("Content-Encoding", Compression.GZIP.getId());
+            response.setData(data.getGzipBytes());
+        } else {
+            response.setData(data.getBytes());
+        }
+        ETags.addETag(response, data.getFingerprint());
+    }
+
 }
@@ -0,0 +1,62 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.common.live.LiveDataBroadcaster;
+import de.bluecolored.bluemap.common.web.http.*;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * Opens a <code>text/event-stream</code> (Server-Sent Events) response for each request
+ * and subscribes it to a {@link LiveDataBroadcaster}.
+ */
+@Getter @Setter
+public class LiveStreamRequestHandler implements HttpRequestHandler {
+
+    private static final int MAX_QUEUED_EVENTS = 64;
+
+    private @NonNull LiveDataBroadcaster broadcaster;
+
+    public LiveStreamRequestHandler(LiveDataBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        HttpEventStream stream = new HttpEventStream(MAX_QUEUED_EVENTS);
+
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Content-Type", "text/event-stream");
+        response.addHeader("X-Accel-Buffering", "no");
+        response.setData(stream);
+
+        broadcaster.subscribe(stream);
+        return response;
+    }
+
+}
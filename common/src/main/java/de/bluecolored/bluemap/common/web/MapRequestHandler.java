@@ -25,6 +25,7 @@
 package de.bluecolored.bluemap.common.web;
 
 import de.bluecolored.bluemap.common.config.PluginConfig;
+import de.bluecolored.bluemap.common.live.LiveDataBroadcaster;
 import de.bluecolored.bluemap.common.live.LiveMarkersDataSupplier;
 import de.bluecolored.bluemap.common.live.LivePlayersDataSupplier;
 import de.bluecolored.bluemap.common.serverinterface.Server;
@@ -34,37 +35,51 @@
 import de.bluecolored.bluemap.core.storage.Storage;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Predicate;
-import java.util.function.Supplier;
 
 public class MapRequestHandler extends RoutingRequestHandler {
 
-    public MapRequestHandler(BmMap map, Server serverInterface, PluginConfig pluginConfig, Predicate<UUID> playerFilter) {
+    public MapRequestHandler(BmMap map, Server serverInterface, PluginConfig pluginConfig, Predicate<UUID> playerFilter,
+                             ScheduledExecutorService liveDataRefreshExecutor) {
         this(map.getStorage(),
                 new LivePlayersDataSupplier(serverInterface, pluginConfig, map.getWorld(), playerFilter),
-                new LiveMarkersDataSupplier(map.getMarkerSets()));
+                new LiveMarkersDataSupplier(map.getMarkerSets()),
+                liveDataRefreshExecutor);
     }
 
     public MapRequestHandler(MapStorage mapStorage) {
-        this(mapStorage, null, null);
+        this(mapStorage, null, null, null);
     }
 
+    /**
+     * @param liveDataRefreshExecutor the executor refreshing the cached live-data,
+     *                                required if any live-data supplier is given
+     */
     public MapRequestHandler(MapStorage mapStorage,
-                             @Nullable Supplier<String> livePlayersDataSupplier,
-                             @Nullable Supplier<String> liveMarkerDataSupplier) {
+                             @Nullable LivePlayersDataSupplier livePlayersDataSupplier,
+                             @Nullable LiveMarkersDataSupplier liveMarkerDataSupplier,
+                             @Nullable ScheduledExecutorService liveDataRefreshExecutor) {
 
-        register(".*", new MapStorageRequestHandler(mapStorage));
+        registerPrefix("", new MapStorageRequestHandler(mapStorage));
 
         if (livePlayersDataSupplier != null) {
-            register("live/players\\.json", "", new JsonDataRequestHandler(
-                    new CachedRateLimitDataSupplier(livePlayersDataSupplier,1000)
+            registerExact("live/players.json", new JsonDataRequestHandler(
+                    new CachedRateLimitDataSupplier(livePlayersDataSupplier,1000, Objects.requireNonNull(liveDataRefreshExecutor))
             ));
         }
 
         if (liveMarkerDataSupplier != null) {
-            register("live/markers\\.json", "", new JsonDataRequestHandler(
-                    new CachedRateLimitDataSupplier(liveMarkerDataSupplier,10000)
+            registerExact("live/markers.json", new JsonDataRequestHandler(
+                    new CachedRateLimitDataSupplier(liveMarkerDataSupplier,10000, Objects.requireNonNull(liveDataRefreshExecutor))
+            ));
+        }
+
+        if (livePlayersDataSupplier != null || liveMarkerDataSupplier != null) {
+            registerExact("live/stream", new LiveStreamRequestHandler(
+                    new LiveDataBroadcaster(livePlayersDataSupplier, liveMarkerDataSupplier)
             ));
         }
     }
@@ -32,29 +32,36 @@
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.storage.GridStorage;
 import de.bluecolored.bluemap.core.storage.MapStorage;
+import de.bluecolored.bluemap.core.storage.VersionedGridStorage;
 import de.bluecolored.bluemap.core.storage.compression.CompressedInputStream;
 import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.storage.file.CompressedFileInputStream;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @RequiredArgsConstructor
 @Getter @Setter
 public class MapStorageRequestHandler implements HttpRequestHandler {
 
-    private static final Pattern TILE_PATTERN = Pattern.compile("tiles/([\\d/]+)/x(-?[\\d/]+)z(-?[\\d/]+).*");
+    private static final String TILES_PATH_PREFIX = "tiles/";
+
+    private static final XXHash64 XXHASH = XXHashFactory.fastestInstance().hash64();
 
     private @NonNull MapStorage mapStorage;
+    private @NonNull TileVariantCache tileVariantCache = TileVariantCache.DEFAULT;
 
     @SuppressWarnings("resource")
     @Override
@@ -68,15 +75,15 @@ public HttpResponse handle(HttpRequest request) {
         try {
 
             // provide map-tiles
-            Matcher tileMatcher = TILE_PATTERN.matcher(path);
-            if (tileMatcher.matches()) {
-                int lod = Integer.parseInt(tileMatcher.group(1));
-                int x = Integer.parseInt(tileMatcher.group(2).replace("/", ""));
-                int z = Integer.parseInt(tileMatcher.group(3).replace("/", ""));
+            TilePath tilePath = TilePath.parse(path);
+            if (tilePath != null) {
+                int lod = tilePath.lod;
+                int x = tilePath.x;
+                int z = tilePath.z;
 
                 GridStorage gridStorage = lod == 0 ? mapStorage.hiresTiles() : mapStorage.lowresTiles(lod);
-                CompressedInputStream in = gridStorage.read(x, z);
-                if (in == null) return new HttpResponse(HttpStatusCode.NO_CONTENT);
+                long version = gridStorage instanceof VersionedGridStorage ?
+                        ((VersionedGridStorage) gridStorage).getVersion(x, z) : -1;
 
                 HttpResponse response = new HttpResponse(HttpStatusCode.OK);
                 response.addHeader("Cache-Control", "public");
@@ -85,7 +92,53 @@ public HttpResponse handle(HttpRequest request) {
                 if (lod == 0) response.addHeader("Content-Type", "application/octet-stream");
                 else response.addHeader("Content-Type", "image/png");
 
-                writeToResponse(in, response, request);
+                // check if the client already has the current tile
+                String fingerprint = gridStorage.fingerprint(x, z);
+                if (fingerprint != null) {
+                    String eTag = ETags.findMatchingETag(request, fingerprint);
+                    if (eTag != null) return ETags.notModified(response, eTag);
+                }
+
+                // try to use an already re-encoded variant of this tile
+                Compression variantEncoding = acceptsGzipReencoding(response, request) ? Compression.GZIP : Compression.NONE;
+                if (version >= 0) {
+                    TileVariantCache.Variant variant = tileVariantCache.get(mapStorage, lod, x, z, version, variantEncoding);
+                    if (
+                            variant != null && !accepts(request, variant.getSource()) &&
+                            (fingerprint == null || fingerprint.equals(variant.getFingerprint()))
+                    ) {
+                        if (variant.getFingerprint() != null) {
+                            String eTag = ETags.findMatchingETag(request, variant.getFingerprint());
+                            if (eTag != null) return ETags.notModified(response, eTag);
+                        }
+
+                        writeToResponse(variant, response);
+                        ETags.addETag(response, variant.getFingerprint());
+                        return response;
+                    }
+                }
+
+                CompressedInputStream in = gridStorage.read(x, z);
+                if (in == null) return new HttpResponse(HttpStatusCode.NO_CONTENT);
+
+                // storage can't provide a fingerprint without reading the tile, so we compute it from the data
+                if (fingerprint == null) {
+                    byte[] data;
+                    try (InputStream compressedIn = in) {
+                        data = readAllBytes(compressedIn);
+                    }
+                    fingerprint = fingerprint(data);
+                    in = new CompressedInputStream(new ByteArrayInputStream(data), in.getCompression());
+
+                    String eTag = ETags.findMatchingETag(request, fingerprint);
+                    if (eTag != null) return ETags.notModified(response, eTag);
+                }
+
+                TileVariantCache.Variant variant = writeToResponse(in, response, request, fingerprint);
+                if (variant != null && version >= 0)
+                    tileVariantCache.put(mapStorage, lod, x, z, version, variant);
+
+                ETags.addETag(response, fingerprint);
                 return response;
             }
 
@@ -108,7 +161,7 @@ public HttpResponse handle(HttpRequest request) {
                 response.addHeader("Cache-Control", "public");
                 response.addHeader("Cache-Control", "max-age=" + String.valueOf(TimeUnit.DAYS.toSeconds(1)));
                 response.addHeader("Content-Type", ContentTypeRegistry.fromFileName(path));
-                writeToResponse(in, response, request);
+                writeToResponse(in, response, request, null);
                 return response;
             }
 
@@ -121,40 +174,164 @@ public HttpResponse handle(HttpRequest request) {
         return new HttpResponse(HttpStatusCode.NOT_FOUND);
     }
 
-    private void writeToResponse(CompressedInputStream data, HttpResponse response, HttpRequest request) throws IOException {
+    /**
+     * Writes the data to the response, re-encoding it if the client does not accept the compression it is stored with.
+     *
+     * @return the re-encoded variant of the data, or null if the data could be sent as it is
+     */
+    private @Nullable TileVariantCache.Variant writeToResponse(
+            CompressedInputStream data, HttpResponse response, HttpRequest request, @Nullable String fingerprint
+    ) throws IOException {
         Compression compression = data.getCompression();
-        if (
-                compression != Compression.NONE &&
-                request.hasHeaderValue("Accept-Encoding", compression.getId())
-        ) {
+        if (accepts(request, compression)) {
             response.addHeader("Content-Encoding", compression.getId());
-            response.setData(data);
-        } else if (
-                compression != Compression.GZIP &&
-                !response.hasHeaderValue("Content-Type", "image/png") &&
-                request.hasHeaderValue("Accept-Encoding", Compression.GZIP.getId())
-        ) {
-            response.addHeader("Content-Encoding", Compression.GZIP.getId());
+            setData(data, response);
+            return null;
+        }
+
+        TileVariantCache.Variant variant;
+        if (compression != Compression.GZIP && acceptsGzipReencoding(response, request)) {
             ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-            OutputStream os = null;
-            try {
-                os = Compression.GZIP.compress(byteOut);
-                
+            try (
+                    InputStream in = data.decompress();
+                    OutputStream os = Compression.GZIP.compress(byteOut)
+            ) {
                 // Manual copy of the stream instead of transferTo
                 byte[] buffer = new byte[8192];
                 int read;
-                while ((read = data.decompress().read(buffer, 0, buffer.length)) >= 0) {
+                while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
                     os.write(buffer, 0, read);
                 }
-            } finally {
-                if (os != null) os.close();
-                data.close();
             }
-            byte[] compressedData = byteOut.toByteArray();
-            response.setData(new ByteArrayInputStream(compressedData));
+            variant = new TileVariantCache.Variant(compression, Compression.GZIP, byteOut.toByteArray(), fingerprint);
+        } else if (compression == Compression.NONE) {
+            setData(data, response);
+            return null;
+        } else {
+            try (InputStream in = data.decompress()) {
+                variant = new TileVariantCache.Variant(compression, Compression.NONE, readAllBytes(in), fingerprint);
+            }
+        }
+
+        writeToResponse(variant, response);
+        return variant;
+    }
+
+    private void writeToResponse(TileVariantCache.Variant variant, HttpResponse response) {
+        if (variant.getEncoding() != Compression.NONE)
+            response.addHeader("Content-Encoding", variant.getEncoding().getId());
+        response.setData(variant.getData());
+    }
+
+    private static String fingerprint(byte[] data) {
+        return String.format("%016x", XXHASH.hash(data, 0, data.length, 0));
+    }
+
+    private boolean accepts(HttpRequest request, Compression compression) {
+        return compression != Compression.NONE && request.hasHeaderValue("Accept-Encoding", compression.getId());
+    }
+
+    private boolean acceptsGzipReencoding(HttpResponse response, HttpRequest request) {
+        return !response.hasHeaderValue("Content-Type", "image/png") &&
+                request.hasHeaderValue("Accept-Encoding", Compression.GZIP.getId());
+    }
+
+    private static byte[] readAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+            byteOut.write(buffer, 0, read);
+        }
+        return byteOut.toByteArray();
+    }
+
+    /**
+     * Sets the (not decompressed) data as response-data,
+     * file-data is sent with a known content-length directly from the file.
+     */
+    private void setData(CompressedInputStream data, HttpResponse response) throws IOException {
+        if (data instanceof CompressedFileInputStream) {
+            response.setData(((CompressedFileInputStream) data).getChannel());
         } else {
-            response.setData(data.decompress());
+            response.setData(data);
+        }
+    }
+
+    /**
+     * A parsed tile-path in the form of <code>tiles/{lod}/x{x}z{z}...</code>,
+     * where the digits of x and z can be separated by slashes (e.g. <code>tiles/0/x1/2/z-3/4.prbm</code>).
+     */
+    private static class TilePath {
+
+        private int lod, x, z;
+
+        /**
+         * Parses the tile-path without using regex, since this is done for almost every request
+         *
+         * @return the parsed TilePath, or null if the path is not a (valid) tile-path
+         */
+        private static @Nullable TilePath parse(String path) {
+            if (!path.startsWith(TILES_PATH_PREFIX)) return null;
+            int length = path.length();
+            int i = TILES_PATH_PREFIX.length();
+
+            // lod
+            long lod = 0;
+            int start = i;
+            char c;
+            while (i < length && (c = path.charAt(i)) >= '0' && c <= '9') {
+                lod = lod * 10 + (c - '0');
+                if (lod > Integer.MAX_VALUE) return null;
+                i++;
+            }
+            if (i == start) return null;
+            if (!path.startsWith("/x", i)) return null;
+            i += 2;
+
+            // x
+            long x = 0;
+            boolean negative = i < length && path.charAt(i) == '-';
+            if (negative) i++;
+            int digits = 0;
+            while (i < length && (c = path.charAt(i)) != 'z') {
+                if (c != '/') {
+                    if (c < '0' || c > '9') return null;
+                    x = x * 10 + (c - '0');
+                    if (x > (long) Integer.MAX_VALUE + 1) return null;
+                    digits++;
+                }
+                i++;
+            }
+            if (digits == 0 || i == length) return null;
+            if (negative) x = -x;
+            i++;
+
+            // z (followed by anything)
+            long z = 0;
+            negative = i < length && path.charAt(i) == '-';
+            if (negative) i++;
+            digits = 0;
+            while (i < length && (((c = path.charAt(i)) >= '0' && c <= '9') || c == '/')) {
+                if (c != '/') {
+                    z = z * 10 + (c - '0');
+                    if (z > (long) Integer.MAX_VALUE + 1) return null;
+                    digits++;
+                }
+                i++;
+            }
+            if (digits == 0) return null;
+            if (negative) z = -z;
+
+            if (x > Integer.MAX_VALUE || z > Integer.MAX_VALUE) return null;
+
+            TilePath tilePath = new TilePath();
+            tilePath.lod = (int) lod;
+            tilePath.x = (int) x;
+            tilePath.z = (int) z;
+            return tilePath;
         }
+
     }
 
 }
@@ -28,24 +28,38 @@
 import de.bluecolored.bluemap.common.web.http.HttpRequestHandler;
 import de.bluecolored.bluemap.common.web.http.HttpResponse;
 import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Routes requests to other handlers based on their path.<br>
+ * Routes can be registered with a regex-pattern, or with a path-prefix / exact path.
+ * Pattern-routes are tested first (the last registered route first), then the exact path-routes and the longest
+ * matching prefix-route. Path-routes are looked up in a prefix-trie, so they don't get slower with more routes.
+ */
 @Getter
 public class RoutingRequestHandler implements HttpRequestHandler {
 
     private final Deque<Route> routes;
 
+    @Getter(AccessLevel.NONE)
+    private final PathNode pathRoutes;
+
     public RoutingRequestHandler() {
         this.routes = new ConcurrentLinkedDeque<>();
+        this.pathRoutes = new PathNode();
     }
 
     public void register(@Language("RegExp") String pattern, HttpRequestHandler handler) {
@@ -64,6 +78,39 @@ public void register(Pattern pattern, String replacementRoute, HttpRequestHandle
         this.routes.addFirst(new Route(pattern, replacementRoute, handler));
     }
 
+    /**
+     * Registers a handler for all paths starting with the given prefix.
+     * The prefix is removed from the path before the request is passed to the handler.
+     *
+     * @param prefix the path-prefix, must be empty (matching all paths) or end with a <code>/</code>
+     */
+    public synchronized void registerPrefix(String prefix, HttpRequestHandler handler) {
+        if (!prefix.isEmpty() && !prefix.endsWith("/"))
+            throw new IllegalArgumentException("The prefix has to be empty or end with a '/'");
+
+        PathNode node = pathRoutes;
+        int start = 0, slash;
+        while ((slash = prefix.indexOf('/', start)) >= 0) {
+            node = node.children.computeIfAbsent(prefix.substring(start, slash), k -> new PathNode());
+            start = slash + 1;
+        }
+        node.prefixHandler = handler;
+    }
+
+    /**
+     * Registers a handler for exactly the given path.
+     * The path of the request is set to an empty string before it is passed to the handler.
+     */
+    public synchronized void registerExact(String path, HttpRequestHandler handler) {
+        PathNode node = pathRoutes;
+        int start = 0, slash;
+        while ((slash = path.indexOf('/', start)) >= 0) {
+            node = node.children.computeIfAbsent(path.substring(start, slash), k -> new PathNode());
+            start = slash + 1;
+        }
+        node.exactHandlers.put(path.substring(start), handler);
+    }
+
     @Override
     public HttpResponse handle(HttpRequest request) {
         String path = request.getPath();
@@ -80,9 +127,46 @@ public HttpResponse handle(HttpRequest request) {
             }
         }
 
+        // walk the path-trie, remembering the longest matching prefix
+        PathNode node = pathRoutes;
+        HttpRequestHandler handler = node.prefixHandler;
+        int handlerPathStart = 0;
+        int start = 0, slash;
+        while (true) {
+            slash = path.indexOf('/', start);
+            if (slash < 0) {
+                HttpRequestHandler exactHandler = node.exactHandlers.get(path.substring(start));
+                if (exactHandler != null) {
+                    request.setPath("");
+                    return exactHandler.handle(request);
+                }
+                break;
+            }
+
+            node = node.children.get(path.substring(start, slash));
+            if (node == null) break;
+
+            start = slash + 1;
+            if (node.prefixHandler != null) {
+                handler = node.prefixHandler;
+                handlerPathStart = start;
+            }
+        }
+
+        if (handler != null) {
+            request.setPath(path.substring(handlerPathStart));
+            return handler.handle(request);
+        }
+
         return new HttpResponse(HttpStatusCode.BAD_REQUEST);
     }
 
+    private static class PathNode {
+        private final Map<String, PathNode> children = new ConcurrentHashMap<>();
+        private final Map<String, HttpRequestHandler> exactHandlers = new ConcurrentHashMap<>();
+        private volatile @Nullable HttpRequestHandler prefixHandler;
+    }
+
     @AllArgsConstructor
     @Getter @Setter
     public static class Route {
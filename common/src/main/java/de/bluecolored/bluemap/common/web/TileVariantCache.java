@@ -0,0 +1,107 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.bluecolored.bluemap.core.storage.MapStorage;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import lombok.Value;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache holding tile-data that had to be re-encoded (decompressed and/or compressed with a different
+ * {@link Compression}) because the client did not accept the compression the tile is stored with.
+ * <p>
+ * Entries are keyed by the cell-version of the storage, so a tile that gets written or deleted is not served from
+ * the cache anymore. Since changes by other processes can not be tracked, entries also expire after a short time.
+ */
+public class TileVariantCache {
+
+    public static final TileVariantCache DEFAULT = new TileVariantCache(64L * 1024 * 1024);
+
+    private final Cache<VariantKey, Variant> cache;
+
+    /**
+     * @param maxBytes the maximum amount of (tile-data) bytes that this cache holds
+     */
+    public TileVariantCache(long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((VariantKey key, Variant variant) -> variant.getData().length)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Returns the cached tile-variant, or null if there is none.
+     *
+     * @param encoding the compression the variant is encoded with, {@link Compression#NONE} for the raw data
+     */
+    public @Nullable Variant get(MapStorage storage, int lod, int x, int z, long version, Compression encoding) {
+        return cache.getIfPresent(new VariantKey(storage, lod, x, z, version, encoding));
+    }
+
+    public void put(MapStorage storage, int lod, int x, int z, long version, Variant variant) {
+        cache.put(new VariantKey(storage, lod, x, z, version, variant.getEncoding()), variant);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Value
+    public static class Variant {
+
+        /**
+         * The compression that the tile is stored with
+         */
+        Compression source;
+
+        /**
+         * The compression that the data is encoded with
+         */
+        Compression encoding;
+
+        byte[] data;
+
+        /**
+         * The fingerprint of the stored tile-data, if known
+         */
+        @Nullable String fingerprint;
+
+    }
+
+    @Value
+    private static class VariantKey {
+        MapStorage storage;
+        int lod, x, z;
+        long version;
+        Compression encoding;
+    }
+
+}
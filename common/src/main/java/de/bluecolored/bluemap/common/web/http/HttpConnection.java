@@ -30,20 +30,49 @@
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A persistent (keep-alive) HTTP/1.1 connection.<br>
+ * Pipelined requests are parsed and handed to the request-handler as they arrive (up to
+ * {@value #MAX_PIPELINED_REQUESTS} at a time), and their responses are sent in the order of the requests.
+ * <p>
+ * The memory held by requests that are not answered yet is limited per connection and for all connections together.
+ * A connection stops parsing new requests while it is over its limit, and a request that would exceed the global
+ * limit is answered with 503 (Service Unavailable). Invalid requests are answered with 400 (Bad Request).
+ * In both cases the connection is closed after the response is sent.
+ */
 public class HttpConnection implements SelectionConsumer {
 
+    private static final int MAX_PIPELINED_REQUESTS = 16;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final long MAX_BUFFERED_BYTES = 1024 * 1024;
+    private static final long MAX_TOTAL_BUFFERED_BYTES = 64 * 1024 * 1024;
+
+    private static final AtomicLong TOTAL_BUFFERED_BYTES = new AtomicLong(0);
+
     private final HttpRequestHandler requestHandler;
     private final Executor responseHandlerExecutor;
+
+    private final ByteBuffer readBuffer;
+    private final Deque<Exchange> exchanges;
+    private InetAddress remoteAddress;
     private HttpRequest request;
-    private CompletableFuture<HttpResponse> futureResponse;
-    private HttpResponse response;
+    private long requestBytes = 0; // the buffered bytes of the request that is currently parsed
+    private long bufferedBytes = 0; // the buffered bytes of all requests of this connection
+    private boolean closing = false; // no more requests are accepted, close once all responses are sent
+    private boolean closed = false;
+    private boolean inputClosed = false; // the client half-closed the connection
 
     public HttpConnection(HttpRequestHandler requestHandler) {
         this(requestHandler, Runnable::run); //run synchronously
@@ -52,11 +81,14 @@ public HttpConnection(HttpRequestHandler requestHandler) {
     public HttpConnection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor) {
         this.requestHandler = requestHandler;
         this.responseHandlerExecutor = responseHandlerExecutor;
+
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.exchanges = new ArrayDeque<>();
     }
 
     @Override
-    public void accept(SelectionKey selectionKey) {
-        if (!selectionKey.isValid()) return;
+    public synchronized void accept(SelectionKey selectionKey) {
+        if (!selectionKey.isValid() || closed) return;
 
         SelectableChannel selChannel = selectionKey.channel();
 
@@ -65,95 +97,304 @@ public void accept(SelectionKey selectionKey) {
 
         try {
 
-            if (request == null) {
+            if (remoteAddress == null) {
                 SocketAddress remote = channel.getRemoteAddress();
-                InetAddress remoteInet = null;
                 if (remote instanceof InetSocketAddress)
-                    remoteInet = ((InetSocketAddress) remote).getAddress();
+                    remoteAddress = ((InetSocketAddress) remote).getAddress();
+            }
 
-                request = new HttpRequest(remoteInet);
+            // receive requests
+            if (selectionKey.isReadable() && !closing && readBuffer.hasRemaining()) {
+                if (channel.read(readBuffer) == -1) {
+                    // the client won't send any more requests
+                    closing = true;
+                    inputClosed = true;
+                    dropRequest();
+                }
             }
+            readRequests(selectionKey);
+
+            // send responses
+            if (!writeResponses(selectionKey, channel)) return;
 
-            // receive request
-            if (!request.write(channel)) {
-                if (!selectionKey.isValid()) return;
-                selectionKey.interestOps(SelectionKey.OP_READ);
+            // sending responses might have made room for more buffered requests
+            readRequests(selectionKey);
+
+            if (closing && exchanges.isEmpty()) {
+                close(channel);
                 return;
             }
 
-            // process request
-            if (futureResponse == null) {
-                futureResponse = CompletableFuture.supplyAsync(
-                        () -> requestHandler.handle(request),
-                        responseHandlerExecutor
-                );
-                futureResponse.handle((response, error) -> {
-                    if (error != null) {
-                        Logger.global.logError("Unexpected error handling request", error);
-                        response = new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+            updateInterestOps(selectionKey);
+
+        } catch (IOException e) {
+            Logger.global.logDebug("Failed to process selection: " + e);
+            close(channel);
+        }
+    }
+
+    /**
+     * Parses the buffered data into requests and starts handling them
+     */
+    private void readRequests(SelectionKey selectionKey) {
+        readBuffer.flip();
+        try {
+            while (canReadRequests() && readBuffer.hasRemaining()) {
+                if (request == null) request = new HttpRequest(remoteAddress);
+
+                boolean complete;
+                try {
+                    complete = request.write(readBuffer);
+                } catch (IOException ex) {
+                    Logger.global.logDebug("Received invalid request: " + ex);
+                    reject(HttpStatusCode.BAD_REQUEST);
+                    break;
+                }
+
+                if (!updateRequestBytes()) {
+                    Logger.global.logDebug("Rejected request: too many buffered requests");
+                    reject(HttpStatusCode.SERVICE_UNAVAILABLE);
+                    break;
+                }
+
+                if (!complete) break;
+
+                HttpRequest request = this.request;
+                this.request = null;
+
+                Exchange exchange = new Exchange(request, isKeepAlive(request), requestBytes);
+                requestBytes = 0;
+                if (!exchange.keepAlive) closing = true;
+                exchanges.add(exchange);
+
+                handle(request).thenAccept(response -> {
+                    synchronized (this) {
+                        if (closed || !selectionKey.isValid()) {
+                            closeResponse(response);
+                            return;
+                        }
+
+                        exchange.response = response;
+                        updateInterestOps(selectionKey);
                     }
+                    selectionKey.selector().wakeup();
+                });
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * New requests are only parsed while this connection is below its buffer-limit,
+     * a request that is already being parsed is always continued
+     */
+    private boolean canReadRequests() {
+        return !closing && exchanges.size() < MAX_PIPELINED_REQUESTS &&
+                (request != null || bufferedBytes < MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * Updates the buffered bytes with the current size of the request that is being parsed
+     *
+     * @return false if the global buffer-limit would be exceeded
+     */
+    private boolean updateRequestBytes() {
+        long delta = request.getBufferedBytes() - requestBytes;
+        if (delta > 0 && TOTAL_BUFFERED_BYTES.addAndGet(delta) > MAX_TOTAL_BUFFERED_BYTES) {
+            TOTAL_BUFFERED_BYTES.addAndGet(-delta);
+            return false;
+        }
+        if (delta < 0) TOTAL_BUFFERED_BYTES.addAndGet(delta);
+
+        requestBytes += delta;
+        bufferedBytes += delta;
+        return true;
+    }
+
+    private void dropRequest() {
+        request = null;
+        releaseBytes(requestBytes);
+        requestBytes = 0;
+    }
+
+    private void releaseBytes(long bytes) {
+        bufferedBytes -= bytes;
+        TOTAL_BUFFERED_BYTES.addAndGet(-bytes);
+    }
+
+    /**
+     * Drops the request that is currently parsed, answers it with the given status and closes the connection
+     * once all responses are sent
+     */
+    private void reject(HttpStatusCode statusCode) {
+        HttpRequest request = this.request;
+        dropRequest();
+
+        Exchange exchange = new Exchange(request, false, 0);
+        exchange.response = new HttpResponse(statusCode);
+        exchanges.add(exchange);
+        closing = true;
+    }
 
-                    try {
-                        response.read(channel); // do an initial read to trigger response sending intent
-                        this.response = response;
-                    } catch (IOException e) {
-                        handleIOException(channel, e);
+    /**
+     * Sends the ready responses in the order of their requests
+     *
+     * @return false if the channel got closed
+     */
+    private boolean writeResponses(SelectionKey selectionKey, SocketChannel channel) throws IOException {
+        Exchange exchange;
+        while ((exchange = exchanges.peek()) != null) {
+            HttpResponse response = exchange.response;
+            if (response == null) return true;
+
+            if (!exchange.writing) {
+                exchange.writing = true;
+                if (response.hasHeaderValue("Connection", "close")) {
+                    exchange.keepAlive = false;
+                } else if (!exchange.keepAlive) {
+                    response.addHeader("Connection", "close");
+                } else if (!"HTTP/1.1".equalsIgnoreCase(exchange.request.getVersion())) {
+                    response.addHeader("Connection", "keep-alive");
+                }
+            }
+
+            if (!response.read(channel)) {
+                if (response.isWaitingForData()) {
+                    // a half-closed client won't wait for a response that has no end (e.g. an event-stream)
+                    if (inputClosed) {
+                        close(channel);
+                        return false;
                     }
 
-                    return null;
-                });
+                    // stop writing until the response has more data
+                    exchange.waitingForData = true;
+                    Exchange waitingExchange = exchange;
+                    response.setDataListener(() -> {
+                        synchronized (this) {
+                            waitingExchange.waitingForData = false;
+                            if (closed) return;
+                            updateInterestOps(selectionKey);
+                        }
+                        selectionKey.selector().wakeup();
+                    });
+                }
+                return true;
             }
 
-            if (response == null) return;
-            if (!selectionKey.isValid()) return;
+            exchanges.poll();
+            releaseBytes(exchange.bytes);
+            closeResponse(response);
 
-            // send response
-            if (!response.read(channel)){
-                selectionKey.interestOps(SelectionKey.OP_WRITE);
-                return;
+            if (!exchange.keepAlive) {
+                close(channel);
+                return false;
             }
+        }
 
-            // reset to accept new request
-            request.clear();
-            response.close();
-            futureResponse = null;
-            response = null;
-            selectionKey.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
 
-        } catch (IOException e) {
-            handleIOException(channel, e);
+    private void updateInterestOps(SelectionKey selectionKey) {
+        if (!selectionKey.isValid()) return;
+
+        int interestOps = 0;
+        if (canReadRequests() && readBuffer.hasRemaining())
+            interestOps |= SelectionKey.OP_READ;
+
+        Exchange head = exchanges.peek();
+        if (head != null && head.response != null && !head.waitingForData)
+            interestOps |= SelectionKey.OP_WRITE;
+
+        selectionKey.interestOps(interestOps);
+    }
+
+    /**
+     * A connection is busy while it waits for the next response to be handled
+     */
+    @Override
+    public synchronized boolean isBusy() {
+        Exchange head = exchanges.peek();
+        return head != null && head.response == null;
+    }
+
+    @Override
+    public synchronized void closed() {
+        closed = true;
+        request = null;
+
+        for (Exchange exchange : exchanges) {
+            if (exchange.response != null) closeResponse(exchange.response);
         }
+        exchanges.clear();
+
+        releaseBytes(bufferedBytes);
+        requestBytes = 0;
     }
 
-    private void handleIOException(Channel channel, IOException e) {
-        request.clear();
+    private CompletableFuture<HttpResponse> handle(HttpRequest request) {
+        CompletableFuture<HttpResponse> future;
+        try {
+            future = CompletableFuture.supplyAsync(
+                    () -> requestHandler.handle(request),
+                    responseHandlerExecutor
+            );
+        } catch (RejectedExecutionException ex) {
+            // all handlers are busy
+            HttpResponse response = new HttpResponse(HttpStatusCode.SERVICE_UNAVAILABLE);
+            response.addHeader("Retry-After", "1");
+            return CompletableFuture.completedFuture(response);
+        }
 
-        if (response != null) {
-            try {
-                response.close();
-            } catch (IOException e2) {
-                Logger.global.logWarning("Failed to close response: " + e2);
+        return future.handle((response, error) -> {
+            if (error != null) {
+                Logger.global.logError("Unexpected error handling request", error);
+                return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
             }
-            response = null;
-        }
+            return response;
+        });
+    }
 
-        if (futureResponse != null) {
-            futureResponse.thenAccept(response -> {
-                try {
-                    response.close();
-                } catch (IOException e2) {
-                    Logger.global.logWarning("Failed to close response: " + e2);
-                }
-            });
-            futureResponse = null;
+    private static boolean isKeepAlive(HttpRequest request) {
+        HttpHeader connection = request.getHeader("Connection");
+        if ("HTTP/1.1".equalsIgnoreCase(request.getVersion()))
+            return connection == null || !connection.contains("close");
+        return connection != null && connection.contains("keep-alive");
+    }
+
+    private void closeResponse(HttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            Logger.global.logWarning("Failed to close response: " + e);
         }
+    }
+
+    private void close(Channel channel) {
+        closed();
 
-        Logger.global.logDebug("Failed to process selection: " + e);
         try {
             channel.close();
-        } catch (IOException e2) {
-            Logger.global.logWarning("Failed to close channel" + e2);
+        } catch (IOException e) {
+            Logger.global.logWarning("Failed to close channel" + e);
+        }
+    }
+
+    private static class Exchange {
+
+        private final HttpRequest request;
+        private final long bytes;
+        private boolean keepAlive;
+        private HttpResponse response;
+        private boolean writing = false;
+        private boolean waitingForData = false;
+
+        private Exchange(HttpRequest request, boolean keepAlive, long bytes) {
+            this.request = request;
+            this.keepAlive = keepAlive;
+            this.bytes = bytes;
         }
+
     }
 
 }
@@ -0,0 +1,209 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The (non-blocking) data of a <code>text/event-stream</code> (Server-Sent Events) response.<br>
+ * Events are encoded once with {@link #encode(String, String)} and can then be sent to any amount of streams,
+ * each stream only queues a reference to the encoded event.
+ * If a stream is not read fast enough and its queue overflows, the stream is closed.
+ */
+public class HttpEventStream implements ReadableByteChannel {
+
+    private static final byte[] KEEP_ALIVE_EVENT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maxQueuedEvents;
+    private final Deque<byte[]> events;
+    private final List<Runnable> closeListeners;
+
+    private @Nullable ByteBuffer currentEvent;
+    private @Nullable Runnable dataListener;
+    private boolean open;
+
+    public HttpEventStream(int maxQueuedEvents) {
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.events = new ArrayDeque<>();
+        this.closeListeners = new ArrayList<>(1);
+        this.open = true;
+    }
+
+    /**
+     * Queues an encoded event to be sent on this stream.
+     *
+     * @param event the event, encoded with {@link #encode(String, String)}
+     * @return false if the stream is closed
+     */
+    public boolean send(byte[] event) {
+        Runnable listener;
+        boolean overflow = false;
+        synchronized (this) {
+            if (!open) return false;
+
+            if (events.size() >= maxQueuedEvents) {
+                overflow = true;
+                listener = null;
+            } else {
+                events.add(event);
+                listener = dataListener;
+                dataListener = null;
+            }
+        }
+
+        // call listeners outside of the lock
+        if (overflow) {
+            close();
+            return false;
+        }
+
+        if (listener != null) listener.run();
+        return true;
+    }
+
+    /**
+     * Sends a comment-line that is ignored by the client, but keeps the connection from being idle.
+     */
+    public boolean sendKeepAlive() {
+        return send(KEEP_ALIVE_EVENT);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) {
+        int read = 0;
+        while (dst.hasRemaining()) {
+            if (currentEvent == null || !currentEvent.hasRemaining()) {
+                byte[] event = events.poll();
+                if (event == null) break;
+                currentEvent = ByteBuffer.wrap(event);
+            }
+
+            int length = Math.min(dst.remaining(), currentEvent.remaining());
+            dst.put(currentEvent.array(), currentEvent.position(), length);
+            currentEvent.position(currentEvent.position() + length);
+            read += length;
+        }
+
+        if (read == 0 && !open) return -1;
+        return read;
+    }
+
+    /**
+     * Sets a listener that is called (once) as soon as there is new data to read or the stream got closed.
+     * If there is already data available, the listener is called immediately.
+     */
+    public void setDataListener(Runnable listener) {
+        synchronized (this) {
+            boolean available = !open || !events.isEmpty() || (currentEvent != null && currentEvent.hasRemaining());
+            if (!available) {
+                this.dataListener = listener;
+                return;
+            }
+        }
+
+        listener.run();
+    }
+
+    /**
+     * Adds a listener that is called when this stream gets closed.
+     * If the stream is already closed, the listener is called immediately.
+     */
+    public void addCloseListener(Runnable listener) {
+        synchronized (this) {
+            if (open) {
+                closeListeners.add(listener);
+                return;
+            }
+        }
+
+        listener.run();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        Runnable listener;
+        List<Runnable> closeListeners;
+        synchronized (this) {
+            if (!open) return;
+            open = false;
+
+            listener = dataListener;
+            dataListener = null;
+
+            closeListeners = new ArrayList<>(this.closeListeners);
+            this.closeListeners.clear();
+        }
+
+        if (listener != null) listener.run();
+        for (Runnable closeListener : closeListeners) closeListener.run();
+    }
+
+    /**
+     * Encodes an event in the <code>text/event-stream</code> format.
+     *
+     * @param event the event-type, or null for the default ("message") event-type
+     * @param data the event-data, may contain line-breaks
+     * @return the encoded event
+     */
+    public static byte[] encode(@Nullable String event, String data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length() + 32);
+        if (event != null) writeField(out, "event", event);
+
+        int start = 0, end;
+        while ((end = data.indexOf('\n', start)) >= 0) {
+            writeField(out, "data", data.substring(start, end));
+            start = end + 1;
+        }
+        writeField(out, "data", data.substring(start));
+
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    private static void writeField(ByteArrayOutputStream out, String field, String value) {
+        byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(fieldBytes, 0, fieldBytes.length);
+        out.write(':');
+        out.write(' ');
+        out.write(valueBytes, 0, valueBytes.length);
+        out.write('\n');
+    }
+
+}
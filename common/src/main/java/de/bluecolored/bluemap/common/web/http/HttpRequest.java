@@ -29,23 +29,29 @@
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import de.bluecolored.bluemap.common.util.StringUtil;
 
 public class HttpRequest {
 
-    private static final Pattern REQUEST_PATTERN = Pattern.compile("^(\\w+) (\\S+) (.+)$");
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+    private static final int MAX_HEADER_COUNT = 128;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+    private static final byte[] EMPTY_DATA = new byte[0];
 
     // reading helper
-    private final ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-    private final StringBuffer lineBuffer = new StringBuffer();
+    private byte[] lineBuffer = new byte[256];
+    private int lineLength = 0;
+    private int headerSize = 0;
+    private int dataLength = 0;
+    private int chunkRemaining = -1; // -1 if the chunk-size line is expected next
+    private boolean chunkTrailer = false;
 
     private boolean complete = false;
     private boolean headerComplete = false;
-    private final List<String> headerLines = new ArrayList<>(20);
+    private boolean bodyInitialized = false;
+    private boolean chunked = false;
 
     // request data
     private final InetAddress source;
@@ -62,38 +68,31 @@ public HttpRequest(InetAddress source) {
         this.source = source;
     }
 
-    public boolean write(ReadableByteChannel channel) throws IOException {
+    /**
+     * Reads (parses) this request from the buffer, consuming only the bytes that belong to this request.
+     * Any remaining bytes in the buffer (e.g. of a following pipelined request) are left untouched.
+     *
+     * @param buffer a buffer (ready to be read from) containing the request-data
+     * @return true if the request is complete, false if more data is needed
+     * @throws IOException if the request is invalid or exceeds the size-limits
+     */
+    public boolean write(ByteBuffer buffer) throws IOException {
         if (complete) return true;
 
-        int read = channel.read(byteBuffer);
-        if (read == 0) return false;
-        if (read == -1) {
-            channel.close();
-            return false;
+        // read headers
+        if (!headerComplete) {
+            if (!readHeader(buffer)) return false;
         }
 
-        byteBuffer.flip();
-        try {
-
-            // read headers
-            while (!headerComplete) {
-                if (!writeLine()) return false;
-                String line = StringUtil.stripTrailing(lineBuffer.toString());
-                lineBuffer.setLength(0);
-
-                if (line.isEmpty()) {
-                    headerComplete = true;
-                    parseHeaders();
-                } else {
-                    headerLines.add(line);
-                }
-            }
-
-            if (hasHeaderValue("transfer-encoding", "chunked")) {
-                writeChunkedBody();
+        // read body
+        if (!bodyInitialized) {
+            bodyInitialized = true;
+            chunked = hasHeaderValue("transfer-encoding", "chunked");
+            if (chunked) {
+                data = new byte[256];
             } else {
-                HttpHeader contentLengthHeader = getHeader("content-length");
                 int contentLength = 0;
+                HttpHeader contentLengthHeader = getHeader("content-length");
                 if (contentLengthHeader != null) {
                     try {
                         contentLength = Integer.parseInt(contentLengthHeader.getValue().trim());
@@ -102,60 +101,188 @@ public boolean write(ReadableByteChannel channel) throws IOException {
                     }
                 }
 
-                if (contentLength > 0) {
-                    writeBody(contentLength);
+                if (contentLength < 0) throw new IOException("Invalid HTTP Request: negative content-length");
+                if (contentLength > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: body too large");
+                data = contentLength > 0 ? new byte[contentLength] : EMPTY_DATA;
+            }
+        }
+
+        if (chunked) {
+            if (!readChunkedBody(buffer)) return false;
+        } else {
+            if (!readBody(buffer)) return false;
+        }
+
+        complete = true;
+        return true;
+    }
+
+    private boolean readBody(ByteBuffer buffer) {
+        int length = Math.min(data.length - dataLength, buffer.remaining());
+        buffer.get(data, dataLength, length);
+        dataLength += length;
+        return dataLength == data.length;
+    }
+
+    private boolean readChunkedBody(ByteBuffer buffer) throws IOException {
+        while (true) {
+            if (chunkTrailer) {
+                // skip trailer-lines until the empty line
+                int length;
+                do {
+                    length = readLine(buffer);
+                    if (length == -1) return false;
+                } while (length > 0);
+
+                data = Arrays.copyOf(data, dataLength);
+                return true;
+            }
+
+            if (chunkRemaining == -1) {
+                int length = readLine(buffer);
+                if (length == -1) return false;
+                chunkRemaining = parseChunkSize(length);
+                if (chunkRemaining == 0) {
+                    chunkTrailer = true;
+                    continue;
                 }
+
+                if (dataLength + chunkRemaining > MAX_BODY_SIZE)
+                    throw new IOException("Invalid HTTP Request: body too large");
+                if (dataLength + chunkRemaining > data.length)
+                    data = Arrays.copyOf(data, Math.max(dataLength + chunkRemaining, data.length * 2));
+            }
+
+            if (chunkRemaining > 0) {
+                int length = Math.min(chunkRemaining, buffer.remaining());
+                buffer.get(data, dataLength, length);
+                dataLength += length;
+                chunkRemaining -= length;
+                if (chunkRemaining > 0) return false;
             }
 
-            complete = true;
-            return true;
+            // line-break after the chunk-data
+            int length = readLine(buffer);
+            if (length == -1) return false;
+            if (length != 0) throw new IOException("Invalid HTTP Request: chunk-data is longer than the chunk-size");
+            chunkRemaining = -1;
+        }
+    }
 
-        } finally {
-            byteBuffer.compact();
+    private int parseChunkSize(int length) throws IOException {
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = lineBuffer[i];
+            int digit;
+            if (b >= '0' && b <= '9') digit = b - '0';
+            else if (b >= 'a' && b <= 'f') digit = b - 'a' + 10;
+            else if (b >= 'A' && b <= 'F') digit = b - 'A' + 10;
+            else if (i > 0 && (b == ';' || b == ' ' || b == '\t')) break; // chunk-extension
+            else throw new IOException("Invalid HTTP Request: invalid chunk-size");
+
+            size = size * 16 + digit;
+            if (size > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: body too large");
         }
+        return size;
     }
 
-    private void writeChunkedBody() {
-        // TODO
+    /**
+     * Reads and parses header-lines from the buffer until the end of the header is reached.
+     *
+     * @return true if the header is complete, false if more data is needed
+     */
+    private boolean readHeader(ByteBuffer buffer) throws IOException {
+        int length;
+        while ((length = readLine(buffer)) != -1) {
+            headerSize += length + 2;
+            if (headerSize > MAX_HEADER_SIZE)
+                throw new IOException("Invalid HTTP Request: header too large");
+
+            if (parseLine(length)) {
+                headerComplete = true;
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void writeBody(int length) {
-        // TODO
+    /**
+     * Reads bytes from the buffer into the lineBuffer until a line-break is reached.
+     *
+     * @return the length of the line in the lineBuffer (without the line-break), or -1 if more data is needed
+     */
+    private int readLine(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+
+            if (b == '\n') {
+                int length = lineLength;
+                if (length > 0 && lineBuffer[length - 1] == '\r') length--;
+                lineLength = 0;
+                return length;
+            }
+
+            if (lineLength == lineBuffer.length) {
+                if (lineLength >= MAX_LINE_LENGTH)
+                    throw new IOException("Invalid HTTP Request: line too long");
+                lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+            }
+            lineBuffer[lineLength++] = b;
+        }
+
+        return -1;
     }
 
-    private void parseHeaders() throws IOException {
-        if (headerLines.isEmpty()) throw new IOException("Invalid HTTP Request: No Header");
+    /**
+     * Parses a line of the header from the lineBuffer.
+     *
+     * @return true if the line was the empty line marking the end of the header
+     */
+    private boolean parseLine(int length) throws IOException {
+        if (method == null) {
+            // ignore empty lines before the request-line
+            if (length == 0) return false;
+            parseRequestLine(length);
+            return false;
+        }
+
+        if (length == 0) return true;
 
-        Matcher m = REQUEST_PATTERN.matcher(headerLines.get(0));
-        if (!m.find()) throw new IOException("Invalid HTTP Request: Request-Pattern not matching");
+        int colon = indexOf(lineBuffer, (byte) ':', 0, length);
+        if (colon <= 0) return false;
 
-        method = m.group(1);
-        if (method == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (method)");
+        if (headers.size() >= MAX_HEADER_COUNT)
+            throw new IOException("Invalid HTTP Request: Too many headers");
 
-        address = m.group(2);
-        if (address == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (address)");
+        String key = new String(lineBuffer, 0, colon, StandardCharsets.ISO_8859_1).trim();
+        String value = new String(lineBuffer, colon + 1, length - colon - 1, StandardCharsets.ISO_8859_1).trim();
+        String keyLC = key.toLowerCase(Locale.ROOT);
 
-        version = m.group(3);
-        if (version == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (version)");
+        HttpHeader existing = headers.get(keyLC);
+        if (existing != null) value = existing.getValue() + ", " + value;
+        headers.put(keyLC, new HttpHeader(key, value));
 
-        headers.clear();
-        for (int i = 1; i < headerLines.size(); i++) {
-            String line = headerLines.get(i);
-            if (line.trim().isEmpty()) continue;
+        return false;
+    }
 
-            String[] kv = line.split(":", 2);
-            if (kv.length < 2) continue;
+    private void parseRequestLine(int length) throws IOException {
+        int methodEnd = indexOf(lineBuffer, (byte) ' ', 0, length);
+        if (methodEnd <= 0) throw new IOException("Invalid HTTP Request: Request-Line malformed (method)");
 
-            headers.put(kv[0].trim().toLowerCase(Locale.ROOT), new HttpHeader(kv[0], kv[1]));
-        }
+        int addressEnd = indexOf(lineBuffer, (byte) ' ', methodEnd + 1, length);
+        if (addressEnd <= methodEnd + 1) throw new IOException("Invalid HTTP Request: Request-Line malformed (address)");
+        if (addressEnd + 1 >= length) throw new IOException("Invalid HTTP Request: Request-Line malformed (version)");
+
+        method = new String(lineBuffer, 0, methodEnd, StandardCharsets.ISO_8859_1);
+        address = new String(lineBuffer, methodEnd + 1, addressEnd - methodEnd - 1, StandardCharsets.ISO_8859_1);
+        version = new String(lineBuffer, addressEnd + 1, length - addressEnd - 1, StandardCharsets.ISO_8859_1);
     }
 
-    private boolean writeLine() {
-        while (lineBuffer.length() <= 0 || lineBuffer.charAt(lineBuffer.length() - 1) != '\n'){
-            if (!byteBuffer.hasRemaining()) return false;
-            lineBuffer.append((char) byteBuffer.get());
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) return i;
         }
-        return true;
+        return -1;
     }
 
     public InetAddress getSource() {
@@ -238,10 +365,14 @@ public void setGetParamString(String getParamString) {
     private void parseAddress() {
         String address = this.getAddress();
         if (address.isEmpty()) address = "/";
-        String[] addressParts = address.split("\\?", 2);
-        String path = addressParts[0];
-        this.getParamString = addressParts.length > 1 ? addressParts[1] : "";
-        this.path = path;
+        int query = address.indexOf('?');
+        if (query >= 0) {
+            this.path = address.substring(0, query);
+            this.getParamString = address.substring(query + 1);
+        } else {
+            this.path = address;
+            this.getParamString = "";
+        }
     }
 
     private void parseGetParams() {
@@ -260,13 +391,24 @@ public boolean isComplete() {
         return complete;
     }
 
+    /**
+     * Returns (approximately) the amount of memory in bytes this request currently occupies with its header and body
+     */
+    public int getBufferedBytes() {
+        return lineBuffer.length + headerSize + (data != null ? data.length : 0);
+    }
+
     public void clear() {
-        byteBuffer.clear();
-        lineBuffer.setLength(0);
+        lineLength = 0;
+        headerSize = 0;
+        dataLength = 0;
+        chunkRemaining = -1;
+        chunkTrailer = false;
 
         complete = false;
         headerComplete = false;
-        headerLines.clear();
+        bodyInitialized = false;
+        chunked = false;
 
         method = null;
         address = null;
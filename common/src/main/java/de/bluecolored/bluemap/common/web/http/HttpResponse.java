@@ -27,6 +27,7 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
@@ -37,12 +38,17 @@
 
 public class HttpResponse implements Closeable {
 
+    private static final int DATA_BUFFER_SIZE = 16 * 1024;
+    private static final int CHUNK_PREFIX_SPACE = 16;
     private static final byte[] CHUNK_SUFFIX = "\r\n".getBytes(StandardCharsets.UTF_8);
 
     private String version;
     private HttpStatusCode statusCode;
     private final Map<String, HttpHeader> headers;
     private ReadableByteChannel data;
+    private long dataLength = -1; // -1 if the length is unknown
+    private long dataPosition = 0; // the amount of data that has been sent
+    private long dataOffset = 0; // the position in the file where the data starts
 
     private ByteBuffer headerData;
     private ByteBuffer dataBuffer;
@@ -50,6 +56,7 @@ public class HttpResponse implements Closeable {
     private boolean headerComplete = false;
     private boolean dataChannelComplete = false;
     private boolean dataComplete = false;
+    private boolean waitingForData = false;
 
     public HttpResponse(HttpStatusCode statusCode) {
         this.version = "HTTP/1.1";
@@ -78,34 +85,102 @@ public synchronized boolean read(WritableByteChannel channel) throws IOException
             return true;
         }
 
-        // send data chunked
+        // send data
+        if (dataLength >= 0) {
+            if (!writeData(channel)) return false;
+        } else {
+            if (!writeDataChunked(channel)) return false;
+        }
+
+        complete = true;
+        dataBuffer = null; // free ram
+        return true;
+    }
+
+    /**
+     * Writes the data with a known length.
+     * File-data is transferred directly to the target channel (avoiding to copy it through the heap where possible).
+     */
+    private boolean writeData(WritableByteChannel channel) throws IOException {
+        if (data instanceof FileChannel) {
+            FileChannel file = (FileChannel) data;
+            while (dataPosition < dataLength) {
+                long written = file.transferTo(dataOffset + dataPosition, dataLength - dataPosition, channel);
+                if (written <= 0) {
+                    if (dataOffset + dataPosition >= file.size())
+                        throw new EOFException("File got truncated while sending it");
+                    return false;
+                }
+                dataPosition += written;
+            }
+            return true;
+        }
+
         if (dataBuffer == null) {
-            ByteBuffer buffer = ByteBuffer.allocate(1024 + 200);
-            buffer.position(0);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(dataLength, DATA_BUFFER_SIZE));
             buffer.limit(0);
             dataBuffer = buffer;
         }
         while (true) {
             if (dataBuffer.hasRemaining()) channel.write(dataBuffer);
             if (dataBuffer.hasRemaining()) return false;
-            if (dataComplete) break; // nothing more to do
+            if (dataPosition >= dataLength) return true;
 
             // fill data buffer from channel
             dataBuffer.clear();
-            dataBuffer.position(100); // keep 100 space in front
-            dataBuffer.limit(1124); // keep 100 space at the end
+            if (dataBuffer.remaining() > dataLength - dataPosition)
+                dataBuffer.limit((int) (dataLength - dataPosition));
+
+            while (dataBuffer.hasRemaining()) {
+                int read = data.read(dataBuffer);
+                if (read == -1) throw new EOFException("Data ended before the announced content-length was reached");
+                dataPosition += read;
+            }
+            dataBuffer.flip();
+        }
+    }
+
+    /**
+     * Writes the data with an unknown length using chunked transfer-encoding.
+     */
+    private boolean writeDataChunked(WritableByteChannel channel) throws IOException {
+        if (dataBuffer == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_PREFIX_SPACE + DATA_BUFFER_SIZE + CHUNK_SUFFIX.length);
+            buffer.limit(0);
+            dataBuffer = buffer;
+        }
+        while (true) {
+            if (dataBuffer.hasRemaining()) channel.write(dataBuffer);
+            if (dataBuffer.hasRemaining()) return false;
+            if (dataComplete) return true; // nothing more to do
+
+            // fill data buffer from channel
+            dataBuffer.clear();
+            dataBuffer.position(CHUNK_PREFIX_SPACE); // keep space in front
+            dataBuffer.limit(CHUNK_PREFIX_SPACE + DATA_BUFFER_SIZE); // keep space at the end
 
             int readTotal = 0;
             if (!dataChannelComplete) {
                 int read = 0;
-                while (dataBuffer.hasRemaining() && (read = data.read(dataBuffer)) != -1) {
+                while (dataBuffer.hasRemaining() && (read = data.read(dataBuffer)) > 0) {
                     readTotal += read;
                 }
 
                 if (read == -1) dataChannelComplete = true;
             }
 
-            if (readTotal == 0) dataComplete = true;
+            if (readTotal == 0) {
+                if (!dataChannelComplete) {
+                    // no data available right now (non-blocking channel)
+                    dataBuffer.position(0);
+                    dataBuffer.limit(0);
+                    waitingForData = true;
+                    return false;
+                }
+
+                dataComplete = true;
+            }
+            waitingForData = false;
 
             byte[] chunkPrefix = (Integer.toHexString(readTotal) + "\r\n")
                     .getBytes(StandardCharsets.UTF_8);
@@ -114,23 +189,22 @@ public synchronized boolean read(WritableByteChannel channel) throws IOException
             dataBuffer.put(CHUNK_SUFFIX);
             dataBuffer.limit(dataBuffer.position());
 
-            int startPos = 100 - chunkPrefix.length;
+            int startPos = CHUNK_PREFIX_SPACE - chunkPrefix.length;
             dataBuffer.position(startPos);
             dataBuffer.put(chunkPrefix);
             dataBuffer.position(startPos);
         }
-
-        complete = true;
-        return true;
     }
 
     private void writeHeaderData() {
         ByteArrayOutputStream headerDataOut = new ByteArrayOutputStream();
 
-        if (hasData()){
-            headers.put("Transfer-Encoding", new HttpHeader("Transfer-Encoding", "chunked"));
+        if (!hasData()) {
+            headers.put("content-length", new HttpHeader("Content-Length", "0"));
+        } else if (dataLength >= 0) {
+            headers.put("content-length", new HttpHeader("Content-Length", String.valueOf(dataLength)));
         } else {
-            headers.put("Content-Length", new HttpHeader("Content-Length", "0"));
+            headers.put("transfer-encoding", new HttpHeader("Transfer-Encoding", "chunked"));
         }
 
         try {
@@ -164,16 +238,66 @@ public void addHeader(String key, String value){
         this.headers.put(key.toLowerCase(Locale.ROOT), header);
     }
 
+    /**
+     * Sets the data of this response to the (remaining) content of the channel.
+     * Since the length of the data is unknown, it will be sent using chunked transfer-encoding.
+     */
     public void setData(ReadableByteChannel channel){
         this.data = channel;
+        this.dataLength = -1;
     }
 
     public void setData(InputStream dataStream){
-        this.data = Channels.newChannel(dataStream);
+        setData(Channels.newChannel(dataStream));
+    }
+
+    /**
+     * Sets the data of this response to the content of the file-channel, starting at its current position.
+     * The data is sent with a content-length and directly transferred from the file to the connection.
+     */
+    public void setData(FileChannel file) throws IOException {
+        this.data = file;
+        this.dataOffset = file.position();
+        this.dataPosition = 0;
+        this.dataLength = file.size() - dataOffset;
+    }
+
+    public void setData(byte[] data){
+        this.data = Channels.newChannel(new ByteArrayInputStream(data));
+        this.dataOffset = 0;
+        this.dataPosition = 0;
+        this.dataLength = data.length;
     }
 
     public void setData(String data){
-        setData(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+        setData(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets the data of this response to an event-stream.
+     * The response will stay open and send the events of the stream until the stream is closed.
+     */
+    public void setData(HttpEventStream eventStream) {
+        setData((ReadableByteChannel) eventStream);
+    }
+
+    /**
+     * Whether the last call to {@link #read(WritableByteChannel)} could not continue
+     * because the data is not available yet (e.g. waiting for the next event of an {@link HttpEventStream})
+     */
+    public boolean isWaitingForData() {
+        return waitingForData;
+    }
+
+    /**
+     * Sets a listener that is called (once) when more data is available after {@link #isWaitingForData()} was true.
+     */
+    public void setDataListener(Runnable listener) {
+        if (data instanceof HttpEventStream) {
+            ((HttpEventStream) data).setDataListener(listener);
+        } else {
+            listener.run();
+        }
     }
 
     public boolean hasData() {
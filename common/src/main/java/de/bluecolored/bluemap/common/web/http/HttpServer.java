@@ -24,23 +24,85 @@
  */
 package de.bluecolored.bluemap.common.web.http;
 
+import de.bluecolored.bluemap.core.BlueMap;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpServer extends Server {
 
+    public static final int DEFAULT_HANDLER_QUEUE_SIZE = 256;
+
+    private static final AtomicInteger ID = new AtomicInteger(0);
+
     @Getter @Setter
     private HttpRequestHandler requestHandler;
 
+    private final ExecutorService handlerExecutor;
+
     public HttpServer(HttpRequestHandler requestHandler) throws IOException {
+        this(requestHandler, defaultHandlerThreadCount(), DEFAULT_HANDLER_QUEUE_SIZE);
+    }
+
+    public HttpServer(HttpRequestHandler requestHandler, int handlerThreads, int handlerQueueSize) throws IOException {
+        this(requestHandler, handlerThreads, handlerQueueSize, defaultIoThreadCount(), DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param handlerThreads the amount of threads that are handling requests
+     * @param handlerQueueSize the amount of requests that can wait for a free handler-thread,
+     *                         if the queue is full new requests are answered with 503 (Service Unavailable)
+     * @param ioThreads the amount of threads that are reading requests and writing responses
+     * @param idleTimeout the time in milliseconds after which a connection without any activity is closed
+     */
+    public HttpServer(
+            HttpRequestHandler requestHandler,
+            int handlerThreads, int handlerQueueSize,
+            int ioThreads, long idleTimeout
+    ) throws IOException {
+        super(ioThreads, idleTimeout);
         this.requestHandler = requestHandler;
+
+        int id = ID.getAndIncrement();
+        AtomicInteger nextThreadIndex = new AtomicInteger(0);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                handlerThreads, handlerThreads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(handlerQueueSize, 1)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "BlueMap-WebServer-" + id + "-Handler-" + nextThreadIndex.getAndIncrement());
+                    thread.setContextClassLoader(BlueMap.class.getClassLoader());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        this.handlerExecutor = executor;
     }
 
     @Override
     public SelectionConsumer createConnectionHandler() {
-        return new HttpConnection(requestHandler);
+        return new HttpConnection(requestHandler, handlerExecutor);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            handlerExecutor.shutdown();
+        }
+    }
+
+    public static int defaultHandlerThreadCount() {
+        return Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
     }
 
 }
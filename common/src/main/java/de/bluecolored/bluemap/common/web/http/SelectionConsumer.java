@@ -27,4 +27,22 @@
 import java.nio.channels.SelectionKey;
 import java.util.function.Consumer;
 
-public interface SelectionConsumer extends Consumer<SelectionKey> {}
+public interface SelectionConsumer extends Consumer<SelectionKey> {
+
+    /**
+     * Whether this consumer is currently waiting for something other than its channel (e.g. a request that is being
+     * handled). Connections of busy consumers are not closed for being idle.
+     *
+     * @return true if this consumer is busy
+     */
+    default boolean isBusy() {
+        return false;
+    }
+
+    /**
+     * Called after the channel of this consumer has been closed by the server (e.g. because it was idle),
+     * to release any resources that this consumer still holds.
+     */
+    default void closed() {}
+
+}
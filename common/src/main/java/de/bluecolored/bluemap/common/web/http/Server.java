@@ -24,6 +24,7 @@
  */
 package de.bluecolored.bluemap.common.web.http;
 
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
 
 import java.io.Closeable;
@@ -34,15 +35,47 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * A non-blocking server.<br>
+ * This thread only accepts new connections, which are then distributed (round-robin) to a fixed amount of
+ * {@link IOWorker}s. Each IOWorker has its own {@link Selector} and handles all I/O of its connections.
+ * Connections that show no activity for longer than the idle-timeout are closed.
+ */
 public abstract class Server extends Thread implements Closeable, Runnable {
 
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long IDLE_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
     private final Selector selector;
     private final Collection<ServerSocketChannel> server;
 
+    private final IOWorker[] workers;
+    private final long idleTimeout;
+    private int nextWorker;
+
     public Server() throws IOException {
+        this(defaultIoThreadCount(), DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param ioThreads the amount of threads (each with their own selector) that are handling the connections
+     * @param idleTimeout the time in milliseconds after which a connection without any activity is closed
+     */
+    public Server(int ioThreads, long idleTimeout) throws IOException {
         this.selector = Selector.open();
         this.server = new ArrayList<>();
+
+        this.idleTimeout = idleTimeout;
+        this.workers = new IOWorker[Math.max(ioThreads, 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new IOWorker(i);
+        }
+        this.nextWorker = 0;
     }
 
     public abstract SelectionConsumer createConnectionHandler();
@@ -77,6 +110,8 @@ private boolean checkIfBoundToAllInterfaces(SocketAddress address) {
 
     @Override
     public void run() {
+        for (IOWorker worker : workers) worker.start();
+
         Logger.global.logInfo("WebServer started.");
         while (this.selector.isOpen()) {
             try {
@@ -102,10 +137,13 @@ private void accept(SelectionKey selectionKey) {
         try {
             //noinspection resource
             ServerSocketChannel serverSocketChannel = (ServerSocketChannel) selectionKey.channel();
-            SocketChannel channel = serverSocketChannel.accept();
-            if (channel == null) return;
-            channel.configureBlocking(false);
-            channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, createConnectionHandler());
+            SocketChannel channel;
+            while ((channel = serverSocketChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                IOWorker worker = workers[nextWorker];
+                nextWorker = (nextWorker + 1) % workers.length;
+                worker.register(channel, createConnectionHandler());
+            }
         } catch (IOException e) {
             Logger.global.logDebug("Failed to accept connection: " + e);
         }
@@ -131,7 +169,144 @@ public void close() throws IOException {
             }
         }
 
+        for (IOWorker worker : this.workers) {
+            try {
+                worker.close();
+            } catch (IOException ex) {
+                if (exception == null) exception = ex;
+                else exception.addSuppressed(ex);
+            }
+        }
+
         if (exception != null) throw exception;
     }
 
+    public static int defaultIoThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private class IOWorker extends Thread implements Closeable {
+
+        private final Selector selector;
+        private final Queue<Runnable> pendingRegistrations;
+        private long lastIdleCheck;
+
+        private IOWorker(int index) throws IOException {
+            this.selector = Selector.open();
+            this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+            this.lastIdleCheck = System.currentTimeMillis();
+
+            this.setName("BlueMap-WebServer-IO-" + index);
+            this.setContextClassLoader(BlueMap.class.getClassLoader());
+            this.setDaemon(true);
+        }
+
+        /**
+         * Registers the channel with this worker's selector, on this worker's thread.
+         */
+        public void register(SocketChannel channel, SelectionConsumer consumer) {
+            pendingRegistrations.add(() -> {
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, new Connection(consumer));
+                } catch (IOException e) {
+                    Logger.global.logDebug("Failed to register connection: " + e);
+                    try {
+                        channel.close();
+                    } catch (IOException e2) {
+                        Logger.global.logWarning("Failed to close channel" + e2);
+                    }
+                }
+            });
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (this.selector.isOpen()) {
+                try {
+                    this.selector.select(IDLE_CHECK_INTERVAL);
+
+                    Runnable registration;
+                    while ((registration = pendingRegistrations.poll()) != null)
+                        registration.run();
+
+                    long now = System.currentTimeMillis();
+                    for (SelectionKey selectionKey : this.selector.selectedKeys()) {
+                        Object attachment = selectionKey.attachment();
+                        if (attachment instanceof Connection) {
+                            Connection connection = (Connection) attachment;
+                            connection.lastActivity = now;
+                            connection.consumer.accept(selectionKey);
+                        }
+                    }
+                    this.selector.selectedKeys().clear();
+
+                    if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+                        lastIdleCheck = now;
+                        closeIdleConnections(now);
+                    }
+                } catch (IOException e) {
+                    Logger.global.logDebug("Failed to select channel: " + e);
+                } catch (ClosedSelectorException ignore) {}
+            }
+        }
+
+        private void closeIdleConnections(long now) {
+            for (SelectionKey selectionKey : this.selector.keys()) {
+                if (!selectionKey.isValid()) continue;
+
+                Object attachment = selectionKey.attachment();
+                if (!(attachment instanceof Connection)) continue;
+                Connection connection = (Connection) attachment;
+
+                // connections that are waiting for a request-handler (busy or no interest-ops) are not idle,
+                // and a connection that just changed its interest-ops has been active
+                int interestOps = selectionKey.interestOps();
+                if (interestOps == 0 || interestOps != connection.lastInterestOps || connection.consumer.isBusy()) {
+                    connection.lastInterestOps = interestOps;
+                    connection.lastActivity = now;
+                    continue;
+                }
+
+                if (now - connection.lastActivity > idleTimeout) {
+                    try {
+                        selectionKey.channel().close();
+                    } catch (IOException e) {
+                        Logger.global.logWarning("Failed to close idle channel" + e);
+                    }
+                    connection.consumer.closed();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (SelectionKey selectionKey : this.selector.keys()) {
+                try {
+                    selectionKey.channel().close();
+                } catch (IOException | ClosedSelectorException ignore) {}
+
+                Object attachment = selectionKey.attachment();
+                if (attachment instanceof Connection)
+                    ((Connection) attachment).consumer.closed();
+            }
+
+            this.selector.close();
+            this.selector.wakeup();
+        }
+
+    }
+
+    private static class Connection {
+        private final SelectionConsumer consumer;
+        private long lastActivity;
+        private int lastInterestOps;
+
+        private Connection(SelectionConsumer consumer) {
+            this.consumer = consumer;
+            this.lastActivity = System.currentTimeMillis();
+            this.lastInterestOps = SelectionKey.OP_READ;
+        }
+    }
+
 }
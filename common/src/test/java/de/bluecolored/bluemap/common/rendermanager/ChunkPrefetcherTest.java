@@ -0,0 +1,173 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.world.World;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkPrefetcherTest {
+
+    private static final Vector2i REGION = new Vector2i(0, 0);
+
+    @Test
+    public void testCompletedPrefetch() throws Exception {
+        ChunkPrefetcher prefetcher = new ChunkPrefetcher(1, 1024 * 1024);
+        CountDownLatch done = new CountDownLatch(1);
+        World world = world(filter -> {
+            filter.test(new Vector2i(0, 0));
+            filter.test(new Vector2i(1, 0));
+            done.countDown();
+            return 100;
+        });
+
+        long before = System.currentTimeMillis();
+        assertTrue(prefetcher.prefetch(world, REGION, () -> chunk -> chunk.getX() == 0));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        ChunkPrefetcher.Result result = prefetcher.consume(world, REGION);
+        assertNotNull(result);
+        assertTrue(result.getStartTime() >= before);
+        assertTrue(result.isReloaded(0, 0));
+        assertFalse(result.isReloaded(1, 0)); // rejected by the filter
+        assertFalse(result.isReloaded(2, 0)); // never requested
+
+        // consumed only once
+        assertNull(prefetcher.consume(world, REGION));
+    }
+
+    @Test
+    public void testConsumeWaitsForRunningPrefetch() throws Exception {
+        ChunkPrefetcher prefetcher = new ChunkPrefetcher(1, 1024 * 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        World world = world(filter -> {
+            started.countDown();
+            proceed.await();
+            filter.test(new Vector2i(3, 4));
+            return 100;
+        });
+
+        assertTrue(prefetcher.prefetch(world, REGION, () -> chunk -> true));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<ChunkPrefetcher.Result> result = new AtomicReference<>();
+        Thread consumer = new Thread(() -> result.set(prefetcher.consume(world, REGION)));
+        consumer.start();
+
+        consumer.join(200);
+        assertTrue(consumer.isAlive(), "consume() returned while the prefetch was still running");
+
+        proceed.countDown();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertNotNull(result.get());
+        assertTrue(result.get().isReloaded(3, 4));
+    }
+
+    @Test
+    public void testFailedPrefetch() throws Exception {
+        ChunkPrefetcher prefetcher = new ChunkPrefetcher(1, 1024 * 1024);
+        CountDownLatch failed = new CountDownLatch(1);
+        World world = world(filter -> {
+            filter.test(new Vector2i(0, 0));
+            failed.countDown();
+            throw new IllegalStateException("region could not be read");
+        });
+
+        assertTrue(prefetcher.prefetch(world, REGION, () -> chunk -> true));
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertNull(prefetcher.consume(world, REGION));
+    }
+
+    @Test
+    public void testNoChunkFilter() throws Exception {
+        ChunkPrefetcher prefetcher = new ChunkPrefetcher(1, 1024 * 1024);
+        CountDownLatch supplied = new CountDownLatch(1);
+        World world = world(filter -> {
+            throw new AssertionError("nothing should be preloaded");
+        });
+
+        assertTrue(prefetcher.prefetch(world, REGION, () -> {
+            supplied.countDown();
+            return null;
+        }));
+        assertTrue(supplied.await(5, TimeUnit.SECONDS));
+        assertNull(prefetcher.consume(world, REGION));
+    }
+
+    @Test
+    public void testConsumeCancelsPendingPrefetch() throws Exception {
+        ChunkPrefetcher prefetcher = new ChunkPrefetcher(1, Long.MAX_VALUE);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        World blocked = world(filter -> {
+            blocking.countDown();
+            proceed.await();
+            return 0;
+        });
+        World world = world(filter -> {
+            throw new AssertionError("a consumed prefetch should not be started anymore");
+        });
+
+        // the single prefetch-thread is busy, so the second prefetch stays pending
+        assertTrue(prefetcher.prefetch(blocked, REGION, () -> chunk -> true));
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+        assertTrue(prefetcher.prefetch(world, REGION, () -> chunk -> true));
+
+        assertNull(prefetcher.consume(world, REGION));
+        proceed.countDown();
+        assertNotNull(prefetcher.consume(blocked, REGION));
+    }
+
+    private static World world(Preloader preloader) {
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{ World.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "preloadRegionChunks":
+                    @SuppressWarnings("unchecked")
+                    Predicate<Vector2i> filter = (Predicate<Vector2i>) args[2];
+                    return preloader.preload(filter);
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                case "toString": return "TestWorld";
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Preloader {
+        long preload(Predicate<Vector2i> chunkFilter) throws Exception;
+    }
+
+}
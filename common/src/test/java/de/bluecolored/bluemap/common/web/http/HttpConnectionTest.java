@@ -0,0 +1,114 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpConnectionTest {
+
+    private HttpServer server;
+    private int port;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        server = new HttpServer(request -> {
+            HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+            response.setData(request.getPath());
+            return response;
+        }, 2, 16, 1, Server.DEFAULT_IDLE_TIMEOUT);
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testPipelinedResponsesInOrder() throws IOException {
+        String responses = exchange(
+                "GET /a HTTP/1.1\r\n\r\n" +
+                "GET /b HTTP/1.1\r\n\r\n" +
+                "GET /c HTTP/1.1\r\nConnection: close\r\n\r\n"
+        );
+
+        int a = responses.indexOf("\r\n\r\n/a");
+        int b = responses.indexOf("\r\n\r\n/b");
+        int c = responses.indexOf("\r\n\r\n/c");
+        assertTrue(a >= 0 && a < b && b < c, responses);
+    }
+
+    @Test
+    public void testBadRequest() throws IOException {
+        String responses = exchange(
+                "GET /a HTTP/1.1\r\n\r\n" +
+                "INVALID\r\n\r\n" +
+                "GET /b HTTP/1.1\r\n\r\n"
+        );
+
+        // the valid request is still answered, then the connection is closed after the 400
+        assertTrue(responses.startsWith("HTTP/1.1 200"), responses);
+        assertTrue(responses.contains("\r\n\r\n/a"), responses);
+        assertTrue(responses.contains("HTTP/1.1 400"), responses);
+        assertFalse(responses.contains("/b"), responses);
+    }
+
+    /**
+     * Sends the data and reads everything until the server closes the connection
+     */
+    private String exchange(String data) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(data.getBytes(StandardCharsets.ISO_8859_1));
+            socket.getOutputStream().flush();
+
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpRequestTest {
+
+    @Test
+    public void testSimpleRequest() throws IOException {
+        HttpRequest request = new HttpRequest(InetAddress.getLoopbackAddress());
+        ByteBuffer buffer = buffer("GET /maps/world/settings.json?a=1&b HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertTrue(request.write(buffer));
+        assertFalse(buffer.hasRemaining());
+        assertEquals("GET", request.getMethod());
+        assertEquals("/maps/world/settings.json", request.getPath());
+        assertEquals("1", request.getGETParams().get("a"));
+        assertEquals("", request.getGETParams().get("b"));
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("localhost", request.getHeader("host").getValue());
+        assertEquals(0, request.getData().length);
+    }
+
+    @Test
+    public void testSplitHeaders() throws IOException {
+        HttpRequest request = new HttpRequest(InetAddress.getLoopbackAddress());
+        byte[] bytes = "GET / HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\nAccept-Encoding: br\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        // feed the request byte by byte
+        for (int i = 0; i < bytes.length - 1; i++) {
+            assertFalse(request.write(ByteBuffer.wrap(bytes, i, 1)));
+        }
+        assertTrue(request.write(ByteBuffer.wrap(bytes, bytes.length - 1, 1)));
+
+        assertEquals("localhost", request.getHeader("Host").getValue());
+        assertEquals("gzip, br", request.getHeader("accept-encoding").getValue());
+        assertTrue(request.hasHeaderValue("Accept-Encoding", "br"));
+    }
+
+    @Test
+    public void testContentLengthBody() throws IOException {
+        HttpRequest request = new HttpRequest(InetAddress.getLoopbackAddress());
+
+        assertFalse(request.write(buffer("POST / HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello")));
+        assertTrue(request.write(buffer(" world")));
+        assertEquals("hello world", new String(request.getData(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChunkedBody() throws IOException {
+        HttpRequest request = new HttpRequest(InetAddress.getLoopbackAddress());
+        byte[] bytes = (
+                "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "5\r\nhello\r\n" +
+                "5;ext=1\r\n worl\r\n" +
+                "1\r\nd\r\n" +
+                "0\r\nTrailer: value\r\n\r\n" +
+                "GET /next HTTP/1.1\r\n\r\n"
+        ).getBytes(StandardCharsets.ISO_8859_1);
+
+        // split in uneven parts, so chunk-sizes and chunk-data are split as well
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        int offset = 0;
+        boolean complete = false;
+        while (!complete) {
+            int length = Math.min(7, bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+
+            buffer.flip();
+            complete = request.write(buffer);
+            buffer.compact();
+        }
+
+        assertEquals("hello world", new String(request.getData(), StandardCharsets.UTF_8));
+
+        // the following request is left in the buffer
+        buffer.put(bytes, offset, bytes.length - offset);
+        buffer.flip();
+        assertEquals("GET /next HTTP/1.1\r\n\r\n", StandardCharsets.ISO_8859_1.decode(buffer).toString());
+    }
+
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        ByteBuffer buffer = buffer(
+                "GET /a HTTP/1.1\r\n\r\n" +
+                "POST /b HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc" +
+                "GET /c HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                "GET /d HTTP/1.1\r\n"
+        );
+
+        HttpRequest a = new HttpRequest(InetAddress.getLoopbackAddress());
+        assertTrue(a.write(buffer));
+        assertEquals("/a", a.getPath());
+
+        HttpRequest b = new HttpRequest(InetAddress.getLoopbackAddress());
+        assertTrue(b.write(buffer));
+        assertEquals("/b", b.getPath());
+        assertEquals("abc", new String(b.getData(), StandardCharsets.UTF_8));
+
+        HttpRequest c = new HttpRequest(InetAddress.getLoopbackAddress());
+        assertTrue(c.write(buffer));
+        assertEquals("/c", c.getPath());
+        assertNull(c.getHeader("Content-Length"));
+
+        HttpRequest d = new HttpRequest(InetAddress.getLoopbackAddress());
+        assertFalse(d.write(buffer));
+        assertFalse(buffer.hasRemaining());
+        assertTrue(d.write(buffer("\r\n")));
+        assertEquals("/d", d.getPath());
+    }
+
+    @Test
+    public void testInvalidRequests() {
+        assertThrows(IOException.class, () -> write("GET\r\n\r\n"));
+        assertThrows(IOException.class, () -> write("POST / HTTP/1.1\r\nContent-Length: abc\r\n\r\n"));
+        assertThrows(IOException.class, () -> write("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n"));
+        assertThrows(IOException.class, () -> write("POST / HTTP/1.1\r\nContent-Length: 1073741824\r\n\r\n"));
+        assertThrows(IOException.class, () -> write("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n"));
+        assertThrows(IOException.class, () -> write("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nabc\r\n"));
+    }
+
+    @Test
+    public void testSizeLimits() {
+        StringBuilder longLine = new StringBuilder("GET /");
+        for (int i = 0; i < 20 * 1024; i++) longLine.append('a');
+        assertThrows(IOException.class, () -> write(longLine + " HTTP/1.1\r\n\r\n"));
+
+        StringBuilder manyHeaders = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 100; i++) {
+            manyHeaders.append("X-Header-").append(i).append(": ");
+            for (int j = 0; j < 1024; j++) manyHeaders.append('a');
+            manyHeaders.append("\r\n");
+        }
+        assertThrows(IOException.class, () -> write(manyHeaders + "\r\n"));
+    }
+
+    private static void write(String request) throws IOException {
+        new HttpRequest(InetAddress.getLoopbackAddress()).write(buffer(request));
+    }
+
+    private static ByteBuffer buffer(String data) {
+        return ByteBuffer.wrap(data.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+}
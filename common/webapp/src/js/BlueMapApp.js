@@ -36,6 +36,7 @@ import {getLocalStorage, round, setLocalStorage} from "./Utils";
 import {i18n, setLanguage} from "../i18n";
 import {PlayerMarkerManager} from "./markers/PlayerMarkerManager";
 import {NormalMarkerManager} from "./markers/NormalMarkerManager";
+import {LiveDataStream} from "./markers/LiveDataStream";
 import {reactive} from "vue";
 
 export class BlueMapApp {
@@ -55,6 +56,8 @@ export class BlueMapApp {
         this.playerMarkerManager = null;
         /** @type {NormalMarkerManager} */
         this.markerFileManager = null;
+        /** @type {LiveDataStream} */
+        this.liveDataStream = null;
 
         /** @type {{
          *      version: string,
@@ -251,6 +254,7 @@ export class BlueMapApp {
         let map = this.mapsMap.get(mapId);
         if (!map) return Promise.reject(`There is no map with the id "${mapId}" loaded!`);
 
+        if (this.liveDataStream) this.liveDataStream.close();
         if (this.playerMarkerManager) this.playerMarkerManager.dispose();
         if (this.markerFileManager) this.markerFileManager.dispose();
 
@@ -265,6 +269,8 @@ export class BlueMapApp {
             this.initPlayerMarkerManager(),
             this.initMarkerFileManager()
         ]);
+
+        this.initLiveDataStream();
     }
 
     resetCamera() {
@@ -410,9 +416,6 @@ export class BlueMapApp {
         );
         this.playerMarkerManager.setAutoUpdateInterval(0);
         return this.playerMarkerManager.update()
-            .then(() => {
-                this.playerMarkerManager.setAutoUpdateInterval(1000);
-            })
             .catch(e => {
                 alert(this.events, e, "warning");
                 this.playerMarkerManager.dispose();
@@ -428,15 +431,53 @@ export class BlueMapApp {
 
         this.markerFileManager = new NormalMarkerManager(this.mapViewer.markers, map.data.liveDataRoot + "/live/markers.json", this.events);
         return this.markerFileManager.update()
-            .then(() => {
-                this.markerFileManager.setAutoUpdateInterval(1000 * 10);
-            })
             .catch(e => {
                 alert(this.events, e, "warning");
                 this.markerFileManager.dispose();
             });
     }
 
+    /**
+     * Keeps the player- and marker-managers updated through the live/stream of the map,
+     * or polls the live-data files if the stream is not available.
+     */
+    initLiveDataStream() {
+        if (this.liveDataStream)
+            this.liveDataStream.close();
+        this.liveDataStream = null;
+
+        const map = this.mapViewer.map;
+        if (!map) return;
+
+        const playerMarkerManager = this.playerMarkerManager;
+        const markerFileManager = this.markerFileManager;
+
+        const startPolling = () => {
+            if (playerMarkerManager && !playerMarkerManager.disposed)
+                playerMarkerManager.setAutoUpdateInterval(1000);
+            if (markerFileManager && !markerFileManager.disposed)
+                markerFileManager.setAutoUpdateInterval(1000 * 10);
+        };
+
+        if (typeof EventSource === "undefined") {
+            startPolling();
+            return;
+        }
+
+        this.liveDataStream = new LiveDataStream(
+            map.data.liveDataRoot + "/live/stream",
+            playerData => {
+                if (playerMarkerManager && !playerMarkerManager.disposed)
+                    playerMarkerManager.updateFromData(playerData);
+            },
+            markerData => {
+                if (markerFileManager && !markerFileManager.disposed)
+                    markerFileManager.updateFromData(markerData);
+            },
+            startPolling
+        );
+    }
+
     updateControlsSettings() {
         let mouseInvert = this.appState.controls.invertMouse ? -1 : 1;
 
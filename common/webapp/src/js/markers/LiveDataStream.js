@@ -0,0 +1,98 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Receives the live player- and marker-data from the server-sent events stream of a map.
+ * The stream only sends the changes, so this keeps the full current state and passes it to the callbacks
+ * in the same format as the live/players.json and live/markers.json files.
+ */
+export class LiveDataStream {
+
+    /**
+     * @constructor
+     * @param url {string} - The url of the live/stream endpoint
+     * @param onPlayers {function(Object)} - Called with the current player-data after each update
+     * @param onMarkers {function(Object)} - Called with the current marker-data after each update
+     * @param onUnavailable {function()} - Called once if the stream can not be used (e.g. the map is
+     * served by an external webserver), the stream is closed afterwards
+     */
+    constructor(url, onPlayers, onMarkers, onUnavailable) {
+        /** @type {Map<string, Object>} */
+        this.players = new Map();
+        /** @type {Object<string, Object>} */
+        this.markerSets = {};
+
+        this.onPlayers = onPlayers;
+        this.onMarkers = onMarkers;
+        this.onUnavailable = onUnavailable;
+
+        this.receivedData = false;
+        this.closed = false;
+
+        this.eventSource = new EventSource(url);
+
+        // the server starts each (re-)connection with the full state, so forget the old state
+        this.eventSource.addEventListener("open", () => {
+            this.players.clear();
+            this.markerSets = {};
+        });
+
+        this.eventSource.addEventListener("players", event => {
+            let data = JSON.parse(event.data);
+            data.removed.forEach(uuid => this.players.delete(uuid));
+            data.updated.forEach(player => this.players.set(player.uuid, player));
+
+            this.receivedData = true;
+            this.onPlayers({players: Array.from(this.players.values())});
+        });
+
+        this.eventSource.addEventListener("markers", event => {
+            let data = JSON.parse(event.data);
+            data.removed.forEach(id => delete this.markerSets[id]);
+            Object.assign(this.markerSets, data.updated);
+
+            this.receivedData = true;
+            this.onMarkers(Object.assign({}, this.markerSets));
+        });
+
+        this.eventSource.addEventListener("error", () => {
+            // once the stream worked, the browser keeps reconnecting on its own
+            if (this.receivedData && this.eventSource.readyState !== EventSource.CLOSED) return;
+
+            this.close();
+            this.onUnavailable();
+        });
+    }
+
+    /**
+     * Closes the stream, no more callbacks will be called after this
+     */
+    close() {
+        if (this.closed) return;
+        this.closed = true;
+        this.eventSource.close();
+    }
+
+}
@@ -1,6 +1,7 @@
 plugins {
     `java-library`
     `maven-publish`
+    alias(libs.plugins.jmh)
 }
 
 group = "de.bluecolored"
@@ -39,6 +40,12 @@ dependencies {
     testAnnotationProcessor(libs.lombok)
 }
 
+// benchmarks, run with: ./gradlew :core:jmh
+jmh {
+    jmhVersion = "1.37"
+    profilers.add("gc") // report allocation-rates
+}
+
 java {
     toolchain.languageVersion = JavaLanguageVersion.of(8)
     withSourcesJar()
@@ -0,0 +1,109 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world.mca;
+
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and (with the gc-profiler) the allocation-rate of {@link ChunkGrid#getChunk(int, int)},
+ * which backs {@link MCAWorld#getChunk(int, int)}.
+ * <p>
+ * This only covers the chunk-cache path. {@link MCAWorld} itself is not benchmarked, since it can not be opened
+ * without a <code>level.dat</code> read through the server's NBT-api, so its (now removed) chunk-wrapping does not
+ * show up in a before/after comparison of this benchmark.
+ * <p>
+ * <code>cachedChunks</code> looks up chunks of one region that are all in the cache (the common case while rendering),
+ * <code>uncachedChunks</code> walks over more chunks than the cache can hold, so every lookup is a miss.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkGridBenchmark {
+
+    private static final int CACHE_SIZE = 2048;
+
+    private Path regionFolder;
+    private ChunkGrid<Object> chunkGrid;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        // an empty region-folder, every chunk loads as the empty chunk without any IO
+        regionFolder = Files.createTempDirectory("bluemap-benchmark");
+        chunkGrid = new ChunkGrid<>(new EmptyChunkLoader(), regionFolder, CACHE_SIZE);
+
+        for (int x = 0; x < 32; x++)
+            for (int z = 0; z < 32; z++)
+                chunkGrid.getChunk(x, z);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(regionFolder);
+    }
+
+    @Benchmark
+    public Object cachedChunks() {
+        int i = next++ & 1023;
+        return chunkGrid.getChunk(i & 31, i >> 5);
+    }
+
+    @Benchmark
+    public Object uncachedChunks() {
+        int i = next++ & 4095;
+        return chunkGrid.getChunk(i & 63, i >> 6);
+    }
+
+    private static class EmptyChunkLoader implements ChunkLoader<Object> {
+
+        private static final Object EMPTY = new Object();
+
+        @Override
+        public Object load(byte[] data, int offset, int length, Compression compression) {
+            return EMPTY;
+        }
+
+        @Override
+        public Object emptyChunk() {
+            return EMPTY;
+        }
+
+        @Override
+        public Object erroredChunk() {
+            return EMPTY;
+        }
+
+    }
+
+}
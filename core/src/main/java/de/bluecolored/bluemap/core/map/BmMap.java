@@ -173,6 +173,9 @@ public synchronized void save() {
             } catch (IOException e) {
                 Logger.global.logError("Failed to read or save texture gallery for map '" + getId() + "'!", e);
             }
+
+            // wait for all (batched) writes to be persisted
+            storage.flush();
         } catch (IOException e) {
             Logger.global.logError("Failed to save map data for map '" + getId() + "'!", e);
         }
@@ -38,13 +38,17 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 public class LowresLayer {
 
-    private static final int MAX_PENDING = 200;
+    static final int MAX_PENDING = 200;
     private static final int DISCARD_THRESHOLD = MAX_PENDING / 2;
 
     private static final Vector2iCache VECTOR_2_I_CACHE = new Vector2iCache();
@@ -60,10 +64,23 @@ public class LowresLayer {
     @Nullable private final LowresLayer nextLayer;
 
     private final Map<Vector2i, LowresTile> pendingChanges;
+    private final Runnable pendingChangesListener;
 
     public LowresLayer(
             GridStorage storage, Grid tileGrid, int lodFactor,
             int lod, @Nullable LowresLayer nextLayer
+    ) {
+        this(storage, tileGrid, lodFactor, lod, nextLayer, () -> {});
+    }
+
+    /**
+     * @param pendingChangesListener called (on the rendering thread) whenever this layer has accumulated
+     *                               {@link #MAX_PENDING} or more changed tiles, this should schedule a {@link #save()}
+     */
+    public LowresLayer(
+            GridStorage storage, Grid tileGrid, int lodFactor,
+            int lod, @Nullable LowresLayer nextLayer,
+            Runnable pendingChangesListener
     ) {
         this.storage = storage;
 
@@ -88,11 +105,33 @@ public LowresLayer(
                 .build(tileWeakInstanceCache::get);
 
         this.pendingChanges = new ConcurrentHashMap<>();
+        this.pendingChangesListener = pendingChangesListener;
     }
 
+    /**
+     * Saves all changed tiles of this layer in parallel and writes their reduced versions into the next layer.<br>
+     * Tiles that are changed while they are saved, are marked as changed again and will be saved with the next call.
+     */
     public void save() {
-        pendingChanges.entrySet().removeIf(entry -> saveTile(entry.getKey(), entry.getValue()));
-        if (pendingChanges.size() >= DISCARD_THRESHOLD) {
+        if (pendingChanges.isEmpty()) return;
+
+        // take the current batch, tiles are marked as changed only after they have been changed,
+        // so every change that is not part of this batch will be part of the next one
+        List<Map.Entry<Vector2i, LowresTile>> batch = new ArrayList<>(pendingChanges.size());
+        for (Map.Entry<Vector2i, LowresTile> entry : pendingChanges.entrySet()) {
+            if (pendingChanges.remove(entry.getKey(), entry.getValue()))
+                batch.add(entry);
+        }
+
+        Queue<Map.Entry<Vector2i, LowresTile>> failed = new ConcurrentLinkedQueue<>();
+        BlueMap.THREAD_POOL.submit(() -> batch.parallelStream().forEach(entry -> {
+            if (!saveTile(entry.getKey(), entry.getValue())) failed.add(entry);
+        })).join();
+
+        for (Map.Entry<Vector2i, LowresTile> entry : failed)
+            pendingChanges.putIfAbsent(entry.getKey(), entry.getValue());
+
+        if (pendingChanges.size() >= DISCARD_THRESHOLD && failed.size() >= DISCARD_THRESHOLD) {
             Logger.global.logDebug("Discarding changes of " + pendingChanges.size() + " lowres-tiles that failed to save!");
             pendingChanges.clear();
         }
@@ -104,6 +143,10 @@ public void discard() {
         tileWeakInstanceCache.invalidateAll();
     }
 
+    int getPendingChangesCount() {
+        return pendingChanges.size();
+    }
+
     private LowresTile createTile(Vector2i tilePos) {
         try (InputStream in = storage.read(tilePos.getX(), tilePos.getY())) {
             if (in != null) return new LowresTile(tileGrid.getGridSize(), in);
@@ -123,92 +166,125 @@ private boolean saveTile(Vector2i tilePos, LowresTile tile) {
             return false;
         }
 
+        int[] pixels = tile.snapshot();
+
         // save the tile
         try (OutputStream out = storage.write(tilePos.getX(), tilePos.getY())) {
-            tile.save(out);
+            tile.save(pixels, out);
         } catch (IOException e) {
             Logger.global.logError("Failed to save tile " + tilePos + " (lod: " + lod + ")", e);
             return false;
         }
 
-        if (this.nextLayer == null) return true;
+        if (this.nextLayer != null)
+            reduceIntoNextLayer(tilePos, tile, pixels);
 
-        // write to next LOD (prepare for the most confusing grid-math you will ever see)
-        Color averageColor = new Color();
-        int averageHeight, averageBlockLight;
-        int count;
+        return true;
+    }
+
+    private void reduceIntoNextLayer(Vector2i tilePos, LowresTile tile, int[] pixels) {
+        assert this.nextLayer != null;
 
-        Color color = new Color();
+        // write to next LOD (prepare for the most confusing grid-math you will ever see)
+        int width = tile.getWidth();
+        int heightOffset = tile.getDepth() * width;
 
         int nextLodTileX = Math.floorDiv(tilePos.getX(), lodFactor);
         int nextLodTileY = Math.floorDiv(tilePos.getY(), lodFactor);
-        Vector2i groupCount = new Vector2i(
-                Math.floorDiv(tileGrid.getGridSize().getX(), lodFactor),
-                Math.floorDiv(tileGrid.getGridSize().getY(), lodFactor)
-        );
-
-        for (int gX = 0; gX < groupCount.getX(); gX++) {
-            for (int gY = 0; gY < groupCount.getY(); gY++) {
-                averageColor.set(0, 0, 0, 0, true);
-                averageHeight = 0;
-                averageBlockLight = 0;
-                count = 0;
+        int groupCountX = Math.floorDiv(tileGrid.getGridSize().getX(), lodFactor);
+        int groupCountY = Math.floorDiv(tileGrid.getGridSize().getY(), lodFactor);
+        int count = lodFactor * lodFactor;
+
+        for (int gX = 0; gX < groupCountX; gX++) {
+            for (int gY = 0; gY < groupCountY; gY++) {
+                float r = 0, g = 0, b = 0, a = 0;
+                int averageHeight = 0, averageBlockLight = 0;
+
                 for (int x = 0; x < lodFactor; x++) {
                     for (int y = 0; y < lodFactor; y++) {
-                        count++;
-                        averageColor.add(tile.getColor(gX * lodFactor + x, gY * lodFactor + y, color).premultiplied());
-                        averageHeight += tile.getHeight(gX * lodFactor + x, gY * lodFactor + y);
-                        averageBlockLight += tile.getBlockLight(gX * lodFactor + x, gY * lodFactor + y);
+                        int index = (gY * lodFactor + y) * width + gX * lodFactor + x;
+
+                        // premultiplied color
+                        int color = pixels[index];
+                        float pa = ((color >> 24) & 0xFF) / 255f;
+                        r += ((color >> 16) & 0xFF) / 255f * pa;
+                        g += ((color >> 8) & 0xFF) / 255f * pa;
+                        b += (color & 0xFF) / 255f * pa;
+                        a += pa;
+
+                        int heightAndLight = pixels[heightOffset + index];
+                        int height = heightAndLight & 0x0000FFFF;
+                        if (height > 0x00008000) height |= 0xFFFF0000;
+                        averageHeight += height;
+                        averageBlockLight += (heightAndLight & 0x00FF0000) >> 16;
                     }
                 }
-                averageColor.div(count);
-                averageHeight /= count;
-                averageBlockLight /= count;
+
+                a /= count;
+                if (a > 0f) {
+                    // back to straight color
+                    float m = 1f / (a * count);
+                    r *= m;
+                    g *= m;
+                    b *= m;
+                }
+
+                int averageColor =
+                        ((int) (a * 255) & 0xFF) << 24 |
+                        ((int) (r * 255) & 0xFF) << 16 |
+                        ((int) (g * 255) & 0xFF) << 8 |
+                        ((int) (b * 255) & 0xFF);
 
                 this.nextLayer.set(
                         nextLodTileX,
                         nextLodTileY,
-                        Math.floorMod(tilePos.getX(), lodFactor) * groupCount.getX() + gX,
-                        Math.floorMod(tilePos.getY(), lodFactor) * groupCount.getY() + gY,
+                        Math.floorMod(tilePos.getX(), lodFactor) * groupCountX + gX,
+                        Math.floorMod(tilePos.getY(), lodFactor) * groupCountY + gY,
                         averageColor,
-                        averageHeight,
-                        averageBlockLight
+                        averageHeight / count,
+                        averageBlockLight / count
                 );
             }
         }
-
-        return true;
     }
 
-    private LowresTile accessTile(int x, int z) {
-        Vector2i tilePos = VECTOR_2_I_CACHE.get(x, z);
-        LowresTile tile = tileCache.get(tilePos);
-
-        if (pendingChanges.size() >= MAX_PENDING) save();
-        pendingChanges.put(tilePos, tile);
+    private LowresTile getTile(int x, int z) {
+        return tileCache.get(VECTOR_2_I_CACHE.get(x, z));
+    }
 
-        return tile;
+    private void markChanged(int x, int z, LowresTile tile) {
+        pendingChanges.put(VECTOR_2_I_CACHE.get(x, z), tile);
     }
 
     void set(int cellX, int cellZ, int pixelX, int pixelZ, Color color, int height, int blockLight) {
-        accessTile(cellX, cellZ)
-                .set(pixelX, pixelZ, color, height, blockLight);
+        set(cellX, cellZ, pixelX, pixelZ, color.straight().getInt(), height, blockLight);
+    }
+
+    void set(int cellX, int cellZ, int pixelX, int pixelZ, int color, int height, int blockLight) {
+        setPixel(cellX, cellZ, pixelX, pixelZ, color, height, blockLight);
 
         // for seamless edges
         if (pixelX == 0) {
-            accessTile(cellX - 1, cellZ)
-                    .set(tileGrid.getGridSize().getX(), pixelZ, color, height, blockLight);
+            setPixel(cellX - 1, cellZ, tileGrid.getGridSize().getX(), pixelZ, color, height, blockLight);
         }
 
         if (pixelZ == 0) {
-            accessTile(cellX, cellZ - 1)
-                    .set(pixelX, tileGrid.getGridSize().getY(), color, height, blockLight);
+            setPixel(cellX, cellZ - 1, pixelX, tileGrid.getGridSize().getY(), color, height, blockLight);
         }
 
         if (pixelX == 0 && pixelZ == 0) {
-            accessTile(cellX - 1, cellZ - 1)
-                    .set(tileGrid.getGridSize().getX(), tileGrid.getGridSize().getY(), color, height, blockLight);
+            setPixel(cellX - 1, cellZ - 1, tileGrid.getGridSize().getX(), tileGrid.getGridSize().getY(), color, height, blockLight);
         }
+
+        if (pendingChanges.size() >= MAX_PENDING) pendingChangesListener.run();
+    }
+
+    private void setPixel(int cellX, int cellZ, int pixelX, int pixelZ, int color, int height, int blockLight) {
+        LowresTile tile = getTile(cellX, cellZ);
+        tile.set(pixelX, pixelZ, color, height, blockLight);
+
+        // mark the tile as changed only after the change, so a concurrent save can not miss it
+        markChanged(cellX, cellZ, tile);
     }
 
 }
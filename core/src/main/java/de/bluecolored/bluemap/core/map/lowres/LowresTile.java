@@ -28,75 +28,108 @@
 import de.bluecolored.bluemap.core.util.math.Color;
 
 import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import java.awt.image.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * A lowres-tile, backed by a plain int-array.<br>
+ * The first half of the array contains the (straight) ARGB-colors, the second half contains the packed height and
+ * block-light values. Both are stored row by row with a row-length of {@link #getWidth()}.
+ * This is also the layout of the saved png-image, so no conversion is needed when saving.<br>
+ * <br>
+ * Writing pixels is not synchronized, concurrent writes to different pixels are safe.
+ */
 public class LowresTile {
 
     public static final int HEIGHT_UNDEFINED = Integer.MIN_VALUE;
 
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final int[] ARGB_MASKS = { 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000 };
 
-    private final BufferedImage texture;
     private final Vector2i size;
+    private final int heightOffset;
+    private final int[] pixels;
 
     public LowresTile(Vector2i tileSize) {
         this.size = tileSize.add(1, 1); // add 1 for seamless edges
-        this.texture = new BufferedImage(this.size.getX(), this.size.getY() * 2, BufferedImage.TYPE_INT_ARGB);
+        this.heightOffset = this.size.getX() * this.size.getY();
+        this.pixels = new int[heightOffset * 2];
     }
 
     public LowresTile(Vector2i tileSize, InputStream in) throws IOException {
         this.size = tileSize.add(1, 1); // add 1 for seamless edges
-        this.texture = ImageIO.read(in);
+        this.heightOffset = this.size.getX() * this.size.getY();
+
+        BufferedImage image = ImageIO.read(in);
 
-        if (this.texture == null) {
+        if (image == null) {
             throw new IOException("No registered ImageReader is able to read the image-stream");
         }
 
-        if (this.texture.getWidth() != this.size.getX() || this.texture.getHeight() != this.size.getY() * 2) {
+        if (image.getWidth() != this.size.getX() || image.getHeight() != this.size.getY() * 2) {
             throw new IOException("Size of tile does not match");
         }
+
+        this.pixels = image.getRGB(0, 0, this.size.getX(), this.size.getY() * 2, null, 0, this.size.getX());
     }
 
     public void set(int x, int z, Color color, int height, int blockLight) {
-        lock.readLock().lock();
-        try {
-            texture.setRGB(x, z, color.straight().getInt());
-            texture.setRGB(x, size.getY() + z,
-                    (height & 0x0000FFFF) |
-                            ((blockLight << 16) & 0x00FF0000) |
-                            0xFF000000
-            );
-        } finally {
-            lock.readLock().unlock();
-        }
+        set(x, z, color.straight().getInt(), height, blockLight);
+    }
+
+    public void set(int x, int z, int color, int height, int blockLight) {
+        int index = z * size.getX() + x;
+        pixels[index] = color;
+        pixels[heightOffset + index] =
+                (height & 0x0000FFFF) |
+                ((blockLight << 16) & 0x00FF0000) |
+                0xFF000000;
     }
 
     public Color getColor(int x, int z, Color target) {
-        return target.set(texture.getRGB(x, z));
+        return target.set(pixels[z * size.getX() + x]);
     }
 
     public int getHeight(int x, int z) {
-        int height = texture.getRGB(x, size.getY() + z) & 0x0000FFFF;
+        int height = pixels[heightOffset + z * size.getX() + x] & 0x0000FFFF;
         if (height > 0x00008000)
             return height | 0xFFFF0000;
         return height;
     }
 
     public int getBlockLight(int x, int z) {
-        return (texture.getRGB(x, size.getY() + z) & 0x00FF0000) >> 16;
+        return (pixels[heightOffset + z * size.getX() + x] & 0x00FF0000) >> 16;
+    }
+
+    /**
+     * Creates a copy of all pixels of this tile, in the layout described in the {@link LowresTile class-description}.
+     */
+    public int[] snapshot() {
+        return pixels.clone();
     }
 
     public void save(OutputStream out) throws IOException {
-        lock.writeLock().lock();
-        try {
-            ImageIO.write(texture, "png", out);
-        } finally {
-            lock.writeLock().unlock();
-        }
+        save(snapshot(), out);
+    }
+
+    /**
+     * Writes a {@link #snapshot()} of this tile as png-image.
+     */
+    public void save(int[] snapshot, OutputStream out) throws IOException {
+        // wrap the pixels directly into an image without copying or converting them
+        DataBufferInt buffer = new DataBufferInt(snapshot, snapshot.length);
+        WritableRaster raster = Raster.createPackedRaster(buffer, size.getX(), size.getY() * 2, size.getX(), ARGB_MASKS, null);
+        BufferedImage image = new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+        ImageIO.write(image, "png", out);
+    }
+
+    public int getWidth() {
+        return size.getX();
+    }
+
+    public int getDepth() {
+        return size.getY();
     }
 
 }
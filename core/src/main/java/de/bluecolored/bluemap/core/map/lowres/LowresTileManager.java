@@ -24,11 +24,16 @@
  */
 package de.bluecolored.bluemap.core.map.lowres;
 
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
 import de.bluecolored.bluemap.core.storage.MapStorage;
 import de.bluecolored.bluemap.core.util.Grid;
 import de.bluecolored.bluemap.core.util.math.Color;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class LowresTileManager implements TileMetaConsumer {
 
     private final Grid tileGrid;
@@ -36,6 +41,9 @@ public class LowresTileManager implements TileMetaConsumer {
 
     private final LowresLayer[] layers;
 
+    private final ReentrantLock saveLock = new ReentrantLock();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+
     public LowresTileManager(MapStorage storage, Grid tileGrid, int lodCount, int lodFactor) {
         this.tileGrid = tileGrid;
         this.lodFactor = lodFactor;
@@ -44,22 +52,52 @@ public LowresTileManager(MapStorage storage, Grid tileGrid, int lodCount, int lo
         this.layers = new LowresLayer[lodCount];
         for (int i = lodCount - 1; i >= 0; i--) {
             this.layers[i] = new LowresLayer(storage.lowresTiles(i + 1), tileGrid, lodFactor, i + 1,
-                    (i == lodCount - 1) ? null : layers[i + 1]);
+                    (i == lodCount - 1) ? null : layers[i + 1], this::scheduleSave);
         }
     }
 
-    public synchronized void save() {
-        for (LowresLayer layer : this.layers) {
-            layer.save();
+    /**
+     * Saves all changed tiles, one LOD after the other, so changes of one LOD are propagated through all following LODs.
+     */
+    public void save() {
+        saveLock.lock();
+        try {
+            for (LowresLayer layer : this.layers) {
+                layer.save();
+            }
+        } finally {
+            saveLock.unlock();
         }
     }
 
-    public synchronized void discard() {
-        for (LowresLayer layer : this.layers) {
-            layer.discard();
+    public void discard() {
+        saveLock.lock();
+        try {
+            for (LowresLayer layer : this.layers) {
+                layer.discard();
+            }
+        } finally {
+            saveLock.unlock();
         }
     }
 
+    /**
+     * Schedules an asynchronous {@link #save()}, so rendering threads don't need to wait for tiles being encoded.
+     */
+    private void scheduleSave() {
+        if (!saveScheduled.compareAndSet(false, true)) return;
+
+        BlueMap.THREAD_POOL.execute(() -> {
+            try {
+                save();
+            } catch (Exception ex) {
+                Logger.global.logError("Failed to save lowres-tiles!", ex);
+            } finally {
+                saveScheduled.set(false);
+            }
+        });
+    }
+
     public Grid getTileGrid() {
         return tileGrid;
     }
@@ -79,6 +117,9 @@ public void set(int x, int z, Color color, int height, int blockLight) {
         int localX = tileGrid.getLocalX(x);
         int localZ = tileGrid.getLocalY(z);
         layers[0].set(cellX, cellZ, localX, localZ, color, height, blockLight);
+
+        // if saving can't keep up, the rendering thread has to wait for it
+        if (layers[0].getPendingChangesCount() >= LowresLayer.MAX_PENDING * 5) save();
     }
 
 }
@@ -60,11 +60,11 @@ protected T cell(int x, int z) {
         return cell;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         cells.clear();
     }
 
-    public void save() throws IOException {
+    public synchronized void save() throws IOException {
         for (Map.Entry<Long, T> entry : cells.entrySet()) {
             if (!entry.getValue().isModified()) continue;
             long key = entry.getKey();
@@ -99,7 +99,7 @@ public void save() throws IOException {
         }
     }
 
-    public void load() throws IOException {
+    public synchronized void load() throws IOException {
         List<GridStorage.Cell> cellList = new ArrayList<>();
         storage.stream().forEach(cell -> {
             try {
@@ -34,7 +34,7 @@ public MapChunkState(GridStorage storage) {
         super(storage, ChunkInfoRegion.class);
     }
 
-    public long get(int x, int z) {
+    public synchronized long get(int x, int z) {
         return cell(x >> SHIFT, z >> SHIFT).get(x, z);
     }
 
@@ -39,7 +39,7 @@ public MapTileState(GridStorage storage) {
         super(storage, TileInfoRegion.class);
     }
 
-    public TileInfoRegion.TileInfo get(int x, int z) {
+    public synchronized TileInfoRegion.TileInfo get(int x, int z) {
         return cell(x >> SHIFT, z >> SHIFT).get(x, z);
     }
 
@@ -38,6 +38,20 @@ public interface GridStorage {
      */
     @Nullable CompressedInputStream read(int x, int z) throws IOException;
 
+    /**
+     * Returns a fingerprint of the item at the given position, or null if there is no item stored or if this storage
+     * can not provide a fingerprint without reading the item.<br>
+     * The fingerprint changes whenever the item-data changes and only consists of the characters <code>[0-9a-f]</code>.
+     *
+     * @param x the x position in the grid
+     * @param z the z position in the grid
+     * @return the fingerprint of the item, or null
+     * @throws IOException if an I/O error occurs
+     */
+    default @Nullable String fingerprint(int x, int z) throws IOException {
+        return null;
+    }
+
     /**
      * Deletes the item from this storage at the given position.
      *
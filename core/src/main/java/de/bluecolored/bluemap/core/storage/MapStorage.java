@@ -25,6 +25,8 @@
 package de.bluecolored.bluemap.core.storage;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.DoublePredicate;
 
 public interface MapStorage {
@@ -114,6 +116,24 @@ default void delete() throws IOException {
      */
     void delete(DoublePredicate onProgress) throws IOException;
 
+    /**
+     * Splits the deletion of this map into parts that can be deleted independently and in parallel.<br>
+     * Once all parts are deleted, {@link #delete(DoublePredicate)} still needs to be called to delete whatever remains
+     * of the map. Storages that can not split their deletion return an empty list.
+     *
+     * @return the parts this map can be deleted in
+     * @throws IOException if an I/O error occurs
+     */
+    default List<DeletePart> deleteParts() throws IOException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Makes sure all data written to this storage so far is persisted.
+     * Storages that write asynchronously (e.g. in batches) wait here until all pending writes are done.
+     */
+    default void flush() throws IOException {}
+
     /**
      * Tests whether this map currently exists on the storage or not.
      *
@@ -135,4 +155,14 @@ static String escapeAssetName(String name) {
                 .replace("..", "_.");
     }
 
-}
\ No newline at end of file
+    /**
+     * A part of a map that can be deleted independently of the other parts
+     */
+    @FunctionalInterface
+    interface DeletePart {
+
+        void delete() throws IOException;
+
+    }
+
+}
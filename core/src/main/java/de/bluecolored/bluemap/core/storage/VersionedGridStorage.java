@@ -0,0 +1,120 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import de.bluecolored.bluemap.core.storage.compression.CompressedInputStream;
+import de.bluecolored.bluemap.core.util.stream.OnCloseOutputStream;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * A {@link GridStorage} wrapper that keeps track of a version for each cell.<br>
+ * The version of a cell changes every time the cell is written (after the {@link OutputStream} got closed) or deleted
+ * through this storage. This allows caching data derived from a cell, using the version to detect outdated entries.
+ * <p>
+ * <i>Versions are tracked in a fixed amount of slots, so a cell's version may also change
+ * if a different cell is modified. Changes that are not made through this storage are not tracked.</i>
+ */
+public class VersionedGridStorage implements GridStorage {
+
+    private static final int VERSION_SLOTS = 4096;
+
+    @Getter
+    private final GridStorage delegate;
+    private final AtomicLongArray versions;
+
+    public VersionedGridStorage(GridStorage delegate) {
+        this.delegate = delegate;
+        this.versions = new AtomicLongArray(VERSION_SLOTS);
+    }
+
+    /**
+     * Returns the current version of the cell at the given position.
+     *
+     * @param x the x position in the grid
+     * @param z the z position in the grid
+     * @return the version of the cell
+     */
+    public long getVersion(int x, int z) {
+        return versions.get(slot(x, z));
+    }
+
+    @Override
+    public OutputStream write(int x, int z) throws IOException {
+        return new OnCloseOutputStream(delegate.write(x, z), () -> versions.incrementAndGet(slot(x, z)));
+    }
+
+    @Override
+    public @Nullable CompressedInputStream read(int x, int z) throws IOException {
+        return delegate.read(x, z);
+    }
+
+    @Override
+    public @Nullable String fingerprint(int x, int z) throws IOException {
+        return delegate.fingerprint(x, z);
+    }
+
+    @Override
+    public void delete(int x, int z) throws IOException {
+        try {
+            delegate.delete(x, z);
+        } finally {
+            versions.incrementAndGet(slot(x, z));
+        }
+    }
+
+    @Override
+    public boolean exists(int x, int z) throws IOException {
+        return delegate.exists(x, z);
+    }
+
+    @Override
+    public ItemStorage cell(int x, int z) {
+        return new GridStorageCell(this, x, z);
+    }
+
+    @Override
+    public Stream<Cell> stream() throws IOException {
+        return delegate.stream()
+                .<Cell>map(cell -> new GridStorageCell(this, cell.getX(), cell.getZ()));
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    private static int slot(int x, int z) {
+        int hash = x * 31 + z;
+        hash ^= hash >>> 16;
+        return hash & (VERSION_SLOTS - 1);
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.file;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.GridStorage;
+import de.bluecolored.bluemap.core.storage.ItemStorage;
+import de.bluecolored.bluemap.core.storage.compression.CompressedInputStream;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.util.stream.OnCloseOutputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A {@link GridStorage} that packs the items of each {@link TileArchive#SIZE}x{@link TileArchive#SIZE} region
+ * into a single {@link TileArchive}-file instead of writing one file per item.<br>
+ * There is never more than one open {@link TileArchive} per file: archives are always closed atomically with their
+ * removal from the cache, so the archive for the same file can only be opened again once the old one is closed.
+ */
+class ArchiveGridStorage implements GridStorage {
+
+    private static final String ARCHIVE_SUFFIX = ".archive";
+    private static final Pattern ARCHIVE_NAME_PATTERN = Pattern.compile("x(-?\\d+)z(-?\\d+)");
+    private static final int MAX_OPEN_ARCHIVES = 16;
+    private static final int MAX_RETRIES = 3;
+
+    private final Path root;
+    private final String suffix;
+    private final Compression compression;
+
+    private final LoadingCache<Long, TileArchive> archives;
+
+    public ArchiveGridStorage(Path root, String suffix, Compression compression) {
+        this.root = root;
+        this.suffix = suffix + ARCHIVE_SUFFIX;
+        this.compression = compression;
+
+        this.archives = Caffeine.newBuilder()
+                .maximumSize(MAX_OPEN_ARCHIVES)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .<Long, TileArchive>evictionListener((key, archive, cause) -> {
+                    // called synchronously while the entry is evicted
+                    if (archive != null) closeQuietly(archive);
+                })
+                .build(key -> new TileArchive(getArchivePath((int) (key >> 32), (int) (long) key)));
+    }
+
+    @Override
+    public OutputStream write(int x, int z) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        return new OnCloseOutputStream(compression.compress(bytes), () -> {
+            byte[] data = bytes.toByteArray();
+            access(x, z, (archive, index) -> {
+                archive.write(index, data);
+                return null;
+            });
+        });
+    }
+
+    @Override
+    public @Nullable CompressedInputStream read(int x, int z) throws IOException {
+        byte[] data = access(x, z, TileArchive::read);
+        if (data == null) return null;
+        return new CompressedInputStream(new ByteArrayInputStream(data), compression);
+    }
+
+    /**
+     * The fingerprint of an archived item consists of its length and crc32-checksum
+     */
+    @Override
+    public @Nullable String fingerprint(int x, int z) throws IOException {
+        return access(x, z, TileArchive::fingerprint);
+    }
+
+    @Override
+    public void delete(int x, int z) throws IOException {
+        access(x, z, (archive, index) -> {
+            archive.delete(index);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean exists(int x, int z) throws IOException {
+        return access(x, z, TileArchive::exists);
+    }
+
+    @Override
+    public ItemStorage cell(int x, int z) {
+        return new GridStorageCell(this, x, z);
+    }
+
+    @SuppressWarnings("resource")
+    @Override
+    public Stream<Cell> stream() throws IOException {
+        if (!Files.exists(root)) return Stream.empty();
+        return Files.list(root)
+                .filter(Files::isRegularFile)
+                .<Cell>flatMap(archivePath -> {
+                    String name = archivePath.getFileName().toString();
+                    if (!name.endsWith(suffix)) return Stream.empty();
+                    name = name.substring(0, name.length() - suffix.length());
+
+                    Matcher matcher = ARCHIVE_NAME_PATTERN.matcher(name);
+                    if (!matcher.matches()) return Stream.empty();
+                    int rx = Integer.parseInt(matcher.group(1));
+                    int rz = Integer.parseInt(matcher.group(2));
+
+                    int[] indices;
+                    try {
+                        indices = access(rx << TileArchive.SIZE_BITS, rz << TileArchive.SIZE_BITS,
+                                (archive, index) -> archive.indices());
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+
+                    return Arrays.stream(indices)
+                            .<Cell>mapToObj(index -> new GridStorageCell(this,
+                                    (rx << TileArchive.SIZE_BITS) | (index & (TileArchive.SIZE - 1)),
+                                    (rz << TileArchive.SIZE_BITS) | (index >> TileArchive.SIZE_BITS)
+                            ));
+                });
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    /**
+     * Closes all open archives, e.g. because their files are going to be deleted
+     */
+    public void closeArchives() {
+        for (Long key : archives.asMap().keySet())
+            closeArchive(key, null);
+    }
+
+    public Path getArchivePath(int rx, int rz) {
+        return root.resolve("x" + rx + "z" + rz + suffix);
+    }
+
+    private <R> R access(int x, int z, ArchiveAction<R> action) throws IOException {
+        int rx = x >> TileArchive.SIZE_BITS, rz = z >> TileArchive.SIZE_BITS;
+        long key = (long) rx << 32 | rz & 0xFFFFFFFFL;
+        int index = TileArchive.index(x, z);
+
+        for (int tries = 1;; tries++) {
+            TileArchive archive;
+            try {
+                archive = archives.get(key);
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+                throw ex;
+            }
+            assert archive != null;
+
+            try {
+                return action.apply(archive, index);
+            } catch (ClosedChannelException ex) {
+                // the archive got evicted (or its channel got closed by an interrupt) in the meantime
+                // -> drop it and try again with a freshly opened one
+                closeArchive(key, archive);
+                if (tries >= MAX_RETRIES) throw ex;
+            }
+        }
+    }
+
+    /**
+     * Removes the archive from the cache and closes it, both atomically
+     * @param expected only close the archive if it is this instance, or null to close any archive
+     */
+    private void closeArchive(long key, @Nullable TileArchive expected) {
+        archives.asMap().computeIfPresent(key, (k, archive) -> {
+            if (expected != null && archive != expected) return archive;
+            closeQuietly(archive);
+            return null;
+        });
+    }
+
+    private static void closeQuietly(TileArchive archive) {
+        try {
+            archive.close();
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to close tile-archive!", ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArchiveAction<R> {
+        R apply(TileArchive archive, int index) throws IOException;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.file;
+
+import de.bluecolored.bluemap.core.storage.compression.CompressedInputStream;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link CompressedInputStream} that is reading from a file.<br>
+ * The underlying {@link FileChannel} is exposed so the (still compressed) data can be transferred
+ * directly from the file, e.g. using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ */
+public class CompressedFileInputStream extends CompressedInputStream {
+
+    private final FileChannel channel;
+
+    public CompressedFileInputStream(FileChannel channel, Compression compression) {
+        super(Channels.newInputStream(channel), compression);
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the {@link FileChannel} this stream is reading from.
+     * Reading from the channel also advances this stream, and closing this stream closes the channel.
+     *
+     * @return the file-channel of this stream
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the size of the (compressed) file-data.
+     *
+     * @return the size of the file in bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+}
@@ -36,9 +36,12 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.LinkedList;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -63,6 +66,19 @@ public OutputStream write(int x, int z) throws IOException {
         return cell(x, z).read();
     }
 
+    /**
+     * The fingerprint of a file-item consists of the file-size and its last-modified time
+     */
+    @Override
+    public @Nullable String fingerprint(int x, int z) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(getItemPath(x, z), BasicFileAttributes.class);
+            return String.format("%x%016x", attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
     @Override
     public void delete(int x, int z) throws IOException {
         cell(x, z).delete();
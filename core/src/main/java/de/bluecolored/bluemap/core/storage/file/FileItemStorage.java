@@ -34,6 +34,7 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -61,7 +62,7 @@ public OutputStream write() throws IOException {
     public @Nullable CompressedInputStream read() throws IOException {
         if (!Files.exists(file)) return null;
         try {
-            return new CompressedInputStream(Files.newInputStream(file), compression);
+            return new CompressedFileInputStream(FileChannel.open(file, StandardOpenOption.READ), compression);
         } catch (FileNotFoundException | NoSuchFileException ex) {
             return null;
         }
@@ -29,6 +29,7 @@
 import de.bluecolored.bluemap.core.storage.GridStorage;
 import de.bluecolored.bluemap.core.storage.ItemStorage;
 import de.bluecolored.bluemap.core.storage.MapStorage;
+import de.bluecolored.bluemap.core.storage.VersionedGridStorage;
 import de.bluecolored.bluemap.core.storage.compression.Compression;
 import de.bluecolored.bluemap.core.util.DeletingPathVisitor;
 import de.bluecolored.bluemap.core.util.FileHelper;
@@ -36,7 +37,10 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.DoublePredicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -53,27 +57,37 @@ public class FileMapStorage implements MapStorage {
 
     private final GridStorage hiresGridStorage;
     private final LoadingCache<Integer, GridStorage> lowresGridStorages;
+    private final List<ArchiveGridStorage> archiveGridStorages;
     private final GridStorage tileStateStorage;
     private final GridStorage chunkStateStorage;
 
     public FileMapStorage(Path root, Compression compression, boolean atomic) {
+        this(root, compression, atomic, false);
+    }
+
+    /**
+     * @param tileArchives if true, hires- and lowres-tiles are packed into {@link TileArchive}s
+     *                     instead of being stored as one file per tile
+     */
+    public FileMapStorage(Path root, Compression compression, boolean atomic, boolean tileArchives) {
         this.root = root;
         this.compression = compression;
         this.atomic = atomic;
+        this.archiveGridStorages = new CopyOnWriteArrayList<>();
 
-        this.hiresGridStorage = new FileGridStorage(
+        this.hiresGridStorage = new VersionedGridStorage(tileGridStorage(
                 root.resolve(TILES_PATH).resolve("0"),
                 ".prbm" + compression.getFileSuffix(),
                 compression,
-                atomic
-        );
+                tileArchives
+        ));
 
-        this.lowresGridStorages = Caffeine.newBuilder().build(lod -> new FileGridStorage(
+        this.lowresGridStorages = Caffeine.newBuilder().build(lod -> new VersionedGridStorage(tileGridStorage(
                 root.resolve(TILES_PATH).resolve(String.valueOf(lod)),
                 ".png",
                 Compression.NONE,
-                atomic
-        ));
+                tileArchives
+        )));
 
         this.tileStateStorage = new FileGridStorage(
                 root.resolve(RENDER_STATE_PATH),
@@ -91,6 +105,15 @@ public FileMapStorage(Path root, Compression compression, boolean atomic) {
 
     }
 
+    private GridStorage tileGridStorage(Path root, String suffix, Compression compression, boolean tileArchives) {
+        if (tileArchives) {
+            ArchiveGridStorage archiveGridStorage = new ArchiveGridStorage(root, suffix, compression);
+            archiveGridStorages.add(archiveGridStorage);
+            return archiveGridStorage;
+        }
+        return new FileGridStorage(root, suffix, compression, atomic);
+    }
+
     @Override
     public GridStorage hiresTiles() {
         return hiresGridStorage;
@@ -149,6 +172,9 @@ public ItemStorage players() {
 
     @Override
     public void delete(DoublePredicate onProgress) throws IOException {
+        // archives are deleted, don't keep writing to their files
+        archiveGridStorages.forEach(ArchiveGridStorage::closeArchives);
+
         if (!Files.exists(root)) return;
 
         final int subFilesCount;
@@ -175,6 +201,27 @@ public void delete(DoublePredicate onProgress) throws IOException {
             Files.walkFileTree(root, DeletingPathVisitor.INSTANCE);
     }
 
+    /**
+     * Each file or folder three levels below the map-root (e.g. <code>tiles/0/x1</code>) is a separate part
+     */
+    @Override
+    public List<DeletePart> deleteParts() throws IOException {
+        // the parts delete the archive-files, so they need to be closed before
+        archiveGridStorages.forEach(ArchiveGridStorage::closeArchives);
+
+        if (!Files.exists(root)) return Collections.emptyList();
+
+        try (Stream<Path> pathStream = FileHelper.walk(root, 3)) {
+            return pathStream
+                    .filter(path -> root.relativize(path).getNameCount() == 3)
+                    .<DeletePart>map(path -> () -> {
+                        if (Files.exists(path))
+                            Files.walkFileTree(path, DeletingPathVisitor.INSTANCE);
+                    })
+                    .collect(Collectors.toList());
+        }
+    }
+
     @Override
     public boolean exists() throws IOException {
         return Files.exists(root);
@@ -41,10 +41,14 @@ public class FileStorage implements Storage {
     private final LoadingCache<String, FileMapStorage> mapStorages;
 
     public FileStorage(Path root, Compression compression, boolean atomic) {
+        this(root, compression, atomic, false);
+    }
+
+    public FileStorage(Path root, Compression compression, boolean atomic, boolean tileArchives) {
         this.root = root;
 
         mapStorages = Caffeine.newBuilder()
-                .build(id -> new FileMapStorage(root.resolve(id), compression, atomic));
+                .build(id -> new FileMapStorage(root.resolve(id), compression, atomic, tileArchives));
     }
 
     @Override
@@ -0,0 +1,505 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.file;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A single file containing up to {@link #SIZE}x{@link #SIZE} grid-items.
+ * <p>
+ * The file starts with a header containing an index-entry (offset, length and crc32 of the data) for each item.
+ * Item-data is only ever appended to the file, the old data of an overwritten or deleted item stays in the file
+ * until the archive gets compacted, which happens once there is more unused than used data in the file.<br>
+ * The index is kept in memory, so checking if an item exists needs no IO besides a stat of the file,
+ * and reading an item is a single read.
+ * <p>
+ * Before each access, the size, last-modified time and file-key of the file are compared to the state this archive
+ * last knew of, and the index is reloaded if the file has been changed or replaced by someone else
+ * (e.g. another process rendering the map). Only one process may write to an archive at a time though.
+ */
+class TileArchive implements Closeable {
+
+    static final int SIZE_BITS = 5;
+    static final int SIZE = 1 << SIZE_BITS;
+    static final int ENTRY_COUNT = SIZE * SIZE;
+
+    private static final int MAGIC = 0x424D5441; // "BMTA"
+    private static final int VERSION = 1;
+    private static final int ENTRY_SIZE = 16; // long offset, int length, int crc32
+    private static final int HEADER_SIZE = 8 + ENTRY_COUNT * ENTRY_SIZE;
+    private static final long MIN_COMPACTION_WASTE = 1024 * 1024;
+
+    private final Path path;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // an offset of 0 means there is no item
+    private long[] offsets = new long[ENTRY_COUNT];
+    private final int[] lengths = new int[ENTRY_COUNT];
+    private final int[] checksums = new int[ENTRY_COUNT];
+
+    private @Nullable FileChannel channel; // null as long as the file doesn't exist
+    private long fileSize, usedSize;
+    private int itemCount;
+    private boolean closed;
+
+    // the state of the file when this archive last read or wrote it
+    private long lastModified;
+    private @Nullable Object fileKey;
+
+    TileArchive(Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) open();
+    }
+
+    static int index(int x, int z) {
+        return (z & (SIZE - 1)) << SIZE_BITS | (x & (SIZE - 1));
+    }
+
+    public byte @Nullable [] read(int index) throws IOException {
+        lockRead();
+        try {
+            if (channel == null || offsets[index] == 0) return null;
+
+            ByteBuffer buffer = ByteBuffer.allocate(lengths[index]);
+            readFully(channel, buffer, offsets[index]);
+            byte[] data = buffer.array();
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            if ((int) crc.getValue() != checksums[index])
+                throw new IOException("Invalid tile-archive (checksum mismatch for entry " + index + "): " + path);
+
+            return data;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean exists(int index) throws IOException {
+        lockRead();
+        try {
+            return offsets[index] != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The fingerprint of an item consists of its length and crc32-checksum
+     */
+    public @Nullable String fingerprint(int index) throws IOException {
+        lockRead();
+        try {
+            if (offsets[index] == 0) return null;
+            return String.format("%x%08x", lengths[index], checksums[index]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the indices of all existing items
+     */
+    public int[] indices() throws IOException {
+        lockRead();
+        try {
+            int[] indices = new int[itemCount];
+            int i = 0;
+            for (int index = 0; index < ENTRY_COUNT; index++) {
+                if (offsets[index] != 0) indices[i++] = index;
+            }
+            return indices;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void write(int index, byte[] data) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (isOutdated()) reload();
+            if (channel == null) create();
+            assert channel != null;
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+
+            // append the data first, the item only gets replaced once the index-entry is written
+            long offset = fileSize;
+            writeFully(channel, ByteBuffer.wrap(data), offset);
+            fileSize += data.length;
+
+            removeEntry(index);
+            offsets[index] = offset;
+            lengths[index] = data.length;
+            checksums[index] = (int) crc.getValue();
+            usedSize += data.length;
+            itemCount++;
+            writeEntry(index);
+
+            long waste = fileSize - HEADER_SIZE - usedSize;
+            if (waste > MIN_COMPACTION_WASTE && waste > usedSize) {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    // the item is written, a failed compaction only means the archive stays larger for now
+                    Logger.global.logWarning("Failed to compact tile-archive '" + path + "': " + ex);
+                }
+            }
+
+            if (!closed) updateFileState();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(int index) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (isOutdated()) reload();
+            if (channel == null || offsets[index] == 0) return;
+
+            removeEntry(index);
+            if (itemCount == 0) {
+                // the archive is empty, no need to keep the file
+                channel.close();
+                channel = null;
+                Files.deleteIfExists(path);
+                return;
+            }
+
+            writeEntry(index);
+            updateFileState();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            if (channel != null) channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the archive with only the used data.<br>
+     * The current file stays in use until the compacted file has replaced it. If anything fails, the archive
+     * continues with the current (uncompacted) file, or gets closed if that isn't possible either,
+     * so it can be opened again from whatever is on disk.
+     */
+    private void compact() throws IOException {
+        assert channel != null;
+
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        long[] newOffsets = new long[ENTRY_COUNT];
+        long position;
+
+        try {
+            position = writeCompacted(tempPath, newOffsets);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempPath);
+            throw ex;
+        }
+
+        try {
+            replace(tempPath);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempPath);
+            reopen();
+            throw ex;
+        }
+
+        reopen();
+        offsets = newOffsets;
+        fileSize = position;
+    }
+
+    /**
+     * Writes all used data to the given file and fills the new offsets
+     * @return the size of the written file
+     */
+    private long writeCompacted(Path tempPath, long[] newOffsets) throws IOException {
+        assert channel != null;
+        long position = HEADER_SIZE;
+
+        try (FileChannel out = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int index = 0; index < ENTRY_COUNT; index++) {
+                if (offsets[index] == 0) continue;
+
+                long transferred = 0;
+                while (transferred < lengths[index]) {
+                    out.position(position + transferred);
+                    long count = channel.transferTo(offsets[index] + transferred, lengths[index] - transferred, out);
+                    if (count <= 0) throw new EOFException("Unexpected end of tile-archive: " + path);
+                    transferred += count;
+                }
+
+                newOffsets[index] = position;
+                position += lengths[index];
+            }
+
+            writeFully(out, createHeader(newOffsets), 0);
+            out.force(true);
+        }
+
+        return position;
+    }
+
+    /**
+     * Replaces the archive-file with the given file, the current channel is only closed if that is needed to replace it
+     */
+    private void replace(Path file) throws IOException {
+        assert channel != null;
+
+        try {
+            move(file, path);
+        } catch (IOException ex) {
+            // some platforms (e.g. windows) don't allow replacing a file that is still open
+            channel.close();
+            try {
+                move(file, path);
+            } catch (IOException ex2) {
+                ex2.addSuppressed(ex);
+                throw ex2;
+            }
+        }
+    }
+
+    /**
+     * Opens a new channel to the archive-file, or marks this archive as closed if that fails
+     */
+    private void reopen() throws IOException {
+        assert channel != null;
+
+        channel.close();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            closed = true;
+            throw ex;
+        }
+    }
+
+    /**
+     * Acquires the read-lock, after making sure this archive is open and its index is up-to-date with the file
+     */
+    private void lockRead() throws IOException {
+        lock.readLock().lock();
+        boolean outdated;
+        try {
+            checkOpen();
+            outdated = isOutdated();
+        } catch (IOException | RuntimeException ex) {
+            lock.readLock().unlock();
+            throw ex;
+        }
+        if (!outdated) return;
+
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (isOutdated()) reload();
+            lock.readLock().lock(); // downgrade to the read-lock
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if the file has been created, changed, replaced or deleted since this archive last read or wrote it
+     */
+    private boolean isOutdated() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            return channel != null;
+        }
+
+        return channel == null ||
+                attributes.size() != fileSize ||
+                attributes.lastModifiedTime().toMillis() != lastModified ||
+                !Objects.equals(attributes.fileKey(), fileKey);
+    }
+
+    /**
+     * Drops the index and reads it again from the current file
+     */
+    private void reload() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+
+        offsets = new long[ENTRY_COUNT];
+        Arrays.fill(lengths, 0);
+        Arrays.fill(checksums, 0);
+        fileSize = 0;
+        usedSize = 0;
+        itemCount = 0;
+
+        try {
+            if (Files.exists(path)) open();
+        } catch (IOException ex) {
+            closed = true;
+            throw ex;
+        }
+    }
+
+    private void updateFileState() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        lastModified = attributes.lastModifiedTime().toMillis();
+        fileKey = attributes.fileKey();
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) throw new IOException("Invalid tile-archive (too small): " + path);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+
+            if (header.getInt() != MAGIC) throw new IOException("Invalid tile-archive (wrong magic): " + path);
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported tile-archive version " + version + ": " + path);
+
+            for (int index = 0; index < ENTRY_COUNT; index++) {
+                offsets[index] = header.getLong();
+                lengths[index] = header.getInt();
+                checksums[index] = header.getInt();
+
+                if (offsets[index] != 0) {
+                    if (offsets[index] < HEADER_SIZE || offsets[index] + lengths[index] > fileSize)
+                        throw new IOException("Invalid tile-archive (entry " + index + " out of bounds): " + path);
+                    usedSize += lengths[index];
+                    itemCount++;
+                }
+            }
+
+            updateFileState();
+        } catch (IOException ex) {
+            channel.close();
+            channel = null;
+            throw ex;
+        }
+    }
+
+    private void create() throws IOException {
+        Files.createDirectories(path.toAbsolutePath().normalize().getParent());
+        try {
+            // never truncate an existing file, it might contain items this instance doesn't know about
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException ex) {
+            open();
+            return;
+        }
+        writeFully(channel, createHeader(offsets), 0);
+        fileSize = HEADER_SIZE;
+        updateFileState();
+    }
+
+    private void removeEntry(int index) {
+        if (offsets[index] == 0) return;
+        usedSize -= lengths[index];
+        itemCount--;
+        offsets[index] = 0;
+        lengths[index] = 0;
+        checksums[index] = 0;
+    }
+
+    private void writeEntry(int index) throws IOException {
+        assert channel != null;
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(offsets[index]).putInt(lengths[index]).putInt(checksums[index]);
+        entry.flip();
+        writeFully(channel, entry, 8 + (long) index * ENTRY_SIZE);
+    }
+
+    private ByteBuffer createHeader(long[] offsets) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION);
+        for (int index = 0; index < ENTRY_COUNT; index++) {
+            header.putLong(offsets[index]);
+            header.putInt(offsets[index] != 0 ? lengths[index] : 0);
+            header.putInt(offsets[index] != 0 ? checksums[index] : 0);
+        }
+        header.flip();
+        return header;
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (closed || (channel != null && !channel.isOpen()))
+            throw new ClosedChannelException();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.kv;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.bluecolored.bluemap.core.storage.GridStorage;
+import de.bluecolored.bluemap.core.storage.ItemStorage;
+import de.bluecolored.bluemap.core.storage.KeyedMapStorage;
+import de.bluecolored.bluemap.core.storage.VersionedGridStorage;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.util.Key;
+
+import java.io.IOException;
+import java.util.function.DoublePredicate;
+
+public class KVMapStorage extends KeyedMapStorage {
+
+    private final String mapId;
+    private final KVStore store;
+
+    private final Cache<Key, ItemStorage> itemStorages = Caffeine.newBuilder().build();
+    private final Cache<Key, GridStorage> gridStorages = Caffeine.newBuilder().build();
+
+    public KVMapStorage(String mapId, KVStore store, Compression compression) {
+        super(compression);
+
+        this.mapId = mapId;
+        this.store = store;
+    }
+
+    @Override
+    public ItemStorage item(Key key, Compression compression) {
+        return itemStorages.get(key, k -> new KVItemStorage(store, mapId, key, compression));
+    }
+
+    @Override
+    public GridStorage grid(Key key, Compression compression) {
+        return gridStorages.get(key, k -> new VersionedGridStorage(new KVGridStorage(store, mapId, key, compression)));
+    }
+
+    @Override
+    public void delete(DoublePredicate onProgress) throws IOException {
+        // a single record drops the whole map
+        store.write(new KVStore.Batch().deleteMap(mapId));
+        store.sync();
+        onProgress.test(1d);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        store.sync();
+    }
+
+    @Override
+    public boolean exists() throws IOException {
+        return store.hasMap(mapId);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return store.isClosed();
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.kv;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import de.bluecolored.bluemap.core.storage.MapStorage;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class KVStorage implements Storage {
+
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    @Getter private final Path root;
+    private final KVStore store;
+    private final LoadingCache<String, KVMapStorage> mapStorages;
+
+    public KVStorage(Path root, Compression compression) {
+        this(root, compression, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxSegmentSize the size (in bytes) after which a new segment-file is started
+     */
+    public KVStorage(Path root, Compression compression, long maxSegmentSize) {
+        this.root = root;
+        this.store = new KVStore(root, maxSegmentSize);
+
+        mapStorages = Caffeine.newBuilder()
+                .build(id -> new KVMapStorage(id, store, compression));
+    }
+
+    @Override
+    public void initialize() throws IOException {
+        store.open();
+    }
+
+    @Override
+    public MapStorage map(String mapId) {
+        return mapStorages.get(mapId);
+    }
+
+    @Override
+    public Stream<String> mapIds() throws IOException {
+        return store.mapIds();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return store.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+}
@@ -0,0 +1,1059 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.kv;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.util.Key;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded, log-structured key-value store for map-data.
+ * <p>
+ * All changes are appended as checksummed records to segment-files in the root folder.
+ * An ordered index of all live values is kept in memory and rebuilt when the store is opened.
+ * Each live grid-item costs about 100 bytes of heap in this index (skip-list node, boxed position and entry),
+ * so e.g. a map with 10 million tiles needs about 1GB of heap.<br>
+ * Once a segment is sealed, a hint-file with the position and key of each of its records (but no values) is written
+ * next to it, so opening the store only needs to read the hint-files and the active segment.
+ * Only the active segment is replayed completely: a torn or corrupted record (e.g. after a crash) is detected by its
+ * checksum, and the segment gets truncated there.<br>
+ * Once the segments contain more dead than live data (and at least one segment worth of it), the oldest segments are
+ * compacted one at a time on a background thread: their live records are appended to the active segment again,
+ * then the old segment is deleted.
+ * <p>
+ * Batches that are written concurrently are combined: whichever thread gets to write next appends all batches
+ * that are waiting at that time with a single append.
+ */
+public class KVStore implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String HINT_SUFFIX = ".hint";
+    private static final Pattern SEGMENT_NAME_PATTERN = Pattern.compile("(\\d+)" + Pattern.quote(SEGMENT_SUFFIX));
+    private static final int RECORD_HEADER_SIZE = 8; // int payload-length, int crc32
+    private static final int HINT_TRAILER_SIZE = 12; // long segment-size, int crc32
+    private static final int MAX_READ_RETRIES = 3;
+    private static final int COMPACTION_BATCH_SIZE = 1024 * 1024;
+
+    private static final byte PUT_ITEM = 0;
+    private static final byte DELETE_ITEM = 1;
+    private static final byte PUT_GRID_ITEM = 2;
+    private static final byte DELETE_GRID_ITEM = 3;
+    private static final byte DELETE_MAP = 4;
+
+    private final Path root;
+    private final long maxSegmentSize;
+
+    private final ConcurrentSkipListMap<String, MapIndex> maps = new ConcurrentSkipListMap<>();
+
+    // guarded by writeLock
+    private final Object writeLock = new Object();
+    private final ConcurrentLinkedQueue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private @Nullable Segment activeSegment;
+    private long totalSize, liveSize;
+    private @Nullable Thread compactionThread;
+
+    // only one segment is compacted at a time
+    private final Object compactionLock = new Object();
+
+    private volatile boolean opened, closed;
+
+    /**
+     * @param maxSegmentSize the size (in bytes) after which a new segment-file is started
+     */
+    public KVStore(Path root, long maxSegmentSize) {
+        this.root = root;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Opens the store by loading the hints of all sealed segments and replaying the active segment into the index
+     */
+    public void open() throws IOException {
+        synchronized (writeLock) {
+            if (closed) throw new ClosedChannelException();
+            if (opened) return;
+
+            Files.createDirectories(root);
+            try (Stream<Path> files = Files.list(root)) {
+                files.forEach(path -> {
+                    Matcher matcher = SEGMENT_NAME_PATTERN.matcher(path.getFileName().toString());
+                    if (!matcher.matches()) return;
+                    int id = Integer.parseInt(matcher.group(1));
+                    segments.put(id, new Segment(id, path));
+                });
+            }
+
+            Segment lastSegment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+            for (Segment segment : segments.values())
+                load(segment, segment == lastSegment);
+
+            activeSegment = lastSegment != null ? lastSegment : createSegment();
+            opened = true;
+        }
+    }
+
+    public byte @Nullable [] read(String map, Key storage, Compression compression) throws IOException {
+        return read(() -> {
+            MapIndex index = maps.get(map);
+            return index != null ? index.items.get(storage) : null;
+        }, compression);
+    }
+
+    public byte @Nullable [] readGridItem(String map, Key storage, int x, int z, Compression compression) throws IOException {
+        return read(() -> gridEntry(map, storage, x, z), compression);
+    }
+
+    public boolean exists(String map, Key storage, Compression compression) throws IOException {
+        checkOpen();
+        MapIndex index = maps.get(map);
+        Entry entry = index != null ? index.items.get(storage) : null;
+        return entry != null && entry.compression.equals(compression);
+    }
+
+    public boolean existsGridItem(String map, Key storage, int x, int z, Compression compression) throws IOException {
+        checkOpen();
+        Entry entry = gridEntry(map, storage, x, z);
+        return entry != null && entry.compression.equals(compression);
+    }
+
+    /**
+     * Returns a fingerprint of the grid-item that changes whenever the item is written, or null if there is no such item
+     */
+    public @Nullable String fingerprintGridItem(String map, Key storage, int x, int z, Compression compression) throws IOException {
+        checkOpen();
+        Entry entry = gridEntry(map, storage, x, z);
+        if (entry == null || !entry.compression.equals(compression)) return null;
+        return String.format("%x-%x-%x", entry.segment.id, entry.offset, entry.length);
+    }
+
+    /**
+     * Returns the positions of all grid-items of a grid-storage, ordered by x and then z.<br>
+     * Each position is encoded as a long, use {@link #gridX(long)} and {@link #gridZ(long)} to decode it.
+     */
+    public Stream<Long> gridItems(String map, Key storage, Compression compression) throws IOException {
+        checkOpen();
+        MapIndex index = maps.get(map);
+        if (index == null) return Stream.empty();
+        ConcurrentSkipListMap<Long, Entry> grid = index.grids.get(storage);
+        if (grid == null) return Stream.empty();
+        return grid.entrySet().stream()
+                .filter(entry -> entry.getValue().compression.equals(compression))
+                .map(Map.Entry::getKey);
+    }
+
+    /**
+     * Returns all map-id's that have at least one item, in alphabetical order
+     */
+    public Stream<String> mapIds() throws IOException {
+        checkOpen();
+        return maps.entrySet().stream()
+                .filter(entry -> !entry.getValue().isEmpty())
+                .map(Map.Entry::getKey);
+    }
+
+    public boolean hasMap(String map) throws IOException {
+        checkOpen();
+        MapIndex index = maps.get(map);
+        return index != null && !index.isEmpty();
+    }
+
+    /**
+     * Writes all changes of the batch with a single append.
+     * The changes become visible to readers once this method returns, but only survive a crash after the next
+     * {@link #sync()}.
+     */
+    public void write(Batch batch) throws IOException {
+        if (batch.isEmpty()) return;
+        PendingWrite write = new PendingWrite(batch.records.toByteArray());
+        pendingWrites.add(write);
+
+        synchronized (writeLock) {
+            while (!write.done) {
+                try {
+                    checkOpen();
+                } catch (IOException ex) {
+                    pendingWrites.remove(write);
+                    throw ex;
+                }
+                writePending();
+            }
+        }
+
+        if (write.error != null) throw new IOException(write.error);
+    }
+
+    /**
+     * Appends the waiting writes (at most one segment worth of them) at once
+     */
+    private void writePending() {
+        List<PendingWrite> writes = new ArrayList<>();
+        int size = 0;
+        PendingWrite next;
+        while ((next = pendingWrites.peek()) != null) {
+            if (!writes.isEmpty() && size + next.records.length > maxSegmentSize) break;
+            pendingWrites.poll();
+            writes.add(next);
+            size += next.records.length;
+        }
+        if (writes.isEmpty()) return;
+
+        byte[] records;
+        if (writes.size() == 1) {
+            records = writes.get(0).records;
+        } else {
+            records = new byte[size];
+            int offset = 0;
+            for (PendingWrite write : writes) {
+                System.arraycopy(write.records, 0, records, offset, write.records.length);
+                offset += write.records.length;
+            }
+        }
+
+        Exception error = null;
+        try {
+            append(records);
+        } catch (IOException | RuntimeException ex) {
+            error = ex;
+        }
+
+        for (PendingWrite write : writes) {
+            write.error = error;
+            write.done = true;
+        }
+    }
+
+    private void append(byte[] records) throws IOException {
+        synchronized (writeLock) {
+            assert activeSegment != null;
+
+            boolean rolled = false;
+            if (activeSegment.size > 0 && activeSegment.size + records.length > maxSegmentSize) {
+                roll();
+                rolled = true;
+            }
+
+            Segment segment = activeSegment;
+            long position = segment.size;
+            segment.append(records);
+            totalSize += records.length;
+
+            // update the index only after the records have been written successfully
+            int offset = 0;
+            while (offset < records.length) {
+                int length = ByteBuffer.wrap(records, offset, 4).getInt();
+                Record record = Record.parse(records, offset + RECORD_HEADER_SIZE, length);
+                apply(segment, position + offset, length, record);
+                segment.addHint(position + offset, length, records, offset + RECORD_HEADER_SIZE, record.headerLength);
+                offset += RECORD_HEADER_SIZE + length;
+            }
+
+            if (rolled && needsCompaction()) startCompaction();
+        }
+    }
+
+    /**
+     * Forces all written changes to the disk
+     */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            if (!opened || closed) return;
+            assert activeSegment != null;
+            activeSegment.channel().force(false);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Compacts the oldest segments one at a time, as long as there is enough dead data.
+     * This is usually done in the background after a new segment has been started.
+     */
+    public void compact() throws IOException {
+        compactSegments();
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread compactionThread;
+        synchronized (writeLock) {
+            if (closed) return;
+            try {
+                sync();
+            } finally {
+                closed = true;
+                for (Segment segment : segments.values())
+                    segment.close();
+            }
+            compactionThread = this.compactionThread;
+        }
+
+        // a running compaction stops once it notices that the store got closed
+        if (compactionThread != null) {
+            try {
+                compactionThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static int gridX(long position) {
+        return (int) (position >> 32);
+    }
+
+    public static int gridZ(long position) {
+        return (int) position ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Encodes a grid-position in a way that the natural ordering of the long orders by x and then by z
+     */
+    private static long gridPosition(int x, int z) {
+        return (long) x << 32 | ((z ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private byte @Nullable [] read(Supplier<@Nullable Entry> lookup, Compression compression) throws IOException {
+        checkOpen();
+        for (int tries = 1;; tries++) {
+            Entry entry = lookup.get();
+            if (entry == null || !entry.compression.equals(compression)) return null;
+
+            try {
+                return entry.segment.read(entry.offset, entry.length);
+            } catch (ClosedChannelException ex) {
+                // the segment got compacted and deleted in the meantime -> look the entry up again
+                if (tries >= MAX_READ_RETRIES || closed || Thread.currentThread().isInterrupted()) throw ex;
+            }
+        }
+    }
+
+    private @Nullable Entry gridEntry(String map, Key storage, int x, int z) {
+        MapIndex index = maps.get(map);
+        if (index == null) return null;
+        ConcurrentSkipListMap<Long, Entry> grid = index.grids.get(storage);
+        if (grid == null) return null;
+        return grid.get(gridPosition(x, z));
+    }
+
+    /**
+     * Loads the records of a segment into the index.
+     * Sealed segments are loaded from their hint-file if it is valid, otherwise (and for the active segment)
+     * all records are read and checked.
+     */
+    private void load(Segment segment, boolean active) throws IOException {
+        long size = segment.channel().size();
+
+        List<Hint> hints = active ? null : readHintFile(segment, size);
+        if (hints == null) {
+            hints = new ArrayList<>();
+            size = scan(segment, size, hints);
+            if (!active) writeHintFile(segment, hints, size);
+        }
+
+        for (Hint hint : hints) {
+            try {
+                Record record = Record.parse(hint.header, 0, hint.header.length);
+                apply(segment, hint.position, hint.payloadLength, record);
+                if (active) segment.addHint(hint.position, hint.payloadLength, hint.header, 0, hint.header.length);
+            } catch (IOException ex) {
+                Logger.global.logWarning("Skipping unreadable record in storage-segment '" + segment.path + "': " + ex);
+            }
+        }
+
+        if (!active) segment.sealed();
+        segment.size = size;
+        totalSize += size;
+    }
+
+    /**
+     * Reads all records of the segment, checks their checksum and collects their hints.
+     * Incomplete or corrupted data at the end of the segment gets truncated.
+     * @return the size of the valid data in the segment
+     */
+    private long scan(Segment segment, long size, List<Hint> hints) throws IOException {
+        FileChannel channel = segment.channel();
+        long position = 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        while (size - position >= RECORD_HEADER_SIZE) {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > size) break;
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (crc != checksum(payload, 0, length)) break;
+
+            try {
+                Record record = Record.parse(payload, 0, length);
+                byte[] header = new byte[record.headerLength];
+                System.arraycopy(payload, 0, header, 0, header.length);
+                hints.add(new Hint(position, length, header));
+            } catch (IOException ex) {
+                Logger.global.logWarning("Skipping unreadable record in storage-segment '" + segment.path + "': " + ex);
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        if (position < size) {
+            Logger.global.logWarning("Truncating " + (size - position) + " bytes of incomplete or corrupted data " +
+                    "from storage-segment '" + segment.path + "'");
+            channel.truncate(position);
+        }
+
+        return position;
+    }
+
+    /**
+     * Applies a record to the index
+     */
+    private void apply(Segment segment, long recordPosition, int payloadLength, Record record) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + payloadLength;
+
+        if (record.type == DELETE_MAP) {
+            MapIndex removed = maps.remove(record.map);
+            if (removed != null) liveSize -= removed.size();
+            return;
+        }
+
+        assert record.storage != null;
+        MapIndex index = maps.computeIfAbsent(record.map, m -> new MapIndex());
+        Entry previous;
+
+        switch (record.type) {
+            case PUT_ITEM:
+                previous = index.items.put(record.storage, record.entry(segment, recordPosition, payloadLength));
+                liveSize += recordSize;
+                break;
+            case DELETE_ITEM:
+                previous = index.items.remove(record.storage);
+                break;
+            case PUT_GRID_ITEM:
+                previous = index.grids.computeIfAbsent(record.storage, s -> new ConcurrentSkipListMap<>())
+                        .put(record.gridPosition, record.entry(segment, recordPosition, payloadLength));
+                liveSize += recordSize;
+                break;
+            case DELETE_GRID_ITEM: {
+                ConcurrentSkipListMap<Long, Entry> grid = index.grids.get(record.storage);
+                previous = grid != null ? grid.remove(record.gridPosition) : null;
+                break;
+            }
+            default:
+                throw new IOException("Unknown record-type: " + record.type);
+        }
+
+        if (previous != null) liveSize -= previous.recordSize;
+    }
+
+    /**
+     * Returns the current index-entry for the key of the given (put-) record
+     */
+    private @Nullable Entry lookup(Record record) {
+        MapIndex index = maps.get(record.map);
+        if (index == null) return null;
+        if (record.type == PUT_ITEM) return index.items.get(record.storage);
+        if (record.type != PUT_GRID_ITEM) return null;
+        ConcurrentSkipListMap<Long, Entry> grid = index.grids.get(record.storage);
+        return grid != null ? grid.get(record.gridPosition) : null;
+    }
+
+    /**
+     * Replaces the index-entry for the key of the given (put-) record, if it still is the expected entry
+     */
+    private boolean replace(Record record, Entry expected, Entry replacement) {
+        MapIndex index = maps.get(record.map);
+        if (index == null) return false;
+        if (record.type == PUT_ITEM) return index.items.replace(record.storage, expected, replacement);
+        ConcurrentSkipListMap<Long, Entry> grid = index.grids.get(record.storage);
+        return grid != null && grid.replace(record.gridPosition, expected, replacement);
+    }
+
+    /**
+     * Seals the active segment and starts a new one
+     */
+    private void roll() throws IOException {
+        assert activeSegment != null;
+        Segment segment = activeSegment;
+        segment.channel().force(false);
+        activeSegment = createSegment();
+
+        segment.writeHintFile();
+    }
+
+    private boolean needsCompaction() {
+        long waste = totalSize - liveSize;
+        return waste > maxSegmentSize && waste > liveSize && segments.size() > 1;
+    }
+
+    private void startCompaction() {
+        if (compactionThread != null && compactionThread.isAlive()) return;
+
+        compactionThread = new Thread(() -> {
+            try {
+                // segments sealed during a pass are picked up by the next one
+                while (compactSegments());
+            } catch (IOException ex) {
+                if (!closed) Logger.global.logError("Failed to compact storage-segments in '" + root + "'", ex);
+            }
+        }, "BlueMap-KVStore-Compaction");
+        compactionThread.setDaemon(true);
+        compactionThread.start();
+    }
+
+    /**
+     * Compacts the segments that are sealed right now, as long as there is enough dead data.
+     * @return true if at least one segment has been compacted
+     */
+    private boolean compactSegments() throws IOException {
+        int endId;
+        synchronized (writeLock) {
+            checkOpen();
+            assert activeSegment != null;
+            endId = activeSegment.id;
+        }
+
+        // the compacted data is appended to new segments, which are left for the next pass
+        boolean compacted = false;
+        while (compactOldestSegment(endId)) compacted = true;
+        return compacted;
+    }
+
+    /**
+     * Copies the live records of the oldest segment to the active segment and deletes it afterwards.
+     * The segment is read without holding the writeLock, it is only held for appending the records.
+     * @param endId only segments with a lower id are compacted
+     * @return true if a segment has been compacted
+     */
+    private boolean compactOldestSegment(int endId) throws IOException {
+        synchronized (compactionLock) {
+            Segment segment;
+            synchronized (writeLock) {
+                checkOpen();
+                if (!needsCompaction()) return false;
+                segment = segments.firstEntry().getValue();
+                if (segment == activeSegment || segment.id >= endId) return false;
+            }
+
+            Logger.global.logDebug("Compacting storage-segment '" + segment.path + "' ...");
+
+            List<Hint> hints = readHintFile(segment, segment.channel().size());
+            if (hints == null) {
+                hints = new ArrayList<>();
+                scan(segment, segment.channel().size(), hints);
+            }
+
+            // tombstones don't need to be copied, there are no older segments they could apply to
+            List<Hint> batch = new ArrayList<>();
+            List<Record> batchRecords = new ArrayList<>();
+            long batchSize = 0;
+            for (Hint hint : hints) {
+                Record record = Record.parse(hint.header, 0, hint.header.length);
+                if (record.type != PUT_ITEM && record.type != PUT_GRID_ITEM) continue;
+                if (!record.isCurrent(lookup(record), segment, hint)) continue;
+
+                batch.add(hint);
+                batchRecords.add(record);
+                batchSize += RECORD_HEADER_SIZE + hint.payloadLength;
+                if (batchSize >= COMPACTION_BATCH_SIZE) {
+                    relocate(segment, batch, batchRecords);
+                    batch.clear();
+                    batchRecords.clear();
+                    batchSize = 0;
+                }
+            }
+            relocate(segment, batch, batchRecords);
+
+            synchronized (writeLock) {
+                checkOpen();
+                assert activeSegment != null;
+                activeSegment.channel().force(false);
+
+                segments.remove(segment.id);
+                totalSize -= segment.size;
+                segment.delete();
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Appends the given records of the segment to the active segment again,
+     * if they have not been overwritten or deleted in the meantime
+     */
+    private void relocate(Segment segment, List<Hint> hints, List<Record> records) throws IOException {
+        if (hints.isEmpty()) return;
+
+        // read the records before locking
+        byte[][] data = new byte[hints.size()][];
+        for (int i = 0; i < data.length; i++) {
+            Hint hint = hints.get(i);
+            data[i] = segment.read(hint.position, RECORD_HEADER_SIZE + hint.payloadLength);
+        }
+
+        synchronized (writeLock) {
+            checkOpen();
+            assert activeSegment != null;
+
+            for (int i = 0; i < data.length; i++) {
+                Hint hint = hints.get(i);
+                Record record = records.get(i);
+                Entry entry = lookup(record);
+                if (!record.isCurrent(entry, segment, hint)) continue;
+                assert entry != null;
+
+                if (activeSegment.size > 0 && activeSegment.size + data[i].length > maxSegmentSize) roll();
+
+                Segment target = activeSegment;
+                long position = target.size;
+                target.append(data[i]);
+                totalSize += data[i].length;
+
+                replace(record, entry, record.entry(target, position, hint.payloadLength));
+                target.addHint(position, hint.payloadLength, hint.header, 0, hint.header.length);
+            }
+        }
+    }
+
+    /**
+     * Reads the hints of a sealed segment from its hint-file
+     * @return the hints, or null if there is no valid hint-file for the segment
+     */
+    private @Nullable List<Hint> readHintFile(Segment segment, long segmentSize) {
+        try {
+            byte[] data = Files.readAllBytes(segment.hintPath);
+            if (data.length < HINT_TRAILER_SIZE) return null;
+
+            ByteBuffer trailer = ByteBuffer.wrap(data, data.length - HINT_TRAILER_SIZE, HINT_TRAILER_SIZE);
+            if (trailer.getLong() != segmentSize) return null;
+            if (trailer.getInt() != checksum(data, 0, data.length - HINT_TRAILER_SIZE)) return null;
+
+            List<Hint> hints = new ArrayList<>();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - HINT_TRAILER_SIZE));
+            while (in.available() > 0) {
+                long position = in.readLong();
+                int payloadLength = in.readInt();
+                byte[] header = new byte[in.readInt()];
+                in.readFully(header);
+                hints.add(new Hint(position, payloadLength, header));
+            }
+            return hints;
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to read hint-file '" + segment.hintPath + "': " + ex);
+            return null;
+        }
+    }
+
+    private static void writeHintFile(Segment segment, List<Hint> hints, long segmentSize) {
+        HintWriter writer = new HintWriter();
+        for (Hint hint : hints)
+            writer.add(hint.position, hint.payloadLength, hint.header, 0, hint.header.length);
+        writer.writeTo(segment.hintPath, segmentSize);
+    }
+
+    private Segment createSegment() throws IOException {
+        int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Path path = root.resolve(id + SEGMENT_SUFFIX);
+        Files.deleteIfExists(hintPath(path));
+        Files.newByteChannel(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+
+        Segment segment = new Segment(id, path);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) throw new ClosedChannelException();
+        if (!opened) throw new IOException("The storage has not been initialized!");
+    }
+
+    private static Path hintPath(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return segmentPath.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + HINT_SUFFIX);
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A set of changes that is written to a {@link KVStore} at once
+     */
+    public static class Batch {
+
+        private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(payload);
+
+        public Batch put(String map, Key storage, Compression compression, byte[] value) {
+            return record(() -> {
+                header(PUT_ITEM, map, storage);
+                out.writeUTF(compression.getKey().getFormatted());
+                out.write(value);
+            });
+        }
+
+        public Batch delete(String map, Key storage) {
+            return record(() -> header(DELETE_ITEM, map, storage));
+        }
+
+        public Batch putGridItem(String map, Key storage, int x, int z, Compression compression, byte[] value) {
+            return record(() -> {
+                header(PUT_GRID_ITEM, map, storage);
+                out.writeInt(x);
+                out.writeInt(z);
+                out.writeUTF(compression.getKey().getFormatted());
+                out.write(value);
+            });
+        }
+
+        public Batch deleteGridItem(String map, Key storage, int x, int z) {
+            return record(() -> {
+                header(DELETE_GRID_ITEM, map, storage);
+                out.writeInt(x);
+                out.writeInt(z);
+            });
+        }
+
+        public Batch deleteMap(String map) {
+            return record(() -> {
+                out.writeByte(DELETE_MAP);
+                out.writeUTF(map);
+            });
+        }
+
+        public boolean isEmpty() {
+            return records.size() == 0;
+        }
+
+        private void header(byte type, String map, Key storage) throws IOException {
+            out.writeByte(type);
+            out.writeUTF(map);
+            out.writeUTF(storage.getFormatted());
+        }
+
+        private Batch record(RecordWriter writer) {
+            try {
+                payload.reset();
+                writer.write();
+
+                byte[] data = payload.toByteArray();
+                DataOutputStream recordOut = new DataOutputStream(records);
+                recordOut.writeInt(data.length);
+                recordOut.writeInt(checksum(data, 0, data.length));
+                recordOut.write(data);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // can't happen when writing to memory
+            }
+            return this;
+        }
+
+        @FunctionalInterface
+        private interface RecordWriter {
+            void write() throws IOException;
+        }
+
+    }
+
+    /**
+     * The parsed header (everything but the value) of a record
+     */
+    private static class Record {
+
+        private byte type;
+        private String map;
+        private @Nullable Key storage;
+        private long gridPosition;
+        private @Nullable Compression compression;
+        private int headerLength;
+
+        static Record parse(byte[] data, int offset, int length) throws IOException {
+            ByteArrayInputStream bytes = new ByteArrayInputStream(data, offset, length);
+            DataInputStream in = new DataInputStream(bytes);
+            Record record = new Record();
+
+            record.type = in.readByte();
+            record.map = in.readUTF();
+
+            if (record.type != DELETE_MAP) {
+                record.storage = new Key(in.readUTF());
+                if (record.type == PUT_GRID_ITEM || record.type == DELETE_GRID_ITEM)
+                    record.gridPosition = gridPosition(in.readInt(), in.readInt());
+                if (record.type == PUT_ITEM || record.type == PUT_GRID_ITEM) {
+                    String compressionKey = in.readUTF();
+                    record.compression = Compression.REGISTRY.get(new Key(compressionKey));
+                    if (record.compression == null) throw new IOException("Unknown compression: " + compressionKey);
+                }
+            }
+
+            record.headerLength = length - bytes.available();
+            return record;
+        }
+
+        Entry entry(Segment segment, long recordPosition, int payloadLength) {
+            assert compression != null;
+            return new Entry(
+                    segment,
+                    recordPosition + RECORD_HEADER_SIZE + headerLength,
+                    payloadLength - headerLength,
+                    compression,
+                    RECORD_HEADER_SIZE + payloadLength
+            );
+        }
+
+        /**
+         * Whether the given index-entry points to the value of this record
+         */
+        boolean isCurrent(@Nullable Entry entry, Segment segment, Hint hint) {
+            return entry != null && entry.segment == segment &&
+                    entry.offset == hint.position + RECORD_HEADER_SIZE + headerLength;
+        }
+
+    }
+
+    /**
+     * The position and header of a record in a segment
+     */
+    private static class Hint {
+
+        private final long position;
+        private final int payloadLength;
+        private final byte[] header;
+
+        private Hint(long position, int payloadLength, byte[] header) {
+            this.position = position;
+            this.payloadLength = payloadLength;
+            this.header = header;
+        }
+
+    }
+
+    /**
+     * Collects hints and writes them into a hint-file, the file is only valid for a segment of the given size
+     */
+    private static class HintWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        void add(long position, int payloadLength, byte[] header, int offset, int length) {
+            try {
+                out.writeLong(position);
+                out.writeInt(payloadLength);
+                out.writeInt(length);
+                out.write(header, offset, length);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // can't happen when writing to memory
+            }
+        }
+
+        /**
+         * Writes the hint-file, failing to do so is not critical, the segment is just scanned completely next time
+         */
+        void writeTo(Path hintPath, long segmentSize) {
+            byte[] data = bytes.toByteArray();
+            ByteBuffer trailer = ByteBuffer.allocate(HINT_TRAILER_SIZE);
+            trailer.putLong(segmentSize).putInt(checksum(data, 0, data.length));
+
+            Path tempPath = hintPath.resolveSibling(hintPath.getFileName() + ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(tempPath)) {
+                    out.write(data);
+                    out.write(trailer.array());
+                }
+                Files.move(tempPath, hintPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                Logger.global.logWarning("Failed to write hint-file '" + hintPath + "': " + ex);
+            }
+        }
+
+    }
+
+    /**
+     * A batch waiting to be written, its state is guarded by the writeLock
+     */
+    private static class PendingWrite {
+
+        private final byte[] records;
+        private boolean done = false;
+        private @Nullable Exception error = null;
+
+        private PendingWrite(byte[] records) {
+            this.records = records;
+        }
+
+    }
+
+    private static class MapIndex {
+
+        private final ConcurrentHashMap<Key, Entry> items = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Key, ConcurrentSkipListMap<Long, Entry>> grids = new ConcurrentHashMap<>();
+
+        boolean isEmpty() {
+            if (!items.isEmpty()) return false;
+            for (ConcurrentSkipListMap<Long, Entry> grid : grids.values())
+                if (!grid.isEmpty()) return false;
+            return true;
+        }
+
+        long size() {
+            long size = 0;
+            for (Entry entry : items.values()) size += entry.recordSize;
+            for (ConcurrentSkipListMap<Long, Entry> grid : grids.values())
+                for (Entry entry : grid.values()) size += entry.recordSize;
+            return size;
+        }
+
+    }
+
+    private static class Entry {
+
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final Compression compression;
+        private final int recordSize;
+
+        private Entry(Segment segment, long offset, int length, Compression compression, int recordSize) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.compression = compression;
+            this.recordSize = recordSize;
+        }
+
+    }
+
+    private class Segment {
+
+        private final int id;
+        private final Path path;
+        private final Path hintPath;
+        private volatile @Nullable FileChannel channel;
+        private boolean deleted;
+
+        // guarded by writeLock
+        private long size;
+        private @Nullable HintWriter hints; // null once the segment is sealed
+
+        private Segment(int id, Path path) {
+            this.id = id;
+            this.path = path;
+            this.hintPath = hintPath(path);
+            this.hints = new HintWriter();
+        }
+
+        void addHint(long position, int payloadLength, byte[] header, int offset, int length) {
+            if (hints != null) hints.add(position, payloadLength, header, offset, length);
+        }
+
+        void sealed() {
+            hints = null;
+        }
+
+        void writeHintFile() {
+            if (hints == null) return;
+            hints.writeTo(hintPath, size);
+            hints = null;
+        }
+
+        byte[] read(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            FileChannel channel = channel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                    throw new EOFException("Unexpected end of storage-segment: " + path);
+            }
+            return buffer.array();
+        }
+
+        void append(byte[] data) throws IOException {
+            // write at the tracked size, so a failed append just gets overwritten by the next one
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            FileChannel channel = channel();
+            while (buffer.hasRemaining())
+                channel.write(buffer, size + buffer.position());
+            size += data.length;
+        }
+
+        /**
+         * Returns the channel of this segment, (re-)opening it if it is not open.
+         * (A channel gets closed if a thread is interrupted while using it)
+         */
+        FileChannel channel() throws IOException {
+            FileChannel channel = this.channel;
+            if (channel != null && channel.isOpen()) return channel;
+
+            synchronized (this) {
+                if (deleted || closed) throw new ClosedChannelException();
+                channel = this.channel;
+                if (channel == null || !channel.isOpen())
+                    this.channel = channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                return channel;
+            }
+        }
+
+        synchronized void close() throws IOException {
+            FileChannel channel = this.channel;
+            if (channel != null) channel.close();
+        }
+
+        synchronized void delete() throws IOException {
+            deleted = true;
+            close();
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(hintPath);
+        }
+
+    }
+
+}
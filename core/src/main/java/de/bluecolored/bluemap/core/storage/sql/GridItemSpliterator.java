@@ -0,0 +1,168 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.sql;
+
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet.TilePosition;
+import de.bluecolored.bluemap.core.util.Key;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Iterates over the positions of all items of a grid-storage using keyset-pagination on <code>(x, z)</code>,
+ * so every page is a direct index-lookup, no matter how many pages came before.<br>
+ * The spliterator can be split by x-range, so streams over large grid-storages can be processed in parallel.
+ */
+public class GridItemSpliterator implements Spliterator<TilePosition> {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int MIN_SPLIT_WIDTH = 16;
+
+    private final CommandSet sql;
+    private final String map;
+    private final Key storage;
+    private final Compression compression;
+
+    private boolean initialized;
+    private int minX, maxX;
+
+    private TilePosition @Nullable [] page;
+    private int pos, end;
+    private @Nullable TilePosition after;
+    private boolean exhausted;
+
+    public GridItemSpliterator(CommandSet sql, String map, Key storage, Compression compression) {
+        this.sql = sql;
+        this.map = map;
+        this.storage = storage;
+        this.compression = compression;
+    }
+
+    private GridItemSpliterator(GridItemSpliterator parent, int minX, int maxX) {
+        this(parent.sql, parent.map, parent.storage, parent.compression);
+        this.initialized = true;
+        this.minX = minX;
+        this.maxX = maxX;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super TilePosition> action) {
+        if (!refill()) return false;
+        action.accept(page[pos++]);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super TilePosition> action) {
+        while (refill()) {
+            while (pos < end) action.accept(page[pos++]);
+        }
+    }
+
+    @Override
+    public @Nullable Spliterator<TilePosition> trySplit() {
+        initialize();
+        if (exhausted && pos >= end) return null;
+
+        long from = after != null ? after.x() : minX;
+        if (maxX - from < MIN_SPLIT_WIDTH) return null;
+
+        int mid = (int) (from + (maxX - from) / 2);
+        GridItemSpliterator split = new GridItemSpliterator(this, mid + 1, maxX);
+        this.maxX = mid;
+
+        // positions behind the new maxX are now listed by the split
+        if (page != null) {
+            int newEnd = end;
+            while (newEnd > pos && page[newEnd - 1].x() > mid) newEnd--;
+            if (newEnd < end) {
+                end = newEnd;
+                if (end > 0) after = page[end - 1];
+                exhausted = true; // all positions up to mid are already in the current page
+            }
+        }
+
+        return split;
+    }
+
+    /**
+     * The x-width of the remaining range, the actual item count is unknown
+     */
+    @Override
+    public long estimateSize() {
+        initialize();
+        if (exhausted && pos >= end) return 0;
+
+        long from = after != null ? after.x() : minX;
+        return (long) maxX - from + 1;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+
+    private boolean refill() {
+        if (page != null && pos < end) return true;
+
+        initialize();
+        if (exhausted) return false;
+
+        try {
+            page = sql.listGridItems(map, storage, compression, minX, maxX, after, PAGE_SIZE);
+        } catch (IOException ex) { throw new RuntimeException(ex); }
+
+        pos = 0;
+        end = page.length;
+        if (end < PAGE_SIZE) exhausted = true;
+        if (end == 0) return false;
+
+        after = page[end - 1];
+        return true;
+    }
+
+    private void initialize() {
+        if (initialized) return;
+        initialized = true;
+
+        int[] range;
+        try {
+            range = sql.gridItemsXRange(map, storage, compression);
+        } catch (IOException ex) { throw new RuntimeException(ex); }
+
+        if (range == null) {
+            exhausted = true;
+            return;
+        }
+
+        minX = range[0];
+        maxX = range[1];
+    }
+
+}
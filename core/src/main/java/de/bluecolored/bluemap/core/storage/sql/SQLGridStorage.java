@@ -29,6 +29,7 @@
 import de.bluecolored.bluemap.core.storage.compression.Compression;
 import de.bluecolored.bluemap.core.storage.GridStorage;
 import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet.GridItem;
 import de.bluecolored.bluemap.core.util.Key;
 import de.bluecolored.bluemap.core.util.stream.OnCloseOutputStream;
 import lombok.RequiredArgsConstructor;
@@ -42,6 +43,7 @@
 public class SQLGridStorage implements GridStorage {
 
     private final CommandSet sql;
+    private final SQLWriteBatcher batcher;
     private final String map;
     private final Key storage;
     private final Compression compression;
@@ -50,24 +52,43 @@ public class SQLGridStorage implements GridStorage {
     public OutputStream write(int x, int z) throws IOException {
         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
         return new OnCloseOutputStream(compression.compress(bytes),
-                () -> sql.writeGridItem(map, storage, x, z, compression, bytes.toByteArray())
+                () -> batcher.write(new GridItem(map, storage, x, z, compression, bytes.toByteArray()))
         );
     }
 
     @Override
     public @Nullable CompressedInputStream read(int x, int z) throws IOException {
-        byte[] data = sql.readGridItem(map, storage, x, z, compression);
+        byte[] data;
+        GridItem pending = batcher.getPending(map, storage, x, z);
+        if (pending != null) {
+            data = pending.compression().equals(compression) ? pending.data() : null;
+        } else {
+            data = sql.readGridItem(map, storage, x, z, compression);
+        }
+
         if (data == null) return null;
         return new CompressedInputStream(new ByteArrayInputStream(data), compression);
     }
 
+    /**
+     * The fingerprint is computed by the database (if it supports it) from the item's length and checksum.
+     * Items that are not yet written to the database have no fingerprint.
+     */
+    @Override
+    public @Nullable String fingerprint(int x, int z) throws IOException {
+        if (batcher.getPending(map, storage, x, z) != null) return null;
+        return sql.fingerprintGridItem(map, storage, x, z, compression);
+    }
+
     @Override
     public void delete(int x, int z) throws IOException {
-        sql.deleteGridItem(map, storage, x, z);
+        batcher.write(new GridItem(map, storage, x, z, compression, null));
     }
 
     @Override
     public boolean exists(int x, int z) throws IOException {
+        GridItem pending = batcher.getPending(map, storage, x, z);
+        if (pending != null) return !pending.isDelete() && pending.compression().equals(compression);
         return sql.hasGridItem(map, storage, x, z, compression);
     }
 
@@ -78,14 +99,9 @@ public ItemStorage cell(int x, int z) {
 
     @Override
     public Stream<Cell> stream() throws IOException {
-        return StreamSupport.stream(
-                new PageSpliterator<>(page -> {
-                    try {
-                        return sql.listGridItems(map, storage, compression, page * 1000, 1000);
-                    } catch (IOException ex) { throw new RuntimeException(ex); }
-                }),
-                false
-        ).map(tilePosition -> new GridStorageCell(this, tilePosition.x(), tilePosition.z()));
+        batcher.flush(); // make pending items visible to the listing
+        return StreamSupport.stream(new GridItemSpliterator(sql, map, storage, compression), false)
+                .map(tilePosition -> new GridStorageCell(this, tilePosition.x(), tilePosition.z()));
     }
 
     @Override
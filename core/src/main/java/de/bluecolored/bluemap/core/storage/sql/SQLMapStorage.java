@@ -29,26 +29,33 @@
 import de.bluecolored.bluemap.core.storage.GridStorage;
 import de.bluecolored.bluemap.core.storage.ItemStorage;
 import de.bluecolored.bluemap.core.storage.KeyedMapStorage;
+import de.bluecolored.bluemap.core.storage.VersionedGridStorage;
 import de.bluecolored.bluemap.core.storage.compression.Compression;
 import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet;
 import de.bluecolored.bluemap.core.util.Key;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.DoublePredicate;
 
 public class SQLMapStorage extends KeyedMapStorage {
 
+    private static final int DELETE_PART_ITEMS = 1000;
+
     private final String mapId;
     private final CommandSet sql;
+    private final SQLWriteBatcher batcher;
 
     private final Cache<Key, ItemStorage> itemStorages = Caffeine.newBuilder().build();
     private final Cache<Key, GridStorage> gridStorages = Caffeine.newBuilder().build();
 
-    public SQLMapStorage(String mapId, CommandSet sql, Compression compression) {
+    public SQLMapStorage(String mapId, CommandSet sql, SQLWriteBatcher batcher, Compression compression) {
         super(compression);
 
         this.mapId = mapId;
         this.sql = sql;
+        this.batcher = batcher;
     }
 
     @Override
@@ -58,12 +65,15 @@ public ItemStorage item(Key key, Compression compression) {
 
     @Override
     public GridStorage grid(Key key, Compression compression) {
-        return gridStorages.get(key, k -> new SQLGridStorage(sql, mapId, key, compression));
+        return gridStorages.get(key, k -> new VersionedGridStorage(new SQLGridStorage(sql, batcher, mapId, key, compression)));
     }
 
     @Override
     public void delete(DoublePredicate onProgress) throws IOException {
 
+        // write pending tiles first, so they are not written again after the purge
+        batcher.flush();
+
         // delete tiles in 1000er steps to track progress
         int tileCount = sql.countMapGridsItems(mapId);
         if (tileCount > 0) {
@@ -84,6 +94,33 @@ public void delete(DoublePredicate onProgress) throws IOException {
 
     }
 
+    /**
+     * Each grid-storage is split into ranges of x-columns that hold about {@link #DELETE_PART_ITEMS} items each
+     */
+    @Override
+    public List<DeletePart> deleteParts() throws IOException {
+
+        // write pending tiles first, so they are not written again after the purge
+        batcher.flush();
+
+        List<DeletePart> parts = new ArrayList<>();
+        for (CommandSet.GridStorageXRange range : sql.listMapGridsXRanges(mapId)) {
+            long columns = (long) range.maxX() - range.minX() + 1;
+            long width = Math.max(1, columns * DELETE_PART_ITEMS / Math.max(range.itemCount(), 1));
+            for (long x = range.minX(); x <= range.maxX(); x += width) {
+                int minX = (int) x;
+                int maxX = (int) Math.min(x + width - 1, range.maxX());
+                parts.add(() -> sql.purgeGridItems(mapId, range.key(), minX, maxX));
+            }
+        }
+        return parts;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        batcher.flush();
+    }
+
     @Override
     public boolean exists() throws IOException {
         return sql.hasMap(mapId);
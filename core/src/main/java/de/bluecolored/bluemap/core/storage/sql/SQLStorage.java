@@ -30,27 +30,44 @@
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.storage.compression.Compression;
 import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet;
-import lombok.RequiredArgsConstructor;
 
 import java.io.IOException;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-@RequiredArgsConstructor
 public class SQLStorage implements Storage {
 
+    private static final int DEFAULT_WRITE_BATCH_SIZE = 100;
+    private static final long DEFAULT_WRITE_BATCH_DELAY = 1000;
+    private static final long MAX_PENDING_WRITE_BYTES = 32 * 1024 * 1024;
+
     private final CommandSet sql;
+    private final SQLWriteBatcher batcher;
     private final Compression compression;
     private final LoadingCache<String, SQLMapStorage> mapStorages = Caffeine.newBuilder()
             .build(this::create);
 
+    public SQLStorage(CommandSet sql, Compression compression) {
+        this(sql, compression, DEFAULT_WRITE_BATCH_SIZE, DEFAULT_WRITE_BATCH_DELAY);
+    }
+
+    /**
+     * @param writeBatchSize the maximum amount of tiles that are written in one transaction
+     * @param writeBatchDelay the maximum time (in milliseconds) a written tile waits before its batch is written
+     */
+    public SQLStorage(CommandSet sql, Compression compression, int writeBatchSize, long writeBatchDelay) {
+        this.sql = sql;
+        this.batcher = new SQLWriteBatcher(sql, writeBatchSize, writeBatchDelay, MAX_PENDING_WRITE_BYTES);
+        this.compression = compression;
+    }
+
     @Override
     public void initialize() throws IOException {
         sql.initializeTables();
     }
 
     private SQLMapStorage create(String mapId) {
-        return new SQLMapStorage(mapId, sql, compression);
+        return new SQLMapStorage(mapId, sql, batcher, compression);
     }
 
     @Override
@@ -77,7 +94,11 @@ public boolean isClosed() {
 
     @Override
     public void close() throws IOException {
-        sql.close();
+        try {
+            batcher.close();
+        } finally {
+            sql.close();
+        }
     }
 
 }
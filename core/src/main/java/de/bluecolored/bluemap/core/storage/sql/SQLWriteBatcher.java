@@ -0,0 +1,257 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.sql;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet.GridItem;
+import de.bluecolored.bluemap.core.util.Key;
+import lombok.Value;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects grid-item writes and deletes and writes them to the database in batches,
+ * with one transaction per {@link #batchSize} items, after at most {@link #batchDelayMillis}.<br>
+ * Pending (and currently written) items are visible through {@link #getPending(String, Key, int, int)},
+ * so reads can see all writes that have been submitted before.
+ * <p>
+ * Multiple writes to the same grid-item that are still pending are merged into one.
+ * If the pending data grows larger than {@link #maxPendingBytes}, the writing thread flushes the batch itself.
+ * <p>
+ * If writing a batch fails, the items stay pending and the background-thread retries with an increasing delay
+ * (up to {@link #MAX_RETRY_DELAY_MILLIS}).
+ */
+public class SQLWriteBatcher implements Closeable {
+
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
+    private final CommandSet sql;
+    private final int batchSize;
+    private final long batchDelayMillis;
+    private final long maxPendingBytes;
+
+    // held while a batch is taken and written, so batches are always written in order
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private LinkedHashMap<ItemKey, GridItem> pending;
+    private Map<ItemKey, GridItem> inFlight;
+    private long pendingBytes;
+    private long pendingSince;
+    private long retryAfter; // no batches are written by the background-thread before this time
+    private long retryDelay;
+    private boolean closed;
+
+    private final Thread thread;
+
+    public SQLWriteBatcher(CommandSet sql, int batchSize, long batchDelayMillis, long maxPendingBytes) {
+        this.sql = sql;
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchDelayMillis = Math.max(batchDelayMillis, 0);
+        this.maxPendingBytes = maxPendingBytes;
+
+        this.pending = new LinkedHashMap<>();
+        this.inFlight = Collections.emptyMap();
+        this.pendingBytes = 0;
+        this.retryAfter = 0;
+        this.retryDelay = 0;
+        this.closed = false;
+
+        this.thread = new Thread(this::run, "BlueMap-SQL-WriteBatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Submits a grid-item to be written (or deleted) with the next batch.
+     */
+    public void write(GridItem item) throws IOException {
+        boolean flush;
+        synchronized (this) {
+            if (pending.isEmpty()) pendingSince = System.currentTimeMillis();
+
+            GridItem previous = pending.put(new ItemKey(item.mapId(), item.key(), item.x(), item.z()), item);
+            pendingBytes += size(item) - size(previous);
+
+            if (pending.size() >= batchSize) notifyAll();
+            flush = closed || pendingBytes > maxPendingBytes;
+        }
+
+        // back-pressure: don't let the pending items grow unbounded if the database can't keep up
+        // (after closing, there is no background-thread anymore, so every write is flushed directly)
+        if (flush) flush();
+    }
+
+    /**
+     * Returns the pending grid-item that is not yet committed to the database, if there is one.
+     * A returned item without data means that the grid-item is going to be deleted.
+     */
+    public synchronized @Nullable GridItem getPending(String mapId, Key key, int x, int z) {
+        ItemKey itemKey = new ItemKey(mapId, key, x, z);
+        GridItem item = pending.get(itemKey);
+        if (item == null) item = inFlight.get(itemKey);
+        return item;
+    }
+
+    /**
+     * Writes all pending grid-items to the database and waits until they are committed.
+     */
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            Map<ItemKey, GridItem> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) return;
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<>();
+                pendingBytes = 0;
+            }
+
+            Iterator<GridItem> items = batch.values().iterator();
+            List<GridItem> chunk = new ArrayList<>(Math.min(batch.size(), batchSize));
+            try {
+                while (items.hasNext()) {
+                    chunk.add(items.next());
+                    if (chunk.size() >= batchSize || !items.hasNext()) {
+                        sql.writeGridItems(chunk);
+                        chunk.clear();
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                requeue(chunk, items);
+                throw ex;
+            } finally {
+                synchronized (this) {
+                    inFlight = Collections.emptyMap();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Puts the not written items back into the pending items, unless they have been overwritten in the meantime.
+     */
+    private synchronized void requeue(List<GridItem> chunk, Iterator<GridItem> remaining) {
+        List<GridItem> items = new ArrayList<>(chunk);
+        remaining.forEachRemaining(items::add);
+
+        if (pending.isEmpty()) pendingSince = System.currentTimeMillis();
+        for (GridItem item : items) {
+            if (pending.putIfAbsent(new ItemKey(item.mapId(), item.key(), item.x(), item.z()), item) == null)
+                pendingBytes += size(item);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (!closed && !isBatchReady()) {
+                        if (pending.isEmpty()) {
+                            wait();
+                        } else {
+                            wait(Math.max(nextBatchTime() - System.currentTimeMillis(), 1));
+                        }
+                    }
+                    if (closed) return;
+                }
+
+                try {
+                    flush();
+                    synchronized (this) {
+                        retryDelay = 0;
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    Logger.global.logError("Failed to write batched tiles to the database!", ex);
+
+                    // back off, so a failing database isn't hammered with retries of a full batch
+                    synchronized (this) {
+                        retryDelay = Math.min(Math.max(retryDelay * 2, MIN_RETRY_DELAY_MILLIS), MAX_RETRY_DELAY_MILLIS);
+                        retryAfter = System.currentTimeMillis() + retryDelay;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isBatchReady() {
+        if (pending.isEmpty()) return false;
+        return System.currentTimeMillis() >= nextBatchTime();
+    }
+
+    /**
+     * The time at which the pending items are written next, a full batch is written immediately
+     * unless writing the last batch failed
+     */
+    private long nextBatchTime() {
+        long time = pending.size() >= batchSize ? 0 : pendingSince + batchDelayMillis;
+        return Math.max(time, retryAfter);
+    }
+
+    /**
+     * Stops the background-thread and writes all pending grid-items.
+     * Writes after closing are written to the database directly.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            thread.join(10000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+
+    private static long size(@Nullable GridItem item) {
+        if (item == null) return 0;
+        byte[] data = item.data();
+        return data != null ? data.length : 0;
+    }
+
+    @Value
+    private static class ItemKey {
+        String mapId;
+        Key key;
+        int x, z;
+    }
+
+}
@@ -36,7 +36,9 @@
 import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 
 @SuppressWarnings("SqlSourceToSinkFlow")
 @RequiredArgsConstructor
@@ -164,6 +166,50 @@ public void writeGridItem(
         ));
     }
 
+    @Override
+    public void writeGridItems(Collection<GridItem> items) throws IOException {
+        if (items.isEmpty()) return;
+
+        // resolve all keys first, this might need its own connections
+        int[][] keys = new int[items.size()][];
+        int i = 0;
+        for (GridItem item : items) {
+            keys[i++] = new int[]{
+                    mapKey(item.mapId()),
+                    gridStorageKey(item.key()),
+                    compressionKey(item.compression())
+            };
+        }
+
+        db.run(connection -> {
+            PreparedStatement writeStatement = null;
+            PreparedStatement deleteStatement = null;
+
+            int j = 0;
+            for (GridItem item : items) {
+                int[] itemKeys = keys[j++];
+                if (item.isDelete()) {
+                    if (deleteStatement == null) deleteStatement = connection.prepareStatement(gridStorageDeleteStatement());
+                    setParameters(deleteStatement,
+                            itemKeys[0], itemKeys[1], item.x(), item.z()
+                    );
+                    deleteStatement.addBatch();
+                } else {
+                    if (writeStatement == null) writeStatement = connection.prepareStatement(gridStorageWriteStatement());
+                    setParameters(writeStatement,
+                            itemKeys[0], itemKeys[1], item.x(), item.z(), itemKeys[2],
+                            item.data()
+                    );
+                    writeStatement.addBatch();
+                }
+            }
+
+            // each grid-item is only contained once, so the order of writes and deletes doesn't matter
+            if (writeStatement != null) writeStatement.executeBatch();
+            if (deleteStatement != null) deleteStatement.executeBatch();
+        });
+    }
+
     @Language("sql")
     public abstract String gridStorageReadStatement();
 
@@ -184,6 +230,35 @@ public void writeGridItem(
         });
     }
 
+    /**
+     * Selects the length of a grid-item's data and a checksum of it as a fixed-length hex-string,
+     * or null if the database can't compute a checksum
+     */
+    @Language("sql")
+    public @Nullable String gridStorageFingerprintStatement() {
+        return null;
+    }
+
+    @Override
+    public @Nullable String fingerprintGridItem(
+            String mapId, Key key, int x, int z, Compression compression
+    ) throws IOException {
+        String statement = gridStorageFingerprintStatement();
+        if (statement == null) return null;
+
+        int mapKey = mapKey(mapId);
+        int storageKey = gridStorageKey(key);
+        int compressionKey = compressionKey(compression);
+        return db.run(connection -> {
+            ResultSet result = executeQuery(connection,
+                    statement,
+                    mapKey, storageKey, x, z, compressionKey
+            );
+            if (!result.next()) return null;
+            return Long.toHexString(result.getLong(1)) + result.getString(2).toLowerCase(Locale.ROOT);
+        });
+    }
+
     @Language("sql")
     public abstract String gridStorageDeleteStatement();
 
@@ -225,16 +300,23 @@ public boolean hasGridItem(
     @Override
     public TilePosition[] listGridItems(
             String mapId, Key key, Compression compression,
-            int start, int count
+            int minX, int maxX, @Nullable TilePosition after, int count
     ) throws IOException {
         int mapKey = mapKey(mapId);
         int storageKey = gridStorageKey(key);
         int compressionKey = compressionKey(compression);
+
+        // for the first page, start just before minX (no z is greater than Long.MAX_VALUE)
+        long afterX = after != null ? after.x() : (long) minX - 1;
+        long afterZ = after != null ? after.z() : Long.MAX_VALUE;
+
         return db.run(connection -> {
             ResultSet result = executeQuery(connection,
                     gridStorageListStatement(),
                     mapKey, storageKey, compressionKey,
-                    count, start
+                    minX, maxX,
+                    afterX, afterX, afterZ,
+                    count
             );
 
             TilePosition[] tiles = new TilePosition[count];
@@ -256,6 +338,69 @@ public TilePosition[] listGridItems(
         });
     }
 
+    @Language("sql")
+    public abstract String gridStorageXRangeStatement();
+
+    @Override
+    public int @Nullable [] gridItemsXRange(
+            String mapId, Key key, Compression compression
+    ) throws IOException {
+        int mapKey = mapKey(mapId);
+        int storageKey = gridStorageKey(key);
+        int compressionKey = compressionKey(compression);
+        return db.run(connection -> {
+            ResultSet result = executeQuery(connection,
+                    gridStorageXRangeStatement(),
+                    mapKey, storageKey, compressionKey
+            );
+            if (!result.next()) return null;
+
+            int minX = result.getInt(1);
+            if (result.wasNull()) return null;
+            return new int[]{ minX, result.getInt(2) };
+        });
+    }
+
+    @Language("sql")
+    public abstract String gridStorageMapXRangesStatement();
+
+    @Override
+    public GridStorageXRange[] listMapGridsXRanges(String mapId) throws IOException {
+        int mapKey = mapKey(mapId);
+        return db.run(connection -> {
+            ResultSet result = executeQuery(connection,
+                    gridStorageMapXRangesStatement(),
+                    mapKey
+            );
+
+            List<GridStorageXRange> ranges = new ArrayList<>();
+            while (result.next()) {
+                ranges.add(new GridStorageXRange(
+                        new Key(result.getString(1)),
+                        result.getInt(2),
+                        result.getInt(3),
+                        result.getInt(4)
+                ));
+            }
+            return ranges.toArray(new GridStorageXRange[0]);
+        });
+    }
+
+    @Language("sql")
+    public abstract String gridStoragePurgeXRangeStatement();
+
+    @Override
+    public int purgeGridItems(String mapId, Key key, int minX, int maxX) throws IOException {
+        int mapKey = mapKey(mapId);
+        int storageKey = gridStorageKey(key);
+        return db.run(connection -> {
+            return executeUpdate(connection,
+                    gridStoragePurgeXRangeStatement(),
+                    mapKey, storageKey, minX, maxX
+            );
+        });
+    }
+
     @Language("sql")
     public abstract String gridStorageCountMapItemsStatement();
 
@@ -500,10 +645,14 @@ protected static int executeUpdate(Connection connection, @Language("sql") Strin
     private static PreparedStatement prepareStatement(Connection connection, @Language("sql") String sql, Object... parameters) throws SQLException {
         // we only use this prepared statement once, but the DB-Driver caches those and reuses them
         PreparedStatement statement = connection.prepareStatement(sql);
+        setParameters(statement, parameters);
+        return statement;
+    }
+
+    private static void setParameters(PreparedStatement statement, Object... parameters) throws SQLException {
         for (int i = 0; i < parameters.length; i++) {
             statement.setObject(i + 1, parameters[i]);
         }
-        return statement;
     }
 
 }
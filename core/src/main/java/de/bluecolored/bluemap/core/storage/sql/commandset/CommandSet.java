@@ -30,6 +30,7 @@
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
 
 public interface CommandSet extends Closeable {
 
@@ -48,10 +49,23 @@ void writeGridItem(
             byte[] bytes
     ) throws IOException;
 
+    /**
+     * Writes (or deletes) all given grid-items in a single transaction
+     */
+    void writeGridItems(Collection<GridItem> items) throws IOException;
+
     byte @Nullable [] readGridItem(
             String mapId, Key key, int x, int z, Compression compression
     ) throws IOException;
 
+    /**
+     * Returns a fingerprint of the grid-item that is computed by the database, so the item-data doesn't need to be
+     * transferred. Returns null if there is no such item or if the database can't compute a fingerprint.
+     */
+    @Nullable String fingerprintGridItem(
+            String mapId, Key key, int x, int z, Compression compression
+    ) throws IOException;
+
     void deleteGridItem(
             String mapId, Key key, int x, int z
     ) throws IOException;
@@ -60,11 +74,38 @@ boolean hasGridItem(
             String mapId, Key key, int x, int z, Compression compression
     ) throws IOException;
 
+    /**
+     * Lists the positions of the grid-items in the given x-range, ordered by x and then z.
+     * Only grid-items positioned after the given position are listed (keyset-pagination),
+     * so each page can be found directly using the index instead of skipping all previous rows.
+     *
+     * @param after the last position of the previous page, or null for the first page
+     */
     TilePosition[] listGridItems(
             String mapId, Key key, Compression compression,
-            int start, int count
+            int minX, int maxX, @Nullable TilePosition after, int count
+    ) throws IOException;
+
+    /**
+     * Returns the lowest and highest x-position of all grid-items as <code>{minX, maxX}</code>,
+     * or null if there are no grid-items.
+     */
+    int @Nullable [] gridItemsXRange(
+            String mapId, Key key, Compression compression
     ) throws IOException;
 
+    /**
+     * Returns the x-range of the grid-items of each grid-storage of a map
+     */
+    GridStorageXRange[] listMapGridsXRanges(String mapId) throws IOException;
+
+    /**
+     * Deletes all grid-items of a grid-storage in the given (inclusive) x-range.
+     *
+     * @return the number of deleted grid-items
+     */
+    int purgeGridItems(String mapId, Key key, int minX, int maxX) throws IOException;
+
     int countMapGridsItems(String mapId) throws IOException;
 
     int purgeMapGrids(String mapId, int limit) throws IOException;
@@ -108,4 +149,83 @@ public int hashCode() {
         }
     }
 
+    class GridItem {
+        private final String mapId;
+        private final Key key;
+        private final int x;
+        private final int z;
+        private final Compression compression;
+        private final byte @Nullable [] data;
+
+        /**
+         * @param data the data of the grid-item, or null if the grid-item should be deleted
+         */
+        public GridItem(String mapId, Key key, int x, int z, Compression compression, byte @Nullable [] data) {
+            this.mapId = mapId;
+            this.key = key;
+            this.x = x;
+            this.z = z;
+            this.compression = compression;
+            this.data = data;
+        }
+
+        public String mapId() {
+            return mapId;
+        }
+
+        public Key key() {
+            return key;
+        }
+
+        public int x() {
+            return x;
+        }
+
+        public int z() {
+            return z;
+        }
+
+        public Compression compression() {
+            return compression;
+        }
+
+        public byte @Nullable [] data() {
+            return data;
+        }
+
+        public boolean isDelete() {
+            return data == null;
+        }
+    }
+
+    class GridStorageXRange {
+        private final Key key;
+        private final int minX;
+        private final int maxX;
+        private final int itemCount;
+
+        public GridStorageXRange(Key key, int minX, int maxX, int itemCount) {
+            this.key = key;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.itemCount = itemCount;
+        }
+
+        public Key key() {
+            return key;
+        }
+
+        public int minX() {
+            return minX;
+        }
+
+        public int maxX() {
+            return maxX;
+        }
+
+        public int itemCount() {
+            return itemCount;
+        }
+    }
+
 }
@@ -213,7 +213,44 @@ public String gridStorageListStatement() {
                "WHERE `map` = ?\n" +
                "AND `storage` = ?\n" +
                "AND `compression` = ?\n" +
-               "LIMIT ? OFFSET ?";
+               "AND `x` BETWEEN ? AND ?\n" +
+               "AND (`x` > ? OR (`x` = ? AND `z` > ?))\n" +
+               "ORDER BY `x`, `z`\n" +
+               "LIMIT ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String gridStorageXRangeStatement() {
+        return "SELECT MIN(`x`), MAX(`x`)\n" +
+               "FROM `bluemap_grid_storage_data`\n" +
+               "WHERE `map` = ?\n" +
+               "AND `storage` = ?\n" +
+               "AND `compression` = ?";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String gridStorageMapXRangesStatement() {
+        return "SELECT s.`key`, r.min_x, r.max_x, r.item_count\n" +
+               "FROM (\n" +
+               " SELECT `storage`, MIN(`x`) AS min_x, MAX(`x`) AS max_x, COUNT(*) AS item_count\n" +
+               " FROM `bluemap_grid_storage_data`\n" +
+               " WHERE `map` = ?\n" +
+               " GROUP BY `storage`\n" +
+               ") r\n" +
+               "INNER JOIN `bluemap_grid_storage` s\n" +
+               " ON s.`id` = r.`storage`";
+    }
+
+    @Override
+    @Language("sqlite")
+    public String gridStoragePurgeXRangeStatement() {
+        return "DELETE\n" +
+               "FROM `bluemap_grid_storage_data`\n" +
+               "WHERE `map` = ?\n" +
+               "AND `storage` = ?\n" +
+               "AND `x` BETWEEN ? AND ?";
     }
 
     @Override
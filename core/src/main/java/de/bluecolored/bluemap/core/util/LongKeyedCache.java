@@ -0,0 +1,374 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * A size-bounded cache using primitive <code>long</code> keys, so lookups do not allocate any boxed keys.<br>
+ * The cache is split into segments that are each guarded by their own lock, and each segment evicts entries using the
+ * CLOCK (second-chance) algorithm once it is full.<br>
+ * <br>
+ * Values are loaded outside of any lock, so two threads missing the same key at the same time might both load it,
+ * but only the first loaded value will be cached and returned to both.<br>
+ * <br>
+ * Entries can additionally expire a fixed time after they have been written or last accessed. Expired entries are
+ * never returned, and they are removed when they are looked up, when their slot is reached during eviction or on
+ * {@link #cleanUp()}. (Values are held strongly, so the maximum size is the only bound on memory)
+ *
+ * @param <V> the value type
+ */
+public class LongKeyedCache<V> {
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+    @Getter private final int maximumSize;
+    private final long expireAfterWriteNanos, expireAfterAccessNanos;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public LongKeyedCache(int maximumSize) {
+        this(maximumSize, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param expireAfterWrite the time after which an entry expires once it has been written
+     * @param expireAfterAccess the time after which an entry expires once it has been written or last been returned
+     */
+    @SuppressWarnings("unchecked")
+    public LongKeyedCache(int maximumSize, long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        if (maximumSize < 1) throw new IllegalArgumentException("maximumSize must be at least 1");
+        if (expireAfterWrite <= 0 || expireAfterAccess <= 0) throw new IllegalArgumentException("expiry must be positive");
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+
+        int segmentCount = Math.min(Runtime.getRuntime().availableProcessors() * 4, Math.max(maximumSize / 16, 1));
+        segmentCount = Integer.highestOneBit(segmentCount);
+
+        int segmentCapacity = (maximumSize + segmentCount - 1) / segmentCount;
+        this.segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            this.segments[i] = new Segment<>(segmentCapacity, evictionCount, expireAfterWriteNanos, expireAfterAccessNanos);
+        this.segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * Returns the value cached for the given key, or loads and caches it using the given loader if there is none.<br>
+     * If the loader returns <code>null</code>, nothing is cached and <code>null</code> is returned.
+     */
+    public @Nullable V get(long key, LongFunction<? extends V> loader) {
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+
+        V value = segment.get(key, hash, System.nanoTime());
+        if (value != null) {
+            hitCount.increment();
+            return value;
+        }
+
+        missCount.increment();
+        value = loader.apply(key);
+        if (value == null) return null;
+
+        return segment.putIfAbsent(key, hash, value, System.nanoTime());
+    }
+
+    public @Nullable V getIfPresent(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash, System.nanoTime());
+    }
+
+    public void put(long key, V value) {
+        if (value == null) throw new NullPointerException("value can not be null");
+        int hash = hash(key);
+        segmentFor(hash).put(key, hash, value, System.nanoTime());
+    }
+
+    public void invalidate(long key) {
+        int hash = hash(key);
+        segmentFor(hash).remove(key, hash);
+    }
+
+    public void invalidateAll() {
+        for (Segment<V> segment : segments)
+            segment.clear();
+    }
+
+    /**
+     * Removes all expired entries, so their values can be garbage-collected
+     */
+    public void cleanUp() {
+        if (expireAfterWriteNanos == Long.MAX_VALUE && expireAfterAccessNanos == Long.MAX_VALUE) return;
+        long now = System.nanoTime();
+        for (Segment<V> segment : segments)
+            segment.cleanUp(now);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<V> segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public Stats getStats() {
+        return new Stats(
+                hitCount.sum(),
+                missCount.sum(),
+                evictionCount.sum(),
+                size(),
+                maximumSize
+        );
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[(hash >>> 16) & segmentMask];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Packs two int coordinates into one <code>long</code> key.
+     */
+    public static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int keyZ(long key) {
+        return (int) key;
+    }
+
+    @Getter
+    @ToString
+    @RequiredArgsConstructor
+    public static class Stats {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+        private final int maximumSize;
+
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+    }
+
+    /**
+     * An open-addressing hash-table (linear probing) with a fixed capacity.
+     * The table is always at least twice as large as the capacity, so probe-sequences stay short.
+     */
+    private static final class Segment<V> {
+
+        private final int capacity;
+        private final LongAdder evictionCount;
+        private final long expireAfterWriteNanos, expireAfterAccessNanos;
+        private final int mask;
+
+        private final long[] keys;
+        private final Object[] values;
+        private final boolean[] referenced;
+        private final long[] writeTimes, accessTimes;
+
+        private int size = 0;
+        private int clockHand = 0;
+
+        Segment(int capacity, LongAdder evictionCount, long expireAfterWriteNanos, long expireAfterAccessNanos) {
+            this.capacity = capacity;
+            this.evictionCount = evictionCount;
+            this.expireAfterWriteNanos = expireAfterWriteNanos;
+            this.expireAfterAccessNanos = expireAfterAccessNanos;
+
+            int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) << 1;
+            this.mask = tableSize - 1;
+            this.keys = new long[tableSize];
+            this.values = new Object[tableSize];
+            this.referenced = new boolean[tableSize];
+            this.writeTimes = new long[tableSize];
+            this.accessTimes = new long[tableSize];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized @Nullable V get(long key, int hash, long now) {
+            int index = indexOf(key, hash);
+            if (index < 0) return null;
+            if (isExpired(index, now)) {
+                removeAt(index);
+                return null;
+            }
+            referenced[index] = true;
+            accessTimes[index] = now;
+            return (V) values[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V putIfAbsent(long key, int hash, V value, long now) {
+            int index = indexOf(key, hash);
+            if (index >= 0 && !isExpired(index, now)) {
+                referenced[index] = true;
+                accessTimes[index] = now;
+                return (V) values[index];
+            }
+
+            if (index >= 0) removeAt(index);
+            insert(key, hash, value, now);
+            return value;
+        }
+
+        synchronized void put(long key, int hash, V value, long now) {
+            int index = indexOf(key, hash);
+            if (index >= 0) {
+                values[index] = value;
+                writeTimes[index] = now;
+                accessTimes[index] = now;
+                return;
+            }
+
+            insert(key, hash, value, now);
+        }
+
+        synchronized void cleanUp(long now) {
+            int index = 0;
+            while (index <= mask) {
+                // removeAt might shift the next entry into this slot, so check it again
+                if (values[index] != null && isExpired(index, now)) removeAt(index);
+                else index++;
+            }
+        }
+
+        synchronized void remove(long key, int hash) {
+            int index = indexOf(key, hash);
+            if (index >= 0) removeAt(index);
+        }
+
+        synchronized void clear() {
+            Arrays.fill(values, null);
+            Arrays.fill(referenced, false);
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private int indexOf(long key, int hash) {
+            int index = hash & mask;
+            while (values[index] != null) {
+                if (keys[index] == key) return index;
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private boolean isExpired(int index, long now) {
+            return now - writeTimes[index] > expireAfterWriteNanos || now - accessTimes[index] > expireAfterAccessNanos;
+        }
+
+        private void insert(long key, int hash, V value, long now) {
+            if (size >= capacity) evict(now);
+
+            int index = hash & mask;
+            while (values[index] != null)
+                index = (index + 1) & mask;
+
+            keys[index] = key;
+            values[index] = value;
+            referenced[index] = false;
+            writeTimes[index] = now;
+            accessTimes[index] = now;
+            size++;
+        }
+
+        private void evict(long now) {
+            while (true) {
+                int index = clockHand;
+                clockHand = (clockHand + 1) & mask;
+
+                if (values[index] == null) continue;
+                if (referenced[index] && !isExpired(index, now)) {
+                    referenced[index] = false;
+                    continue;
+                }
+
+                removeAt(index);
+                evictionCount.increment();
+                return;
+            }
+        }
+
+        /**
+         * Removes the entry at the given index and shifts following entries of the same probe-sequence back,
+         * so no tombstones are needed.
+         */
+        private void removeAt(int index) {
+            int gap = index;
+            int next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == null) break;
+
+                int home = hash(keys[next]) & mask;
+                boolean canMove = next > gap ?
+                        home <= gap || home > next :
+                        home <= gap && home > next;
+
+                if (canMove) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    referenced[gap] = referenced[next];
+                    writeTimes[gap] = writeTimes[next];
+                    accessTimes[gap] = accessTimes[next];
+                    gap = next;
+                }
+            }
+
+            values[gap] = null;
+            referenced[gap] = false;
+            size--;
+        }
+
+    }
+
+}
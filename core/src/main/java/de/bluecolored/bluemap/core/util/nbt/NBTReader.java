@@ -0,0 +1,246 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util.nbt;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal, forward-only reader for binary NBT data.<br>
+ * Instead of building a tree of tag-objects, the caller walks through the data tag by tag and reads only the values
+ * it is interested in, everything else is skipped. Tag-names are read into a reused buffer and can be compared
+ * using {@link #nameEquals(String)} without creating any strings.<br>
+ * <br>
+ * Reading a compound looks like this:
+ * <pre>
+ * byte type;
+ * while ((type = reader.nextTag()) != NBTReader.TAG_END) {
+ *     if (reader.nameEquals("DataVersion")) dataVersion = reader.readInt(type);
+ *     else reader.skip(type);
+ * }
+ * </pre>
+ */
+public class NBTReader implements Closeable {
+
+    public static final byte TAG_END = 0;
+    public static final byte TAG_BYTE = 1;
+    public static final byte TAG_SHORT = 2;
+    public static final byte TAG_INT = 3;
+    public static final byte TAG_LONG = 4;
+    public static final byte TAG_FLOAT = 5;
+    public static final byte TAG_DOUBLE = 6;
+    public static final byte TAG_BYTE_ARRAY = 7;
+    public static final byte TAG_STRING = 8;
+    public static final byte TAG_LIST = 9;
+    public static final byte TAG_COMPOUND = 10;
+    public static final byte TAG_INT_ARRAY = 11;
+    public static final byte TAG_LONG_ARRAY = 12;
+
+    private final DataInputStream in;
+
+    private byte[] nameBuffer = new byte[64];
+    private int nameLength = 0;
+
+    private byte listType = TAG_END;
+
+    public NBTReader(InputStream in) {
+        this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+    }
+
+    /**
+     * Reads the type and name of the root-tag, which is expected to be a compound.
+     * Afterwards the entries of the root-compound can be read using {@link #nextTag()}.
+     */
+    public void beginRoot() throws IOException {
+        byte type = in.readByte();
+        if (type != TAG_COMPOUND)
+            throw new IOException("Invalid NBT: Expected root-tag to be a compound but got tag-type " + type);
+        readName();
+    }
+
+    /**
+     * Reads the type and name of the next entry in the current compound.
+     * @return the type of the tag, or {@link #TAG_END} if the compound has no more entries
+     */
+    public byte nextTag() throws IOException {
+        byte type = in.readByte();
+        if (type == TAG_END) {
+            nameLength = 0;
+            return TAG_END;
+        }
+
+        readName();
+        return type;
+    }
+
+    /**
+     * Checks if the name of the last read tag equals the given (ascii-only) name, without allocating a string.
+     */
+    public boolean nameEquals(String name) {
+        int length = name.length();
+        if (length != nameLength) return false;
+        for (int i = 0; i < length; i++) {
+            if (nameBuffer[i] != (byte) name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of the last read tag.
+     */
+    public String name() {
+        return new String(nameBuffer, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the header of a list.
+     * The element-type can be retrieved with {@link #getListType()} until the next list-header is read.
+     * @return the amount of elements in the list
+     */
+    public int beginList() throws IOException {
+        listType = in.readByte();
+        return in.readInt();
+    }
+
+    public byte getListType() {
+        return listType;
+    }
+
+    public byte readByte() throws IOException {
+        return in.readByte();
+    }
+
+    public long readLong() throws IOException {
+        return in.readLong();
+    }
+
+    /**
+     * Reads a byte-, short- or int-value and returns it as an int.
+     */
+    public int readInt(byte type) throws IOException {
+        switch (type) {
+            case TAG_BYTE: return in.readByte();
+            case TAG_SHORT: return in.readShort();
+            case TAG_INT: return in.readInt();
+            default: throw new IOException("Invalid NBT: Expected a byte, short or int tag but got tag-type " + type);
+        }
+    }
+
+    /**
+     * Reads a byte-, short-, int- or long-value and returns it as a long.
+     */
+    public long readLong(byte type) throws IOException {
+        if (type == TAG_LONG) return in.readLong();
+        return readInt(type);
+    }
+
+    public String readString() throws IOException {
+        return in.readUTF();
+    }
+
+    public byte[] readByteArray() throws IOException {
+        byte[] data = new byte[readArrayLength()];
+        in.readFully(data);
+        return data;
+    }
+
+    public int[] readIntArray() throws IOException {
+        int[] data = new int[readArrayLength()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = in.readInt();
+        return data;
+    }
+
+    public long[] readLongArray() throws IOException {
+        long[] data = new long[readArrayLength()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = in.readLong();
+        return data;
+    }
+
+    /**
+     * Skips the value of a tag with the given type.
+     */
+    public void skip(byte type) throws IOException {
+        switch (type) {
+            case TAG_END: return;
+            case TAG_BYTE: skipBytes(1); return;
+            case TAG_SHORT: skipBytes(2); return;
+            case TAG_INT:
+            case TAG_FLOAT: skipBytes(4); return;
+            case TAG_LONG:
+            case TAG_DOUBLE: skipBytes(8); return;
+            case TAG_BYTE_ARRAY: skipBytes(readArrayLength()); return;
+            case TAG_INT_ARRAY: skipBytes(readArrayLength() * 4L); return;
+            case TAG_LONG_ARRAY: skipBytes(readArrayLength() * 8L); return;
+            case TAG_STRING: skipBytes(in.readUnsignedShort()); return;
+            case TAG_LIST:
+                byte elementType = in.readByte();
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) skip(elementType);
+                return;
+            case TAG_COMPOUND:
+                byte entryType;
+                while ((entryType = in.readByte()) != TAG_END) {
+                    skipBytes(in.readUnsignedShort()); // name
+                    skip(entryType);
+                }
+                return;
+            default:
+                throw new IOException("Invalid NBT: Unknown tag-type " + type);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readName() throws IOException {
+        int length = in.readUnsignedShort();
+        if (length > nameBuffer.length) nameBuffer = new byte[Math.max(length, nameBuffer.length * 2)];
+        in.readFully(nameBuffer, 0, length);
+        nameLength = length;
+    }
+
+    private int readArrayLength() throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid NBT: Negative array-length " + length);
+        return length;
+    }
+
+    private void skipBytes(long n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes might skip nothing without being at the end of the stream, so read a byte to check
+                if (in.read() == -1) throw new EOFException();
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+}
@@ -37,6 +37,14 @@ default boolean filter(int chunkX, int chunkZ, int lastModified) {
 
     void accept(int chunkX, int chunkZ, T chunk);
 
+    /**
+     * Called instead of {@link #accept(int, int, Object)} by regions that know the size of the loaded chunk-data.
+     * @param dataSize the size of the chunk-data in bytes, as it has been read from the region
+     */
+    default void accept(int chunkX, int chunkZ, T chunk, int dataSize) {
+        accept(chunkX, chunkZ, chunk);
+    }
+
     default void fail(int chunkX, int chunkZ, IOException exception) throws IOException {
         throw exception;
     }
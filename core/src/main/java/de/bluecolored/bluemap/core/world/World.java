@@ -115,9 +115,10 @@ default WatchService<Vector2i> createRegionWatchService() throws IOException {
      *
      * @param x the region x coordinate
      * @param z the region z coordinate
+     * @return the size of the loaded chunk-data in bytes, as it has been read from the region
      */
-    default void preloadRegionChunks(int x, int z) {
-        preloadRegionChunks(x, z, pos -> true);
+    default long preloadRegionChunks(int x, int z) {
+        return preloadRegionChunks(x, z, pos -> true);
     }
 
     /**
@@ -125,9 +126,11 @@ default void preloadRegionChunks(int x, int z) {
      *
      * @param x the region x coordinate
      * @param z the region z coordinate
-     * @param chunkFilter a predicate to filter the chunks to preload
+     * @param chunkFilter a predicate to filter the chunks to preload, chunks it accepts are either reloaded into the
+     *                    cache or removed from it
+     * @return the size of the loaded chunk-data in bytes, as it has been read from the region
      */
-    void preloadRegionChunks(int x, int z, Predicate<Vector2i> chunkFilter);
+    long preloadRegionChunks(int x, int z, Predicate<Vector2i> chunkFilter);
 
     /**
      * Invalidates the complete chunk cache (if there is a cache), so that every chunk has to be reloaded from disk.
@@ -27,16 +27,19 @@
 import com.flowpowered.math.vector.Vector2i;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.util.Grid;
+import de.bluecolored.bluemap.core.util.LongKeyedCache;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.util.WatchService;
 import de.bluecolored.bluemap.core.world.ChunkConsumer;
 import de.bluecolored.bluemap.core.world.Region;
 import de.bluecolored.bluemap.core.world.mca.region.RegionType;
-import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -45,12 +48,14 @@
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-@RequiredArgsConstructor
 public class ChunkGrid<T> {
+    public static final int DEFAULT_CHUNK_CACHE_SIZE = 10240; // 10 regions worth of chunks
+
     private static final Grid CHUNK_GRID = new Grid(16);
     private static final Grid REGION_GRID = new Grid(32).multiply(CHUNK_GRID);
 
@@ -61,18 +66,23 @@
 
     private final LoadingCache<Vector2i, Region<T>> regionCache = Caffeine.newBuilder()
             .executor(BlueMap.THREAD_POOL)
-            .softValues()
             .maximumSize(32)
             .expireAfterWrite(10, TimeUnit.MINUTES)
             .expireAfterAccess(1, TimeUnit.MINUTES)
+            .<Vector2i, Region<T>>removalListener(ChunkGrid::closeRegion) // regions can hold their file open
             .build(this::loadRegion);
-    private final LoadingCache<Vector2i, T> chunkCache = Caffeine.newBuilder()
-            .executor(BlueMap.THREAD_POOL)
-            .softValues()
-            .maximumSize(10240) // 10 regions worth of chunks
-            .expireAfterWrite(10, TimeUnit.MINUTES)
-            .expireAfterAccess(1, TimeUnit.MINUTES)
-            .build(this::loadChunk);
+    private final LongKeyedCache<T> chunkCache;
+    private final LongFunction<T> chunkCacheLoader = this::loadChunk; // created once, so cache-hits don't allocate
+
+    public ChunkGrid(ChunkLoader<T> chunkLoader, Path regionFolder) {
+        this(chunkLoader, regionFolder, DEFAULT_CHUNK_CACHE_SIZE);
+    }
+
+    public ChunkGrid(ChunkLoader<T> chunkLoader, Path regionFolder, int chunkCacheSize) {
+        this.chunkLoader = chunkLoader;
+        this.regionFolder = regionFolder;
+        this.chunkCache = new LongKeyedCache<>(chunkCacheSize, 10, 1, TimeUnit.MINUTES);
+    }
 
     public Grid getChunkGrid() {
         return CHUNK_GRID;
@@ -83,11 +93,15 @@ public Grid getRegionGrid() {
     }
 
     public T getChunk(int x, int z) {
-        return getChunk(VECTOR_2_I_CACHE.get(x, z));
+        return chunkCache.get(LongKeyedCache.key(x, z), chunkCacheLoader);
     }
 
-    private T getChunk(Vector2i pos) {
-        return chunkCache.get(pos);
+    public @Nullable T getCachedChunk(int x, int z) {
+        return chunkCache.getIfPresent(LongKeyedCache.key(x, z));
+    }
+
+    public LongKeyedCache.Stats getChunkCacheStats() {
+        return chunkCache.getStats();
     }
 
     public Region<T> getRegion(int x, int z) {
@@ -98,19 +112,32 @@ private Region<T> getRegion(Vector2i pos) {
         return regionCache.get(pos);
     }
 
-    public void preloadRegionChunks(int x, int z, Predicate<Vector2i> chunkFilter) {
+    public long preloadRegionChunks(int x, int z, Predicate<Vector2i> chunkFilter) {
+        // release expired chunks before filling the cache up again
+        chunkCache.cleanUp();
+
+        long[] loadedBytes = {0};
         try {
             getRegion(x, z).iterateAllChunks(new ChunkConsumer<T>() {
                 @Override
                 public boolean filter(int chunkX, int chunkZ, int lastModified) {
                     Vector2i chunkPos = VECTOR_2_I_CACHE.get(chunkX, chunkZ);
-                    return chunkFilter.test(chunkPos);
+                    if (!chunkFilter.test(chunkPos)) return false;
+
+                    // a requested chunk is either reloaded or not cached at all, even if loading it fails
+                    chunkCache.invalidate(LongKeyedCache.key(chunkX, chunkZ));
+                    return true;
                 }
 
                 @Override
                 public void accept(int chunkX, int chunkZ, T chunk) {
-                    Vector2i chunkPos = VECTOR_2_I_CACHE.get(chunkX, chunkZ);
-                    chunkCache.put(chunkPos, chunk);
+                    chunkCache.put(LongKeyedCache.key(chunkX, chunkZ), chunk);
+                }
+
+                @Override
+                public void accept(int chunkX, int chunkZ, T chunk, int dataSize) {
+                    accept(chunkX, chunkZ, chunk);
+                    loadedBytes[0] += dataSize;
                 }
 
                 @Override
@@ -121,6 +148,7 @@ public void fail(int chunkX, int chunkZ, IOException ex) {
         } catch (IOException ex) {
             Logger.global.logDebug(String.format("Unexpected exception trying to preload region ('%s' -> x:%d, z:%d): %s", regionFolder, x, z, ex));
         }
+        return loadedBytes[0];
     }
 
     public Collection<Vector2i> listRegions() {
@@ -155,7 +183,16 @@ public void invalidateChunkCache() {
 
     public void invalidateChunkCache(int x, int z) {
         regionCache.invalidate(VECTOR_2_I_CACHE.get(x >> 5, z >> 5));
-        chunkCache.invalidate(VECTOR_2_I_CACHE.get(x, z));
+        chunkCache.invalidate(LongKeyedCache.key(x, z));
+    }
+
+    private static void closeRegion(@Nullable Vector2i regionPos, @Nullable Region<?> region, RemovalCause cause) {
+        if (!(region instanceof Closeable)) return;
+        try {
+            ((Closeable) region).close();
+        } catch (IOException ex) {
+            Logger.global.logDebug("Failed to close region " + regionPos + ": " + ex);
+        }
     }
 
     private Region<T> loadRegion(Vector2i regionPos) {
@@ -166,8 +203,8 @@ private Region<T> loadRegion(int x, int z) {
         return RegionType.loadRegion(chunkLoader, regionFolder, x, z);
     }
 
-    private T loadChunk(Vector2i chunkPos) {
-        return loadChunk(chunkPos.getX(), chunkPos.getY());
+    private T loadChunk(long key) {
+        return loadChunk(LongKeyedCache.keyX(key), LongKeyedCache.keyZ(key));
     }
 
     private T loadChunk(int x, int z) {
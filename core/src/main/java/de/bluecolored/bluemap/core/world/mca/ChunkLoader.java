@@ -27,11 +27,26 @@
 import de.bluecolored.bluemap.core.storage.compression.Compression;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface ChunkLoader<T> {
 
     T load(byte[] data, int offset, int length, Compression compression) throws IOException;
 
+    /**
+     * Loads a chunk from the remaining bytes of the given buffer.<br>
+     * The default implementation copies the data into a heap-array if the buffer is not backed by one,
+     * implementations should override this to read directly from e.g. memory-mapped buffers.
+     */
+    default T load(ByteBuffer data, Compression compression) throws IOException {
+        if (data.hasArray())
+            return load(data.array(), data.arrayOffset() + data.position(), data.remaining(), compression);
+
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return load(bytes, 0, bytes.length, compression);
+    }
+
     T emptyChunk();
 
     T erroredChunk();
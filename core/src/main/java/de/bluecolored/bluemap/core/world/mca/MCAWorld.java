@@ -6,9 +6,9 @@
 import de.bluecolored.bluemap.core.resources.pack.datapack.DataPack;
 import de.bluecolored.bluemap.core.util.Grid;
 import de.bluecolored.bluemap.core.util.Key;
+import de.bluecolored.bluemap.core.util.LongKeyedCache;
 import de.bluecolored.bluemap.core.util.WatchService;
 import de.bluecolored.bluemap.core.world.*;
-import de.bluecolored.bluemap.core.world.mca.chunk.Chunk;
 import de.bluecolored.bluemap.core.world.mca.chunk.MCAChunkLoader;
 import de.bluecolored.bluemap.core.world.mca.data.LevelData;
 import de.bluecolored.bluemap.core.world.mca.entity.chunk.MCAEntityChunk;
@@ -17,13 +17,12 @@
 import de.tr7zw.nbtapi.NBTFile;
 import lombok.Getter;
 import lombok.ToString;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -36,24 +35,23 @@ public class MCAWorld implements World {
     private final Key dimension;
     private final DataPack dataPack;
     private final LevelData levelData;
-    private final Map<Long, Chunk> chunks;
-    private final Map<Long, Chunk> entities;
 
     private final DimensionType dimensionType;
     private final Vector3i spawnPoint;
     private final Path dimensionFolder;
 
-    private final ChunkGrid blockChunkGrid;
-    private final ChunkGrid entityChunkGrid;
+    private final ChunkGrid<Chunk> blockChunkGrid;
+    private final ChunkGrid<Chunk> entityChunkGrid;
 
-    @SuppressWarnings("unchecked")
     public MCAWorld(File worldFolder, Key dimension, DataPack dataPack) throws IOException {
+        this(worldFolder, dimension, dataPack, ChunkGrid.DEFAULT_CHUNK_CACHE_SIZE);
+    }
+
+    public MCAWorld(File worldFolder, Key dimension, DataPack dataPack, int chunkCacheSize) throws IOException {
         this.id = World.id(worldFolder.toPath(), dimension);
         this.worldFolder = worldFolder;
         this.dimension = dimension;
         this.dataPack = dataPack;
-        this.chunks = new ConcurrentHashMap<Long, Chunk>();
-        this.entities = new ConcurrentHashMap<Long, Chunk>();
 
         // Load level.dat
         File levelFile = new File(worldFolder, "level.dat");
@@ -90,30 +88,10 @@ public MCAWorld(File worldFolder, Key dimension, DataPack dataPack) throws IOExc
         );
         this.dimensionFolder = resolveDimensionFolder(worldFolder.toPath(), dimension);
 
-        ChunkLoader chunkLoader = new MCAChunkLoader(this);
-        ChunkLoader entityLoader = new MCAEntityChunkLoader();
-        this.blockChunkGrid = new ChunkGrid(chunkLoader, dimensionFolder.resolve("region"));
-        this.entityChunkGrid = new ChunkGrid(entityLoader, dimensionFolder.resolve("entities"));
-    }
-
-    // Adapter class to wrap MCA Chunks as core Chunks
-    private class ChunkAdapter implements de.bluecolored.bluemap.core.world.Chunk {
-        private final Chunk mcaChunk;
-        public ChunkAdapter(Chunk mcaChunk) { this.mcaChunk = mcaChunk; }
-        @Override public BlockState getBlockState(int x, int y, int z) { return mcaChunk.getBlockState(x, y, z); }
-        @Override public de.bluecolored.bluemap.core.world.biome.Biome getBiome(int x, int y, int z) { return (de.bluecolored.bluemap.core.world.biome.Biome) mcaChunk.getBiome(x, y, z); }
-        @Override public boolean isGenerated() { return mcaChunk.isGenerated(); }
-        @Override public boolean hasLightData() { return mcaChunk.hasLightData(); }
-        @Override public long getInhabitedTime() { return mcaChunk.getInhabitedTime(); }
-        @Override public LightData getLightData(int x, int y, int z, LightData target) { return mcaChunk.getLightData(x, y, z, target); }
-        @Override public int getMinY(int x, int z) { return mcaChunk.getMinY(x, z); }
-        @Override public int getMaxY(int x, int z) { return mcaChunk.getMaxY(x, z); }
-        @Override public boolean hasWorldSurfaceHeights() { return mcaChunk.hasWorldSurfaceHeights(); }
-        @Override public int getWorldSurfaceY(int x, int z) { return mcaChunk.getWorldSurfaceY(x, z); }
-        @Override public boolean hasOceanFloorHeights() { return mcaChunk.hasOceanFloorHeights(); }
-        @Override public int getOceanFloorY(int x, int z) { return mcaChunk.getOceanFloorY(x, z); }
-        @Override public BlockEntity getBlockEntity(int x, int y, int z) { return mcaChunk.getBlockEntity(x, y, z); }
-        @Override public void iterateBlockEntities(Consumer<BlockEntity> consumer) { mcaChunk.iterateBlockEntities(consumer); }
+        ChunkLoader<Chunk> chunkLoader = new MCAChunkLoader(this);
+        ChunkLoader<Chunk> entityLoader = new MCAEntityChunkLoader();
+        this.blockChunkGrid = new ChunkGrid<>(chunkLoader, dimensionFolder.resolve("region"), chunkCacheSize);
+        this.entityChunkGrid = new ChunkGrid<>(entityLoader, dimensionFolder.resolve("entities"), chunkCacheSize);
     }
 
     @Override
@@ -132,82 +110,27 @@ public Grid getRegionGrid() {
     }
 
     @Override
-    public de.bluecolored.bluemap.core.world.Chunk getChunkAtBlock(int x, int z) {
+    public Chunk getChunkAtBlock(int x, int z) {
         return getChunk(x >> 4, z >> 4);
     }
 
     @Override
-    public de.bluecolored.bluemap.core.world.Chunk getChunk(int x, int z) {
-        long key = (((long) x) << 32) | (((long) z) & 0xFFFFFFFFL);
-        Chunk mcaChunk = chunks.computeIfAbsent(key, k -> loadChunk(x, z));
-        if (mcaChunk == null) return null;
-        return new ChunkAdapter(mcaChunk);
+    public Chunk getChunk(int x, int z) {
+        return blockChunkGrid.getChunk(x, z);
+    }
+
+    /**
+     * Returns the hit/miss/eviction statistics of the block-chunk cache backing {@link #getChunk(int, int)}.
+     *
+     * @return the current chunk cache statistics
+     */
+    public LongKeyedCache.Stats getChunkCacheStats() {
+        return blockChunkGrid.getChunkCacheStats();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public Region<de.bluecolored.bluemap.core.world.Chunk> getRegion(int x, int z) {
-        final Region<Chunk> mcaRegion;
-        try {
-            Region<Chunk> region = (Region<Chunk>) blockChunkGrid.getRegion(x, z);
-            mcaRegion = region;
-        } catch (Exception e) {
-            Logger.global.logError("Failed to get region at " + x + "," + z, e);
-            return new Region<de.bluecolored.bluemap.core.world.Chunk>() {
-                @Override
-                public de.bluecolored.bluemap.core.world.Chunk loadChunk(int chunkX, int chunkZ) throws IOException { return null; }
-                @Override
-                public void iterateAllChunks(ChunkConsumer<de.bluecolored.bluemap.core.world.Chunk> consumer) throws IOException {}
-                @Override
-                public de.bluecolored.bluemap.core.world.Chunk emptyChunk() { return de.bluecolored.bluemap.core.world.Chunk.EMPTY_CHUNK; }
-                @Override
-                public de.bluecolored.bluemap.core.world.Chunk erroredChunk() { return de.bluecolored.bluemap.core.world.Chunk.ERRORED_CHUNK; }
-            };
-        }
-        return new Region<de.bluecolored.bluemap.core.world.Chunk>() {
-            @Override
-            public de.bluecolored.bluemap.core.world.Chunk loadChunk(int chunkX, int chunkZ) throws IOException {
-                try {
-                    Chunk mcaChunk = mcaRegion.loadChunk(chunkX, chunkZ);
-                    if (mcaChunk == null) return null;
-                    return new ChunkAdapter(mcaChunk);
-                } catch (IOException e) {
-                    Logger.global.logError("Failed to load chunk in region at " + chunkX + "," + chunkZ, e);
-                    throw e;
-                }
-            }
-            @Override
-            public void iterateAllChunks(ChunkConsumer<de.bluecolored.bluemap.core.world.Chunk> consumer) throws IOException {
-                try {
-                    mcaRegion.iterateAllChunks(new ChunkConsumer<Chunk>() {
-                        @Override
-                        public boolean filter(int chunkX, int chunkZ, int lastModified) {
-                            return consumer.filter(chunkX, chunkZ, lastModified);
-                        }
-                        @Override
-                        public void accept(int chunkX, int chunkZ, Chunk chunk) {
-                            consumer.accept(chunkX, chunkZ, new ChunkAdapter(chunk));
-                        }
-                        @Override
-                        public void fail(int chunkX, int chunkZ, IOException exception) throws IOException {
-                            try {
-                                consumer.fail(chunkX, chunkZ, exception);
-                            } catch (IOException e) {
-                                Logger.global.logError("Failed to handle chunk fail in region at " + chunkX + "," + chunkZ, e);
-                                throw e;
-                            }
-                        }
-                    });
-                } catch (IOException e) {
-                    Logger.global.logError("Failed to iterate chunks in region", e);
-                    throw e;
-                }
-            }
-            @Override
-            public de.bluecolored.bluemap.core.world.Chunk emptyChunk() { return de.bluecolored.bluemap.core.world.Chunk.EMPTY_CHUNK; }
-            @Override
-            public de.bluecolored.bluemap.core.world.Chunk erroredChunk() { return de.bluecolored.bluemap.core.world.Chunk.ERRORED_CHUNK; }
-        };
+    public Region<Chunk> getRegion(int x, int z) {
+        return blockChunkGrid.getRegion(x, z);
     }
 
     @Override
@@ -221,25 +144,23 @@ public WatchService<Vector2i> createRegionWatchService() throws IOException {
     }
 
     @Override
-    public void preloadRegionChunks(int x, int z, Predicate<Vector2i> chunkFilter) {
-        blockChunkGrid.preloadRegionChunks(x, z, chunkFilter);
+    public long preloadRegionChunks(int x, int z, Predicate<Vector2i> chunkFilter) {
+        return blockChunkGrid.preloadRegionChunks(x, z, chunkFilter);
     }
 
     @Override
     public void invalidateChunkCache() {
-        chunks.clear();
-        entities.clear();
+        blockChunkGrid.invalidateChunkCache();
+        entityChunkGrid.invalidateChunkCache();
     }
 
     @Override
     public void invalidateChunkCache(int x, int z) {
-        long key = (((long) x) << 32) | (((long) z) & 0xFFFFFFFFL);
-        chunks.remove(key);
-        entities.remove(key);
+        blockChunkGrid.invalidateChunkCache(x, z);
+        entityChunkGrid.invalidateChunkCache(x, z);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void iterateEntities(int minX, int minZ, int maxX, int maxZ, Consumer<Entity> entityConsumer) {
         int minChunkX = minX >> 4;
         int minChunkZ = minZ >> 4;
@@ -250,18 +171,15 @@ public void iterateEntities(int minX, int minZ, int maxX, int maxZ, Consumer<Ent
             for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
                 final int chunkX = cx;
                 final int chunkZ = cz;
-                long key = (((long) chunkX) << 32) | (((long) chunkZ) & 0xFFFFFFFFL);
-                Chunk entityChunk = entities.computeIfAbsent(key, k -> {
-                    try {
-                        Chunk chunk = (Chunk) entityChunkGrid.getChunk(chunkX, chunkZ);
-                        return chunk;
-                    } catch (Exception e) {
-                        Logger.global.logError("Failed to load entity chunk at " + chunkX + "," + chunkZ, e);
-                        return null;
-                    }
-                });
+                Chunk entityChunk;
+                try {
+                    entityChunk = entityChunkGrid.getChunk(chunkX, chunkZ);
+                } catch (Exception e) {
+                    Logger.global.logError("Failed to load entity chunk at " + chunkX + "," + chunkZ, e);
+                    continue;
+                }
 
-                if (entityChunk != null && entityChunk instanceof MCAEntityChunk) {
+                if (entityChunk instanceof MCAEntityChunk) {
                     for (MCAEntity entity : ((MCAEntityChunk) entityChunk).getEntities()) {
                         try {
                             entityConsumer.accept(entity);
@@ -274,21 +192,9 @@ public void iterateEntities(int minX, int minZ, int maxX, int maxZ, Consumer<Ent
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Chunk loadChunk(int x, int z) {
-        try {
-            Chunk chunk = (Chunk) blockChunkGrid.getChunk(x, z);
-            return chunk;
-        } catch (Exception e) {
-            Logger.global.logError("Failed to load chunk at " + x + "," + z, e);
-            return null;
-        }
-    }
-
     @Override
     public void close() throws IOException {
-        chunks.clear();
-        entities.clear();
+        invalidateChunkCache();
     }
 
     public static Path resolveDimensionFolder(Path worldFolder, Key dimension) {
@@ -303,16 +209,15 @@ public static Path resolveDimensionFolder(Path worldFolder, Key dimension) {
         }
     }
 
-    public Chunk getMcaChunk(int x, int z) {
-        long key = (((long) x) << 32) | (((long) z) & 0xFFFFFFFFL);
-        return chunks.get(key);
+    public @Nullable Chunk getMcaChunk(int x, int z) {
+        return blockChunkGrid.getCachedChunk(x, z);
     }
 
     public static int getXFromKey(long key) {
-        return (int) (key >> 32);
+        return LongKeyedCache.keyX(key);
     }
 
     public static int getZFromKey(long key) {
-        return (int) (key & 0xFFFFFFFFL);
+        return LongKeyedCache.keyZ(key);
     }
 }
\ No newline at end of file
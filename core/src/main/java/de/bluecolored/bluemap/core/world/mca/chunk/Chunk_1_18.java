@@ -24,362 +24,420 @@
  */
 package de.bluecolored.bluemap.core.world.mca.chunk;
 
-import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.util.Key;
+import de.bluecolored.bluemap.core.util.nbt.NBTReader;
+import de.bluecolored.bluemap.core.world.BlockEntity;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.DimensionType;
 import de.bluecolored.bluemap.core.world.LightData;
-import de.bluecolored.bluemap.core.world.Biome;
-import de.bluecolored.bluemap.core.world.BlockEntity;
+import de.bluecolored.bluemap.core.world.biome.Biome;
 import de.bluecolored.bluemap.core.world.mca.MCAUtil;
 import de.bluecolored.bluemap.core.world.mca.MCAWorld;
 import de.bluecolored.bluemap.core.world.mca.PackedIntArrayAccess;
-import de.tr7zw.nbtapi.NBTCompound;
-import de.tr7zw.nbtapi.NBTFile;
-import lombok.Getter;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
 import java.util.function.Consumer;
 
-import static de.bluecolored.bluemap.core.world.mca.chunk.MCAChunk.*;
-
-@Getter
-public class Chunk_1_18 implements Chunk {
-    private final MCAWorld world;
-    private final int x;
-    private final int z;
-    private final NBTCompound chunkData;
-    private final NBTCompound sections;
-
-    public Chunk_1_18(MCAWorld world, int x, int z, NBTFile nbtFile) {
-        this.world = world;
-        this.x = x;
-        this.z = z;
-        this.chunkData = nbtFile.getCompound("Level");
-        this.sections = chunkData.getCompound("Sections");
-    }
+import static de.bluecolored.bluemap.core.util.nbt.NBTReader.*;
 
-    @Override
-    public BlockState getBlockState(int x, int y, int z) {
-        int sectionY = y >> 4;
-        NBTCompound section = sections.getCompound(String.valueOf(sectionY));
-        if (section == null) return BlockState.AIR;
+/**
+ * Chunk-format used since Minecraft 1.18 (data-version 2844).<br>
+ * The chunk is decoded straight from the (decompressed) nbt-stream using {@link NBTReader}, block-states and biomes
+ * are kept in their packed palette-form and accessed using {@link PackedIntArrayAccess}.
+ */
+public class Chunk_1_18 extends MCAChunk {
+
+    private static final String STATUS_EMPTY = "minecraft:empty";
+    private static final String STATUS_FULL = "minecraft:full";
+
+    private static final Biome[] EMPTY_BIOME_ARRAY = new Biome[0];
+
+    private final boolean generated;
+    private final boolean hasLightData;
+    private final long inhabitedTime;
 
-        int blockX = x & 0xF;
-        int blockY = y & 0xF;
-        int blockZ = z & 0xF;
-        int index = blockY * 256 + blockZ * 16 + blockX;
+    private final int skyLight;
+    private final int worldMinY;
 
-        NBTCompound blockStates = section.getCompound("BlockStates");
-        if (blockStates == null) return BlockState.AIR;
+    private final boolean hasWorldSurfaceHeights;
+    private final PackedIntArrayAccess worldSurfaceHeights;
+    private final boolean hasOceanFloorHeights;
+    private final PackedIntArrayAccess oceanFloorHeights;
 
-        long[] states = blockStates.getLongArray("data");
-        if (states == null || states.length == 0) return BlockState.AIR;
+    private final Section[] sections;
+    private final int sectionMin, sectionMax;
 
-        int bitsPerBlock = blockStates.getInteger("bits");
-        int blocksPerLong = 64 / bitsPerBlock;
-        int longIndex = index / blocksPerLong;
-        int bitIndex = (index % blocksPerLong) * bitsPerBlock;
+    private final Map<Long, BlockEntity> blockEntities;
+
+    private Chunk_1_18(MCAWorld world, int dataVersion, String status, long inhabitedTime,
+                       long[] worldSurfaceHeights, long[] oceanFloorHeights,
+                       List<Section> sections, List<BlockEntity> blockEntities) {
+        super(world, dataVersion);
+
+        this.generated = !STATUS_EMPTY.equals(status);
+        this.hasLightData = STATUS_FULL.equals(status);
+        this.inhabitedTime = inhabitedTime;
+
+        DimensionType dimensionType = getWorld().getDimensionType();
+        this.skyLight = dimensionType.hasSkylight() ? 15 : 0;
+        this.worldMinY = dimensionType.getMinY();
+
+        int bitsPerHeightmapElement = MCAUtil.ceilLog2(dimensionType.getHeight() + 1);
+
+        this.worldSurfaceHeights = new PackedIntArrayAccess(bitsPerHeightmapElement, worldSurfaceHeights);
+        this.oceanFloorHeights = new PackedIntArrayAccess(bitsPerHeightmapElement, oceanFloorHeights);
+
+        this.hasWorldSurfaceHeights = this.worldSurfaceHeights.isCorrectSize(VALUES_PER_HEIGHTMAP);
+        this.hasOceanFloorHeights = this.oceanFloorHeights.isCorrectSize(VALUES_PER_HEIGHTMAP);
+
+        if (!sections.isEmpty()) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+
+            // find section min/max y
+            for (Section section : sections) {
+                int y = section.getSectionY();
+                if (min > y) min = y;
+                if (max < y) max = y;
+            }
+
+            // load sections into ordered array
+            this.sections = new Section[1 + max - min];
+            for (Section section : sections) {
+                this.sections[section.getSectionY() - min] = section;
+            }
 
-        if (longIndex >= states.length) return BlockState.AIR;
+            this.sectionMin = min;
+            this.sectionMax = max;
+        } else {
+            this.sections = new Section[0];
+            this.sectionMin = 0;
+            this.sectionMax = 0;
+        }
 
-        long state = (states[longIndex] >> bitIndex) & ((1L << bitsPerBlock) - 1);
-        return BlockState.get(state);
+        // load block-entities
+        this.blockEntities = new HashMap<>(blockEntities.size());
+        for (BlockEntity be : blockEntities) {
+            long hash = (long) be.getY() << 8 | (be.getX() & 0xF) << 4 | be.getZ() & 0xF;
+            this.blockEntities.put(hash, be);
+        }
     }
 
     @Override
     public boolean isGenerated() {
-        return true;
+        return generated;
     }
 
     @Override
     public boolean hasLightData() {
-        return true;
+        return hasLightData;
     }
 
     @Override
     public long getInhabitedTime() {
-        return 0;
+        return inhabitedTime;
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+        Section section = getSection(y >> 4);
+        if (section == null) return BlockState.AIR;
+
+        return section.getBlockState(x, y, z);
     }
 
     @Override
     public Biome getBiome(int x, int y, int z) {
-        // For Java 8 compatibility, just return null as a placeholder
-        return null;
+        Section section = getSection(y >> 4);
+        if (section == null) return Biome.DEFAULT;
+
+        return section.getBiome(x, y, z);
     }
 
     @Override
     public LightData getLightData(int x, int y, int z, LightData target) {
-        return target.set(15, 0);
+        if (!hasLightData) return target.set(skyLight, 0);
+
+        int sectionY = y >> 4;
+        Section section = getSection(sectionY);
+        if (section == null) return (sectionY < sectionMin) ? target.set(0, 0) : target.set(skyLight, 0);
+
+        return section.getLightData(x, y, z, target);
     }
 
     @Override
     public int getMinY(int x, int z) {
-        return 0;
+        return sectionMin * 16;
     }
 
     @Override
     public int getMaxY(int x, int z) {
-        return 255;
+        return sectionMax * 16 + 15;
     }
 
     @Override
     public boolean hasWorldSurfaceHeights() {
-        return true;
+        return hasWorldSurfaceHeights;
     }
 
     @Override
     public int getWorldSurfaceY(int x, int z) {
-        return 0;
+        return worldSurfaceHeights.get((z & 0xF) << 4 | x & 0xF) + worldMinY;
     }
 
     @Override
     public boolean hasOceanFloorHeights() {
-        return true;
+        return hasOceanFloorHeights;
     }
 
     @Override
     public int getOceanFloorY(int x, int z) {
-        return 0;
+        return oceanFloorHeights.get((z & 0xF) << 4 | x & 0xF) + worldMinY;
     }
 
     @Override
-    public BlockEntity getBlockEntity(int x, int y, int z) {
-        return null;
+    public @Nullable BlockEntity getBlockEntity(int x, int y, int z) {
+        long hash = (long) y << 8 | (x & 0xF) << 4 | z & 0xF;
+        return blockEntities.get(hash);
     }
 
     @Override
     public void iterateBlockEntities(Consumer<BlockEntity> consumer) {
-        // Implementation needed
+        blockEntities.values().forEach(consumer);
     }
 
-    @Getter
-    @SuppressWarnings("FieldMayBeFinal")
-    public static class Data extends MCAChunk.Data {
-        private Key status = new Key("minecraft", "empty");
-        private long inhabitedTime = 0;
-        private HeightmapsData heightmaps = new HeightmapsData();
-        private SectionData[] sections = null;
-        private BlockEntity[] blockEntities = EMPTY_BLOCK_ENTITIES_ARRAY;
-
-        @Override
-        public void readFromNBT(NBTCompound compound) {
-            super.readFromNBT(compound);
-            if (compound.hasKey("Status")) {
-                this.status = Key.parse(compound.getString("Status"));
-            }
-            if (compound.hasKey("InhabitedTime")) {
-                this.inhabitedTime = compound.getLong("InhabitedTime");
+    private @Nullable Section getSection(int y) {
+        int index = y - sectionMin;
+        if (index < 0 || index >= sections.length) return null;
+        return sections[index];
+    }
+
+    /**
+     * Reads a chunk from the given (already decompressed) nbt-stream.<br>
+     * If the data-version of the chunk is older than the given minimum, the rest of the data is not decoded and
+     * a chunk only holding the data-version is returned instead.
+     */
+    public static MCAChunk read(MCAWorld world, InputStream in, int minDataVersion) throws IOException {
+        NBTReader nbt = new NBTReader(in);
+        nbt.beginRoot();
+
+        Map<String, Biome> biomeCache = new HashMap<>();
+
+        int dataVersion = 0;
+        String status = STATUS_EMPTY;
+        long inhabitedTime = 0;
+        long[] worldSurfaceHeights = EMPTY_LONG_ARRAY;
+        long[] oceanFloorHeights = EMPTY_LONG_ARRAY;
+        List<Section> sections = Collections.emptyList();
+        List<BlockEntity> blockEntities = Collections.emptyList();
+
+        byte type;
+        while ((type = nbt.nextTag()) != TAG_END) {
+            if (nbt.nameEquals("DataVersion")) {
+                dataVersion = nbt.readInt(type);
+
+                // DataVersion is usually the first tag, so we can stop early if this is not our format
+                if (dataVersion < minDataVersion) return new MCAChunk(world, dataVersion) {};
             }
-            if (compound.hasKey("Heightmaps")) {
-                NBTCompound heightmapsCompound = compound.getCompound("Heightmaps");
-                this.heightmaps.readFromNBT(heightmapsCompound);
+            else if (type == TAG_STRING && nbt.nameEquals("Status")) status = Key.parse(nbt.readString()).getFormatted();
+            else if (nbt.nameEquals("InhabitedTime")) inhabitedTime = nbt.readLong(type);
+            else if (type == TAG_COMPOUND && nbt.nameEquals("Heightmaps")) {
+                while ((type = nbt.nextTag()) != TAG_END) {
+                    if (type == TAG_LONG_ARRAY && nbt.nameEquals("WORLD_SURFACE")) worldSurfaceHeights = nbt.readLongArray();
+                    else if (type == TAG_LONG_ARRAY && nbt.nameEquals("OCEAN_FLOOR")) oceanFloorHeights = nbt.readLongArray();
+                    else nbt.skip(type);
+                }
             }
-            if (compound.hasKey("Sections")) {
-                NBTCompound sectionsCompound = compound.getCompound("Sections");
-                this.sections = new SectionData[sectionsCompound.getKeys().size()];
-                int i = 0;
-                for (String key : sectionsCompound.getKeys()) {
-                    NBTCompound sectionCompound = sectionsCompound.getCompound(key);
-                    SectionData section = new SectionData();
-                    section.readFromNBT(sectionCompound);
-                    sections[i++] = section;
+            else if (type == TAG_LIST && nbt.nameEquals("sections")) {
+                int size = nbt.beginList();
+                if (nbt.getListType() != TAG_COMPOUND) {
+                    for (int i = 0; i < size; i++) nbt.skip(nbt.getListType());
+                    continue;
+                }
+
+                sections = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    sections.add(readSection(world, nbt, biomeCache));
                 }
             }
-            if (compound.hasKey("BlockEntities")) {
-                NBTCompound blockEntitiesCompound = compound.getCompound("BlockEntities");
-                this.blockEntities = new BlockEntity[blockEntitiesCompound.getKeys().size()];
-                int i = 0;
-                for (String key : blockEntitiesCompound.getKeys()) {
-                    NBTCompound entityCompound = blockEntitiesCompound.getCompound(key);
-                    BlockEntity entity = new BlockEntity(
-                        entityCompound.getString("id"),
-                        entityCompound.getInteger("x"),
-                        entityCompound.getInteger("y"),
-                        entityCompound.getInteger("z")
-                    );
-                    if (entity != null) {
-                        blockEntities[i++] = entity;
-                    }
+            else if (type == TAG_LIST && nbt.nameEquals("block_entities")) {
+                int size = nbt.beginList();
+                if (nbt.getListType() != TAG_COMPOUND) {
+                    for (int i = 0; i < size; i++) nbt.skip(nbt.getListType());
+                    continue;
+                }
+
+                blockEntities = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    BlockEntity blockEntity = readBlockEntity(nbt);
+                    if (blockEntity != null) blockEntities.add(blockEntity);
                 }
             }
+            else nbt.skip(type);
         }
 
-        @Override
-        public void writeToNBT(NBTCompound compound) {
-            super.writeToNBT(compound);
-            compound.setString("Status", status.toString());
-            compound.setLong("InhabitedTime", inhabitedTime);
-            NBTCompound heightmapsCompound = compound.getCompound("Heightmaps");
-            heightmaps.writeToNBT(heightmapsCompound);
-            if (sections != null) {
-                NBTCompound sectionsCompound = compound.getCompound("Sections");
-                for (int i = 0; i < sections.length; i++) {
-                    if (sections[i] != null) {
-                        NBTCompound sectionCompound = sectionsCompound.getCompound(String.valueOf(i));
-                        sections[i].writeToNBT(sectionCompound);
-                    }
+        if (dataVersion < minDataVersion) return new MCAChunk(world, dataVersion) {};
+
+        return new Chunk_1_18(world, dataVersion, status, inhabitedTime,
+                worldSurfaceHeights, oceanFloorHeights, sections, blockEntities);
+    }
+
+    private static Section readSection(MCAWorld world, NBTReader nbt, Map<String, Biome> biomeCache) throws IOException {
+        int sectionY = 0;
+        BlockState[] blockPalette = EMPTY_BLOCKSTATE_ARRAY;
+        long[] blockData = EMPTY_LONG_ARRAY;
+        Biome[] biomePalette = EMPTY_BIOME_ARRAY;
+        long[] biomeData = EMPTY_LONG_ARRAY;
+        byte[] blockLight = null;
+        byte[] skyLight = null;
+
+        byte type;
+        while ((type = nbt.nextTag()) != TAG_END) {
+            if (nbt.nameEquals("Y")) sectionY = nbt.readInt(type);
+            else if (type == TAG_COMPOUND && nbt.nameEquals("block_states")) {
+                while ((type = nbt.nextTag()) != TAG_END) {
+                    if (type == TAG_LIST && nbt.nameEquals("palette")) blockPalette = readBlockPalette(nbt);
+                    else if (type == TAG_LONG_ARRAY && nbt.nameEquals("data")) blockData = nbt.readLongArray();
+                    else nbt.skip(type);
                 }
             }
-            if (blockEntities != null) {
-                NBTCompound blockEntitiesCompound = compound.getCompound("BlockEntities");
-                for (int i = 0; i < blockEntities.length; i++) {
-                    if (blockEntities[i] != null) {
-                        NBTCompound entityCompound = blockEntitiesCompound.getCompound(String.valueOf(i));
-                        entityCompound.setString("id", blockEntities[i].getId().toString());
-                        entityCompound.setInteger("x", blockEntities[i].getX());
-                        entityCompound.setInteger("y", blockEntities[i].getY());
-                        entityCompound.setInteger("z", blockEntities[i].getZ());
-                    }
+            else if (type == TAG_COMPOUND && nbt.nameEquals("biomes")) {
+                while ((type = nbt.nextTag()) != TAG_END) {
+                    if (type == TAG_LIST && nbt.nameEquals("palette")) biomePalette = readBiomePalette(world, nbt, biomeCache);
+                    else if (type == TAG_LONG_ARRAY && nbt.nameEquals("data")) biomeData = nbt.readLongArray();
+                    else nbt.skip(type);
                 }
             }
+            else if (type == TAG_BYTE_ARRAY && nbt.nameEquals("BlockLight")) blockLight = nbt.readByteArray();
+            else if (type == TAG_BYTE_ARRAY && nbt.nameEquals("SkyLight")) skyLight = nbt.readByteArray();
+            else nbt.skip(type);
         }
-    }
 
-    @Getter
-    @SuppressWarnings("FieldMayBeFinal")
-    public static class HeightmapsData {
-        private long[] worldSurface = EMPTY_LONG_ARRAY;
-        private long[] oceanFloor = EMPTY_LONG_ARRAY;
+        return new Section(sectionY, blockPalette, blockData, biomePalette, biomeData, blockLight, skyLight);
+    }
 
-        public void readFromNBT(NBTCompound compound) {
-            if (compound.hasKey("WORLD_SURFACE")) {
-                this.worldSurface = compound.getLongArray("WORLD_SURFACE");
-            }
-            if (compound.hasKey("OCEAN_FLOOR")) {
-                this.oceanFloor = compound.getLongArray("OCEAN_FLOOR");
-            }
+    private static BlockState[] readBlockPalette(NBTReader nbt) throws IOException {
+        int size = nbt.beginList();
+        byte elementType = nbt.getListType();
+        if (elementType != TAG_COMPOUND) {
+            for (int i = 0; i < size; i++) nbt.skip(elementType);
+            return EMPTY_BLOCKSTATE_ARRAY;
         }
 
-        public void writeToNBT(NBTCompound compound) {
-            if (worldSurface != null) {
-                compound.setLongArray("WORLD_SURFACE", worldSurface);
-            }
-            if (oceanFloor != null) {
-                compound.setLongArray("OCEAN_FLOOR", oceanFloor);
+        BlockState[] palette = new BlockState[size];
+        for (int i = 0; i < size; i++) {
+            String name = BlockState.AIR.getFormatted();
+            Map<String, String> properties = Collections.emptyMap();
+
+            byte type;
+            while ((type = nbt.nextTag()) != TAG_END) {
+                if (type == TAG_STRING && nbt.nameEquals("Name")) name = nbt.readString();
+                else if (type == TAG_COMPOUND && nbt.nameEquals("Properties")) {
+                    properties = new LinkedHashMap<>();
+                    while ((type = nbt.nextTag()) != TAG_END) {
+                        if (type == TAG_STRING) properties.put(nbt.name(), nbt.readString());
+                        else nbt.skip(type);
+                    }
+                }
+                else nbt.skip(type);
             }
+
+            palette[i] = new BlockState(name, properties);
         }
+        return palette;
     }
 
-    @Getter
-    @SuppressWarnings("FieldMayBeFinal")
-    public static class SectionData {
-        private int y = 0;
-        private byte[] blockLight = EMPTY_BYTE_ARRAY;
-        private byte[] skyLight = EMPTY_BYTE_ARRAY;
-        private BiomesData biomes = new BiomesData();
-        private BlockStatesData blockStates = new BlockStatesData();
-
-        public void readFromNBT(NBTCompound compound) {
-            if (compound.hasKey("Y")) {
-                this.y = compound.getInteger("Y");
-            }
-            if (compound.hasKey("BlockLight")) {
-                this.blockLight = compound.getByteArray("BlockLight");
-            }
-            if (compound.hasKey("SkyLight")) {
-                this.skyLight = compound.getByteArray("SkyLight");
-            }
-            if (compound.hasKey("Biomes")) {
-                NBTCompound biomesCompound = compound.getCompound("Biomes");
-                this.biomes.readFromNBT(biomesCompound);
-            }
-            if (compound.hasKey("BlockStates")) {
-                NBTCompound blockStatesCompound = compound.getCompound("BlockStates");
-                this.blockStates.readFromNBT(blockStatesCompound);
-            }
+    private static Biome[] readBiomePalette(MCAWorld world, NBTReader nbt, Map<String, Biome> biomeCache) throws IOException {
+        int size = nbt.beginList();
+        byte elementType = nbt.getListType();
+        if (elementType != TAG_STRING) {
+            for (int i = 0; i < size; i++) nbt.skip(elementType);
+            return EMPTY_BIOME_ARRAY;
         }
 
-        public void writeToNBT(NBTCompound compound) {
-            compound.setInteger("Y", y);
-            if (blockLight != null) {
-                compound.setByteArray("BlockLight", blockLight);
-            }
-            if (skyLight != null) {
-                compound.setByteArray("SkyLight", skyLight);
-            }
-            if (biomes != null) {
-                NBTCompound biomesCompound = compound.getCompound("Biomes");
-                biomes.writeToNBT(biomesCompound);
-            }
-            if (blockStates != null) {
-                NBTCompound blockStatesCompound = compound.getCompound("BlockStates");
-                blockStates.writeToNBT(blockStatesCompound);
-            }
+        Biome[] palette = new Biome[size];
+        for (int i = 0; i < size; i++) {
+            palette[i] = biomeCache.computeIfAbsent(nbt.readString(), id -> {
+                Biome biome = world.getDataPack().getBiome(Key.parse(id));
+                return biome != null ? biome : Biome.DEFAULT;
+            });
         }
+        return palette;
     }
 
-    @Getter
-    @SuppressWarnings("FieldMayBeFinal")
-    public static class BlockStatesData {
-        private BlockState[] palette = EMPTY_BLOCKSTATE_ARRAY;
-        private long[] data = EMPTY_LONG_ARRAY;
-
-        public void readFromNBT(NBTCompound compound) {
-            if (compound.hasKey("Palette")) {
-                NBTCompound paletteCompound = compound.getCompound("Palette");
-                this.palette = new BlockState[paletteCompound.getKeys().size()];
-                int i = 0;
-                for (String key : paletteCompound.getKeys()) {
-                    NBTCompound stateCompound = paletteCompound.getCompound(key);
-                    String name = stateCompound.getString("Name");
-                    palette[i++] = new BlockState(name);
-                }
-            }
-            if (compound.hasKey("Data")) {
-                this.data = compound.getLongArray("Data");
-            }
+    private static @Nullable BlockEntity readBlockEntity(NBTReader nbt) throws IOException {
+        String id = null;
+        int x = 0, y = 0, z = 0;
+
+        byte type;
+        while ((type = nbt.nextTag()) != TAG_END) {
+            if (type == TAG_STRING && nbt.nameEquals("id")) id = nbt.readString();
+            else if (nbt.nameEquals("x")) x = nbt.readInt(type);
+            else if (nbt.nameEquals("y")) y = nbt.readInt(type);
+            else if (nbt.nameEquals("z")) z = nbt.readInt(type);
+            else nbt.skip(type);
         }
 
-        public void writeToNBT(NBTCompound compound) {
-            if (palette != null) {
-                NBTCompound paletteCompound = compound.getCompound("Palette");
-                for (int i = 0; i < palette.length; i++) {
-                    NBTCompound stateCompound = paletteCompound.getCompound(String.valueOf(i));
-                    stateCompound.setString("Name", palette[i].getId());
-                }
-            }
-            if (data != null) {
-                compound.setLongArray("Data", data);
-            }
-        }
+        if (id == null) return null;
+        return new BlockEntity(id, x, y, z);
     }
 
-    @Getter
-    @SuppressWarnings("FieldMayBeFinal")
-    public static class BiomesData {
-        private Key[] palette = EMPTY_KEY_ARRAY;
-        private long[] data = EMPTY_LONG_ARRAY;
-
-        public void readFromNBT(NBTCompound compound) {
-            if (compound.hasKey("Palette")) {
-                NBTCompound paletteCompound = compound.getCompound("Palette");
-                this.palette = new Key[paletteCompound.getKeys().size()];
-                int i = 0;
-                for (String key : paletteCompound.getKeys()) {
-                    NBTCompound keyCompound = paletteCompound.getCompound(key);
-                    String name = keyCompound.getString("Name");
-                    palette[i++] = Key.parse(name);
-                }
-            }
-            if (compound.hasKey("Data")) {
-                this.data = compound.getLongArray("Data");
-            }
+    protected static class Section {
+        private static final int LIGHT_DATA_LENGTH = BLOCKS_PER_SECTION / 2;
+
+        private final int sectionY;
+        private final BlockState[] blockPalette;
+        private final PackedIntArrayAccess blocks;
+        private final Biome[] biomePalette;
+        private final PackedIntArrayAccess biomes;
+        private final byte @Nullable [] blockLight;
+        private final byte @Nullable [] skyLight;
+
+        public Section(int sectionY, BlockState[] blockPalette, long[] blockData, Biome[] biomePalette, long[] biomeData,
+                       byte @Nullable [] blockLight, byte @Nullable [] skyLight) {
+            this.sectionY = sectionY;
+            this.blockPalette = blockPalette;
+            this.blocks = new PackedIntArrayAccess(Math.max(4, MCAUtil.ceilLog2(blockPalette.length)), blockData);
+            this.biomePalette = biomePalette;
+            this.biomes = new PackedIntArrayAccess(Math.max(1, MCAUtil.ceilLog2(biomePalette.length)), biomeData);
+            this.blockLight = blockLight != null && blockLight.length == LIGHT_DATA_LENGTH ? blockLight : null;
+            this.skyLight = skyLight != null && skyLight.length == LIGHT_DATA_LENGTH ? skyLight : null;
         }
 
-        public void writeToNBT(NBTCompound compound) {
-            if (palette != null) {
-                NBTCompound paletteCompound = compound.getCompound("Palette");
-                for (int i = 0; i < palette.length; i++) {
-                    NBTCompound keyCompound = paletteCompound.getCompound(String.valueOf(i));
-                    keyCompound.setString("Name", palette[i].toString());
-                }
-            }
-            if (data != null) {
-                compound.setLongArray("Data", data);
-            }
+        public BlockState getBlockState(int x, int y, int z) {
+            if (blockPalette.length == 1) return blockPalette[0];
+            if (blockPalette.length == 0) return BlockState.AIR;
+
+            int index = (y & 0xF) << 8 | (z & 0xF) << 4 | x & 0xF;
+            int paletteIndex = blocks.get(index);
+            if (paletteIndex >= blockPalette.length) return BlockState.AIR;
+            return blockPalette[paletteIndex];
+        }
+
+        public Biome getBiome(int x, int y, int z) {
+            if (biomePalette.length == 1) return biomePalette[0];
+            if (biomePalette.length == 0) return Biome.DEFAULT;
+
+            int index = (y & 0b1100) << 2 | z & 0b1100 | (x & 0b1100) >> 2;
+            int paletteIndex = biomes.get(index);
+            if (paletteIndex >= biomePalette.length) return Biome.DEFAULT;
+            return biomePalette[paletteIndex];
+        }
+
+        public LightData getLightData(int x, int y, int z, LightData target) {
+            int index = (y & 0xF) << 8 | (z & 0xF) << 4 | x & 0xF;
+            boolean largeHalf = (index & 1) != 0;
+            int blockLightValue = blockLight != null ? MCAUtil.getByteHalf(blockLight[index >> 1], largeHalf) : 0;
+            int skyLightValue = skyLight != null ? MCAUtil.getByteHalf(skyLight[index >> 1], largeHalf) : 0;
+            return target.set(skyLightValue, blockLightValue);
+        }
+
+        public int getSectionY() {
+            return sectionY;
         }
     }
+
 }
@@ -55,8 +55,12 @@ public abstract class MCAChunk implements Chunk {
     private final int dataVersion;
 
     public MCAChunk(MCAWorld world, Data chunkData) {
+        this(world, chunkData.getDataVersion());
+    }
+
+    protected MCAChunk(MCAWorld world, int dataVersion) {
         this.world = world;
-        this.dataVersion = chunkData.getDataVersion();
+        this.dataVersion = dataVersion;
     }
 
     /**
@@ -25,19 +25,22 @@
 package de.bluecolored.bluemap.core.world.mca.chunk;
 
 import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.util.nbt.NBTReader;
+import de.bluecolored.bluemap.core.util.stream.ByteBufferInputStream;
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.mca.ChunkLoader;
 import de.bluecolored.bluemap.core.world.mca.MCAUtil;
 import de.bluecolored.bluemap.core.world.mca.MCAWorld;
-import de.tr7zw.nbtapi.NBTFile;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiFunction;
@@ -45,117 +48,114 @@
 public class MCAChunkLoader implements ChunkLoader<Chunk> {
 
     private final MCAWorld world;
-    // Create a static temporary file for the dummy NBTFile
-    private static final File TEMP_NBT_FILE;
-    
-    static {
-        File tempFile;
-        try {
-            tempFile = File.createTempFile("bluemap-dummy-nbt", ".dat");
-            tempFile.deleteOnExit();
-        } catch (IOException e) {
-            tempFile = new File("bluemap-dummy-nbt.dat");
-        }
-        TEMP_NBT_FILE = tempFile;
-    }
 
     public MCAChunkLoader(MCAWorld world) {
         this.world = world;
     }
 
-    // Using concrete types for each loader to avoid type issues with Java 8
-    private static final ChunkVersionLoader<Chunk_1_18.Data> LOADER_1_18 = new ChunkVersionLoader<>(
-            Chunk_1_18.Data.class,
-            new BiFunction<MCAWorld, Chunk_1_18.Data, Chunk>() {
-                @Override
-                public Chunk apply(MCAWorld world, Chunk_1_18.Data data) {
-                    try {
-                        // Create a dummy NBTFile for compatibility
-                        NBTFile dummyFile = new NBTFile(TEMP_NBT_FILE);
-                        // Create chunk and cast to Chunk interface
-                        Chunk_1_18 chunk = new Chunk_1_18(world, 0, 0, dummyFile);
-                        return (Chunk) chunk;
-                    } catch (IOException e) {
-                        throw new RuntimeException("Failed to create dummy NBTFile", e);
-                    }
-                }
-            },
+    private static final ChunkVersionLoader LOADER_1_18 = new ChunkVersionLoader(
+            Chunk_1_18.class.getSimpleName(),
+            (world, in) -> Chunk_1_18.read(world, in, 2844),
             2844
     );
-    
-    private static final ChunkVersionLoader<Chunk_1_16.Data> LOADER_1_16 = new ChunkVersionLoader<>(
+
+    private static final ChunkVersionLoader LOADER_1_16 = ChunkVersionLoader.fromData(
             Chunk_1_16.Data.class,
-            new BiFunction<MCAWorld, Chunk_1_16.Data, Chunk>() {
-                @Override
-                public Chunk apply(MCAWorld world, Chunk_1_16.Data data) {
-                    return new Chunk_1_16(world, data);
-                }
-            },
+            Chunk_1_16::new,
             2500
     );
     
-    private static final ChunkVersionLoader<Chunk_1_15.Data> LOADER_1_15 = new ChunkVersionLoader<>(
+    private static final ChunkVersionLoader LOADER_1_15 = ChunkVersionLoader.fromData(
             Chunk_1_15.Data.class,
-            new BiFunction<MCAWorld, Chunk_1_15.Data, Chunk>() {
-                @Override
-                public Chunk apply(MCAWorld world, Chunk_1_15.Data data) {
-                    return new Chunk_1_15(world, data);
-                }
-            },
+            Chunk_1_15::new,
             2200
     );
     
-    private static final ChunkVersionLoader<Chunk_1_13.Data> LOADER_1_13 = new ChunkVersionLoader<>(
+    private static final ChunkVersionLoader LOADER_1_13 = ChunkVersionLoader.fromData(
             Chunk_1_13.Data.class,
-            new BiFunction<MCAWorld, Chunk_1_13.Data, Chunk>() {
-                @Override
-                public Chunk apply(MCAWorld world, Chunk_1_13.Data data) {
-                    return new Chunk_1_13(world, data);
-                }
-            },
+            Chunk_1_13::new,
             0
     );
     
-    private static final List<ChunkVersionLoader<?>> CHUNK_VERSION_LOADERS = Arrays.asList(
+    private static final List<ChunkVersionLoader> CHUNK_VERSION_LOADERS = Arrays.asList(
             LOADER_1_18,
             LOADER_1_16,
             LOADER_1_15,
             LOADER_1_13
     );
 
-    private ChunkVersionLoader<?> lastUsedLoader = CHUNK_VERSION_LOADERS.get(0);
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final ThreadLocal<ChunkBuffer> DECOMPRESSION_BUFFER = ThreadLocal.withInitial(ChunkBuffer::new);
 
+    private volatile LoaderSelection lastSelection = new LoaderSelection(Integer.MAX_VALUE, CHUNK_VERSION_LOADERS.get(0));
+
+    @Override
     public Chunk load(byte[] data, int offset, int length, Compression compression) throws IOException {
-        InputStream in = new ByteArrayInputStream(data, offset, length);
-        in.mark(-1);
-
-        // try last used version
-        ChunkVersionLoader<?> usedLoader = lastUsedLoader;
-        Chunk chunk;
-        try (InputStream decompressedIn = compression.decompress(in)) {
-            chunk = usedLoader.load(world, decompressedIn);
+        return load(new ByteArrayInputStream(data, offset, length), compression);
+    }
+
+    @Override
+    public Chunk load(ByteBuffer data, Compression compression) throws IOException {
+        return load(new ByteBufferInputStream(data), compression);
+    }
+
+    private Chunk load(InputStream in, Compression compression) throws IOException {
+
+        // uncompressed in-memory data can just be read twice
+        if (compression == Compression.NONE && in.markSupported()) {
+            in.mark(Integer.MAX_VALUE);
+            int dataVersion = peekDataVersion(in);
+            in.reset();
+            return selectLoader(dataVersion).load(world, in);
         }
 
-        // check version and reload chunk if the wrong loader has been used and a better one has been found
-        ChunkVersionLoader<?> actualLoader = findBestLoaderForVersion(getDataVersion(chunk));
-        if (actualLoader != null && usedLoader != actualLoader) {
-            in.reset(); // reset read position
+        // otherwise decompress once into a reused buffer, so the data-version can be checked before parsing
+        ChunkBuffer buffer = DECOMPRESSION_BUFFER.get();
+        try {
+            buffer.reset();
             try (InputStream decompressedIn = compression.decompress(in)) {
-                chunk = actualLoader.load(world, decompressedIn);
+                buffer.readFrom(decompressedIn);
             }
-            lastUsedLoader = actualLoader;
+
+            int dataVersion = peekDataVersion(buffer.toInputStream());
+            return selectLoader(dataVersion).load(world, buffer.toInputStream());
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE)
+                DECOMPRESSION_BUFFER.remove();
         }
+    }
+
+    private ChunkVersionLoader selectLoader(int dataVersion) {
+        // chunks of a world (or at least a region) mostly share the same data-version
+        LoaderSelection selection = lastSelection;
+        if (selection.dataVersion == dataVersion) return selection.loader;
 
-        return chunk;
+        ChunkVersionLoader loader = findBestLoaderForVersion(dataVersion);
+        if (loader == null) loader = CHUNK_VERSION_LOADERS.get(CHUNK_VERSION_LOADERS.size() - 1);
+
+        lastSelection = new LoaderSelection(dataVersion, loader);
+        return loader;
     }
-    
-    // Helper method to get data version from any chunk type
-    private int getDataVersion(Chunk chunk) {
-        if (chunk instanceof MCAChunk) {
-            return ((MCAChunk) chunk).getDataVersion();
+
+    /**
+     * Reads the root-compound of the given (decompressed) chunk-data until the DataVersion tag is found.
+     * Returns 0 if the chunk has no DataVersion (pre 1.9 chunks).
+     */
+    private static int peekDataVersion(InputStream in) throws IOException {
+        try {
+            NBTReader nbt = new NBTReader(in);
+            nbt.beginRoot();
+
+            byte type;
+            while ((type = nbt.nextTag()) != NBTReader.TAG_END) {
+                if (nbt.nameEquals("DataVersion")) return nbt.readInt(type);
+                nbt.skip(type);
+            }
+
+            return 0;
+        } catch (EOFException e) {
+            throw new IOException("Failed to read chunk-data: Unexpected end of data", e);
         }
-        // Default to highest version for unknown chunks
-        return Integer.MAX_VALUE;
     }
 
     @Override
@@ -168,34 +168,83 @@ public Chunk erroredChunk() {
         return Chunk.ERRORED_CHUNK;
     }
 
-    private @Nullable ChunkVersionLoader<?> findBestLoaderForVersion(int version) {
-        for (ChunkVersionLoader<?> loader : CHUNK_VERSION_LOADERS) {
+    private @Nullable ChunkVersionLoader findBestLoaderForVersion(int version) {
+        for (ChunkVersionLoader loader : CHUNK_VERSION_LOADERS) {
             if (loader.mightSupport(version)) return loader;
         }
         return null;
     }
 
+    @RequiredArgsConstructor
+    private static class LoaderSelection {
+        private final int dataVersion;
+        private final ChunkVersionLoader loader;
+    }
+
+    /**
+     * A growable byte-array that can be read from without copying its content.
+     */
+    private static class ChunkBuffer extends ByteArrayOutputStream {
+
+        public ChunkBuffer() {
+            super(64 * 1024);
+        }
+
+        public void readFrom(InputStream in) throws IOException {
+            int read;
+            do {
+                if (count == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                read = in.read(buf, count, buf.length - count);
+                if (read > 0) count += read;
+            } while (read >= 0);
+        }
+
+        public InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        public int capacity() {
+            return buf.length;
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface ChunkReader {
+        Chunk read(MCAWorld world, InputStream in) throws IOException;
+    }
+
     @RequiredArgsConstructor
     @Getter
-    private static class ChunkVersionLoader<D extends MCAChunk.Data> {
+    private static class ChunkVersionLoader {
 
-        private final Class<D> dataType;
-        private final BiFunction<MCAWorld, D, Chunk> constructor;
+        private final String name;
+        private final ChunkReader reader;
         private final int dataVersion;
 
         public Chunk load(MCAWorld world, InputStream in) throws IOException {
             try {
-                D data = MCAUtil.BLUENBT.read(in, dataType);
-                return mightSupport(data.getDataVersion()) ? 
-                    constructor.apply(world, data) : 
-                    new MCAChunk(world, data) {};
+                return reader.read(world, in);
             } catch (Exception e) {
-                throw new IOException(String.format("Failed to parse chunk-data (%s): %s", dataType.getSimpleName(), e), e);
+                throw new IOException(String.format("Failed to parse chunk-data (%s): %s", name, e), e);
             }
         }
 
         public boolean mightSupport(int dataVersion) {
             return dataVersion >= this.dataVersion;
         }
+
+        public static <D extends MCAChunk.Data> ChunkVersionLoader fromData(
+                Class<D> dataType,
+                BiFunction<MCAWorld, D, Chunk> constructor,
+                int dataVersion
+        ) {
+            return new ChunkVersionLoader(dataType.getSimpleName(), (world, in) -> {
+                D data = MCAUtil.BLUENBT.read(in, dataType);
+                return data.getDataVersion() >= dataVersion ?
+                        constructor.apply(world, data) :
+                        new MCAChunk(world, data) {};
+            }, dataVersion);
+        }
     }
 }
@@ -29,9 +29,13 @@
 import de.bluecolored.bluemap.core.world.ChunkConsumer;
 import de.bluecolored.bluemap.core.world.Region;
 import de.bluecolored.bluemap.core.world.mca.ChunkLoader;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.lang.ref.SoftReference;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -66,20 +70,25 @@
     public static final Pattern FILE_PATTERN = Pattern.compile("^r\\.(-?\\d+)\\.(-?\\d+)\\.linear$");
 
     private static final long MAGIC = 0xc3ff13183cca9d9aL;
+    private static final int CHUNK_COUNT = 32 * 32;
 
     private final ChunkLoader<T> chunkLoader;
     private final Path regionFile;
     private final Vector2i regionPos;
 
-    private boolean initialized = false;
-
     private byte version;
     private long newestTimestamp;
     private byte compressionLevel;
     private short chunkCount;
     private int dataLength;
     private long dataHash;
-    private byte[] compressedData;
+
+    /**
+     * The fully decompressed region-data together with an index of where each chunk starts.
+     * Held softly, so it can be reclaimed under memory-pressure and will then just be decompressed again.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile SoftReference<DecompressedData> decompressedData = new SoftReference<>(null);
 
     public LinearRegion(ChunkLoader<T> chunkLoader, Path regionFile) throws IllegalArgumentException {
         this.chunkLoader = chunkLoader;
@@ -92,13 +101,16 @@ public LinearRegion(ChunkLoader<T> chunkLoader, Path regionFile) throws IllegalA
         this.regionPos = new Vector2i(rX, rZ);
     }
 
-    private synchronized void init() throws IOException {
-        if (initialized) return;
-
-        if (Files.notExists(regionFile)) return;
+    /**
+     * Reads and validates the region-file and returns the compressed data-section,
+     * or <code>null</code> if the region-file does not exist or is empty.<br>
+     * The returned array is not kept by this region.
+     */
+    private synchronized byte @Nullable [] readCompressedData() throws IOException {
+        if (Files.notExists(regionFile)) return null;
 
         long fileLength = Files.size(regionFile);
-        if (fileLength == 0) return;
+        if (fileLength == 0) return null;
 
         try (
                 InputStream in = Files.newInputStream(regionFile, StandardOpenOption.READ);
@@ -122,74 +134,85 @@ private synchronized void init() throws IOException {
             if (fileLength != dataLength + 40) // 40 = header + footer
                 throw new IOException("Linear region-file format: Invalid file length. Expected " + (dataLength + 40) + " but got " + fileLength);
 
-            compressedData = new byte[dataLength];
+            byte[] compressedData = new byte[dataLength];
             dIn.readFully(compressedData, 0, dataLength);
 
             if (dIn.readLong() != MAGIC)
                 throw new IOException("Linear region-file format: invalid footer magic");
 
+            return compressedData;
         }
+    }
+
+    @Override
+    public T loadChunk(int chunkX, int chunkZ) throws IOException {
+        DecompressedData data = decompressedData.get();
+        if (data == null) data = decompress();
+        if (data == null) return chunkLoader.emptyChunk();
 
-        initialized = true;
+        int i = (chunkZ & 0b11111) << 5 | (chunkX & 0b11111);
+        int length = data.lengths[i];
+        if (length <= 0) return chunkLoader.emptyChunk();
+
+        return chunkLoader.load(data.data, data.offsets[i], length, Compression.NONE);
     }
 
     @Override
     public void iterateAllChunks(ChunkConsumer<T> consumer) throws IOException {
-        if (!initialized) init();
+        // always read the file again, so a full iteration sees the current state of the region-file
+        byte[] compressedData = readCompressedData();
+        if (compressedData == null) return;
 
         int chunkStartX = regionPos.getX() * 32;
         int chunkStartZ = regionPos.getY() * 32;
 
-        byte[] chunkDataBuffer = null;
-
         try (
                 InputStream in = Compression.ZSTD.decompress(new ByteArrayInputStream(compressedData));
                 DataInputStream dIn = new DataInputStream(in)
         ) {
-            int[] chunkDataLengths = new int[1024];
-            int[] chunkTimestamps = new int[1024];
-            for (int i = 0 ; i < 1024 ; i++) {
-                chunkDataLengths[i] = dIn.readInt();
-                chunkTimestamps[i] = dIn.readInt();
-            }
+            int[] chunkDataLengths = new int[CHUNK_COUNT];
+            int[] chunkTimestamps = new int[CHUNK_COUNT];
+            readChunkHeader(dIn, chunkDataLengths, chunkTimestamps);
 
+            // filter first, so we only need to decompress the chunk-data if any chunk is actually requested
+            boolean[] requested = new boolean[CHUNK_COUNT];
+            boolean anyRequested = false;
             int i = 0;
-            int toBeSkipped = 0;
             for (int z = 0; z < 32; z++) {
                 for (int x = 0; x < 32; x++) {
-                    int length = chunkDataLengths[i];
-                    if (length > 0) {
+                    if (chunkDataLengths[i] > 0) {
+                        int timestamp = version == 2 ? chunkTimestamps[i] : (int) newestTimestamp; //TODO: check if in seconds or milliseconds
+                        requested[i] = consumer.filter(chunkStartX + x, chunkStartZ + z, timestamp);
+                        anyRequested |= requested[i];
+                    }
+                    i++;
+                }
+            }
+            if (!anyRequested) return;
+
+            DecompressedData data = readChunkData(dIn, chunkDataLengths);
+            decompressedData = new SoftReference<>(data);
+
+            i = 0;
+            for (int z = 0; z < 32; z++) {
+                for (int x = 0; x < 32; x++) {
+                    if (requested[i]) {
                         int chunkX = chunkStartX + x;
                         int chunkZ = chunkStartZ + z;
-                        int timestamp = version == 2 ? chunkTimestamps[i] : (int) newestTimestamp; //TODO: check if in seconds or milliseconds
 
-                        if (consumer.filter(chunkX, chunkZ, timestamp)) {
-                            if (toBeSkipped > 0) skipNBytes(dIn, toBeSkipped);
-
-                            if (chunkDataBuffer == null || chunkDataBuffer.length < length)
-                                chunkDataBuffer = new byte[length];
-                            dIn.readFully(chunkDataBuffer, 0, length);
-
-                            try {
-                                T chunk = chunkLoader.load(chunkDataBuffer, 0, length, Compression.NONE);
-                                consumer.accept(chunkX, chunkZ, chunk);
-                            } catch (IOException ex) {
-                                consumer.fail(chunkX, chunkZ, ex);
-                            } catch (Exception ex) {
-                                consumer.fail(chunkX, chunkZ, new IOException(ex));
-                            }
-
-                        } else {
-                            // skip before reading the next chunk, but only if there is a next chunk
-                            // that we actually want to read, to avoid decompressing unnecessary data
-                            toBeSkipped += length;
+                        try {
+                            T chunk = chunkLoader.load(data.data, data.offsets[i], data.lengths[i], Compression.NONE);
+                            consumer.accept(chunkX, chunkZ, chunk, data.lengths[i]);
+                        } catch (IOException ex) {
+                            consumer.fail(chunkX, chunkZ, ex);
+                        } catch (Exception ex) {
+                            consumer.fail(chunkX, chunkZ, new IOException(ex));
                         }
                     }
 
                     i++;
                 }
             }
-
         }
     }
 
@@ -198,31 +221,59 @@ public T emptyChunk() {
         return chunkLoader.emptyChunk();
     }
 
+    /**
+     * Decompresses the whole region once and caches the result, so all further chunk-loads are just a lookup.
+     */
+    private synchronized @Nullable DecompressedData decompress() throws IOException {
+        DecompressedData data = decompressedData.get();
+        if (data != null) return data;
+
+        byte[] compressedData = readCompressedData();
+        if (compressedData == null) return null;
+
+        try (
+                InputStream in = Compression.ZSTD.decompress(new ByteArrayInputStream(compressedData));
+                DataInputStream dIn = new DataInputStream(in)
+        ) {
+            int[] chunkDataLengths = new int[CHUNK_COUNT];
+            readChunkHeader(dIn, chunkDataLengths, new int[CHUNK_COUNT]);
+
+            data = readChunkData(dIn, chunkDataLengths);
+            decompressedData = new SoftReference<>(data);
+            return data;
+        }
+    }
+
+    private static void readChunkHeader(DataInputStream dIn, int[] chunkDataLengths, int[] chunkTimestamps) throws IOException {
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            chunkDataLengths[i] = dIn.readInt();
+            chunkTimestamps[i] = dIn.readInt();
+        }
+    }
+
+    private static DecompressedData readChunkData(DataInputStream dIn, int[] chunkDataLengths) throws IOException {
+        int[] offsets = new int[CHUNK_COUNT];
+        int totalLength = 0;
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            offsets[i] = totalLength;
+            totalLength += Math.max(chunkDataLengths[i], 0);
+        }
+
+        byte[] data = new byte[totalLength];
+        dIn.readFully(data, 0, totalLength);
+
+        return new DecompressedData(data, offsets, chunkDataLengths);
+    }
+
     public static String getRegionFileName(int regionX, int regionZ) {
         return "r." + regionX + "." + regionZ + FILE_SUFFIX;
     }
 
-    /**
-     * This method is taken here from a newer version of {@link InputStream},
-     * to ensure Java 11 compatibility.
-     */
-    private static void skipNBytes(InputStream in, long n) throws IOException {
-        while (n > 0) {
-            long ns = in.skip(n);
-            if (ns > 0 && ns <= n) {
-                // adjust number to skip
-                n -= ns;
-            } else if (ns == 0) { // no bytes skipped
-                // read one byte to check for EOS
-                if (in.read() == -1) {
-                    throw new EOFException();
-                }
-                // one byte read so decrement number to skip
-                n--;
-            } else { // skipped negative or too many bytes
-                throw new IOException("Unable to skip exactly");
-            }
-        }
+    @RequiredArgsConstructor
+    private static class DecompressedData {
+        private final byte[] data;
+        private final int[] offsets;
+        private final int[] lengths;
     }
 
 }
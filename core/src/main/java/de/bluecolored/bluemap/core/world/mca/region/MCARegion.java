@@ -26,25 +26,37 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import de.bluecolored.bluemap.core.storage.compression.Compression;
-import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.ChunkConsumer;
 import de.bluecolored.bluemap.core.world.Region;
 import de.bluecolored.bluemap.core.world.mca.ChunkLoader;
-import de.bluecolored.bluemap.core.world.mca.chunk.MCAChunkLoader;
-import de.bluecolored.bluemap.core.world.mca.chunk.MCAChunk;
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
 import java.util.regex.Pattern;
 
+/**
+ * A region in the anvil (.mca) format.<br>
+ * <br>
+ * The region-file is kept open and its header is parsed once, until the file's size, modification-time or identity
+ * changes. A header that has been read shortly after the file was modified is not trusted, since a rewrite within the
+ * same timestamp-granularity would go unnoticed.<br>
+ * Chunk-data is read with positional reads into a per-thread buffer that is passed to the {@link ChunkLoader} without
+ * further copying. No mapping is held, so the server can always truncate or rewrite the file.
+ * The file is closed with {@link #close()} once the region is no longer cached.
+ */
 @Getter
-public class MCARegion<T> implements Region<T> {
+public class MCARegion<T> implements Region<T>, Closeable {
 
     public static final String FILE_SUFFIX = ".mca";
     public static final Pattern FILE_PATTERN = Pattern.compile("^r\\.(-?\\d+)\\.(-?\\d+)\\.mca$");
@@ -58,10 +70,21 @@
         CHUNK_COMPRESSION_MAP[4] = Compression.LZ4;
     }
 
+    private static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SIZE = SECTOR_SIZE * 2;
+    private static final long UNTRUSTED_MODIFICATION_AGE = 2000; // ms, covers coarse file-timestamps
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> SECTOR_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 * 1024));
+
     private final Path regionFile;
     private final ChunkLoader<T> chunkLoader;
     private final Vector2i regionPos;
 
+    // guarded by this
+    private @Nullable OpenFile openFile;
+    private boolean closed;
+
     public MCARegion(ChunkLoader<T> chunkLoader, Path regionFile) throws IllegalArgumentException {
         this.chunkLoader = chunkLoader;
         this.regionFile = regionFile;
@@ -75,135 +98,227 @@ public MCARegion(ChunkLoader<T> chunkLoader, Path regionFile) throws IllegalArgu
 
     @Override
     public T loadChunk(int chunkX, int chunkZ) throws IOException {
-        if (Files.notExists(regionFile)) return chunkLoader.emptyChunk();
-
-        long fileLength = Files.size(regionFile);
-        if (fileLength == 0) return chunkLoader.emptyChunk();
-
-        try (FileChannel channel = FileChannel.open(regionFile, StandardOpenOption.READ)) {
-            int xzChunk = (chunkZ & 0b11111) << 5 | (chunkX & 0b11111);
-
-            byte[] header = new byte[4];
-            channel.position(xzChunk * 4);
-            readFully(channel, header, 0, 4);
-
-            long offset = (header[0] & 0xFF) << 16;
-            offset |= (header[1] & 0xFF) << 8;
-            offset |= header[2] & 0xFF;
-            offset *= 4096;
-            int size = (header[3] & 0xFF) * 4096;
-
-            if (size == 0) return chunkLoader.emptyChunk();
-
-            byte[] chunkDataBuffer = new byte[size];
-
-            channel.position(offset);
-            readFully(channel, chunkDataBuffer, 0, size);
-
-            return loadChunk(chunkDataBuffer, size);
+        int xzChunk = (chunkZ & 0b11111) << 5 | (chunkX & 0b11111);
+
+        for (int tries = 1;; tries++) {
+            OpenFile file = open();
+            if (file == null) return chunkLoader.emptyChunk();
+
+            try {
+                int location = file.header.getInt(xzChunk * 4);
+                int size = (location & 0xFF) * SECTOR_SIZE;
+                if (size == 0) return chunkLoader.emptyChunk();
+                long offset = (long) (location >>> 8) * SECTOR_SIZE;
+
+                ByteBuffer chunkData = sectorBuffer(size);
+                try {
+                    if (!readFully(file.channel, chunkData, offset))
+                        throw new IOException("Chunk-data for chunk " + chunkX + "," + chunkZ + " exceeds region-file length");
+
+                    return loadChunk(chunkData);
+                } finally {
+                    if (chunkData.capacity() > MAX_RETAINED_BUFFER_SIZE)
+                        SECTOR_BUFFER.remove();
+                }
+            } catch (ClosedChannelException ex) {
+                // the region got closed or another thread was interrupted while reading -> open the file again
+                if (tries >= 2 || Thread.currentThread().isInterrupted()) throw ex;
+            } finally {
+                if (file.temporary) file.channel.close();
+            }
         }
     }
 
     @Override
     public void iterateAllChunks(ChunkConsumer<T> consumer) throws IOException {
-        if (Files.notExists(regionFile)) return;
-
-        long fileLength = Files.size(regionFile);
-        if (fileLength == 0) return;
-
         int chunkStartX = regionPos.getX() * 32;
         int chunkStartZ = regionPos.getY() * 32;
 
-        try (FileChannel channel = FileChannel.open(regionFile, StandardOpenOption.READ)) {
-            byte[] header = new byte[1024 * 8];
-            byte[] chunkDataBuffer = null;
+        OpenFile file = open();
+        if (file == null) return;
 
-            // read the header
-            readFully(channel, header, 0, header.length);
+        try {
+            ByteBuffer header = file.header;
+            ByteBuffer chunkData = null;
 
             // iterate over all chunks
             for (int x = 0; x < 32; x++) {
                 for (int z = 0; z < 32; z++) {
                     int xzChunk = (z & 0b11111) << 5 | (x & 0b11111);
 
-                    int size = (header[xzChunk * 4 + 3] & 0xFF) * 4096;
+                    int location = header.getInt(xzChunk * 4);
+                    int size = (location & 0xFF) * SECTOR_SIZE;
                     if (size == 0) continue;
 
                     int chunkX = chunkStartX + x;
                     int chunkZ = chunkStartZ + z;
-
-                    int i = xzChunk * 4 + 4096;
-                    int timestamp = header[i++] << 24;
-                    timestamp |= (header[i++] & 0xFF) << 16;
-                    timestamp |= (header[i++] & 0xFF) << 8;
-                    timestamp |= header[i] & 0xFF;
+                    int timestamp = header.getInt(SECTOR_SIZE + xzChunk * 4);
 
                     // load chunk only if consumers filter returns true
                     if (consumer.filter(chunkX, chunkZ, timestamp)) {
-                        i = xzChunk * 4;
-                        long offset = (header[i++] & 0xFF) << 16;
-                        offset |= (header[i++] & 0xFF) << 8;
-                        offset |= header[i] & 0xFF;
-                        offset *= 4096;
-
-                        if (chunkDataBuffer == null || chunkDataBuffer.length < size)
-                            chunkDataBuffer = new byte[size];
+                        try {
+                            if (chunkData == null || chunkData.capacity() < size)
+                                chunkData = ByteBuffer.allocate(size);
+                            chunkData.clear().limit(size);
 
-                        channel.position(offset);
-                        readFully(channel, chunkDataBuffer, 0, size);
+                            long offset = (long) (location >>> 8) * SECTOR_SIZE;
+                            if (!readFully(file.channel, chunkData, offset))
+                                throw new IOException("Chunk-data exceeds region-file length");
 
-                        try {
-                            T chunk = loadChunk(chunkDataBuffer, size);
-                            consumer.accept(chunkX, chunkZ, chunk);
+                            T chunk = loadChunk(chunkData);
+                            consumer.accept(chunkX, chunkZ, chunk, size);
                         } catch (IOException ex) {
                             consumer.fail(chunkX, chunkZ, ex);
                         } catch (Exception ex) {
                             consumer.fail(chunkX, chunkZ, new IOException(ex));
                         }
-
                     }
                 }
             }
+        } finally {
+            if (file.temporary) file.channel.close();
         }
     }
 
+    /**
+     * Closes the region-file. Loading chunks afterwards still works, but opens the file for each call.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        OpenFile file = this.openFile;
+        this.openFile = null;
+        if (file != null) file.channel.close();
+    }
+
+    /**
+     * Returns the open region-file with a header that is up-to-date with the file's current attributes,
+     * (re-)opening the file or re-reading the header if needed.
+     * @return the open file, or null if the region-file does not exist
+     */
+    private synchronized @Nullable OpenFile open() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(regionFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            if (openFile != null) openFile.channel.close();
+            openFile = null;
+            return null;
+        }
+
+        OpenFile file = this.openFile;
+        if (file != null && file.channel.isOpen() && file.isValidFor(attributes)) return file;
+
+        // keep the channel as long as it is open and still refers to the same file
+        FileChannel channel = null;
+        if (file != null) {
+            if (file.channel.isOpen() && attributes.fileKey() != null && Objects.equals(file.fileKey, attributes.fileKey()))
+                channel = file.channel;
+            else
+                file.channel.close();
+        }
+
+        try {
+            if (channel == null) channel = FileChannel.open(regionFile, StandardOpenOption.READ);
+        } catch (NoSuchFileException ex) {
+            this.openFile = null;
+            return null;
+        }
+
+        // a short or empty file just has no chunks at the missing header-positions
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+
+        file = new OpenFile(channel, header, attributes, closed);
+        this.openFile = closed ? null : file;
+        return file;
+    }
+
+    private static ByteBuffer sectorBuffer(int size) {
+        ByteBuffer buffer = SECTOR_BUFFER.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+            SECTOR_BUFFER.set(buffer);
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
     @Override
     public T emptyChunk() {
         return chunkLoader.emptyChunk();
     }
 
-    private T loadChunk(byte[] data, int size) throws IOException {
-        int compressionTypeId = Byte.toUnsignedInt(data[4]);
+    /**
+     * Loads the chunk from the given (flipped) sector-data.
+     */
+    private T loadChunk(ByteBuffer data) throws IOException {
+        if (data.remaining() < 5) throw new IOException("Chunk-data is too short");
+
+        int position = data.position();
+        int length = data.getInt(position);
+        int compressionTypeId = Byte.toUnsignedInt(data.get(position + 4));
         Compression compression = CHUNK_COMPRESSION_MAP[compressionTypeId];
         if (compression == null)
             throw new IOException("Unknown chunk compression-id: " + compressionTypeId);
 
-        return chunkLoader.load(data, 5, size - 5, compression);
+        // the length-field includes the compression-byte, the remaining sector-space is just padding
+        int payloadLength = Math.min(length - 1, data.remaining() - 5);
+        if (payloadLength <= 0) throw new IOException("Invalid chunk-data length: " + length);
+
+        data.position(position + 5);
+        data.limit(position + 5 + payloadLength);
+        return chunkLoader.load(data, compression);
     }
 
     public static String getRegionFileName(int regionX, int regionZ) {
         return "r." + regionX + "." + regionZ + FILE_SUFFIX;
     }
 
-    @SuppressWarnings("SameParameterValue")
-    private static void readFully(ReadableByteChannel src, byte[] dst, int off, int len) throws IOException {
-        readFully(src, ByteBuffer.wrap(dst), off, len);
+    /**
+     * Fills the remaining space of the buffer with a positional read starting at the given file-position and flips it.
+     * @return false if the end of the file has been reached before the buffer could be filled
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, position);
+            if (read < 0) return false;
+            position += read;
+        }
+        dst.flip();
+        return true;
     }
 
-    private static void readFully(ReadableByteChannel src, ByteBuffer bb, int off, int len) throws IOException {
-        int limit = off + len;
-        if (limit > bb.capacity()) throw new IllegalArgumentException("buffer too small");
+    /**
+     * An open region-file together with its header and the file-attributes at the time the header has been read
+     */
+    private static class OpenFile {
+
+        private final FileChannel channel;
+        private final ByteBuffer header;
+        private final long size;
+        private final long lastModified;
+        private final @Nullable Object fileKey;
+        private final boolean trusted;
+        private final boolean temporary;
+
+        OpenFile(FileChannel channel, ByteBuffer header, BasicFileAttributes attributes, boolean temporary) {
+            this.channel = channel;
+            this.header = header;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            this.trusted = System.currentTimeMillis() - lastModified > UNTRUSTED_MODIFICATION_AGE;
+            this.temporary = temporary;
+        }
 
-        bb.limit(limit);
-        bb.position(off);
+        boolean isValidFor(BasicFileAttributes attributes) {
+            return trusted &&
+                    size == attributes.size() &&
+                    lastModified == attributes.lastModifiedTime().toMillis() &&
+                    Objects.equals(fileKey, attributes.fileKey());
+        }
 
-        do {
-            int read = src.read(bb);
-            if (read < 0)
-                // zero out all the remaining data from the buffer
-                while (bb.remaining() > 0)
-                    bb.put((byte) 0);
-        } while (bb.remaining() > 0);
     }
 
 }
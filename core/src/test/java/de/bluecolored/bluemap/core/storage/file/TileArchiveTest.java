@@ -0,0 +1,226 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileArchiveTest {
+
+    @TempDir Path root;
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        try (TileArchive archive = new TileArchive(path)) {
+            assertFalse(Files.exists(path)); // only created with the first write
+            assertNull(archive.read(0));
+            assertFalse(archive.exists(0));
+            assertNull(archive.fingerprint(0));
+
+            archive.write(TileArchive.index(1, 2), bytes("tile"));
+            archive.write(TileArchive.index(-1, -1), bytes("other"));
+
+            assertTrue(Files.exists(path));
+            assertEquals("tile", string(archive.read(TileArchive.index(1, 2))));
+            assertEquals("other", string(archive.read(TileArchive.index(31, 31))));
+            assertTrue(archive.exists(TileArchive.index(1, 2)));
+            assertFalse(archive.exists(TileArchive.index(2, 1)));
+            assertArrayEquals(
+                    new int[]{ TileArchive.index(1, 2), TileArchive.index(31, 31) },
+                    archive.indices()
+            );
+        }
+    }
+
+    @Test
+    public void testOverwriteAndDelete() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        try (TileArchive archive = new TileArchive(path)) {
+            archive.write(0, bytes("first"));
+            String fingerprint = archive.fingerprint(0);
+
+            archive.write(0, bytes("second"));
+            assertEquals("second", string(archive.read(0)));
+            assertNotEquals(fingerprint, archive.fingerprint(0));
+            assertEquals(1, archive.indices().length);
+
+            archive.write(1, bytes("other"));
+            archive.delete(0);
+            assertNull(archive.read(0));
+            assertNull(archive.fingerprint(0));
+            assertEquals("other", string(archive.read(1)));
+
+            // deleting the last item deletes the file
+            archive.delete(1);
+            assertFalse(Files.exists(path));
+            assertEquals(0, archive.indices().length);
+
+            archive.write(2, bytes("again"));
+            assertEquals("again", string(archive.read(2)));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        byte[] small = bytes("small");
+        try (TileArchive archive = new TileArchive(path)) {
+            archive.write(5, small);
+
+            byte[] data = new byte[300 * 1024];
+            for (int i = 0; i < 5; i++) {
+                Arrays.fill(data, (byte) i);
+                archive.write(0, data);
+            }
+
+            // the overwritten data has been removed from the file
+            assertTrue(Files.size(path) < 2L * data.length, "archive has not been compacted");
+            assertArrayEquals(data, archive.read(0));
+            assertArrayEquals(small, archive.read(5));
+            assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+
+            // the compacted file is still writable
+            archive.write(6, small);
+            assertArrayEquals(small, archive.read(6));
+        }
+
+        try (TileArchive archive = new TileArchive(path)) {
+            assertEquals(4, archive.read(0)[0]);
+            assertArrayEquals(small, archive.read(5));
+            assertArrayEquals(small, archive.read(6));
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        try (TileArchive archive = new TileArchive(path)) {
+            archive.write(3, bytes("tile"));
+            archive.write(4, bytes("deleted"));
+            archive.delete(4);
+        }
+
+        try (TileArchive archive = new TileArchive(path)) {
+            assertEquals("tile", string(archive.read(3)));
+            assertNull(archive.read(4));
+            assertArrayEquals(new int[]{ 3 }, archive.indices());
+        }
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        TileArchive archive = new TileArchive(root.resolve("x0z0.archive"));
+        archive.write(0, bytes("tile"));
+        archive.close();
+
+        assertThrows(ClosedChannelException.class, () -> archive.read(0));
+        assertThrows(ClosedChannelException.class, () -> archive.write(0, bytes("tile")));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        try (TileArchive archive = new TileArchive(path)) {
+            archive.write(0, bytes("tile"));
+            archive.write(1, bytes("other"));
+        }
+
+        // corrupt the last byte, which belongs to the data of item 1
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{ 'X' }), channel.size() - 1);
+        }
+
+        try (TileArchive archive = new TileArchive(path)) {
+            assertEquals("tile", string(archive.read(0)));
+            IOException ex = assertThrows(IOException.class, () -> archive.read(1));
+            assertTrue(ex.getMessage().contains("checksum"));
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        Files.write(path, bytes("not an archive"));
+        assertThrows(IOException.class, () -> new TileArchive(path));
+    }
+
+    @Test
+    public void testExternalChanges() throws IOException {
+        Path path = root.resolve("x0z0.archive");
+        try (
+                TileArchive writer = new TileArchive(path);
+                TileArchive reader = new TileArchive(path)
+        ) {
+            // the file is created by the other archive
+            writer.write(0, bytes("first"));
+            assertEquals("first", string(reader.read(0)));
+
+            // appended by the other archive
+            writer.write(0, bytes("second"));
+            writer.write(1, bytes("other"));
+            assertEquals("second", string(reader.read(0)));
+            assertTrue(reader.exists(1));
+
+            // replaced by a compaction of the other archive
+            byte[] data = new byte[300 * 1024];
+            for (int i = 0; i < 5; i++) {
+                Arrays.fill(data, (byte) i);
+                writer.write(2, data);
+            }
+            assertArrayEquals(data, reader.read(2));
+            assertEquals("second", string(reader.read(0)));
+
+            // deleted by the other archive
+            writer.delete(0);
+            writer.delete(1);
+            writer.delete(2);
+            assertFalse(Files.exists(path));
+            assertNull(reader.read(0));
+            assertEquals(0, reader.indices().length);
+        }
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
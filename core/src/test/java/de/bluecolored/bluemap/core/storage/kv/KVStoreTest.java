@@ -0,0 +1,298 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.kv;
+
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.util.Key;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KVStoreTest {
+
+    private static final Key TILES = new Key("bluemap", "tiles");
+    private static final Key META = new Key("bluemap", "meta");
+
+    @TempDir Path root;
+
+    @Test
+    public void testReopen() throws IOException {
+        try (KVStore store = open(1024 * 1024)) {
+            store.write(new KVStore.Batch()
+                    .put("world", META, Compression.NONE, bytes("meta"))
+                    .putGridItem("world", TILES, -3, 7, Compression.GZIP, bytes("tile"))
+                    .putGridItem("world", TILES, 1, 2, Compression.GZIP, bytes("removed"))
+            );
+            store.write(new KVStore.Batch().deleteGridItem("world", TILES, 1, 2));
+        }
+
+        try (KVStore store = open(1024 * 1024)) {
+            assertArrayEquals(bytes("meta"), store.read("world", META, Compression.NONE));
+            assertArrayEquals(bytes("tile"), store.readGridItem("world", TILES, -3, 7, Compression.GZIP));
+            assertNull(store.readGridItem("world", TILES, 1, 2, Compression.GZIP));
+            assertNull(store.readGridItem("world", TILES, -3, 7, Compression.NONE));
+        }
+    }
+
+    @Test
+    public void testReopenFromHintFiles() throws IOException {
+        try (KVStore store = open(256)) {
+            for (int i = 0; i < 32; i++)
+                store.write(new KVStore.Batch().putGridItem("world", TILES, i, 0, Compression.NONE, value(i, 0)));
+        }
+        assertTrue(countFiles(".hint") > 0);
+
+        try (KVStore store = open(256)) {
+            for (int i = 0; i < 32; i++)
+                assertArrayEquals(value(i, 0), store.readGridItem("world", TILES, i, 0, Compression.NONE));
+        }
+    }
+
+    @Test
+    public void testTruncatedTail() throws IOException {
+        try (KVStore store = open(1024 * 1024)) {
+            store.write(new KVStore.Batch().put("world", META, Compression.NONE, bytes("first")));
+            store.write(new KVStore.Batch().put("world", META, Compression.NONE, bytes("second")));
+        }
+
+        Path segment = lastSegment();
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (KVStore store = open(1024 * 1024)) {
+            assertArrayEquals(bytes("first"), store.read("world", META, Compression.NONE));
+
+            // the torn record got truncated, so new records are readable after another reopen
+            store.write(new KVStore.Batch().put("world", META, Compression.NONE, bytes("third")));
+        }
+
+        try (KVStore store = open(1024 * 1024)) {
+            assertArrayEquals(bytes("third"), store.read("world", META, Compression.NONE));
+        }
+    }
+
+    @Test
+    public void testCorruptedTail() throws IOException {
+        try (KVStore store = open(1024 * 1024)) {
+            store.write(new KVStore.Batch().put("world", META, Compression.NONE, bytes("first")));
+            store.write(new KVStore.Batch().put("world", META, Compression.NONE, bytes("second")));
+        }
+
+        Path segment = lastSegment();
+        byte[] data = Files.readAllBytes(segment);
+        data[data.length - 1] ^= 0x7F;
+        Files.write(segment, data);
+
+        try (KVStore store = open(1024 * 1024)) {
+            assertArrayEquals(bytes("first"), store.read("world", META, Compression.NONE));
+        }
+    }
+
+    @Test
+    public void testDeleteMap() throws IOException {
+        try (KVStore store = open(1024 * 1024)) {
+            store.write(new KVStore.Batch()
+                    .put("world", META, Compression.NONE, bytes("meta"))
+                    .putGridItem("world", TILES, 0, 0, Compression.NONE, bytes("tile"))
+                    .put("nether", META, Compression.NONE, bytes("nether"))
+            );
+            store.write(new KVStore.Batch().deleteMap("world"));
+            assertFalse(store.hasMap("world"));
+        }
+
+        try (KVStore store = open(1024 * 1024)) {
+            assertFalse(store.hasMap("world"));
+            assertNull(store.read("world", META, Compression.NONE));
+            assertNull(store.readGridItem("world", TILES, 0, 0, Compression.NONE));
+            assertArrayEquals(bytes("nether"), store.read("nether", META, Compression.NONE));
+            assertEquals(listOf("nether"), store.mapIds().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testCompactionAndReopen() throws IOException {
+        try (KVStore store = open(1024)) {
+            for (int round = 0; round < 8; round++) {
+                for (int i = 0; i < 16; i++)
+                    store.write(new KVStore.Batch().putGridItem("world", TILES, i, 0, Compression.NONE, value(i, round)));
+            }
+            store.write(new KVStore.Batch().deleteGridItem("world", TILES, 0, 0));
+
+            // ~16KiB have been written, but only ~2KiB of it is still live
+            store.compact();
+            assertTrue(segmentsSize() < 8 * 1024);
+
+            assertNull(store.readGridItem("world", TILES, 0, 0, Compression.NONE));
+            for (int i = 1; i < 16; i++)
+                assertArrayEquals(value(i, 7), store.readGridItem("world", TILES, i, 0, Compression.NONE));
+        }
+
+        try (KVStore store = open(1024)) {
+            assertNull(store.readGridItem("world", TILES, 0, 0, Compression.NONE));
+            for (int i = 1; i < 16; i++)
+                assertArrayEquals(value(i, 7), store.readGridItem("world", TILES, i, 0, Compression.NONE));
+            assertEquals(15, store.gridItems("world", TILES, Compression.NONE).count());
+        }
+    }
+
+    @Test
+    public void testReadDuringCompaction() throws Exception {
+        try (KVStore store = open(2048)) {
+            for (int round = 0; round < 16; round++) {
+                for (int i = 0; i < 64; i++)
+                    store.write(new KVStore.Batch().putGridItem("world", TILES, i, 0, Compression.NONE, value(i, round)));
+            }
+
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        while (!done.get()) {
+                            for (int i = 0; i < 64; i++)
+                                assertArrayEquals(value(i, 15), store.readGridItem("world", TILES, i, 0, Compression.NONE));
+                        }
+                    } catch (Throwable t2) {
+                        failure.compareAndSet(null, t2);
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            store.compact();
+            done.set(true);
+            for (Thread reader : readers) reader.join();
+
+            if (failure.get() != null) throw new AssertionError("Read failed during compaction", failure.get());
+        }
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        try (KVStore store = open(4096)) {
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int z = t;
+                Thread writer = new Thread(() -> {
+                    try {
+                        for (int round = 0; round < 4; round++) {
+                            for (int i = 0; i < 64; i++)
+                                store.write(new KVStore.Batch().putGridItem("world", TILES, i, z, Compression.NONE, value(i, round)));
+                        }
+                        store.write(new KVStore.Batch().deleteGridItem("world", TILES, 0, z));
+                    } catch (Throwable t2) {
+                        failure.compareAndSet(null, t2);
+                    }
+                });
+                writer.start();
+                writers.add(writer);
+            }
+            for (Thread writer : writers) writer.join();
+            if (failure.get() != null) throw new AssertionError("Concurrent write failed", failure.get());
+
+            for (int z = 0; z < 8; z++) {
+                assertNull(store.readGridItem("world", TILES, 0, z, Compression.NONE));
+                for (int i = 1; i < 64; i++)
+                    assertArrayEquals(value(i, 3), store.readGridItem("world", TILES, i, z, Compression.NONE));
+            }
+        }
+
+        try (KVStore store = open(4096)) {
+            for (int z = 0; z < 8; z++) {
+                assertNull(store.readGridItem("world", TILES, 0, z, Compression.NONE));
+                for (int i = 1; i < 64; i++)
+                    assertArrayEquals(value(i, 3), store.readGridItem("world", TILES, i, z, Compression.NONE));
+            }
+        }
+    }
+
+    private KVStore open(long maxSegmentSize) throws IOException {
+        KVStore store = new KVStore(root, maxSegmentSize);
+        store.open();
+        return store;
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files
+                    .filter(path -> path.getFileName().toString().endsWith(".log"))
+                    .max((a, b) -> Integer.compare(segmentId(a), segmentId(b)))
+                    .orElseThrow(IllegalStateException::new);
+        }
+    }
+
+    private long segmentsSize() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            long size = 0;
+            for (Path path : (Iterable<Path>) files::iterator)
+                if (path.getFileName().toString().endsWith(".log")) size += Files.size(path);
+            return size;
+        }
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(suffix)).count();
+        }
+    }
+
+    private static int segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - 4));
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) list.add(value);
+        return list;
+    }
+
+    private static byte[] value(int x, int round) {
+        return bytes("tile " + x + " of round " + round + " with some padding to fill the segments");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.sql;
+
+import de.bluecolored.bluemap.core.storage.compression.Compression;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet;
+import de.bluecolored.bluemap.core.storage.sql.commandset.CommandSet.GridItem;
+import de.bluecolored.bluemap.core.util.Key;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SQLWriteBatcherTest {
+
+    private static final Key TILES = new Key("bluemap", "tiles");
+    private static final long NO_DELAY = 0;
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testMergesPendingWrites() throws IOException {
+        FakeCommandSet sql = new FakeCommandSet();
+        try (SQLWriteBatcher batcher = new SQLWriteBatcher(sql.proxy(), 100, NEVER, Long.MAX_VALUE)) {
+            batcher.write(item(0, 0, "first"));
+            batcher.write(item(1, 0, "other"));
+            batcher.write(item(0, 0, "second"));
+            batcher.flush();
+
+            assertEquals(1, sql.batches.size());
+            List<GridItem> batch = sql.batches.get(0);
+            assertEquals(2, batch.size());
+            assertEquals("second", string(batch.get(0)));
+            assertEquals("other", string(batch.get(1)));
+        }
+    }
+
+    @Test
+    public void testSplitsIntoBatches() throws IOException {
+        FakeCommandSet sql = new FakeCommandSet();
+        try (SQLWriteBatcher batcher = new SQLWriteBatcher(sql.proxy(), 2, NEVER, Long.MAX_VALUE)) {
+            synchronized (batcher) { // keep the background-thread from taking the full batches
+                for (int i = 0; i < 5; i++) batcher.write(item(i, 0, "data"));
+            }
+            batcher.flush();
+
+            int written = sql.batches.stream().mapToInt(List::size).sum();
+            assertEquals(5, written);
+            assertTrue(sql.batches.stream().allMatch(batch -> batch.size() <= 2));
+        }
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        FakeCommandSet sql = new FakeCommandSet();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        sql.onWrite = items -> {
+            writing.countDown();
+            proceed.await();
+        };
+
+        try (SQLWriteBatcher batcher = new SQLWriteBatcher(sql.proxy(), 100, NEVER, Long.MAX_VALUE)) {
+            assertNull(batcher.getPending("world", TILES, 0, 0));
+
+            batcher.write(item(0, 0, "data"));
+            batcher.write(new GridItem("world", TILES, 1, 0, Compression.NONE, null));
+            assertEquals("data", string(batcher.getPending("world", TILES, 0, 0)));
+            assertTrue(batcher.getPending("world", TILES, 1, 0).isDelete());
+
+            // items stay visible while they are written
+            Thread flushThread = new Thread(() -> {
+                try {
+                    batcher.flush();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            flushThread.start();
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            assertEquals("data", string(batcher.getPending("world", TILES, 0, 0)));
+
+            proceed.countDown();
+            flushThread.join(5000);
+            assertNull(batcher.getPending("world", TILES, 0, 0));
+            assertNull(batcher.getPending("world", TILES, 1, 0));
+        }
+    }
+
+    @Test
+    public void testRequeueAfterFailure() throws Exception {
+        FakeCommandSet sql = new FakeCommandSet();
+        AtomicReference<SQLWriteBatcher> batcherRef = new AtomicReference<>();
+        sql.onWrite = items -> {
+            if (sql.calls.get() == 1) {
+                // overwritten while the failing batch is written
+                batcherRef.get().write(item(0, 0, "newer"));
+                throw new IOException("database unavailable");
+            }
+        };
+
+        try (SQLWriteBatcher batcher = new SQLWriteBatcher(sql.proxy(), 100, NEVER, Long.MAX_VALUE)) {
+            batcherRef.set(batcher);
+            batcher.write(item(0, 0, "older"));
+            batcher.write(item(1, 0, "data"));
+
+            assertThrows(IOException.class, batcher::flush);
+            assertTrue(sql.batches.isEmpty());
+
+            // the failed items are pending again, without replacing newer writes
+            assertEquals("newer", string(batcher.getPending("world", TILES, 0, 0)));
+            assertEquals("data", string(batcher.getPending("world", TILES, 1, 0)));
+
+            batcher.flush();
+            assertEquals(1, sql.batches.size());
+            assertEquals(2, sql.batches.get(0).size());
+            assertNull(batcher.getPending("world", TILES, 0, 0));
+            assertTrue(sql.batches.get(0).stream().anyMatch(item -> string(item).equals("newer")));
+            assertTrue(sql.batches.get(0).stream().noneMatch(item -> string(item).equals("older")));
+        }
+    }
+
+    @Test
+    public void testBackPressure() throws IOException {
+        FakeCommandSet sql = new FakeCommandSet();
+        try (SQLWriteBatcher batcher = new SQLWriteBatcher(sql.proxy(), 100, NEVER, 100)) {
+            batcher.write(item(0, 0, repeat('a', 60)));
+            assertTrue(sql.batches.isEmpty());
+
+            // exceeding the pending bytes flushes on the writing thread
+            batcher.write(item(1, 0, repeat('b', 60)));
+            assertEquals(1, sql.batches.size());
+            assertEquals(2, sql.batches.get(0).size());
+            assertNull(batcher.getPending("world", TILES, 0, 0));
+
+            // overwriting an item only counts the difference
+            batcher.write(item(0, 0, repeat('c', 60)));
+            batcher.write(item(0, 0, repeat('d', 60)));
+            assertEquals(1, sql.batches.size());
+        }
+    }
+
+    @Test
+    public void testBackOffAfterFailure() throws Exception {
+        FakeCommandSet sql = new FakeCommandSet();
+        sql.onWrite = items -> {
+            throw new IOException("database unavailable");
+        };
+
+        try (SQLWriteBatcher batcher = new SQLWriteBatcher(sql.proxy(), 1, NO_DELAY, Long.MAX_VALUE)) {
+            batcher.write(item(0, 0, "data"));
+
+            // a full batch is written right away, but not retried in a loop
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sql.calls.get() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            Thread.sleep(500);
+            assertEquals(1, sql.calls.get());
+
+            // once the database is back, the item gets written with the next retry
+            sql.onWrite = items -> {};
+            deadline = System.currentTimeMillis() + 5000;
+            while (sql.batches.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            assertEquals(1, sql.batches.size());
+        }
+    }
+
+    private static GridItem item(int x, int z, String data) {
+        return new GridItem("world", TILES, x, z, Compression.NONE, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(GridItem item) {
+        return new String(item.data(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        java.util.Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * Records the batches passed to {@link CommandSet#writeGridItems(Collection)}, all other commands are unsupported
+     */
+    private static class FakeCommandSet {
+
+        private final List<List<GridItem>> batches = new ArrayList<>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile WriteListener onWrite = items -> {};
+
+        private CommandSet proxy() {
+            return (CommandSet) Proxy.newProxyInstance(CommandSet.class.getClassLoader(), new Class<?>[]{ CommandSet.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "writeGridItems":
+                        @SuppressWarnings("unchecked")
+                        List<GridItem> items = new ArrayList<>((Collection<GridItem>) args[0]);
+                        calls.incrementAndGet();
+                        onWrite.onWrite(items);
+                        synchronized (batches) {
+                            batches.add(items);
+                        }
+                        return null;
+                    case "isClosed": return false;
+                    case "hashCode": return System.identityHashCode(proxy);
+                    case "equals": return proxy == args[0];
+                    case "toString": return "FakeCommandSet";
+                    default: throw new InvocationTargetException(new UnsupportedOperationException(method.getName()));
+                }
+            });
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface WriteListener {
+        void onWrite(List<GridItem> items) throws Exception;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongKeyedCacheTest {
+
+    @Test
+    public void testKeyPacking() {
+        long key = LongKeyedCache.key(-12, 345);
+        assertEquals(-12, LongKeyedCache.keyX(key));
+        assertEquals(345, LongKeyedCache.keyZ(key));
+
+        key = LongKeyedCache.key(Integer.MIN_VALUE, -1);
+        assertEquals(Integer.MIN_VALUE, LongKeyedCache.keyX(key));
+        assertEquals(-1, LongKeyedCache.keyZ(key));
+    }
+
+    @Test
+    public void testLoadsOnlyOnce() {
+        LongKeyedCache<String> cache = new LongKeyedCache<>(64);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("1", cache.get(1, k -> {
+                loads.incrementAndGet();
+                return Long.toString(k);
+            }));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getStats().getHitCount());
+        assertEquals(1, cache.getStats().getMissCount());
+    }
+
+    @Test
+    public void testBounded() {
+        LongKeyedCache<Long> cache = new LongKeyedCache<>(100);
+        for (long i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+
+        assertTrue(cache.size() <= 100 + 64); // segment capacities are rounded up
+        assertEquals(10000 - cache.size(), cache.getStats().getEvictionCount());
+        assertEquals(Long.valueOf(9999), cache.getIfPresent(9999));
+    }
+
+    @Test
+    public void testInvalidate() {
+        LongKeyedCache<Long> cache = new LongKeyedCache<>(100000);
+        for (long i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        for (long i = 0; i < 1000; i += 2) {
+            cache.invalidate(i);
+        }
+
+        for (long i = 0; i < 1000; i++) {
+            if (i % 2 == 0) assertNull(cache.getIfPresent(i));
+            else assertEquals(Long.valueOf(i), cache.getIfPresent(i));
+        }
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        LongKeyedCache<Long> cache = new LongKeyedCache<>(1000, 1, 1, TimeUnit.MILLISECONDS);
+        for (long i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(Long.valueOf(5), cache.getIfPresent(5));
+
+        Thread.sleep(10);
+
+        assertNull(cache.getIfPresent(5));
+        assertEquals(Long.valueOf(-6), cache.get(6, k -> -k));
+
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+    }
+
+}
@@ -16,6 +16,8 @@ public class WebConfig {
     
     private int port = 8100;
     private String bindAddress = "0.0.0.0";
+    private int webserverThreads = 4;
+    private boolean exposeMetrics = false;
     private String defaultWorld = "world";
     private boolean singleWorldMode = false;
     private boolean useCookies = true;
@@ -56,6 +58,14 @@ public void load(File file) throws IOException {
                 bindAddress = json.get("bind-address").getAsString();
             }
             
+            if (json.has("webserver-threads")) {
+                webserverThreads = json.get("webserver-threads").getAsInt();
+            }
+            
+            if (json.has("expose-metrics")) {
+                exposeMetrics = json.get("expose-metrics").getAsBoolean();
+            }
+            
             if (json.has("default-world")) {
                 defaultWorld = json.get("default-world").getAsString();
             }
@@ -89,6 +99,8 @@ public void save(File file) throws IOException {
         JsonObject json = new JsonObject();
         json.addProperty("port", port);
         json.addProperty("bind-address", bindAddress);
+        json.addProperty("webserver-threads", webserverThreads);
+        json.addProperty("expose-metrics", exposeMetrics);
         json.addProperty("default-world", defaultWorld);
         json.addProperty("single-world-mode", singleWorldMode);
         
@@ -119,6 +131,14 @@ public String getBindAddress() {
         return bindAddress;
     }
     
+    public int getWebserverThreads() {
+        return webserverThreads;
+    }
+    
+    public boolean isExposeMetrics() {
+        return exposeMetrics;
+    }
+    
     public String getDefaultWorld() {
         return defaultWorld;
     }
@@ -199,6 +219,14 @@ public void setBindAddress(String bindAddress) {
         this.bindAddress = bindAddress;
     }
     
+    public void setWebserverThreads(int webserverThreads) {
+        this.webserverThreads = webserverThreads;
+    }
+    
+    public void setExposeMetrics(boolean exposeMetrics) {
+        this.exposeMetrics = exposeMetrics;
+    }
+    
     public void setDefaultWorld(String defaultWorld) {
         this.defaultWorld = defaultWorld;
     }
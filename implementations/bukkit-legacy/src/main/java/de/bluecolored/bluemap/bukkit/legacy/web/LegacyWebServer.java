@@ -6,16 +6,26 @@
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,15 +37,26 @@ public class LegacyWebServer {
     private static final String DEFAULT_BIND_ADDRESS = "0.0.0.0";
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     
+    // requests waiting for a worker beyond this are answered with 503 instead of piling up
+    private static final int MAX_QUEUED_REQUESTS = 256;
+    private static final ThreadLocal<Boolean> OVERLOADED = ThreadLocal.withInitial(() -> false);
+    private static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long MAX_CACHED_FILE_SIZE = 256 * 1024;
+    
     private final LegacyBukkitPlugin plugin;
     private final Logger logger;
     private HttpServer server;
+    private ThreadPoolExecutor executor;
     private final WebConfig config;
+    private final StaticFileCache fileCache;
+    private final Metrics metrics;
     
     public LegacyWebServer(LegacyBukkitPlugin plugin, WebConfig config) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
         this.config = config;
+        this.fileCache = new StaticFileCache(MAX_CACHE_SIZE, MAX_CACHED_FILE_SIZE);
+        this.metrics = new Metrics();
     }
     
     public void start() throws IOException {
@@ -47,24 +68,110 @@ public void start() throws IOException {
         int port = config.getPort();
         String bindAddress = config.getBindAddress();
         
+        int threads = Math.max(1, config.getWebserverThreads());
+        
         server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
-        server.setExecutor(Executors.newCachedThreadPool());
+        executor = createExecutor(threads);
+        server.setExecutor(new AdmissionExecutor(executor));
         
         // Register handlers
-        server.createContext("/", new WebRootHandler());
-        server.createContext("/maps", new MapsHandler());
-        server.createContext("/assets", new AssetsHandler());
-        server.createContext("/api", new ApiHandler());
+        server.createContext("/", new BoundedHandler(new WebRootHandler()));
+        server.createContext("/maps", new BoundedHandler(new MapsHandler()));
+        server.createContext("/assets", new BoundedHandler(new AssetsHandler()));
+        server.createContext("/api", new BoundedHandler(new ApiHandler()));
         
         server.start();
-        logger.info("Web server started on " + bindAddress + ":" + port);
+        logger.info("Web server started on " + bindAddress + ":" + port + " with " + threads + " worker threads");
     }
     
     public void stop() {
         if (server != null) {
             server.stop(0);
             server = null;
-            logger.info("Web server stopped");
+            executor.shutdownNow();
+            executor = null;
+            logger.info("Web server stopped (" + metrics + ")");
+            fileCache.clear();
+        }
+    }
+    
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * A fixed amount of low-priority daemon threads, so map viewers can't starve the server's main thread.
+     * The queue is bounded, exchanges that don't fit are rejected and handled by the {@link AdmissionExecutor}.
+     */
+    private static ThreadPoolExecutor createExecutor(int threads) {
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "BlueMap-Legacy-WebServer-" + threadId.getAndIncrement());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    /**
+     * Decides on submit whether an exchange is admitted to the workers.
+     * If the worker-queue is full, the exchange is handled right away on the dispatcher-thread with the
+     * {@link #OVERLOADED} flag set, so the {@link BoundedHandler} only answers with a cheap 503.
+     */
+    private static class AdmissionExecutor implements Executor {
+        private final Executor workers;
+
+        private AdmissionExecutor(Executor workers) {
+            this.workers = workers;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            try {
+                workers.execute(task);
+            } catch (RejectedExecutionException ex) {
+                OVERLOADED.set(true);
+                try {
+                    task.run();
+                } finally {
+                    OVERLOADED.set(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the request and sheds load with a cheap 503 if the exchange has not been admitted to a worker
+     */
+    private class BoundedHandler implements HttpHandler {
+        private final HttpHandler delegate;
+        
+        private BoundedHandler(HttpHandler delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            metrics.requests.incrementAndGet();
+            try {
+                if (OVERLOADED.get()) {
+                    metrics.rejected.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                
+                delegate.handle(exchange);
+            } finally {
+                exchange.close();
+            }
         }
     }
     
@@ -106,6 +213,8 @@ public void handle(HttpExchange exchange) throws IOException {
             
             if (path.equals("/api/maps")) {
                 handleMapsApi(exchange);
+            } else if (path.equals("/api/metrics") && config.isExposeMetrics()) {
+                sendJsonResponse(exchange, GSON.toJson(metrics.toJson()));
             } else if (path.startsWith("/api/map/")) {
                 handleMapApi(exchange, path.substring("/api/map/".length()));
             } else {
@@ -132,25 +241,87 @@ private void handleMapApi(HttpExchange exchange, String mapId) throws IOExceptio
     }
     
     private void serveFile(HttpExchange exchange, Path filePath) throws IOException {
-        if (!Files.exists(filePath)) {
+        // don't serve anything outside of the webroot
+        Path webRoot = plugin.getWebRoot().toAbsolutePath().normalize();
+        filePath = filePath.toAbsolutePath().normalize();
+        if (!filePath.startsWith(webRoot)) {
+            exchange.sendResponseHeaders(403, -1);
+            return;
+        }
+        
+        StaticFileCache.CachedFile file = fileCache.get(filePath);
+        if (file == null) {
             exchange.sendResponseHeaders(404, -1);
             return;
         }
         
-        String contentType = getContentType(filePath.toString());
-        exchange.getResponseHeaders().set("Content-Type", contentType);
+        String eTag = file.getETag();
+        exchange.getResponseHeaders().set("Content-Type", getContentType(filePath.toString()));
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.getResponseHeaders().set("Last-Modified", formatHttpDate(file.getLastModified()));
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        
+        if (isNotModified(exchange, eTag, file.getLastModified())) {
+            metrics.notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
         
-        File file = filePath.toFile();
-        exchange.sendResponseHeaders(200, file.length());
+        if ("HEAD".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
         
+        byte[] data = file.getData();
+        if (data != null) {
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(data);
+            }
+            metrics.bytesSent.addAndGet(data.length);
+            return;
+        }
+        
+        // too large to be cached, stream it from disk
+        exchange.sendResponseHeaders(200, file.getSize());
         try (OutputStream os = exchange.getResponseBody();
-             FileInputStream fis = new FileInputStream(file)) {
+             InputStream in = Files.newInputStream(filePath)) {
             byte[] buffer = new byte[8192];
             int read;
-            while ((read = fis.read(buffer)) != -1) {
+            while ((read = in.read(buffer)) != -1) {
                 os.write(buffer, 0, read);
+                metrics.bytesSent.addAndGet(read);
+            }
+        }
+    }
+    
+    /**
+     * Checks the conditional headers of the request, If-None-Match takes precedence over If-Modified-Since
+     */
+    private boolean isNotModified(HttpExchange exchange, String eTag, long lastModified) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String match : ifNoneMatch.split(",")) {
+                match = match.trim();
+                if (match.startsWith("W/")) match = match.substring(2);
+                if (match.equals(eTag) || match.equals("*")) return true;
             }
+            return false;
+        }
+        
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return lastModified / 1000 <= since / 1000;
+            } catch (DateTimeParseException ignore) {}
         }
+        
+        return false;
+    }
+    
+    private static String formatHttpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
     }
     
     private void sendJsonResponse(HttpExchange exchange, String json) throws IOException {
@@ -161,6 +332,7 @@ private void sendJsonResponse(HttpExchange exchange, String json) throws IOExcep
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(response);
         }
+        metrics.bytesSent.addAndGet(response.length);
     }
     
     private String getContentType(String path) {
@@ -173,4 +345,56 @@ private String getContentType(String path) {
         if (path.endsWith(".gif")) return "image/gif";
         return "application/octet-stream";
     }
+    
+    public class Metrics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong notModified = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        
+        public long getRequests() {
+            return requests.get();
+        }
+        
+        public long getRejected() {
+            return rejected.get();
+        }
+        
+        public long getCacheHits() {
+            return fileCache.getHits();
+        }
+        
+        public long getCacheMisses() {
+            return fileCache.getMisses();
+        }
+        
+        public long getNotModified() {
+            return notModified.get();
+        }
+        
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+        
+        private Map<String, Object> toJson() {
+            Map<String, Object> json = new HashMap<>();
+            json.put("requests", getRequests());
+            json.put("rejected", getRejected());
+            json.put("cacheHits", getCacheHits());
+            json.put("cacheMisses", getCacheMisses());
+            json.put("notModified", getNotModified());
+            json.put("bytesSent", getBytesSent());
+            return json;
+        }
+        
+        @Override
+        public String toString() {
+            return "requests=" + getRequests() +
+                    ", rejected=" + getRejected() +
+                    ", cacheHits=" + getCacheHits() +
+                    ", cacheMisses=" + getCacheMisses() +
+                    ", notModified=" + getNotModified() +
+                    ", bytesSent=" + getBytesSent();
+        }
+    }
 } 
\ No newline at end of file
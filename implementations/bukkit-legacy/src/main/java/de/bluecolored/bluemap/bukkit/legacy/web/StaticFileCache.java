@@ -0,0 +1,147 @@
+package de.bluecolored.bluemap.bukkit.legacy.web;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An in-memory LRU cache for small, frequently requested files (settings, textures, lowres tiles, ...).
+ * Entries are validated against the size and modification time of the file on each lookup,
+ * so a changed file is never served from the cache.
+ */
+public class StaticFileCache {
+
+    private final long maxCacheSize;
+    private final long maxFileSize;
+
+    private final LinkedHashMap<Path, CachedFile> files;
+    private long cacheSize;
+    private long hits, misses;
+
+    public StaticFileCache(long maxCacheSize, long maxFileSize) {
+        this.maxCacheSize = maxCacheSize;
+        this.maxFileSize = maxFileSize;
+        this.files = new LinkedHashMap<>(64, 0.75f, true);
+        this.cacheSize = 0;
+    }
+
+    /**
+     * Returns the cached file if it is still up to date, or reads and caches it if it's small enough.
+     * If the file is too large to be cached, a {@link CachedFile} without data is returned.
+     *
+     * @return the file, or null if there is no such file
+     */
+    public CachedFile get(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            synchronized (this) {
+                remove(path);
+            }
+            return null;
+        }
+        if (!attributes.isRegularFile()) return null;
+
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        synchronized (this) {
+            CachedFile cached = files.get(path);
+            if (cached != null) {
+                if (cached.size == size && cached.lastModified == lastModified) {
+                    hits++;
+                    return cached;
+                }
+                remove(path);
+            }
+            misses++;
+        }
+
+        if (size > maxFileSize) return new CachedFile(null, size, lastModified);
+
+        byte[] data = Files.readAllBytes(path);
+        CachedFile file = new CachedFile(data, data.length, lastModified);
+
+        synchronized (this) {
+            remove(path);
+            files.put(path, file);
+            cacheSize += data.length;
+
+            // evict the least recently used files
+            Iterator<CachedFile> iterator = files.values().iterator();
+            while (cacheSize > maxCacheSize && iterator.hasNext()) {
+                cacheSize -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+
+        return file;
+    }
+
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    public synchronized long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * The amount of lookups that were served from memory
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The amount of lookups that needed to read the file from disk
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        files.clear();
+        cacheSize = 0;
+    }
+
+    private void remove(Path path) {
+        CachedFile removed = files.remove(path);
+        if (removed != null) cacheSize -= removed.size;
+    }
+
+    public static class CachedFile {
+        private final byte[] data;
+        private final long size;
+        private final long lastModified;
+
+        private CachedFile(byte[] data, long size, long lastModified) {
+            this.data = data;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * The content of the file, or null if the file is too large to be cached
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getETag() {
+            return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        }
+    }
+}
@@ -68,7 +68,6 @@
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 
 public class BlueMapCLI {
 
@@ -259,16 +258,15 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
         RoutingRequestHandler routingRequestHandler = new RoutingRequestHandler();
 
         // default route
-        routingRequestHandler.register(".*", new FileRequestHandler(config.getWebroot()));
+        routingRequestHandler.registerPrefix("", new FileRequestHandler(config.getWebroot()));
 
         // map route
         for (Map.Entry<String, MapConfig> mapConfigEntry : blueMap.getConfig().getMapConfigs().entrySet()) {
             MapStorage storage = blueMap.getOrLoadStorage(mapConfigEntry.getValue().getStorage())
                     .map(mapConfigEntry.getKey());
 
-            routingRequestHandler.register(
-                    "maps/" + Pattern.quote(mapConfigEntry.getKey()) + "/(.*)",
-                    "$1",
+            routingRequestHandler.registerPrefix(
+                    "maps/" + mapConfigEntry.getKey() + "/",
                     new MapRequestHandler(storage)
             );
         }
@@ -292,7 +290,10 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
 
         try {
             //noinspection resource
-            HttpServer webServer = new HttpServer(handler);
+            HttpServer webServer = new HttpServer(handler,
+                    config.getHandlerThreads(), config.getHandlerQueueSize(),
+                    config.getIoThreads(), config.getIdleTimeout()
+            );
             webServer.bind(new InetSocketAddress(
                     config.resolveIp(),
                     config.getPort()